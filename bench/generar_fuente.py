@@ -0,0 +1,66 @@
+#!/usr/bin/env python3
+"""Genera programas de prueba grandes para medir el compilador con --stats.
+
+Uso:
+  python3 bench/generar_fuente.py grande --mb 92 [--no-ascii] salida.txt
+      Funciones independientes hasta ocupar el tamaño pedido. Con --no-ascii el
+      archivo empieza con un comentario con una 'ñ', de modo que no se lee
+      mapeado (CharStreamMapeado) sino con CharStreams.fromFileName.
+  python3 bench/generar_fuente.py anidado --profundidad 4000 salida.txt
+      Un if por nivel, con un bloque vacío, una declaración y dos usos de
+      variables externas en cada uno: ejercita la tabla de símbolos.
+"""
+import argparse
+
+FUNCION = """int f{i}(int a) {{
+  int s = 0;
+  for (int k = 0; k < a; k = k + 1) {{
+    if (k % 2 == 0) {{ s = s + k * {i}; }} else {{ s = s - 1; }}
+  }}
+  return s;
+}}
+"""
+
+
+def grande(destino, mb, no_ascii):
+    limite = mb * 1024 * 1024
+    escritos = 0
+    with open(destino, "w", encoding="utf-8", newline="\n") as out:
+        if no_ascii:
+            escritos += out.write("// compilación con ñ: no se lee mapeado\n")
+        i = 0
+        while escritos < limite:
+            escritos += out.write(FUNCION.format(i=i))
+            i += 1
+        out.write("int main() { return f0(3); }\n")
+
+
+def anidado(destino, profundidad):
+    with open(destino, "w", encoding="utf-8", newline="\n") as out:
+        out.write("int main() {\n  int x = 0;\n")
+        for i in range(profundidad):
+            out.write("if (x == 0) {\n{ }\nint v%d = x + %d;\n" % (i, i))
+        out.write("x = 1;\n")
+        out.write("}\n" * profundidad)
+        out.write("  return x;\n}\n")
+
+
+def main():
+    parser = argparse.ArgumentParser(description=__doc__, formatter_class=argparse.RawDescriptionHelpFormatter)
+    modos = parser.add_subparsers(dest="modo", required=True)
+    p = modos.add_parser("grande", help="funciones hasta ocupar --mb megabytes")
+    p.add_argument("--mb", type=int, default=92)
+    p.add_argument("--no-ascii", action="store_true")
+    p.add_argument("destino")
+    p = modos.add_parser("anidado", help="ifs anidados --profundidad niveles")
+    p.add_argument("--profundidad", type=int, default=4000)
+    p.add_argument("destino")
+    args = parser.parse_args()
+    if args.modo == "grande":
+        grande(args.destino, args.mb, args.no_ascii)
+    else:
+        anidado(args.destino, args.profundidad)
+
+
+if __name__ == "__main__":
+    main()
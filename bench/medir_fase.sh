@@ -0,0 +1,38 @@
+#!/bin/bash
+# Compila un archivo varias veces con --stats y muestra la medición de una fase.
+# Uso: bench/medir_fase.sh <fase> <archivo> [repeticiones] [opciones del compilador...]
+#   fase: nombre en estadisticas.json (lectura, lexer, parser_semantico, ...)
+# Variables: CLASES (por defecto target/classes) permite medir otra compilación del
+# proyecto, por ejemplo un worktree en un commit anterior; JAVA_OPTS se pasa a la JVM.
+# Ejemplo: bench/medir_fase.sh lectura /tmp/grande.txt 5 --streaming --emit=ir --trace=
+
+set -e
+
+if [ $# -lt 2 ]; then
+    sed -n '2,7p' "$0"
+    exit 2
+fi
+
+FASE="$1"
+ARCHIVO="$2"
+REPETICIONES="${3:-5}"
+shift $(( $# < 3 ? $# : 3 ))
+
+RAIZ="$(cd "$(dirname "$0")/.." && pwd)"
+CLASES="${CLASES:-$RAIZ/target/classes}"
+DEPENDENCIAS="$RAIZ/target/classpath.txt"
+if [ ! -f "$DEPENDENCIAS" ]; then
+    (cd "$RAIZ" && mvn -q dependency:build-classpath -Dmdep.outputFile="$DEPENDENCIAS")
+fi
+
+TEMPORAL="$(mktemp -d)"
+trap 'rm -rf "$TEMPORAL"' EXIT
+mkdir -p "$TEMPORAL/salida" "$TEMPORAL/doc"
+ARCHIVO="$(cd "$(dirname "$ARCHIVO")" && pwd)/$(basename "$ARCHIVO")"
+
+for i in $(seq 1 "$REPETICIONES"); do
+    # El compilador escribe salida/ y doc/ relativos al directorio actual
+    (cd "$TEMPORAL" && java $JAVA_OPTS -cp "$CLASES:$(cat "$DEPENDENCIAS")" compiladores.App \
+        "$@" --stats="$TEMPORAL/estadisticas.json" "$ARCHIVO" > /dev/null) || true
+    grep "\"nombre\": \"$FASE\"" "$TEMPORAL/estadisticas.json" || echo "sin fase $FASE"
+done
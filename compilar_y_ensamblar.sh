@@ -28,24 +28,44 @@ fi
 
 echo -e "${YELLOW}Archivo de entrada:${NC} $ARCHIVO_ENTRADA\n"
 
-# Fase 1: Compilar el proyecto Java
-echo -e "${GREEN}[1/5] Compilando proyecto Java...${NC}"
-mvn clean compile -q
-if [ $? -eq 0 ]; then
-    echo -e "${GREEN}✓ Compilación Java exitosa${NC}\n"
-else
-    echo -e "${RED}✗ Error en la compilación Java${NC}"
-    exit 1
-fi
-
-# Fase 2: Ejecutar el compilador
-echo -e "${GREEN}[2/5] Ejecutando compilador...${NC}"
-mvn exec:java -Dexec.mainClass="compiladores.App" -Dexec.args="$ARCHIVO_ENTRADA" -q
-if [ $? -eq 0 ] && [ -f "salida/programa.asm" ]; then
-    echo -e "${GREEN}✓ Código ensamblador generado${NC}\n"
+# Si hay un demonio de compilación activo (App --servidor), se usa el cliente
+# liviano y se evita recompilar el proyecto y arrancar Maven en cada ejecución.
+SOCKET="${COMPILADOR_SOCKET:-/tmp/teccompilacion.sock}"
+
+# Un programa.asm de una ejecución anterior no cuenta como resultado de esta
+rm -f salida/programa.asm
+
+if [ -S "$SOCKET" ] && [ -d target/classes ]; then
+    echo -e "${GREEN}[1/5] Usando servidor de compilación en $SOCKET${NC}\n"
+    echo -e "${GREEN}[2/5] Ejecutando compilador...${NC}"
+    ESTADO_CLIENTE=0
+    java -cp target/classes compiladores.ClienteCompilacion "$ARCHIVO_ENTRADA" "$SOCKET" || ESTADO_CLIENTE=$?
+    if [ $ESTADO_CLIENTE -eq 0 ] && [ -f "salida/programa.asm" ]; then
+        echo -e "${GREEN}✓ Código ensamblador generado${NC}\n"
+    else
+        echo -e "${RED}✗ Error ejecutando el compilador o no se generó el código ensamblador${NC}"
+        exit 1
+    fi
 else
-    echo -e "${RED}✗ Error ejecutando el compilador o no se generó el código ensamblador${NC}"
-    exit 1
+    # Fase 1: Compilar el proyecto Java
+    echo -e "${GREEN}[1/5] Compilando proyecto Java...${NC}"
+    mvn clean compile -q
+    if [ $? -eq 0 ]; then
+        echo -e "${GREEN}✓ Compilación Java exitosa${NC}\n"
+    else
+        echo -e "${RED}✗ Error en la compilación Java${NC}"
+        exit 1
+    fi
+
+    # Fase 2: Ejecutar el compilador
+    echo -e "${GREEN}[2/5] Ejecutando compilador...${NC}"
+    mvn exec:java -Dexec.mainClass="compiladores.App" -Dexec.args="$ARCHIVO_ENTRADA" -q
+    if [ $? -eq 0 ] && [ -f "salida/programa.asm" ]; then
+        echo -e "${GREEN}✓ Código ensamblador generado${NC}\n"
+    else
+        echo -e "${RED}✗ Error ejecutando el compilador o no se generó el código ensamblador${NC}"
+        exit 1
+    fi
 fi
 
 # Mostrar resumen del código generado
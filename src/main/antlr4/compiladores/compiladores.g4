@@ -1,5 +1,8 @@
 grammar compiladores;
 
+// Todos los contextos llevan un número denso (ver ContextoNumerado)
+options { contextSuperClass = ContextoNumerado; }
+
 fragment LETRA : [A-Za-z];
 fragment DIGITO : [0-9];
 
@@ -88,9 +91,11 @@ inicializacion : ASIGN expresion
 |
 ;
 
-listaid : COMA ID dimension? inicializacion listaid
-|
-;
+// Identificadores adicionales de una declaración como repetición plana
+// (una lista larga no anida un nodo por elemento)
+listaid : (COMA declarador)* ;
+
+declarador : ID dimension? inicializacion ;
 
 asignacion : ID dimensionAcceso? ASIGN expresion PYC ;
 
@@ -174,26 +179,22 @@ tipofunc : INT
 |          VOID
 ;
 
-idfunc : tipo ID listaidfunc 
-|        tipo listaidfunc
+idfunc : parametro listaidfunc
 |
 ;
 
-listaidfunc : COMA tipo ID listaidfunc
-|             COMA tipo listaidfunc
-|
-;
+listaidfunc : (COMA parametro)* ;
 
-factorfunc : NUMERO listafactfunc
-|            ID listafactfunc
-|            PA expresion PC listafactfunc
-;
+parametro : tipo ID? ;
+
+factorfunc : argumento listafactfunc ;
 
 dimension : CA NUMERO CC ;
 dimensionAcceso : CA expresion CC ;
 
-listafactfunc: COMA NUMERO listafactfunc
-|              COMA ID listafactfunc
-|              COMA PA expresion PC listafactfunc
-|
+listafactfunc : (COMA argumento)* ;
+
+argumento : NUMERO
+|           ID
+|           PA expresion PC
 ;
\ No newline at end of file
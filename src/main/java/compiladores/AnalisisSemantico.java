@@ -0,0 +1,246 @@
+package compiladores;
+
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.tree.ErrorNode;
+import org.antlr.v4.runtime.tree.IterativeParseTreeWalker;
+import org.antlr.v4.runtime.tree.ParseTreeListener;
+import org.antlr.v4.runtime.tree.TerminalNode;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import compiladores.compiladoresParser.BloqueContext;
+import compiladores.compiladoresParser.DeclaracionfuncContext;
+import compiladores.compiladoresParser.ProgramaContext;
+
+/**
+ * Análisis semántico con los cuerpos de las funciones en paralelo.
+ * <p>
+ * Conectado al parser como listener, numera los nodos ({@link TiposPorNodo}) y
+ * reenvía los eventos a un {@link Escucha}
+ * principal salvo los del bloque de cada función definida: de ese bloque solo
+ * anota la función y, al terminar el parsing ({@link #terminar()}), cada cuerpo
+ * lo recorre un {@link Escucha} propio sobre una vista de la tabla de símbolos
+ * ({@link TablaSimbolos#vistaCuerpo(Trazas)}). Los cuerpos solo leen lo que
+ * declaró el programa antes de ellos, así que pueden analizarse a la vez.
+ * </p>
+ * <p>
+ * Mensajes y trazas quedan en el orden en que los produciría un único
+ * {@link Escucha} recorriendo el programa: lo anterior a cada cuerpo, el cuerpo,
+ * el cierre de la función, su verificación de retorno y lo que sigue. Los
+ * mensajes de cada cuerpo van a un {@link Reportador#tramo()} pedido en su
+ * lugar; las trazas se juntan por partes y se entregan al final.
+ * </p>
+ * <p>
+ * Recorrer los cuerpos después del parsing cuesta una segunda pasada por su
+ * parte del árbol, que ya no está en caché; solo compensa si hay más de un hilo
+ * para repartirla. Con un solo hilo en {@link ForkJoinPool#commonPool()} todos
+ * los eventos van al listener principal durante el parsing, como con un único
+ * {@link Escucha}.
+ * </p>
+ */
+final class AnalisisSemantico implements ParseTreeListener {
+
+    /** Cuerpo de una función, analizado aparte. */
+    private final class Cuerpo {
+        final DeclaracionfuncContext funcion;
+        final BloqueContext bloque;
+        final Trazas trazasCuerpo = trazas.enMemoria();
+        final TablaSimbolos vista = tabla.vistaCuerpo(trazasCuerpo);
+        final Reportador mensajes = destino.tramo();
+        final Escucha escucha = new Escucha(vista, mensajes, trazasCuerpo, tipos);
+        /**
+         * Tramo de la verificación de retorno, después del cierre de la función;
+         * {@code null} si el listener principal no llegó a verificarlo.
+         */
+        Reportador retorno;
+        String textoTrazas;
+
+        Cuerpo(DeclaracionfuncContext funcion, BloqueContext bloque) {
+            this.funcion = funcion;
+            this.bloque = bloque;
+            escucha.prepararCuerpo(principal.getTipoFuncionActual());
+        }
+
+        void analizar() {
+            if (destino.limiteAlcanzado()) {
+                // La compilación se corta en terminar(): el cuerpo ya no se analiza
+                return;
+            }
+            vista.abrirVista();
+            new IterativeParseTreeWalker().walk(escucha, bloque);
+            vista.cerrarVista();
+            mensajes.cerrar();
+            if (retorno != null) {
+                escucha.verificarRetorno(funcion, retorno);
+                retorno.cerrar();
+            }
+            textoTrazas = trazasCuerpo.tomar();
+        }
+    }
+
+    private final TiposPorNodo tipos;
+    private final Reportador destino;
+    private final Trazas trazasDestino;
+    /** Trazas del listener principal, que se cortan antes de cada cuerpo. */
+    private final Trazas trazas;
+    private final TablaSimbolos tabla;
+    private final Escucha principal;
+
+    /**
+     * Si los cuerpos se analizan aparte; si no, todo lo recorre el listener
+     * principal. Con límite de errores se analiza en el orden del programa, para
+     * que {@link CorteErrores} detenga el análisis apenas se alcanza.
+     */
+    private final boolean paralelo;
+    private final List<Cuerpo> cuerpos = new ArrayList<>();
+    /** Entregas de trazas, en el orden del programa. */
+    private final List<Runnable> entregas = new ArrayList<>();
+    /** Bloque cuyos eventos se saltean, o {@code null}. */
+    private BloqueContext salteado;
+    /** Cuerpo de la función que el listener principal está cerrando. */
+    private Cuerpo actual;
+    private ProgramaContext programa;
+    /** Medición de {@code --stats}, o {@code null}. */
+    private Estadisticas estadisticas;
+
+    /**
+     * @param nombres tabla de nombres ya cargada por el lexer
+     * @param tipos tipos inferidos por nodo, compartidos por todos los listeners
+     * @param destino reportador de los mensajes; los cuerpos escriben en tramos suyos
+     * @param trazasDestino trazas que reciben el texto al terminar
+     */
+    AnalisisSemantico(TablaNombres nombres, TiposPorNodo tipos, Reportador destino, Trazas trazasDestino) {
+        this.tipos = tipos;
+        this.destino = destino;
+        this.paralelo = ForkJoinPool.getCommonPoolParallelism() > 1 && destino.getLimiteErrores() == 0;
+        this.trazasDestino = trazasDestino;
+        this.trazas = trazasDestino.enMemoria();
+        this.tabla = new TablaSimbolos(trazas, nombres);
+        this.principal = new Escucha(tabla, destino, trazas, tipos) {
+            @Override
+            void verificarRetorno(DeclaracionfuncContext ctx) {
+                if (actual != null && actual.funcion == ctx) {
+                    // Solo el cuerpo sabe si hubo return: verifica en este lugar
+                    actual.retorno = destino.tramo();
+                    actual = null;
+                } else {
+                    super.verificarRetorno(ctx);
+                }
+            }
+        };
+    }
+
+    /**
+     * Analiza los cuerpos anotados, cierra el programa y entrega las trazas en orden.
+     *
+     * @return el listener principal, con los tipos y conteos de toda la compilación
+     */
+    Escucha terminar() {
+        if (cuerpos.size() == 1) {
+            cuerpos.get(0).analizar();
+        } else if (!cuerpos.isEmpty()) {
+            List<ForkJoinTask<?>> tareas = new ArrayList<>(cuerpos.size());
+            for (Cuerpo cuerpo : cuerpos) {
+                tareas.add(ForkJoinPool.commonPool().submit(() -> analizarAparte(cuerpo)));
+            }
+            for (ForkJoinTask<?> tarea : tareas) {
+                tarea.join();
+            }
+        }
+        destino.verificarLimite();
+        List<TablaSimbolos> vistas = new ArrayList<>(cuerpos.size());
+        for (Cuerpo cuerpo : cuerpos) {
+            tabla.aplicarMarcas(cuerpo.vista);
+            principal.sumarConteos(cuerpo.escucha);
+            vistas.add(cuerpo.vista);
+        }
+        tabla.incorporarCuerpos(vistas);
+        if (programa != null) {
+            programa.exitRule(principal);
+            principal.exitEveryRule(programa);
+        }
+        cortar();
+        for (Runnable entrega : entregas) {
+            entrega.run();
+        }
+        return principal;
+    }
+
+    /** Suma a las estadísticas el trabajo de los cuerpos que no corren en el hilo de la compilación. */
+    void setEstadisticas(Estadisticas estadisticas) {
+        this.estadisticas = estadisticas;
+    }
+
+    private void analizarAparte(Cuerpo cuerpo) {
+        if (estadisticas != null && ForkJoinTask.inForkJoinPool()) {
+            estadisticas.medirAuxiliar(cuerpo::analizar);
+        } else {
+            // El hilo de la compilación, que espera en join(), ya se mide solo
+            cuerpo.analizar();
+        }
+    }
+
+    /** Cierra la parte de las trazas del listener principal que termina aquí. */
+    private void cortar() {
+        String texto = trazas.tomar();
+        entregas.add(() -> entregar(texto));
+    }
+
+    private void entregar(String texto) {
+        if (!texto.isEmpty()) {
+            trazasDestino.texto(texto);
+        }
+    }
+
+    @Override
+    public void enterEveryRule(ParserRuleContext ctx) {
+        tipos.enterEveryRule(ctx);
+        if (salteado != null) {
+            return;
+        }
+        if (paralelo && ctx instanceof BloqueContext && ctx.getParent() instanceof DeclaracionfuncContext) {
+            cortar();
+            Cuerpo cuerpo = new Cuerpo((DeclaracionfuncContext) ctx.getParent(), (BloqueContext) ctx);
+            cuerpos.add(cuerpo);
+            entregas.add(() -> entregar(cuerpo.textoTrazas));
+            actual = cuerpo;
+            salteado = cuerpo.bloque;
+            return;
+        }
+        principal.enterEveryRule(ctx);
+        ctx.enterRule(principal);
+    }
+
+    @Override
+    public void exitEveryRule(ParserRuleContext ctx) {
+        if (salteado != null) {
+            if (ctx == salteado) {
+                salteado = null;
+            }
+            return;
+        }
+        if (ctx instanceof ProgramaContext) {
+            // Se cierra en terminar(), con los cuerpos ya analizados
+            programa = (ProgramaContext) ctx;
+            return;
+        }
+        ctx.exitRule(principal);
+        principal.exitEveryRule(ctx);
+    }
+
+    @Override
+    public void visitTerminal(TerminalNode node) {
+        if (salteado == null) {
+            principal.visitTerminal(node);
+        }
+    }
+
+    @Override
+    public void visitErrorNode(ErrorNode node) {
+        if (salteado == null) {
+            principal.visitErrorNode(node);
+        }
+    }
+}
@@ -1,13 +1,14 @@
 package compiladores;
 
 import org.antlr.v4.runtime.tree.ParseTree;
-import org.antlr.v4.runtime.CharStream;
 import org.antlr.v4.runtime.CharStreams;
-import org.antlr.v4.runtime.CommonTokenStream;
-import org.antlr.v4.runtime.Token;
-import java.io.PrintWriter;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Set;
 
 /**
  * Clase principal del compilador que orquesta el proceso completo de compilación.
@@ -35,6 +36,21 @@ import java.util.List;
  * @see Caminante
  */
 public class App {
+    /** Nombre del reporte de {@code --stats} cuando no se indica una ruta. */
+    static final String ARCHIVO_ESTADISTICAS = "estadisticas.json";
+    /** Prefijo de la opción que elige los artefactos a producir. */
+    static final String OPCION_EMIT = "--emit=";
+    /** Opción que activa la compilación por partes. */
+    static final String OPCION_STREAMING = "--streaming";
+    /** Prefijo de la opción que elige las categorías de trazas. */
+    static final String OPCION_TRACE = "--trace=";
+    /** Opción que solo informa los diagnósticos, sin artefactos ni trazas. */
+    static final String OPCION_CHECK = "--check";
+    /** Prefijo de la opción que escribe los diagnósticos en JSON Lines o SARIF. */
+    static final String OPCION_DIAGNOSTICOS = "--diagnosticos=";
+    /** Prefijo de la opción que detiene la compilación tras una cantidad de errores. */
+    static final String OPCION_MAX_ERRORES = "--max-errores=";
+
     /**
      * Método principal que ejecuta el proceso de compilación.
      * <p>
@@ -49,113 +65,260 @@ public class App {
      *   <li>Imprime la representación textual del árbol sintáctico</li>
      * </ol>
      * <p>
-     * El método incluye código comentado que demuestra cómo integrar el
-     * patrón Visitor ({@link Caminante}) para recorridos alternativos del árbol.
+     * Las fases se ejecutan en {@link Compilador}, que incluye código comentado que
+     * demuestra cómo integrar el patrón Visitor ({@link Caminante}) para recorridos
+     * alternativos del árbol. Con {@code --lote} se compilan varios archivos en
+     * paralelo mediante {@link CompilacionLote}; con {@code --servidor [socket]}
+     * se inicia el demonio {@link ServidorCompilacion}. Con {@code --stats[=ruta]}
+     * se mide cada fase y se guarda el reporte JSON de {@link Estadisticas}
+     * (por defecto en {@code salida/estadisticas.json}). Con
+     * {@code --emit=tokens,tree,ir,opt,asm} se eligen los {@link Artefacto artefactos}
+     * a producir y solo se ejecutan las fases que estos necesitan; sin la opción se
+     * producen todos. Con {@code --streaming} cada declaración global o función se
+     * traduce apenas se reconoce ({@link CompilacionPorPartes}). Con {@code --check}
+     * solo se imprimen los mensajes del compilador y el código de salida es 1 si
+     * hubo errores. Con {@code --trace=ts,parser:info,ir,opt,asm} se eligen las
+     * categorías de {@link Trazas} que llegan a la consola ({@code --trace=} las apaga).
+     * Con {@code --diagnosticos=jsonl|sarif[:ruta]} los mensajes se escriben a medida
+     * que se producen en un formato para herramientas ({@link SalidaDiagnosticos});
+     * sin ruta van a la salida estándar y el resto de la consola pasa a la salida de
+     * errores. Con {@code --max-errores=N} la compilación se detiene al N-ésimo error.
      * </p>
      *
      * @param args argumentos de línea de comandos - args[0] debe ser la ruta del archivo a compilar
+     *             o {@code --lote} seguido de archivos/directorios, o {@code --servidor}
      * @throws Exception si ocurre un error durante la lectura del archivo o el proceso
      *                   de compilación (ej: archivo no encontrado, errores de sintaxis graves)
      * @see CharStreams#fromFileName(String)
      * @see ParseTree#toStringTree(org.antlr.v4.runtime.Parser)
      */
     public static void main(String[] args) throws Exception {
-        System.out.println("Hello, Compilador!!!");
-        
+        if (args.length > 0 && "--lote".equals(args[0])) {
+            System.exit(compilarLote(args) > 0 ? 1 : 0);
+            return;
+        }
+        if (args.length > 0 && "--servidor".equals(args[0])) {
+            new ServidorCompilacion(args.length > 1 ? args[1] : ServidorCompilacion.SOCKET_POR_DEFECTO).ejecutar();
+            return;
+        }
+
+        // --stats[=ruta], --emit=..., --trace=..., --streaming, --check, --diagnosticos=... y
+        // --max-errores=... pueden aparecer en cualquier posición
+        String archivoEstadisticas = null;
+        String diagnosticos = null;
+        long maxErrores = 0;
+        String trazas = Trazas.POR_DEFECTO;
+        boolean porPartes = false;
+        boolean soloVerificacion = false;
+        Set<Artefacto> artefactos = EnumSet.allOf(Artefacto.class);
+        List<String> resto = new ArrayList<>();
+        for (String arg : args) {
+            if ("--stats".equals(arg)) {
+                archivoEstadisticas = "salida/" + ARCHIVO_ESTADISTICAS;
+            } else if (arg.startsWith("--stats=")) {
+                archivoEstadisticas = arg.substring("--stats=".length());
+            } else if (arg.startsWith(OPCION_EMIT)) {
+                artefactos = leerEmit(arg);
+            } else if (arg.startsWith(OPCION_TRACE)) {
+                trazas = leerTrace(arg);
+            } else if (OPCION_STREAMING.equals(arg)) {
+                porPartes = true;
+            } else if (OPCION_CHECK.equals(arg)) {
+                soloVerificacion = true;
+            } else if (arg.startsWith(OPCION_DIAGNOSTICOS)) {
+                diagnosticos = arg.substring(OPCION_DIAGNOSTICOS.length());
+            } else if (arg.startsWith(OPCION_MAX_ERRORES)) {
+                maxErrores = leerMaxErrores(arg);
+            } else {
+                resto.add(arg);
+            }
+        }
+
         // Determinar el archivo de entrada
         String archivoEntrada = "entrada/programa.txt"; // Valor por defecto
-        if (args.length > 0) {
-            archivoEntrada = args[0];
-            System.out.println("Compilando archivo: " + archivoEntrada);
-        } else {
-            System.out.println("No se proporcionó archivo de entrada, usando por defecto: " + archivoEntrada);
+        SalidaDiagnosticos salidaDiagnosticos = diagnosticos != null ? abrirDiagnosticos(diagnosticos) : null;
+        if (soloVerificacion) {
+            long errores = verificar(resto.isEmpty() ? archivoEntrada : resto.get(0), salidaDiagnosticos, maxErrores);
+            System.exit(errores > 0 ? 1 : 0);
+            return;
         }
-        
-        // Fase 1: Crear un CharStream que lee desde el archivo de entrada
-        CharStream input = CharStreams.fromFileName(archivoEntrada);
 
-        // Fase 2: Crear el lexer que analiza el CharStream y produce tokens
-        compiladoresLexer lexer = new compiladoresLexer(input);
-        // Reemplazar listeners por defecto con uno léxico personalizado
-        lexer.removeErrorListeners();
-        lexer.addErrorListener(new LexerErrorListener());
+        // Con los diagnósticos en la salida estándar, todo lo demás va a la de errores
+        PrintStream consola = salidaDiagnosticos != null && salidaDiagnosticos.esSalidaEstandar()
+                ? System.err : System.out;
+        consola.println("Hello, Compilador!!!");
         
-        // Fase 3: Crear un buffer de tokens generados por el lexer
-        // Este buffer permite al parser consumir tokens según sea necesario
-        CommonTokenStream tokens = new CommonTokenStream(lexer);
-
-        // Fase 4: Crear el parser que consume tokens y construye el árbol sintáctico
-        compiladoresParser parser = new compiladoresParser(tokens);
-        // Reemplazar listeners por defecto con uno sintáctico personalizado
-        parser.removeErrorListeners();
-        parser.addErrorListener(new ParserErrorListener());
+        if (!resto.isEmpty()) {
+            archivoEntrada = resto.get(0);
+            consola.println("Compilando archivo: " + archivoEntrada);
+        } else {
+            consola.println("No se proporcionó archivo de entrada, usando por defecto: " + archivoEntrada);
+        }
 
-        // (Opcional) Generar tabla de tokens a archivo
-        try (PrintWriter tokenOut = new PrintWriter("doc/Tokens.txt")) {
-            tokenOut.println("TIPO\tLEXEMA\tLINEA\tCOLUMNA");
-            tokens.fill();
-            for (Token t : tokens.getTokens()) {
-                String tipo = parser.getVocabulary().getSymbolicName(t.getType());
-                if (tipo == null) {
-                    tipo = String.valueOf(t.getType());
-                }
-                String lexema = t.getText().replace("\n", "\\n").replace("\r", "\\r");
-                tokenOut.printf("%s\t%s\t%d\t%d%n", tipo, lexema, t.getLine(), t.getCharPositionInLine());
+        // Las fases (lexer, parser, Escucha, CI, optimización, ASM) se ejecutan en Compilador
+        Compilador compilador = new Compilador(archivoEntrada, "doc/Tokens.txt", "salida", consola);
+        compilador.setArtefactos(artefactos);
+        compilador.setPorPartes(porPartes);
+        compilador.setTrazas(trazas);
+        compilador.setDiagnosticos(salidaDiagnosticos);
+        compilador.setLimiteErrores(maxErrores);
+        Estadisticas estadisticas = null;
+        if (archivoEstadisticas != null) {
+            estadisticas = new Estadisticas(archivoEntrada);
+            compilador.setEstadisticas(estadisticas);
+        }
+        try {
+            compilador.compilar();
+        } finally {
+            if (salidaDiagnosticos != null) {
+                salidaDiagnosticos.close();
             }
-        } catch (IOException e) {
-            System.err.println("No se pudo escribir doc/Tokens.txt: " + e.getMessage());
         }
-                
-        // Fase 5: Crear el Listener para análisis semántico (patrón Observer)
-        compiladoresBaseListener escucha = new Escucha();
+        if (estadisticas != null) {
+            estadisticas.guardar(archivoEstadisticas);
+            consola.println("Estadísticas guardadas en " + archivoEstadisticas);
+        }
+        // Cortada por --max-errores termina con error, como --check y --lote
+        if (compilador.isDetenida()) {
+            System.exit(1);
+        }
+    }
 
-        // Fase 6: Conectar el listener al parser para recibir notificaciones
-        // durante el recorrido del árbol
-        parser.addParseListener(escucha);
+    /**
+     * Modo {@code --check}: solo verificación, con la consola de la compilación
+     * descartada y los mensajes impresos en la salida estándar (o escritos en
+     * {@code diagnosticos}, si se indicó).
+     *
+     * @param archivoEntrada archivo a verificar
+     * @param diagnosticos salida de {@code --diagnosticos}, o {@code null}
+     * @param maxErrores límite de {@code --max-errores}, o {@code 0}
+     * @return cantidad de errores
+     */
+    private static long verificar(String archivoEntrada, SalidaDiagnosticos diagnosticos, long maxErrores)
+            throws IOException {
+        Compilador compilador = new Compilador(archivoEntrada, "doc/Tokens.txt", "salida",
+                new PrintStream(OutputStream.nullOutputStream()));
+        compilador.setSoloVerificacion(true);
+        compilador.setDiagnosticos(diagnosticos);
+        compilador.setLimiteErrores(maxErrores);
+        try {
+            compilador.compilar();
+        } finally {
+            if (diagnosticos != null) {
+                diagnosticos.close();
+            }
+        }
+        compilador.getReportador().imprimir(System.out);
+        return compilador.getReportador().getCantidadErrores();
+    }
 
-        // Fase 7: Iniciar el parsing desde la regla gramatical 'programa' (símbolo inicial)
-        // Esto construye el árbol sintáctico completo y dispara los eventos del listener
-        ParseTree tree =  parser.programa();
-        
-        // Opción alternativa: Usar el patrón Visitor para recorridos personalizados
-        // Caminante visitor = new Caminante();
-        // visitor.visit(tree);
-        
-        // Fase 8: Imprimir la representación textual del árbol sintáctico generado
-        System.out.println(tree.toStringTree(parser));
-        
-        // Generación de Código Intermedio
-        System.out.println("\n--- Generando Código Intermedio ---");
-        GeneradorCodigoIntermedio generadorCI = new GeneradorCodigoIntermedio();
-        generadorCI.visit(tree);
-        List<Instruccion> instrucciones = generadorCI.getInstrucciones();
-        
-        // Guardar Código Intermedio
-        try (PrintWriter out = new PrintWriter("salida/codigo_intermedio.txt")) {
-            for (Instruccion ins : instrucciones) {
-                out.println(ins);
+    /**
+     * Modo lote: {@code --lote [--salida dir] [--stats] [--emit=...] [--trace=...] [--streaming] [--check]
+     * [--diagnosticos=...] [--max-errores=N] (archivo|directorio)...}.
+     * <p>
+     * Compila todos los archivos en paralelo dentro de esta JVM; los artefactos
+     * de cada archivo quedan en {@code <dir>/<nombre>/} (por defecto {@code salida/lote}),
+     * junto con {@code estadisticas.json} si se indicó {@code --stats}.
+     * </p>
+     *
+     * @param args argumentos completos de línea de comandos (args[0] es {@code --lote})
+     * @return cantidad de archivos con errores
+     */
+    private static int compilarLote(String[] args) throws Exception {
+        String salida = "salida/lote";
+        boolean estadisticas = false;
+        Set<Artefacto> artefactos = EnumSet.allOf(Artefacto.class);
+        boolean porPartes = false;
+        boolean soloVerificacion = false;
+        String trazas = Trazas.POR_DEFECTO;
+        String diagnosticos = null;
+        long maxErrores = 0;
+        List<String> entradas = new ArrayList<>();
+        for (int i = 1; i < args.length; i++) {
+            if ("--salida".equals(args[i]) && i + 1 < args.length) {
+                salida = args[++i];
+            } else if ("--stats".equals(args[i])) {
+                estadisticas = true;
+            } else if (args[i].startsWith(OPCION_EMIT)) {
+                artefactos = leerEmit(args[i]);
+            } else if (args[i].startsWith(OPCION_TRACE)) {
+                trazas = leerTrace(args[i]);
+            } else if (OPCION_STREAMING.equals(args[i])) {
+                porPartes = true;
+            } else if (OPCION_CHECK.equals(args[i])) {
+                soloVerificacion = true;
+            } else if (args[i].startsWith(OPCION_DIAGNOSTICOS)) {
+                diagnosticos = args[i].substring(OPCION_DIAGNOSTICOS.length());
+            } else if (args[i].startsWith(OPCION_MAX_ERRORES)) {
+                maxErrores = leerMaxErrores(args[i]);
+            } else {
+                entradas.add(args[i]);
             }
         }
-        
-        // Optimización
-        System.out.println("\n--- Optimizando Código Intermedio ---");
-        Optimizador optimizador = new Optimizador();
-        List<Instruccion> optimizadas = optimizador.optimizar(instrucciones);
-        
-        // Guardar Código Optimizado
-        try (PrintWriter out = new PrintWriter("salida/codigo_optimizado.txt")) {
-            for (Instruccion ins : optimizadas) {
-                out.println(ins);
+        if (entradas.isEmpty()) {
+            entradas.add("entrada");
+        }
+        CompilacionLote lote = new CompilacionLote(salida, estadisticas, artefactos);
+        lote.setPorPartes(porPartes);
+        lote.setSoloVerificacion(soloVerificacion);
+        lote.setTrazas(trazas);
+        lote.setLimiteErrores(maxErrores);
+        if (diagnosticos == null) {
+            return lote.ejecutar(entradas);
+        }
+        try (SalidaDiagnosticos salidaDiagnosticos = abrirDiagnosticos(diagnosticos)) {
+            lote.setDiagnosticos(salidaDiagnosticos);
+            return lote.ejecutar(entradas);
+        }
+    }
+
+    /** Abre la salida de {@code --diagnosticos=...}; ante un formato desconocido termina con código 2. */
+    private static SalidaDiagnosticos abrirDiagnosticos(String especificacion) throws IOException {
+        try {
+            return SalidaDiagnosticos.abrir(especificacion);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(2);
+            return null;
+        }
+    }
+
+    /** Interpreta {@code --max-errores=N}; ante un valor que no es un entero positivo termina con código 2. */
+    private static long leerMaxErrores(String arg) {
+        String valor = arg.substring(OPCION_MAX_ERRORES.length());
+        try {
+            long limite = Long.parseLong(valor);
+            if (limite > 0) {
+                return limite;
             }
+        } catch (NumberFormatException e) {
+            // Se informa abajo
         }
-        
-        // Fase 9: Generación de código ensamblador
-        System.out.println("\n--- Iniciando generación de código ensamblador ---");
-        GeneradorAssembler generador = new GeneradorAssembler("salida/programa.asm");
-        generador.visit(tree);
+        System.err.println("Valor inválido para " + OPCION_MAX_ERRORES + ": '" + valor + "' (se espera un entero positivo)");
+        System.exit(2);
+        return 0;
+    }
+
+    /** Interpreta {@code --trace=...}; ante una categoría o nivel desconocido termina con código 2. */
+    private static String leerTrace(String arg) {
+        String categorias = arg.substring(OPCION_TRACE.length());
+        try {
+            Trazas.validar(categorias);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(2);
+        }
+        return categorias;
+    }
 
-        // Fase 10: Imprimir mensajes recopilados por el reportador
-        System.out.println("\n--- Mensajes del compilador ---");
-        Reportador.getInstancia().imprimirEnConsola();
+    /** Interpreta {@code --emit=...}; ante una clave desconocida termina con código 2. */
+    private static Set<Artefacto> leerEmit(String arg) {
+        try {
+            return Artefacto.parsear(arg.substring(OPCION_EMIT.length()));
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(2);
+            return null;
+        }
     }
 }
@@ -0,0 +1,188 @@
+package compiladores;
+
+import java.util.Arrays;
+
+/**
+ * Árbol sintáctico abstracto compacto, guardado en arreglos primitivos.
+ * <p>
+ * Cada nodo es un índice {@code n} en arreglos paralelos:
+ * <ul>
+ *   <li>{@link #clase(int)}: tipo de nodo (constantes {@code FUNCION}, {@code SI}, {@code BINARIA}...)</li>
+ *   <li>{@link #valor(int)}: símbolo en la {@link TablaNombres} del nombre o literal del nodo, o {@code -1}</li>
+ *   <li>{@link #dato(int)}: dato propio de la clase (operador de {@code BINARIA}, dimensión de
+ *       {@code DECLARACION} como símbolo), o {@code -1}</li>
+ *   <li>{@link #tipo(int)}: {@link TipoDato} declarado o resuelto por {@link Escucha}
+ *       ({@code 0} si se desconoce)</li>
+ *   <li>hijos en orden, almacenados en un único arreglo ({@link #hijo(int, int)})</li>
+ * </ul>
+ * Los nombres y literales son símbolos de la tabla de nombres de la compilación,
+ * compartida con el lexer y las fases siguientes. Los hijos
+ * se crean antes que su padre, así que la raíz ({@code PROGRAMA}) es el último nodo.
+ * Lo construye {@link ConstructorArbol} en una pasada después del parsing; una vez
+ * construido, el árbol de ANTLR ya no hace falta.
+ * </p>
+ * <p>
+ * Forma de cada nodo (hijos entre corchetes):
+ * <pre>
+ * PROGRAMA    [DECLARACION | FUNCION]*
+ * FUNCION     valor=nombre tipo=retorno [PARAMETRO* BLOQUE]
+ * PARAMETRO   valor=nombre (-1 si no tiene) tipo
+ * DECLARACION valor=nombre tipo dato=dimensión [inicialización?]
+ * BLOQUE, SECUENCIA [sentencias]   (SECUENCIA agrupa sin abrir ámbito, p.ej. el inicio de un for)
+ * ASIGNACION  valor=nombre tipo=del destino [índice? expresión]
+ * SI          [condición BLOQUE (BLOQUE | SI)?]
+ * MIENTRAS    [condición BLOQUE]
+ * PARA        [SECUENCIA condición actualización BLOQUE]
+ * EVALUAR     [expresión]        INCREMENTO, DECREMENTO valor=nombre tipo
+ * RETORNO     [expresión?]       ROMPER, CONTINUAR
+ * BINARIA     dato=operador [izq der]     NEGATIVO, NEGACION [expresión]
+ * NUMERO, CARACTER valor=literal   VERDADERO, FALSO   VARIABLE valor=nombre
+ * ELEMENTO    valor=nombre [índice]       LLAMADA valor=nombre [argumentos]
+ * VACIA       (parte faltante por un error sintáctico)
+ * </pre>
+ * Las expresiones llevan el tipo que les dio {@link Escucha}.
+ * </p>
+ *
+ * @see ConstructorArbol
+ * @see GeneradorCodigoIntermedio
+ */
+public final class ArbolCompacto {
+
+    public static final byte PROGRAMA = 1;
+    public static final byte FUNCION = 2;
+    public static final byte PARAMETRO = 3;
+    public static final byte DECLARACION = 4;
+    public static final byte BLOQUE = 5;
+    public static final byte SECUENCIA = 6;
+    public static final byte ASIGNACION = 7;
+    public static final byte SI = 8;
+    public static final byte MIENTRAS = 9;
+    public static final byte PARA = 10;
+    public static final byte EVALUAR = 11;
+    public static final byte INCREMENTO = 12;
+    public static final byte DECREMENTO = 13;
+    public static final byte RETORNO = 14;
+    public static final byte ROMPER = 15;
+    public static final byte CONTINUAR = 16;
+    public static final byte BINARIA = 17;
+    public static final byte NEGATIVO = 18;
+    public static final byte NEGACION = 19;
+    public static final byte NUMERO = 20;
+    public static final byte CARACTER = 21;
+    public static final byte VERDADERO = 22;
+    public static final byte FALSO = 23;
+    public static final byte VARIABLE = 24;
+    public static final byte ELEMENTO = 25;
+    public static final byte LLAMADA = 26;
+    public static final byte VACIA = 27;
+
+    /** Operadores de {@code BINARIA}; {@link #dato(int)} es el índice en este arreglo. */
+    public static final String[] OPERADORES = {
+        "*", "/", "%", "+", "-", ">", "<", ">=", "<=", "==", "!=", "&&", "||"
+    };
+
+    private static final int CAPACIDAD_INICIAL = 64;
+
+    private byte[] clases = new byte[CAPACIDAD_INICIAL];
+    private byte[] tipos = new byte[CAPACIDAD_INICIAL];
+    private int[] valores = new int[CAPACIDAD_INICIAL];
+    private int[] datos = new int[CAPACIDAD_INICIAL];
+    private int[] inicioHijos = new int[CAPACIDAD_INICIAL];
+    private int[] cantidadHijos = new int[CAPACIDAD_INICIAL];
+    private int[] hijos = new int[CAPACIDAD_INICIAL];
+    private int cantidad;
+    private int cantidadEnlaces;
+
+    private final TablaNombres nombres;
+
+    /** @param nombres tabla de nombres de la compilación */
+    public ArbolCompacto(TablaNombres nombres) {
+        this.nombres = nombres;
+    }
+
+    /** @return tabla de nombres de la que son símbolos los valores de los nodos */
+    public TablaNombres nombres() {
+        return nombres;
+    }
+
+    /** @return cantidad de nodos */
+    public int tamanio() {
+        return cantidad;
+    }
+
+    /** @return nodo raíz ({@code PROGRAMA}), o {@code -1} si el árbol está vacío */
+    public int raiz() {
+        return cantidad - 1;
+    }
+
+    public byte clase(int nodo) {
+        return clases[nodo];
+    }
+
+    public int valor(int nodo) {
+        return valores[nodo];
+    }
+
+    public int dato(int nodo) {
+        return datos[nodo];
+    }
+
+    /** @return tipo del nodo, o {@code null} si se desconoce */
+    public TipoDato tipo(int nodo) {
+        return TipoDato.deCodigo(tipos[nodo]);
+    }
+
+    public int cantidadHijos(int nodo) {
+        return cantidadHijos[nodo];
+    }
+
+    public int hijo(int nodo, int i) {
+        return hijos[inicioHijos[nodo] + i];
+    }
+
+    /** @return texto (nombre o literal) del nodo, o {@code null} si no tiene */
+    public String texto(int nodo) {
+        return nombres.texto(valores[nodo]);
+    }
+
+    /** @return texto del símbolo {@code simbolo} */
+    public String textoEn(int simbolo) {
+        return nombres.texto(simbolo);
+    }
+
+    /**
+     * Agrega un nodo cuyos hijos ya existen.
+     *
+     * @param hijosNodo arreglo con los hijos; se copian {@code cantidadHijosNodo} desde el inicio
+     * @return índice del nuevo nodo
+     */
+    int agregar(byte clase, int valor, int dato, TipoDato tipo, int[] hijosNodo, int cantidadHijosNodo) {
+        if (cantidad == clases.length) {
+            int capacidad = clases.length * 2;
+            clases = Arrays.copyOf(clases, capacidad);
+            tipos = Arrays.copyOf(tipos, capacidad);
+            valores = Arrays.copyOf(valores, capacidad);
+            datos = Arrays.copyOf(datos, capacidad);
+            inicioHijos = Arrays.copyOf(inicioHijos, capacidad);
+            cantidadHijos = Arrays.copyOf(cantidadHijos, capacidad);
+        }
+        if (cantidadEnlaces + cantidadHijosNodo > hijos.length) {
+            hijos = Arrays.copyOf(hijos, Math.max(hijos.length * 2, cantidadEnlaces + cantidadHijosNodo));
+        }
+        System.arraycopy(hijosNodo, 0, hijos, cantidadEnlaces, cantidadHijosNodo);
+        int n = cantidad++;
+        clases[n] = clase;
+        tipos[n] = TipoDato.codigo(tipo);
+        valores[n] = valor;
+        datos[n] = dato;
+        inicioHijos[n] = cantidadEnlaces;
+        cantidadHijos[n] = cantidadHijosNodo;
+        cantidadEnlaces += cantidadHijosNodo;
+        return n;
+    }
+
+    /** Lexema de un tipo declarado ({@code int}, {@code double}...), o cadena vacía si se desconoce. */
+    public static String lexema(TipoDato tipo) {
+        return tipo == null ? "" : tipo.lexema();
+    }
+}
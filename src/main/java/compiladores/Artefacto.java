@@ -0,0 +1,71 @@
+package compiladores;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Artefactos que puede producir una compilación ({@code --emit=...}).
+ * <p>
+ * Cada artefacto se nombra en la línea de comandos por su {@link #getClave() clave}.
+ * {@link Compilador} solo ejecuta las fases necesarias para los artefactos pedidos:
+ * {@code asm} requiere la optimización, y esta el código intermedio. Los mensajes
+ * de diagnóstico (léxicos, sintácticos y semánticos) se producen siempre.
+ * </p>
+ *
+ * @see Compilador#setArtefactos(Set)
+ */
+public enum Artefacto {
+    /** Tabla de tokens ({@code doc/Tokens.txt}). */
+    TOKENS("tokens"),
+    /** Árbol sintáctico impreso por consola. */
+    ARBOL("tree"),
+    /** Código intermedio sin optimizar. */
+    CI("ir"),
+    /** Código intermedio optimizado. */
+    OPTIMIZADO("opt"),
+    /** Programa NASM. */
+    ASM("asm");
+
+    private final String clave;
+
+    Artefacto(String clave) {
+        this.clave = clave;
+    }
+
+    /**
+     * @return nombre del artefacto en {@code --emit}
+     */
+    public String getClave() {
+        return clave;
+    }
+
+    /**
+     * Interpreta una lista separada por comas, por ejemplo {@code "ir,asm"}.
+     * La lista vacía no pide ningún artefacto (solo diagnósticos).
+     *
+     * @param lista claves separadas por comas
+     * @return conjunto de artefactos pedidos
+     * @throws IllegalArgumentException si alguna clave no existe
+     */
+    public static Set<Artefacto> parsear(String lista) {
+        Set<Artefacto> pedidos = EnumSet.noneOf(Artefacto.class);
+        for (String clave : lista.split(",")) {
+            String c = clave.trim();
+            if (c.isEmpty()) {
+                continue;
+            }
+            Artefacto encontrado = null;
+            for (Artefacto a : values()) {
+                if (a.clave.equals(c)) {
+                    encontrado = a;
+                }
+            }
+            if (encontrado == null) {
+                throw new IllegalArgumentException("Artefacto desconocido en --emit: " + c
+                        + " (válidos: tokens, tree, ir, opt, asm)");
+            }
+            pedidos.add(encontrado);
+        }
+        return pedidos;
+    }
+}
@@ -0,0 +1,148 @@
+package compiladores;
+
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.IntStream;
+import org.antlr.v4.runtime.misc.Interval;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * {@link CharStream} que lee un archivo ASCII directamente desde un
+ * {@link MappedByteBuffer}, sin decodificarlo a un arreglo de code points.
+ * <p>
+ * El lenguaje es ASCII puro (ver los fragmentos {@code LETRA} y {@code DIGITO} de
+ * {@code compiladores.g4}), así que cada byte es un carácter y el índice del
+ * stream coincide con el desplazamiento en el archivo. El lexer lee los bytes del
+ * mapeo en su lugar y el texto de cada token se copia recién cuando se pide con
+ * {@link #getText(Interval)} (los {@code CommonToken} lo piden en forma perezosa).
+ * El contenido queda fuera del heap, por lo que un archivo de cientos de MB no
+ * duplica el pico de memoria.
+ * </p>
+ * <p>
+ * Si el archivo contiene bytes no ASCII (por ejemplo acentos en comentarios),
+ * {@link #abrir(String)} usa {@link CharStreams#fromFileName(String)} para
+ * conservar las columnas y los mensajes tal como los calcula la decodificación UTF-8.
+ * </p>
+ *
+ * @see Compilador
+ */
+public final class CharStreamMapeado implements CharStream {
+
+    private final MappedByteBuffer buffer;
+    private final int tamanio;
+    private final String nombre;
+    private int posicion;
+
+    private CharStreamMapeado(MappedByteBuffer buffer, String nombre) {
+        this.buffer = buffer;
+        this.tamanio = buffer.limit();
+        this.nombre = nombre;
+    }
+
+    /**
+     * Abre el archivo mapeándolo en memoria si es ASCII puro.
+     *
+     * @param ruta archivo fuente
+     * @return stream mapeado, o el de {@link CharStreams} si hay bytes no ASCII
+     * @throws IOException si no se puede leer el archivo
+     */
+    public static CharStream abrir(String ruta) throws IOException {
+        Path p = Paths.get(ruta);
+        MappedByteBuffer buffer;
+        try (FileChannel canal = FileChannel.open(p, StandardOpenOption.READ)) {
+            if (canal.size() > Integer.MAX_VALUE) {
+                throw new IOException("Archivo demasiado grande para el lexer: " + ruta);
+            }
+            // El mapeo sigue siendo válido después de cerrar el canal
+            buffer = canal.map(FileChannel.MapMode.READ_ONLY, 0, canal.size());
+        }
+        for (int i = 0, n = buffer.limit(); i < n; i++) {
+            if (buffer.get(i) < 0) {
+                return CharStreams.fromFileName(ruta);
+            }
+        }
+        return new CharStreamMapeado(buffer, ruta);
+    }
+
+    @Override
+    public void consume() {
+        if (posicion >= tamanio) {
+            throw new IllegalStateException("cannot consume EOF");
+        }
+        posicion++;
+    }
+
+    @Override
+    public int LA(int i) {
+        int indice;
+        if (i > 0) {
+            indice = posicion + i - 1;
+        } else if (i < 0) {
+            indice = posicion + i;
+        } else {
+            return 0; // indefinido
+        }
+        if (indice < 0 || indice >= tamanio) {
+            return IntStream.EOF;
+        }
+        return buffer.get(indice);
+    }
+
+    /** No hace falta marcar: todo el archivo está siempre disponible. */
+    @Override
+    public int mark() {
+        return -1;
+    }
+
+    @Override
+    public void release(int marker) {
+    }
+
+    @Override
+    public int index() {
+        return posicion;
+    }
+
+    @Override
+    public void seek(int index) {
+        posicion = index;
+    }
+
+    @Override
+    public int size() {
+        return tamanio;
+    }
+
+    @Override
+    public String getSourceName() {
+        return nombre == null || nombre.isEmpty() ? IntStream.UNKNOWN_SOURCE_NAME : nombre;
+    }
+
+    @Override
+    public String getText(Interval interval) {
+        int inicio = Math.min(interval.a, tamanio);
+        int largo = Math.min(interval.b - interval.a + 1, tamanio - inicio);
+        if (largo <= 0) {
+            return "";
+        }
+        byte[] bytes = new byte[largo];
+        buffer.get(inicio, bytes, 0, largo);
+        return new String(bytes, StandardCharsets.US_ASCII);
+    }
+
+    /** Carácter en la posición {@code indice} del archivo, sin mover el stream. */
+    char caracter(int indice) {
+        return (char) buffer.get(indice);
+    }
+
+    @Override
+    public String toString() {
+        return getText(Interval.of(0, tamanio - 1));
+    }
+}
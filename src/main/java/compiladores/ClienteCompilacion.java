@@ -0,0 +1,81 @@
+package compiladores;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+/**
+ * Cliente liviano del {@link ServidorCompilacion}.
+ * <p>
+ * No depende de ANTLR ni de las fases del compilador: solo envía la ruta del
+ * archivo fuente por el socket e imprime los mensajes y las rutas de salida que
+ * devuelve el demonio. Los artefactos se escriben en {@code salida/} y
+ * {@code doc/Tokens.txt} del directorio actual, igual que {@link App}.
+ * </p>
+ * <p>
+ * Uso: {@code java -cp target/classes compiladores.ClienteCompilacion [--emit=...|--check] archivo [socket]}
+ * </p>
+ * <p>
+ * Termina con 0 si la compilación no tuvo errores, 1 si los tuvo y 2 si no se
+ * pudo contactar al servidor o este cerró la conexión sin enviar {@code FIN}.
+ * </p>
+ */
+public class ClienteCompilacion {
+
+    /**
+     * @param args {@code --emit=...} o {@code --check} (opcional), archivo fuente y ruta del socket (opcional)
+     */
+    public static void main(String[] args) {
+        String emit = null;
+        if (args.length > 0 && args[0].startsWith("--emit=")) {
+            emit = args[0].substring("--emit=".length());
+            args = Arrays.copyOfRange(args, 1, args.length);
+        } else if (args.length > 0 && App.OPCION_CHECK.equals(args[0])) {
+            // Sin artefactos el demonio solo verifica
+            emit = "";
+            args = Arrays.copyOfRange(args, 1, args.length);
+        }
+        if (args.length < 1) {
+            System.err.println("Uso: ClienteCompilacion [--emit=...|--check] archivo [socket]");
+            System.exit(2);
+        }
+        String socket = args.length > 1 ? args[1] : ServidorCompilacion.SOCKET_POR_DEFECTO;
+        String pedido = Paths.get(args[0]).toAbsolutePath() + "\t"
+                + Paths.get("salida").toAbsolutePath() + "\t"
+                + Paths.get("doc", "Tokens.txt").toAbsolutePath()
+                + (emit != null ? "\t" + emit : "");
+
+        // Sin la línea FIN el demonio no terminó el pedido: no es un éxito
+        int errores = -1;
+        try (SocketChannel canal = SocketChannel.open(StandardProtocolFamily.UNIX)) {
+            canal.connect(UnixDomainSocketAddress.of(socket));
+            PrintWriter out = new PrintWriter(Channels.newOutputStream(canal), true, StandardCharsets.UTF_8);
+            BufferedReader in = new BufferedReader(new InputStreamReader(Channels.newInputStream(canal), StandardCharsets.UTF_8));
+            out.println(pedido);
+            String linea;
+            while ((linea = in.readLine()) != null) {
+                System.out.println(linea);
+                if (linea.startsWith("FIN ")) {
+                    errores = linea.contains("errores=0 ") ? 0 : 1;
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("No se pudo contactar al servidor en " + socket + ": " + e.getMessage());
+            System.exit(2);
+        }
+        if (errores < 0) {
+            System.err.println("El servidor en " + socket + " cerró la conexión sin terminar la compilación");
+            System.exit(2);
+        }
+        System.exit(errores);
+    }
+}
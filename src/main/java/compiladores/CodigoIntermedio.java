@@ -0,0 +1,456 @@
+package compiladores;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Código intermedio de tres direcciones guardado en arreglos primitivos.
+ * <p>
+ * Cada instrucción es un índice {@code i} en arreglos paralelos: su
+ * {@link Operacion}, su {@link #tipo(int) tipo} y tres operandos
+ * ({@link Operando}): {@link #primero(int)}, {@link #segundo(int)} y
+ * {@link #resultado(int)}. La forma de cada operación (operandos entre
+ * corchetes; {@code _} es {@link Operando#NINGUNO}):
+ * <pre>
+ * ASIGNACION  resultado = primero
+ * binarias    resultado = primero op segundo    (SUMA ... O)
+ * NEGACION    resultado = ! primero
+ * CONVERSION  resultado = (tipo) primero
+ * SI          if primero goto resultado         SALTO  goto resultado
+ * ETIQUETA    resultado:
+ * ARGUMENTO   param primero                     un argumento de la llamada siguiente
+ * LLAMADA     resultado = primero(FUNCION) call segundo(ENTERO: cantidad de argumentos)
+ * RETORNO     return [primero]
+ * FUNCION     func primero(TIPO) resultado(FUNCION)     FIN_FUNCION endfunc resultado
+ * FORMAL      formal primero(TIPO) resultado            DECLARACION decl primero(TIPO) resultado [segundo]
+ * </pre>
+ * Los argumentos de una llamada son los {@code ARGUMENTO} que la preceden
+ * inmediatamente, de izquierda a derecha: los de una llamada anidada se
+ * emiten completos (con su {@code call}) antes que el primero de la externa.
+ * Las instrucciones fuera de cualquier función forman la inicialización global.
+ * El texto de {@link #texto(int)} es el del archivo de código intermedio.
+ * </p>
+ * <p>
+ * El tipo de una instrucción es aquel en el que se calcula: {@code INT} o
+ * {@code DOUBLE} para las aritméticas y las comparaciones (cuyos dos operandos
+ * ya son de ese tipo), {@code INT} para las lógicas, el del destino para
+ * {@code ASIGNACION} y {@code CONVERSION}, el del valor para {@code ARGUMENTO}
+ * y el de retorno para {@code LLAMADA} y {@code RETORNO}. Entre {@code int} y {@code double} se convierte siempre
+ * con un {@code CONVERSION} explícito; {@code char} y {@code bool} se ensanchan
+ * a {@code int} al leerse y se angostan al guardarse. Las instrucciones de
+ * control y las estructurales no tienen tipo ({@code null}).
+ * </p>
+ *
+ * @see GeneradorCodigoIntermedio
+ * @see Optimizador
+ * @see GeneradorAssembler
+ */
+public final class CodigoIntermedio {
+
+    /** Operaciones del código intermedio, con su texto en el archivo. */
+    public enum Operacion {
+        ASIGNACION("="),
+        SUMA("+"),
+        RESTA("-"),
+        PRODUCTO("*"),
+        DIVISION("/"),
+        MODULO("%"),
+        MAYOR(">"),
+        MENOR("<"),
+        MAYOR_IGUAL(">="),
+        MENOR_IGUAL("<="),
+        IGUAL("=="),
+        DISTINTO("!="),
+        Y("&&"),
+        O("||"),
+        NEGACION("!"),
+        CONVERSION("conv"),
+        SI("if"),
+        SALTO("goto"),
+        ETIQUETA("label"),
+        ARGUMENTO("param"),
+        LLAMADA("call"),
+        RETORNO("return"),
+        FUNCION("func"),
+        FIN_FUNCION("endfunc"),
+        FORMAL("formal"),
+        DECLARACION("decl");
+
+        private static final Operacion[] OPERACIONES = values();
+
+        private final String texto;
+
+        Operacion(String texto) {
+            this.texto = texto;
+        }
+
+        /** @return la operación como se escribe en el código intermedio */
+        public String texto() {
+            return texto;
+        }
+
+        /** @return si es una operación aritmética ({@code +}, {@code -}, {@code *}, {@code /}, {@code %}) */
+        boolean aritmetica() {
+            return ordinal() >= SUMA.ordinal() && ordinal() <= MODULO.ordinal();
+        }
+
+        /** @return si calcula un valor solo a partir de sus operandos (aritméticas, comparaciones, lógicas, conversión) */
+        boolean calcula() {
+            return ordinal() >= SUMA.ordinal() && ordinal() <= CONVERSION.ordinal();
+        }
+
+        /** @return si es una comparación ({@code <}, {@code ==}...) */
+        boolean comparacion() {
+            return ordinal() >= MAYOR.ordinal() && ordinal() <= DISTINTO.ordinal();
+        }
+
+        /** @return si describe la estructura del programa y no se ejecuta */
+        boolean estructural() {
+            return this == FUNCION || this == FIN_FUNCION || this == FORMAL || this == DECLARACION;
+        }
+
+        /** @return si es una etiqueta o un salto */
+        boolean control() {
+            return this == ETIQUETA || this == SALTO || this == SI;
+        }
+
+        /**
+         * @param operador índice en {@link ArbolCompacto#OPERADORES}
+         * @return operación binaria del operador
+         */
+        static Operacion deOperador(int operador) {
+            switch (ArbolCompacto.OPERADORES[operador]) {
+                case "*": return PRODUCTO;
+                case "/": return DIVISION;
+                case "%": return MODULO;
+                case "+": return SUMA;
+                case "-": return RESTA;
+                case ">": return MAYOR;
+                case "<": return MENOR;
+                case ">=": return MAYOR_IGUAL;
+                case "<=": return MENOR_IGUAL;
+                case "==": return IGUAL;
+                case "!=": return DISTINTO;
+                case "&&": return Y;
+                default: return O;
+            }
+        }
+    }
+
+    private static final int CAPACIDAD_INICIAL = 64;
+
+    private final TablaNombres nombres;
+    private byte[] operaciones;
+    /** Tipo de cada instrucción ({@link TipoDato#codigo(TipoDato)}). */
+    private byte[] tipos;
+    private int[] primeros;
+    private int[] segundos;
+    private int[] resultados;
+    private int cantidad;
+
+    /** @param nombres tabla de nombres de la que son símbolos los operandos */
+    public CodigoIntermedio(TablaNombres nombres) {
+        this(nombres, CAPACIDAD_INICIAL);
+    }
+
+    private CodigoIntermedio(TablaNombres nombres, int capacidad) {
+        this.nombres = nombres;
+        capacidad = Math.max(capacidad, 4);
+        operaciones = new byte[capacidad];
+        tipos = new byte[capacidad];
+        primeros = new int[capacidad];
+        segundos = new int[capacidad];
+        resultados = new int[capacidad];
+    }
+
+    /** @return tabla de nombres de los operandos */
+    public TablaNombres nombres() {
+        return nombres;
+    }
+
+    /** @return cantidad de instrucciones */
+    public int cantidad() {
+        return cantidad;
+    }
+
+    public boolean vacio() {
+        return cantidad == 0;
+    }
+
+    public Operacion operacion(int i) {
+        return Operacion.OPERACIONES[operaciones[i]];
+    }
+
+    /** @return tipo en el que se calcula la instrucción {@code i}, o {@code null} si no tiene */
+    public TipoDato tipo(int i) {
+        return TipoDato.deCodigo(tipos[i]);
+    }
+
+    /**
+     * @return tipo del valor que deja la instrucción {@code i} en su resultado:
+     *         {@code INT} para comparaciones y lógicas, si no {@link #tipo(int)}
+     */
+    public TipoDato tipoResultado(int i) {
+        Operacion op = operacion(i);
+        if (op.comparacion() || op == Operacion.Y || op == Operacion.O || op == Operacion.NEGACION) {
+            return TipoDato.INT;
+        }
+        return tipo(i);
+    }
+
+    public int primero(int i) {
+        return primeros[i];
+    }
+
+    public int segundo(int i) {
+        return segundos[i];
+    }
+
+    public int resultado(int i) {
+        return resultados[i];
+    }
+
+    /** Agrega al final una instrucción sin tipo (de control o estructural). */
+    public void agregar(Operacion operacion, int primero, int segundo, int resultado) {
+        agregar(operacion, null, primero, segundo, resultado);
+    }
+
+    /** Agrega una instrucción al final. */
+    public void agregar(Operacion operacion, TipoDato tipo, int primero, int segundo, int resultado) {
+        if (cantidad == operaciones.length) {
+            crecer(cantidad + 1);
+        }
+        poner(cantidad++, operacion, tipo, primero, segundo, resultado);
+    }
+
+    /** Agrega al final todas las instrucciones de {@code otro}. */
+    public void agregarTodo(CodigoIntermedio otro) {
+        agregarTodo(otro, 0, otro.cantidad);
+    }
+
+    /** Agrega al final las instrucciones de {@code otro} en {@code [desde, hasta)}. */
+    public void agregarTodo(CodigoIntermedio otro, int desde, int hasta) {
+        int n = hasta - desde;
+        if (cantidad + n > operaciones.length) {
+            crecer(cantidad + n);
+        }
+        System.arraycopy(otro.operaciones, desde, operaciones, cantidad, n);
+        System.arraycopy(otro.tipos, desde, tipos, cantidad, n);
+        System.arraycopy(otro.primeros, desde, primeros, cantidad, n);
+        System.arraycopy(otro.segundos, desde, segundos, cantidad, n);
+        System.arraycopy(otro.resultados, desde, resultados, cantidad, n);
+        cantidad += n;
+    }
+
+    /** @return copia de las instrucciones en {@code [desde, hasta)} */
+    public CodigoIntermedio parte(int desde, int hasta) {
+        CodigoIntermedio parte = new CodigoIntermedio(nombres, hasta - desde);
+        parte.agregarTodo(this, desde, hasta);
+        return parte;
+    }
+
+    /** @return copia de todo el código */
+    public CodigoIntermedio copia() {
+        return parte(0, cantidad);
+    }
+
+    /**
+     * Divide el código en sus funciones, en orden. Cada una va de su
+     * {@code func} hasta su {@code endfunc} inclusive, o hasta el siguiente
+     * {@code func} si le falta (código de un programa con errores).
+     *
+     * @return las funciones del código; lo que queda fuera es la {@link #inicializacion()}
+     */
+    public List<Unidad> funciones() {
+        List<Unidad> funciones = new ArrayList<>();
+        int inicio = -1;
+        for (int i = 0; i < cantidad; i++) {
+            Operacion op = operacion(i);
+            if (op == Operacion.FUNCION) {
+                if (inicio >= 0) {
+                    funciones.add(unidad(inicio, i));
+                }
+                inicio = i;
+            } else if (op == Operacion.FIN_FUNCION && inicio >= 0) {
+                funciones.add(unidad(inicio, i + 1));
+                inicio = -1;
+            }
+        }
+        if (inicio >= 0) {
+            funciones.add(unidad(inicio, cantidad));
+        }
+        return funciones;
+    }
+
+    private Unidad unidad(int inicio, int fin) {
+        int cuerpo = inicio + 1;
+        while (cuerpo < fin && operacion(cuerpo) == Operacion.FORMAL) {
+            cuerpo++;
+        }
+        return new Unidad(inicio, cuerpo, fin);
+    }
+
+    /**
+     * @return copia de las instrucciones fuera de toda función, en orden: la
+     *         inicialización global, que se ejecuta de corrido antes de {@code main}
+     */
+    public CodigoIntermedio inicializacion() {
+        CodigoIntermedio inicializacion = new CodigoIntermedio(nombres);
+        int desde = 0;
+        for (Unidad funcion : funciones()) {
+            inicializacion.agregarTodo(this, desde, funcion.inicio);
+            desde = funcion.fin;
+        }
+        inicializacion.agregarTodo(this, desde, cantidad);
+        return inicializacion;
+    }
+
+    /**
+     * Una función del código, en {@code [inicio, fin)}: su entrada ({@code func}
+     * en {@code inicio}), sus parámetros (los {@code formal} hasta {@code cuerpo}),
+     * su cuerpo con los {@code decl} de sus locales y su salida ({@code endfunc}
+     * en {@code fin - 1}, si lo tiene). El flujo no entra ni sale de ella salvo
+     * por llamadas, así que se analiza y optimiza por separado.
+     */
+    public static final class Unidad {
+        /** Índice del {@code func}. */
+        public final int inicio;
+        /** Índice de la primera instrucción después de los parámetros. */
+        public final int cuerpo;
+        /** Fin exclusivo. */
+        public final int fin;
+
+        Unidad(int inicio, int cuerpo, int fin) {
+            this.inicio = inicio;
+            this.cuerpo = cuerpo;
+            this.fin = fin;
+        }
+    }
+
+    /** Reemplaza la instrucción {@code i}. */
+    public void poner(int i, Operacion operacion, TipoDato tipo, int primero, int segundo, int resultado) {
+        operaciones[i] = (byte) operacion.ordinal();
+        tipos[i] = TipoDato.codigo(tipo);
+        primeros[i] = primero;
+        segundos[i] = segundo;
+        resultados[i] = resultado;
+    }
+
+    public void ponerPrimero(int i, int operando) {
+        primeros[i] = operando;
+    }
+
+    public void ponerSegundo(int i, int operando) {
+        segundos[i] = operando;
+    }
+
+    public void ponerResultado(int i, int operando) {
+        resultados[i] = operando;
+    }
+
+    /** Quita la instrucción {@code i}; las siguientes se corren un lugar. */
+    public void quitar(int i) {
+        int siguientes = cantidad - i - 1;
+        System.arraycopy(operaciones, i + 1, operaciones, i, siguientes);
+        System.arraycopy(tipos, i + 1, tipos, i, siguientes);
+        System.arraycopy(primeros, i + 1, primeros, i, siguientes);
+        System.arraycopy(segundos, i + 1, segundos, i, siguientes);
+        System.arraycopy(resultados, i + 1, resultados, i, siguientes);
+        cantidad--;
+    }
+
+    /**
+     * Quita de una vez las instrucciones marcadas, conservando el orden del resto.
+     *
+     * @param marcadas una marca por instrucción
+     */
+    public void quitar(boolean[] marcadas) {
+        int j = 0;
+        for (int i = 0; i < cantidad; i++) {
+            if (!marcadas[i]) {
+                if (j != i) {
+                    operaciones[j] = operaciones[i];
+                    tipos[j] = tipos[i];
+                    primeros[j] = primeros[i];
+                    segundos[j] = segundos[i];
+                    resultados[j] = resultados[i];
+                }
+                j++;
+            }
+        }
+        cantidad = j;
+    }
+
+    private void crecer(int minimo) {
+        int capacidad = Math.max(minimo, operaciones.length * 2);
+        operaciones = Arrays.copyOf(operaciones, capacidad);
+        tipos = Arrays.copyOf(tipos, capacidad);
+        primeros = Arrays.copyOf(primeros, capacidad);
+        segundos = Arrays.copyOf(segundos, capacidad);
+        resultados = Arrays.copyOf(resultados, capacidad);
+    }
+
+    /** @return texto de un operando de este código; vacío para {@link Operando#NINGUNO} */
+    String operando(int operando) {
+        return Operando.texto(nombres, operando);
+    }
+
+    /** @return texto de la instrucción {@code i} como en el archivo de código intermedio */
+    public String texto(int i) {
+        Operacion op = operacion(i);
+        String primero = Operando.texto(nombres, primeros[i]);
+        String resultado = Operando.texto(nombres, resultados[i]);
+        switch (op) {
+            case ETIQUETA:
+                return resultado + ":";
+            case FUNCION:
+            case FORMAL:
+                return op.texto() + " " + primero + " " + resultado;
+            case DECLARACION:
+                return "decl " + primero + " " + resultado
+                        + (segundos[i] != Operando.NINGUNO ? "[" + Operando.texto(nombres, segundos[i]) + "]" : "");
+            case FIN_FUNCION:
+                return "endfunc " + resultado;
+            case RETORNO:
+                return primero.isEmpty() ? "return" : "return " + primero;
+            case ARGUMENTO:
+                return "param " + primero;
+            case ASIGNACION:
+                return resultado + " = " + primero;
+            case CONVERSION:
+                return resultado + " = (" + ArbolCompacto.lexema(tipo(i)) + ") " + primero;
+            case SALTO:
+                return "goto " + resultado;
+            case SI:
+                return "if " + primero + " goto " + resultado;
+            default:
+                break;
+        }
+        String segundo = Operando.texto(nombres, segundos[i]);
+        if (!segundo.isEmpty()) {
+            return resultado + " = " + primero + " " + op.texto() + " " + segundo;
+        }
+        if (!primero.isEmpty()) {
+            return resultado + " = " + op.texto() + " " + primero;
+        }
+        return op.texto() + " " + resultado;
+    }
+
+    /** Escribe una instrucción por línea. */
+    public void escribir(PrintWriter salida) {
+        for (int i = 0; i < cantidad; i++) {
+            salida.println(texto(i));
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < cantidad; i++) {
+            sb.append(texto(i)).append('\n');
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,257 @@
+package compiladores;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Compila muchos archivos fuente dentro de una única JVM.
+ * <p>
+ * Cada archivo se compila con su propio {@link Compilador} en un pool de
+ * hilos con robo de trabajo ({@link Executors#newWorkStealingPool()}), lo que
+ * evita pagar el arranque de la JVM, la carga de ANTLR y el calentamiento del
+ * JIT por cada archivo. Los artefactos de {@code entrada/x.txt} se escriben en
+ * {@code <salida>/x/} con el mismo contenido que produciría una compilación
+ * individual, y la salida de consola de cada archivo se imprime completa y en
+ * el orden de entrada.
+ * </p>
+ *
+ * @see Compilador
+ */
+public class CompilacionLote {
+
+    /** Extensión de los archivos fuente que se toman de un directorio. */
+    private static final String EXTENSION = ".txt";
+
+    private final String directorioSalida;
+    private final boolean estadisticas;
+    private final Set<Artefacto> artefactos;
+    private boolean porPartes;
+    private boolean soloVerificacion;
+    private String trazas = Trazas.POR_DEFECTO;
+    private SalidaDiagnosticos diagnosticos;
+    private long limiteErrores;
+    /** Destino de la consola de cada archivo y del resumen. */
+    private PrintStream salida = System.out;
+
+    /**
+     * @param directorioSalida directorio base donde se crea una carpeta por archivo
+     */
+    public CompilacionLote(String directorioSalida) {
+        this(directorioSalida, false);
+    }
+
+    /**
+     * @param directorioSalida directorio base donde se crea una carpeta por archivo
+     * @param estadisticas si se guarda el reporte de {@link Estadisticas} de cada archivo
+     */
+    public CompilacionLote(String directorioSalida, boolean estadisticas) {
+        this(directorioSalida, estadisticas, EnumSet.allOf(Artefacto.class));
+    }
+
+    /**
+     * @param directorioSalida directorio base donde se crea una carpeta por archivo
+     * @param estadisticas si se guarda el reporte de {@link Estadisticas} de cada archivo
+     * @param artefactos artefactos a producir por archivo ({@code --emit})
+     */
+    public CompilacionLote(String directorioSalida, boolean estadisticas, Set<Artefacto> artefactos) {
+        this.directorioSalida = directorioSalida;
+        this.estadisticas = estadisticas;
+        this.artefactos = artefactos;
+    }
+
+    /**
+     * Compila cada archivo por partes ({@code --streaming}).
+     *
+     * @param porPartes {@code true} para usar {@link CompilacionPorPartes}
+     * @see Compilador#setPorPartes(boolean)
+     */
+    public void setPorPartes(boolean porPartes) {
+        this.porPartes = porPartes;
+    }
+
+    /**
+     * Solo verifica cada archivo ({@code --check}): informa los diagnósticos sin
+     * escribir artefactos ni trazas.
+     *
+     * @param soloVerificacion {@code true} para solo verificar
+     * @see Compilador#setSoloVerificacion(boolean)
+     */
+    public void setSoloVerificacion(boolean soloVerificacion) {
+        this.soloVerificacion = soloVerificacion;
+    }
+
+    /**
+     * Elige las categorías de trazas de cada compilación ({@code --trace}).
+     *
+     * @param trazas lista con el formato de {@code --trace=}
+     * @see Compilador#setTrazas(String)
+     */
+    public void setTrazas(String trazas) {
+        Trazas.validar(trazas);
+        this.trazas = trazas;
+    }
+
+    /**
+     * Escribe los diagnósticos de todos los archivos en una misma salida
+     * ({@code --diagnosticos}), a medida que se producen. Si es la salida
+     * estándar, la consola de cada archivo y el resumen van a la de errores.
+     *
+     * @param diagnosticos salida compartida, o {@code null}
+     * @see Compilador#setDiagnosticos(SalidaDiagnosticos)
+     */
+    public void setDiagnosticos(SalidaDiagnosticos diagnosticos) {
+        this.diagnosticos = diagnosticos;
+        this.salida = diagnosticos != null && diagnosticos.esSalidaEstandar() ? System.err : System.out;
+    }
+
+    /**
+     * Detiene cada compilación al llegar a {@code limite} errores ({@code --max-errores}).
+     *
+     * @param limite cantidad máxima de errores por archivo, o {@code 0} sin límite
+     * @see Compilador#setLimiteErrores(long)
+     */
+    public void setLimiteErrores(long limite) {
+        this.limiteErrores = limite;
+    }
+
+    /**
+     * Compila todos los archivos indicados. Los directorios se recorren
+     * recursivamente buscando archivos {@code .txt}.
+     *
+     * @param rutas archivos o directorios de entrada
+     * @return cantidad de archivos que terminaron con errores
+     * @throws IOException si no se pueden listar las entradas
+     */
+    public int ejecutar(List<String> rutas) throws IOException, InterruptedException {
+        List<Path[]> trabajos = planificar(rutas);
+        ExecutorService pool = Executors.newWorkStealingPool();
+        try {
+            List<Future<Resultado>> futuros = new ArrayList<>();
+            for (Path[] trabajo : trabajos) {
+                futuros.add(pool.submit(() -> compilar(trabajo[0], trabajo[1])));
+            }
+
+            int conErrores = 0;
+            for (Future<Resultado> futuro : futuros) {
+                Resultado r = obtener(futuro);
+                r.consola.writeTo(salida);
+                if (r.errores > 0) {
+                    conErrores++;
+                }
+            }
+            salida.flush();
+            salida.println("Compilados " + trabajos.size() + " archivos, " + conErrores + " con errores");
+            return conErrores;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /** Resultado de compilar un archivo: su salida de consola y la cantidad de errores. */
+    private static final class Resultado {
+        final ByteArrayOutputStream consola;
+        final long errores;
+
+        Resultado(ByteArrayOutputStream consola, long errores) {
+            this.consola = consola;
+            this.errores = errores;
+        }
+    }
+
+    /**
+     * Compila un archivo. Cualquier falla, incluso un {@link Error} o una
+     * {@link IOException}, queda como error interno de ese archivo y el lote sigue.
+     */
+    private Resultado compilar(Path entrada, Path salida) {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        PrintStream consola = new PrintStream(buffer, true);
+        consola.println("Compilando archivo: " + entrada);
+        long errores;
+        try {
+            Files.createDirectories(salida);
+            Compilador compilador = new Compilador(entrada.toString(),
+                    salida.resolve("Tokens.txt").toString(), salida.toString(), consola);
+            compilador.setArtefactos(artefactos);
+            compilador.setPorPartes(porPartes);
+            compilador.setSoloVerificacion(soloVerificacion);
+            compilador.setTrazas(trazas);
+            compilador.setDiagnosticos(diagnosticos);
+            compilador.setLimiteErrores(limiteErrores);
+            Estadisticas medicion = estadisticas ? new Estadisticas(entrada.toString()) : null;
+            compilador.setEstadisticas(medicion);
+            compilador.compilar();
+            if (medicion != null) {
+                medicion.guardar(salida.resolve(App.ARCHIVO_ESTADISTICAS).toString());
+            }
+            errores = compilador.getReportador().getCantidadErrores();
+        } catch (Throwable e) {
+            consola.println("Error interno compilando " + entrada + ": " + e);
+            errores = 1;
+        }
+        consola.flush();
+        return new Resultado(buffer, errores);
+    }
+
+    /** Los trabajos no lanzan: {@link #compilar(Path, Path)} informa sus propias fallas. */
+    private static Resultado obtener(Future<Resultado> futuro) throws InterruptedException {
+        try {
+            return futuro.get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Expande directorios y asigna a cada archivo su carpeta de salida,
+     * formada por su ruta relativa sin extensión.
+     */
+    private List<Path[]> planificar(List<String> rutas) throws IOException {
+        List<Path[]> trabajos = new ArrayList<>();
+        Set<Path> usadas = new HashSet<>();
+        Path base = Paths.get(directorioSalida);
+        for (String ruta : rutas) {
+            Path p = Paths.get(ruta);
+            if (Files.isDirectory(p)) {
+                List<Path> archivos;
+                try (Stream<Path> s = Files.walk(p)) {
+                    archivos = s.filter(f -> Files.isRegularFile(f) && f.toString().endsWith(EXTENSION))
+                            .sorted()
+                            .collect(Collectors.toList());
+                }
+                for (Path f : archivos) {
+                    trabajos.add(new Path[] { f, carpetaUnica(base, p.relativize(f), usadas) });
+                }
+            } else {
+                trabajos.add(new Path[] { p, carpetaUnica(base, p.getFileName(), usadas) });
+            }
+        }
+        return trabajos;
+    }
+
+    private static Path carpetaUnica(Path base, Path relativa, Set<Path> usadas) {
+        String nombre = relativa.toString();
+        if (nombre.endsWith(EXTENSION)) {
+            nombre = nombre.substring(0, nombre.length() - EXTENSION.length());
+        }
+        Path carpeta = base.resolve(nombre);
+        for (int i = 2; !usadas.add(carpeta); i++) {
+            carpeta = base.resolve(nombre + "_" + i);
+        }
+        return carpeta;
+    }
+}
@@ -0,0 +1,545 @@
+package compiladores;
+
+import org.antlr.v4.runtime.BailErrorStrategy;
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.TokenFactory;
+import org.antlr.v4.runtime.TokenSource;
+import org.antlr.v4.runtime.UnbufferedTokenStream;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.antlr.v4.runtime.misc.ParseCancellationException;
+import org.antlr.v4.runtime.tree.ErrorNode;
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.antlr.v4.runtime.tree.TerminalNode;
+import compiladores.compiladoresParser.IdfuncContext;
+import compiladores.compiladoresParser.ParametroContext;
+import compiladores.compiladoresParser.ProgramaContext;
+import compiladores.compiladoresParser.PrototipofuncContext;
+import compiladores.compiladoresParser.ToplevelContext;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Compilación por partes ({@code --streaming}) de un único archivo fuente.
+ * <p>
+ * La gramática ({@code programa : toplevel* EOF}) permite traducir cada
+ * declaración global, prototipo o función por separado. Un listener del parser
+ * recibe cada {@code toplevel} apenas se reconoce (después de que {@link Escucha}
+ * lo validó), arma su {@link ArbolCompacto}, genera y optimiza su código
+ * intermedio, emite su ensamblador y lo desengancha del árbol. Los tokens pasan
+ * por un {@link UnbufferedTokenStream} que solo retiene los del {@code toplevel}
+ * en curso. Así el pico de memoria depende de la función más grande y no del
+ * tamaño del archivo; lo que sí crece con el archivo es lo que hay que recordar
+ * de todos modos: símbolos globales y su historial, firmas, inicialización
+ * global y mensajes.
+ * </p>
+ * <p>
+ * Diferencias con la compilación completa de {@link Compilador}:
+ * <ul>
+ *   <li>Las declaraciones globales consecutivas se optimizan juntas y cada función
+ *       por separado, lo que da el mismo CI optimizado salvo que el optimizador solo
+ *       conoce las globales declaradas antes de cada función.</li>
+ *   <li>{@code _start} se genera al final, así que la numeración de las constantes
+ *       {@code _cdN} y de las etiquetas internas del ensamblador puede cambiar.</li>
+ *   <li>Si la etapa SLL falla, el archivo se vuelve a leer desde el principio en
+ *       modo LL; en esa etapa los errores léxicos quedan intercalados con los
+ *       sintácticos en lugar de aparecer todos antes.</li>
+ *   <li>El árbol ({@code tree}) se imprime por partes, intercalado con las trazas.</li>
+ * </ul>
+ * </p>
+ * <p>
+ * Sin artefactos y sin trazas es el modo de solo verificación
+ * ({@link Compilador#setSoloVerificacion(boolean)}): el árbol de cada
+ * {@code toplevel} vive solo mientras {@link Escucha} lo recorre y no corre
+ * ninguna fase del back-end.
+ * </p>
+ *
+ * @see Compilador#setPorPartes(boolean)
+ */
+final class CompilacionPorPartes {
+
+    private final String archivoEntrada;
+    private final String archivoTokens;
+    private final String directorioSalida;
+    private final PrintStream consola;
+    private final Reportador reportador;
+    private final Set<Artefacto> artefactos;
+    private final Estadisticas estadisticas;
+    private final List<String> archivosGenerados;
+    /** Categorías de trazas ({@code --trace}); la lista vacía las apaga. */
+    private final String categoriasTrazas;
+    /** Trazas escritas directamente en la consola (el back-end al terminar). */
+    private Trazas trazas;
+
+    private final boolean pideAsm;
+    private final boolean pideOptimizado;
+    private final boolean pideCI;
+
+    CompilacionPorPartes(String archivoEntrada, String archivoTokens, String directorioSalida, PrintStream consola,
+            Reportador reportador, Set<Artefacto> artefactos, Estadisticas estadisticas, List<String> archivosGenerados,
+            String categoriasTrazas) {
+        this.archivoEntrada = archivoEntrada;
+        this.archivoTokens = archivoTokens;
+        this.directorioSalida = directorioSalida;
+        this.consola = consola;
+        this.reportador = reportador;
+        this.artefactos = artefactos;
+        this.estadisticas = estadisticas;
+        this.archivosGenerados = archivosGenerados;
+        this.categoriasTrazas = categoriasTrazas;
+        this.pideAsm = artefactos.contains(Artefacto.ASM);
+        this.pideOptimizado = pideAsm || artefactos.contains(Artefacto.OPTIMIZADO);
+        this.pideCI = pideOptimizado || artefactos.contains(Artefacto.CI);
+    }
+
+    /**
+     * Ejecuta la compilación: parsing en dos etapas SLL → LL como en
+     * {@link Compilador}, con el back-end corriendo dentro de cada etapa.
+     *
+     * @throws IOException si no se puede leer la entrada o escribir las salidas
+     */
+    void ejecutar() throws IOException {
+        trazas = new Trazas(consola, categoriasTrazas);
+        trazas.setEstadisticas(estadisticas);
+        try {
+            ejecutarEtapas();
+        } finally {
+            trazas.close();
+        }
+    }
+
+    private void ejecutarEtapas() throws IOException {
+        iniciarFase("por_partes");
+        int reintentosLL = 0;
+        // Las etapas escriben trazas y el árbol por partes; sin ninguno de los dos su salida se descarta
+        boolean conSalida = trazas.algunaActiva() || artefactos.contains(Artefacto.ARBOL);
+
+        // Primera etapa: SLL. Las trazas van a un archivo temporal (no al heap) y
+        // los mensajes a tramos del reportador (léxicos primero), que se descartan
+        // si la etapa no termina
+        Reportador lexicoSLL = reportador.tramo();
+        Reportador sintacticoSLL = reportador.tramo();
+        Etapa etapa = new Etapa(lexicoSLL, sintacticoSLL, PredictionMode.SLL);
+        Path salidaSLL = conSalida ? Files.createTempFile("trazas", ".txt") : null;
+        try {
+            try (PrintStream consolaSLL = salidaSLL != null
+                    ? new PrintStream(new BufferedOutputStream(Files.newOutputStream(salidaSLL)))
+                    : new PrintStream(OutputStream.nullOutputStream())) {
+                etapa.analizar(consolaSLL);
+            } catch (ParseCancellationException e) {
+                etapa.descartar();
+                etapa = null;
+                lexicoSLL.limpiar();
+                sintacticoSLL.limpiar();
+            } catch (Reportador.LimiteErrores e) {
+                // Los errores de la etapa ya son los primeros: quedan, y la compilación se detiene
+                lexicoSLL.cerrar();
+                sintacticoSLL.cerrar();
+                throw e;
+            }
+            lexicoSLL.cerrar();
+            sintacticoSLL.cerrar();
+            if (etapa != null && salidaSLL != null) {
+                Files.copy(salidaSLL, consola);
+            }
+        } finally {
+            if (salidaSLL != null) {
+                Files.deleteIfExists(salidaSLL);
+            }
+        }
+
+        // Segunda etapa: LL completo, leyendo el archivo otra vez
+        if (etapa == null) {
+            reintentosLL++;
+            etapa = new Etapa(reportador, reportador, PredictionMode.LL);
+            etapa.analizar(conSalida ? consola : new PrintStream(OutputStream.nullOutputStream()));
+        }
+
+        etapa.terminar();
+
+        iniciarFase("mensajes");
+        trazas.vaciar();
+        consola.println("\n--- Mensajes del compilador ---");
+        reportador.vaciarSalida();
+        reportador.imprimir(consola);
+
+        if (estadisticas != null) {
+            estadisticas.terminar();
+            estadisticas.registrarTamanio("bytes_entrada", etapa.input.size());
+            estadisticas.registrarTamanio("tokens", etapa.fuente.cantidad);
+            estadisticas.registrarTamanio("nodos_arbol", etapa.nodosArbol);
+            if (pideCI) {
+                estadisticas.registrarTamanio("nodos_ast", etapa.nodosAst);
+            }
+            estadisticas.registrarTamanio("reintentos_ll", reintentosLL);
+            if (pideCI) {
+                estadisticas.registrarTamanio("instrucciones_ci", etapa.instruccionesCI);
+            }
+            if (pideOptimizado) {
+                estadisticas.registrarTamanio("instrucciones_optimizadas", etapa.instruccionesOptimizadas);
+            }
+            if (pideAsm) {
+                estadisticas.registrarTamanio("lineas_asm", Compilador.contarLineas(rutaSalida(Compilador.ARCHIVO_ASM)));
+            }
+            estadisticas.registrarTamanio("errores", reportador.getCantidadErrores());
+        }
+    }
+
+    /**
+     * Una pasada completa sobre el archivo: lexer, parser, {@link Escucha} y
+     * back-end por {@code toplevel}. Es a la vez el listener del parser que
+     * recibe cada {@code toplevel} terminado.
+     */
+    private final class Etapa extends compiladoresBaseListener {
+        final Reportador reportadorLexico;
+        final Reportador reportadorSintactico;
+        private final PredictionMode modo;
+
+        CharStream input;
+        FuenteRegistrada fuente;
+        private UnbufferedTokenStream<Token> tokens;
+        private compiladoresParser parser;
+        private Escucha escucha;
+        /** Nombres internados por el lexer de esta etapa, compartidos por sus fases. */
+        private final TablaNombres nombres = new TablaNombres();
+        /** Trazas y árbol impreso de esta etapa. */
+        private Trazas trazasEtapa;
+        private int marca;
+        /** Cantidad de hijos de {@code programa} ya impresos (árbol por partes). */
+        private int hijosImpresos;
+
+        private PrintWriter tablaTokens;
+        private PrintWriter salidaCI;
+        private PrintWriter salidaOptimizada;
+        private GeneradorCodigoIntermedio generadorCI;
+        private Optimizador optimizador;
+        private GeneradorAssembler generadorAsm;
+        /** Declaraciones globales consecutivas que se optimizan juntas. */
+        private CodigoIntermedio globalesPendientes;
+
+        long nodosArbol;
+        long nodosAst;
+        long instruccionesCI;
+        long instruccionesOptimizadas;
+
+        Etapa(Reportador reportadorLexico, Reportador reportadorSintactico, PredictionMode modo) {
+            this.reportadorLexico = reportadorLexico;
+            this.reportadorSintactico = reportadorSintactico;
+            this.modo = modo;
+        }
+
+        void analizar(PrintStream consolaEtapa) throws IOException {
+            trazasEtapa = trazas.conDestino(consolaEtapa);
+            try {
+                analizarConTrazas();
+            } catch (Reportador.LimiteErrores e) {
+                descartar();
+                throw e;
+            } finally {
+                trazasEtapa.close();
+            }
+        }
+
+        private void analizarConTrazas() throws IOException {
+            input = CharStreamMapeado.abrir(archivoEntrada);
+            compiladoresLexer lexer = new compiladoresLexer(input);
+            lexer.setTokenFactory(nombres);
+            lexer.removeErrorListeners();
+            lexer.addErrorListener(new LexerErrorListener(reportadorLexico));
+
+            if (artefactos.contains(Artefacto.TOKENS)) {
+                tablaTokens = new PrintWriter(archivoTokens);
+                tablaTokens.println(Compilador.ENCABEZADO_TOKENS);
+            }
+            fuente = new FuenteRegistrada(lexer, tablaTokens);
+            tokens = new UnbufferedTokenStream<>(fuente);
+
+            if (pideCI) {
+                generadorCI = new GeneradorCodigoIntermedio();
+                generadorCI.setTrazas(trazasEtapa);
+                if (artefactos.contains(Artefacto.CI)) {
+                    salidaCI = new PrintWriter(new File(rutaSalida(Compilador.ARCHIVO_CI)));
+                }
+            }
+            if (pideOptimizado) {
+                optimizador = new Optimizador();
+                optimizador.setNombres(nombres);
+                optimizador.setTrazas(trazasEtapa);
+                if (artefactos.contains(Artefacto.OPTIMIZADO)) {
+                    salidaOptimizada = new PrintWriter(new File(rutaSalida(Compilador.ARCHIVO_OPTIMIZADO)));
+                }
+            }
+            if (pideAsm) {
+                generadorAsm = new GeneradorAssembler(rutaSalida(Compilador.ARCHIVO_ASM), trazas, nombres);
+            }
+
+            parser = new compiladoresParser(tokens);
+            parser.removeErrorListeners();
+            if (modo == PredictionMode.SLL) {
+                parser.setErrorHandler(new BailErrorStrategy());
+            } else {
+                parser.addErrorListener(new ParserErrorListener(reportadorSintactico));
+            }
+            parser.getInterpreter().setPredictionMode(modo);
+            escucha = new Escucha(new TablaSimbolos(trazasEtapa, nombres), reportadorSintactico, trazasEtapa);
+            // Como en Compilador, el límite de errores corta cualquiera de las dos etapas
+            if (reportador.getLimiteErrores() > 0) {
+                parser.addParseListener(new CorteErrores(parser, reportador));
+            }
+            // Este listener antes que Escucha: recibe los exit después
+            parser.addParseListener(this);
+            parser.addParseListener(escucha);
+            try {
+                parser.programa();
+            } finally {
+                parser.removeParseListeners();
+            }
+            vaciarGlobales();
+        }
+
+        @Override
+        public void enterEveryRule(ParserRuleContext ctx) {
+            if (ctx instanceof ToplevelContext) {
+                // Retiene los tokens del toplevel para los mensajes de error que citan un rango
+                marca = tokens.mark();
+            } else if (ctx instanceof ProgramaContext && artefactos.contains(Artefacto.ARBOL)) {
+                trazasEtapa.texto("(programa ");
+            }
+        }
+
+        @Override
+        public void exitToplevel(ToplevelContext ctx) {
+            // Con BailErrorStrategy el exit llega también mientras se abandona la etapa
+            if (ctx.exception != null && modo == PredictionMode.SLL) {
+                return;
+            }
+            imprimirHijo(ctx);
+            if (estadisticas != null) {
+                nodosArbol += Compilador.contarNodos(ctx);
+            }
+            if (pideCI) {
+                try {
+                    procesar(ctx);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            escucha.liberarTipos();
+            ctx.getParent().removeLastChild();
+            tokens.release(marca);
+        }
+
+        @Override
+        public void visitTerminal(TerminalNode node) {
+            if (node.getParent() instanceof ProgramaContext) {
+                imprimirHijo(node);
+            }
+        }
+
+        @Override
+        public void visitErrorNode(ErrorNode node) {
+            if (node.getParent() instanceof ProgramaContext) {
+                imprimirHijo(node);
+            }
+        }
+
+        @Override
+        public void exitEveryRule(ParserRuleContext ctx) {
+            if (ctx instanceof ProgramaContext && artefactos.contains(Artefacto.ARBOL)) {
+                trazasEtapa.linea(")");
+            }
+        }
+
+        /** Imprime un hijo directo de {@code programa}, como lo haría el árbol completo. */
+        private void imprimirHijo(ParseTree hijo) {
+            if (!artefactos.contains(Artefacto.ARBOL)) {
+                return;
+            }
+            if (hijosImpresos++ > 0) {
+                trazasEtapa.texto(" ");
+            }
+            trazasEtapa.texto(Compilador.arbolTexto(hijo, parser));
+        }
+
+        /** Traduce un toplevel y emite su código (las globales esperan a la próxima función). */
+        private void procesar(ToplevelContext ctx) throws IOException {
+            if (ctx.prototipofunc() != null && generadorAsm != null) {
+                declararPrototipo(ctx.prototipofunc());
+            }
+            ArbolCompacto ast = ConstructorArbol.construir(ctx, escucha, nombres);
+            nodosAst += ast.tamanio();
+            generadorCI.generar(ast);
+            CodigoIntermedio parte = generadorCI.tomarCodigo();
+            instruccionesCI += parte.cantidad();
+            if (salidaCI != null) {
+                parte.escribir(salidaCI);
+            }
+            if (optimizador == null || parte.vacio()) {
+                return;
+            }
+            if (ctx.declaracionfunc() != null) {
+                vaciarGlobales();
+                emitir(parte);
+            } else if (globalesPendientes == null) {
+                globalesPendientes = parte;
+            } else {
+                globalesPendientes.agregarTodo(parte);
+            }
+        }
+
+        private void declararPrototipo(PrototipofuncContext proto) {
+            if (proto.ID() == null || proto.tipofunc() == null) {
+                return;
+            }
+            List<String> parametros = new ArrayList<>();
+            IdfuncContext idfunc = proto.idfunc();
+            if (idfunc != null && idfunc.parametro() != null) {
+                parametros.add(idfunc.parametro().tipo().getText());
+                if (idfunc.listaidfunc() != null) {
+                    for (ParametroContext p : idfunc.listaidfunc().parametro()) {
+                        parametros.add(p.tipo().getText());
+                    }
+                }
+            }
+            generadorAsm.declararPrototipo(proto.ID().getText(), proto.tipofunc().getText(), parametros);
+        }
+
+        private void vaciarGlobales() throws IOException {
+            if (globalesPendientes != null) {
+                emitir(globalesPendientes);
+                globalesPendientes = null;
+            }
+        }
+
+        private void emitir(CodigoIntermedio parte) throws IOException {
+            CodigoIntermedio optimizadas = optimizador.optimizar(parte);
+            instruccionesOptimizadas += optimizadas.cantidad();
+            if (salidaOptimizada != null) {
+                optimizadas.escribir(salidaOptimizada);
+            }
+            if (generadorAsm != null) {
+                generadorAsm.agregar(optimizadas);
+            }
+        }
+
+        /** Cierra las salidas y arma el ensamblador. */
+        void terminar() throws IOException {
+            if (tablaTokens != null) {
+                tablaTokens.close();
+                archivosGenerados.add(archivoTokens);
+            }
+            if (pideCI) {
+                consola.println("\n--- Generando Código Intermedio ---");
+            }
+            if (salidaCI != null) {
+                salidaCI.close();
+                archivosGenerados.add(rutaSalida(Compilador.ARCHIVO_CI));
+            }
+            if (pideOptimizado) {
+                consola.println("\n--- Optimizando Código Intermedio ---");
+            }
+            if (salidaOptimizada != null) {
+                salidaOptimizada.close();
+                archivosGenerados.add(rutaSalida(Compilador.ARCHIVO_OPTIMIZADO));
+            }
+            if (generadorAsm != null) {
+                iniciarFase("assembler");
+                consola.println("\n--- Iniciando generación de código ensamblador ---");
+                generadorAsm.terminar();
+                archivosGenerados.add(rutaSalida(Compilador.ARCHIVO_ASM));
+            }
+        }
+
+        /** Abandona la etapa; la siguiente vuelve a crear todas las salidas. */
+        void descartar() throws IOException {
+            if (tablaTokens != null) {
+                tablaTokens.close();
+            }
+            if (salidaCI != null) {
+                salidaCI.close();
+            }
+            if (salidaOptimizada != null) {
+                salidaOptimizada.close();
+            }
+            if (generadorAsm != null) {
+                generadorAsm.descartar();
+            }
+        }
+    }
+
+    /**
+     * Fuente de tokens que cuenta los tokens del lexer y, si se pidió, escribe la
+     * tabla de tokens a medida que se producen.
+     */
+    private static final class FuenteRegistrada implements TokenSource {
+        private final TokenSource lexer;
+        private final PrintWriter tabla;
+        long cantidad;
+
+        FuenteRegistrada(TokenSource lexer, PrintWriter tabla) {
+            this.lexer = lexer;
+            this.tabla = tabla;
+        }
+
+        @Override
+        public Token nextToken() {
+            Token t = lexer.nextToken();
+            cantidad++;
+            if (tabla != null) {
+                Compilador.escribirToken(tabla, t);
+            }
+            return t;
+        }
+
+        @Override
+        public int getLine() {
+            return lexer.getLine();
+        }
+
+        @Override
+        public int getCharPositionInLine() {
+            return lexer.getCharPositionInLine();
+        }
+
+        @Override
+        public CharStream getInputStream() {
+            return lexer.getInputStream();
+        }
+
+        @Override
+        public String getSourceName() {
+            return lexer.getSourceName();
+        }
+
+        @Override
+        public void setTokenFactory(TokenFactory<?> factory) {
+            lexer.setTokenFactory(factory);
+        }
+
+        @Override
+        public TokenFactory<?> getTokenFactory() {
+            return lexer.getTokenFactory();
+        }
+    }
+
+    private void iniciarFase(String nombre) {
+        if (estadisticas != null) {
+            estadisticas.iniciar(nombre);
+        }
+    }
+
+    private String rutaSalida(String nombre) {
+        return directorioSalida + "/" + nombre;
+    }
+}
@@ -0,0 +1,616 @@
+package compiladores;
+
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.antlr.v4.runtime.BailErrorStrategy;
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.DefaultErrorStrategy;
+import org.antlr.v4.runtime.Parser;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.antlr.v4.runtime.misc.ParseCancellationException;
+import org.antlr.v4.runtime.misc.Utils;
+import org.antlr.v4.runtime.tree.Trees;
+import compiladores.compiladoresParser.ProgramaContext;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.stream.Stream;
+
+/**
+ * Ejecuta una compilación completa de un único archivo fuente.
+ * <p>
+ * Cada instancia crea su propia {@link TablaSimbolos}, su propio {@link Reportador}
+ * y sus propias rutas de salida, de modo que varias compilaciones pueden ejecutarse
+ * en paralelo dentro de la misma JVM sin compartir estado. Las fases son las mismas
+ * que documenta {@link App}:
+ * {@code Archivo → Lexer → Tokens → Parser → Árbol → CI → Optimización → ASM}
+ * </p>
+ * <p>
+ * Con {@link #setArtefactos(Set)} se eligen las salidas; las fases cuyo resultado
+ * no se pidió ni hace falta para otra salida no se ejecutan. El análisis léxico,
+ * sintáctico y semántico corre siempre porque produce los diagnósticos.
+ * </p>
+ *
+ * @see App
+ */
+public class Compilador {
+
+    /** Nombre del archivo de código intermedio dentro del directorio de salida. */
+    public static final String ARCHIVO_CI = "codigo_intermedio.txt";
+    /** Nombre del archivo de código optimizado dentro del directorio de salida. */
+    public static final String ARCHIVO_OPTIMIZADO = "codigo_optimizado.txt";
+    /** Nombre del archivo ensamblador dentro del directorio de salida. */
+    public static final String ARCHIVO_ASM = "programa.asm";
+
+    private final String archivoEntrada;
+    private final String archivoTokens;
+    private final String directorioSalida;
+    private final PrintStream consola;
+    private final Reportador reportador;
+    private Estadisticas estadisticas;
+    private Set<Artefacto> artefactos = EnumSet.allOf(Artefacto.class);
+    private final List<String> archivosGenerados = new ArrayList<>();
+    private int reintentosLL;
+    private boolean porPartes;
+    private boolean soloVerificacion;
+    private String categoriasTrazas = Trazas.POR_DEFECTO;
+    /** Trazas de la compilación en curso (abiertas en {@link #ejecutarFases()}). */
+    private Trazas trazas;
+    /** Listener de la etapa de parsing que terminó; tiene los tipos de las expresiones. */
+    private Escucha escucha;
+    /** Nombres internados de la compilación en curso, compartidos por todas las fases. */
+    private TablaNombres nombres;
+    /** Si la última compilación se detuvo al llegar al límite de errores. */
+    private boolean detenida;
+
+    /** Primera línea de la tabla de tokens. */
+    static final String ENCABEZADO_TOKENS = "TIPO\tLEXEMA\tLINEA\tCOLUMNA";
+
+    /**
+     * Pila reservada para el hilo que ejecuta las fases (ver {@link #compilar()}). Los
+     * programas de {@code EstresTest} compilan con 16 MB; se deja margen.
+     */
+    static final long TAMANIO_PILA = 64L * 1024 * 1024;
+
+    /**
+     * Prepara una compilación con tabla de símbolos y reportador propios.
+     *
+     * @param archivoEntrada ruta del archivo fuente
+     * @param archivoTokens ruta donde se escribe la tabla de tokens
+     * @param directorioSalida directorio donde se escriben CI, CI optimizado y ASM
+     * @param consola salida para el árbol, el progreso y los mensajes
+     */
+    public Compilador(String archivoEntrada, String archivoTokens, String directorioSalida, PrintStream consola) {
+        this.archivoEntrada = archivoEntrada;
+        this.archivoTokens = archivoTokens;
+        this.directorioSalida = directorioSalida;
+        this.consola = consola;
+        this.reportador = new Reportador();
+    }
+
+    /**
+     * Devuelve el reportador con los mensajes de esta compilación.
+     *
+     * @return reportador de la compilación
+     */
+    public Reportador getReportador() {
+        return reportador;
+    }
+
+    /**
+     * Activa la medición por fase ({@code --stats}). Sin estadísticas la
+     * compilación no mide nada ni cuenta nodos.
+     *
+     * @param estadisticas colector donde se registran fases y tamaños, o {@code null}
+     */
+    public void setEstadisticas(Estadisticas estadisticas) {
+        this.estadisticas = estadisticas;
+    }
+
+    /**
+     * Elige qué artefactos se producen ({@code --emit}). Por defecto se producen todos.
+     *
+     * @param artefactos artefactos pedidos; el conjunto vacío deja solo los diagnósticos
+     */
+    public void setArtefactos(Set<Artefacto> artefactos) {
+        this.artefactos = EnumSet.noneOf(Artefacto.class);
+        this.artefactos.addAll(artefactos);
+    }
+
+    /**
+     * Activa la compilación por partes ({@code --streaming}): cada declaración
+     * global o función se traduce y se emite apenas el parser la reconoce, sin
+     * guardar el árbol ni los tokens de todo el archivo.
+     *
+     * @param porPartes {@code true} para compilar por partes
+     * @see CompilacionPorPartes
+     */
+    public void setPorPartes(boolean porPartes) {
+        this.porPartes = porPartes;
+    }
+
+    /**
+     * Activa el modo de solo verificación ({@code --check}): informa los
+     * diagnósticos léxicos, sintácticos y semánticos sin producir artefactos.
+     * Compila por partes, descarta el árbol de cada declaración en cuanto
+     * {@link Escucha} la valida y no escribe trazas en la consola, así que la
+     * memoria no depende del tamaño del archivo y solo la consola recibe los mensajes.
+     *
+     * @param soloVerificacion {@code true} para solo verificar
+     */
+    public void setSoloVerificacion(boolean soloVerificacion) {
+        this.soloVerificacion = soloVerificacion;
+    }
+
+    /**
+     * Elige las categorías de trazas que llegan a la consola ({@code --trace}).
+     * Por defecto son {@link Trazas#POR_DEFECTO}; la lista vacía las apaga.
+     *
+     * @param categorias lista con el formato de {@code --trace=}
+     * @throws IllegalArgumentException si la lista tiene una categoría o nivel desconocido
+     */
+    public void setTrazas(String categorias) {
+        Trazas.validar(categorias);
+        this.categoriasTrazas = categorias;
+    }
+
+    /**
+     * Escribe los diagnósticos en {@code salida} a medida que quedan definitivos
+     * ({@code --diagnosticos}), en lugar de retenerlos hasta el final; la consola
+     * solo recibe los que no llegaron a escribirse.
+     *
+     * @param salida salida de diagnósticos, o {@code null} para retenerlos
+     * @see Reportador#setSalida(SalidaDiagnosticos, String)
+     */
+    public void setDiagnosticos(SalidaDiagnosticos salida) {
+        reportador.setSalida(salida, archivoEntrada);
+    }
+
+    /**
+     * Detiene la compilación al llegar a {@code limite} errores ({@code --max-errores}):
+     * no corre ninguna fase más y se informan los mensajes reunidos hasta ahí.
+     *
+     * @param limite cantidad máxima de errores, o {@code 0} sin límite
+     */
+    public void setLimiteErrores(long limite) {
+        reportador.setLimiteErrores(limite);
+    }
+
+    /**
+     * Indica si la última llamada a {@link #compilar()} se detuvo al llegar al
+     * límite de {@link #setLimiteErrores(long)}, en cualquier modo.
+     *
+     * @return {@code true} si la compilación se detuvo antes de terminar
+     */
+    public boolean isDetenida() {
+        return detenida;
+    }
+
+    /**
+     * Rutas de los archivos escritos por la última llamada a {@link #compilar()}.
+     *
+     * @return rutas en el orden en que se generaron
+     */
+    public List<String> getArchivosGenerados() {
+        return archivosGenerados;
+    }
+
+    /**
+     * Ejecuta las fases necesarias para los artefactos pedidos sobre el archivo de entrada.
+     * <p>
+     * Las fases corren en un hilo propio con una pila de {@link #TAMANIO_PILA} bytes:
+     * el parser generado por ANTLR es descendente recursivo, de modo que un anidamiento
+     * muy profundo de bloques, paréntesis o llamadas consume pila en proporción. La
+     * memoria de la pila es virtual y solo se ocupa la que se usa. Los recorridos
+     * propios del compilador sobre expresiones y sobre el árbol completo usan pilas
+     * explícitas.
+     * </p>
+     *
+     * @throws IOException si no se puede leer la entrada o escribir las salidas
+     */
+    public void compilar() throws IOException {
+        FutureTask<Void> tarea = new FutureTask<>(() -> {
+            ejecutarFases();
+            return null;
+        });
+        Thread hilo = new Thread(null, tarea, "compilador-" + Paths.get(archivoEntrada).getFileName(), TAMANIO_PILA);
+        hilo.start();
+        try {
+            tarea.get();
+        } catch (InterruptedException e) {
+            hilo.interrupt();
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Compilación interrumpida: " + archivoEntrada);
+        } catch (ExecutionException e) {
+            Throwable causa = e.getCause();
+            if (causa instanceof IOException) {
+                throw (IOException) causa;
+            }
+            if (causa instanceof RuntimeException) {
+                throw (RuntimeException) causa;
+            }
+            if (causa instanceof Error) {
+                throw (Error) causa;
+            }
+            throw new IllegalStateException(causa);
+        }
+    }
+
+    private void ejecutarFases() throws IOException {
+        archivosGenerados.clear();
+        reintentosLL = 0;
+        detenida = false;
+        try {
+            ejecutarModo();
+        } catch (Reportador.LimiteErrores e) {
+            detener(e);
+        }
+    }
+
+    /** Termina una compilación cortada por el límite de errores con los mensajes reunidos. */
+    private void detener(Reportador.LimiteErrores e) {
+        detenida = true;
+        reportador.info("Compilación detenida: " + e.getMessage(), 0, 0);
+        reportador.vaciarSalida();
+        consola.println("\n--- Mensajes del compilador ---");
+        reportador.imprimir(consola);
+        if (estadisticas != null) {
+            estadisticas.terminar();
+            estadisticas.registrarTamanio("errores", reportador.getCantidadErrores());
+        }
+    }
+
+    private void ejecutarModo() throws IOException {
+        if (soloVerificacion) {
+            new CompilacionPorPartes(archivoEntrada, archivoTokens, directorioSalida, consola, reportador,
+                    EnumSet.noneOf(Artefacto.class), estadisticas, archivosGenerados, "").ejecutar();
+            return;
+        }
+        if (porPartes) {
+            new CompilacionPorPartes(archivoEntrada, archivoTokens, directorioSalida, consola, reportador,
+                    artefactos, estadisticas, archivosGenerados, categoriasTrazas).ejecutar();
+            return;
+        }
+        trazas = new Trazas(consola, categoriasTrazas);
+        trazas.setEstadisticas(estadisticas);
+        try {
+            ejecutarFasesCompletas();
+        } finally {
+            trazas.close();
+            trazas = null;
+        }
+    }
+
+    /** Compilación completa: cada fase recibe el resultado entero de la anterior. */
+    private void ejecutarFasesCompletas() throws IOException {
+        iniciarFase("lectura");
+        // Fase 1: Crear un CharStream que lee desde el archivo de entrada
+        // (mapeado en memoria, sin copiarlo al heap, cuando es ASCII puro)
+        CharStream input = CharStreamMapeado.abrir(archivoEntrada);
+
+        // Fase 2: Crear el lexer que analiza el CharStream y produce tokens
+        compiladoresLexer lexer = new compiladoresLexer(input);
+        // Los nombres y literales se internan al crear cada token
+        nombres = new TablaNombres();
+        lexer.setTokenFactory(nombres);
+        // Reemplazar listeners por defecto con uno léxico personalizado. El lexer
+        // avanza a la par del parser, pero sus errores van antes que los demás
+        lexer.removeErrorListeners();
+        Reportador reportadorLexico = reportador.tramo();
+        lexer.addErrorListener(new LexerErrorListener(reportadorLexico));
+
+        // Fase 3: Crear un buffer de tokens generados por el lexer
+        // Este buffer permite al parser consumir tokens según sea necesario
+        CommonTokenStream tokens = new CommonTokenStream(lexer);
+
+        // Fase 4: Crear el parser que consume tokens y construye el árbol sintáctico
+        // (los listeners de error se conectan en cada etapa de analizar())
+        compiladoresParser parser = new compiladoresParser(tokens);
+
+        // (Opcional) Generar tabla de tokens a archivo. Solo en ese caso se llena el
+        // buffer por adelantado; si no, el parser lo consume a demanda.
+        if (artefactos.contains(Artefacto.TOKENS)) {
+            iniciarFase("lexer");
+            tokens.fill();
+
+            iniciarFase("tabla_tokens");
+            try (PrintWriter tokenOut = new PrintWriter(archivoTokens)) {
+                tokenOut.println(ENCABEZADO_TOKENS);
+                for (Token t : tokens.getTokens()) {
+                    escribirToken(tokenOut, t);
+                }
+                archivosGenerados.add(archivoTokens);
+            } catch (IOException e) {
+                System.err.println("No se pudo escribir " + archivoTokens + ": " + e.getMessage());
+            }
+        }
+
+        // Fases 5 a 7: parsing desde 'programa' con el listener semántico Escucha
+        // conectado al parser (patrón Observer), en dos etapas SLL → LL
+        iniciarFase("parser_semantico");
+        ProgramaContext tree = analizar(parser, tokens, reportadorLexico);
+        reportador.verificarLimite();
+
+        // Opción alternativa: Usar el patrón Visitor para recorridos personalizados
+        // Caminante visitor = new Caminante();
+        // visitor.visit(tree);
+
+        // Fase 8: Imprimir la representación textual del árbol sintáctico generado
+        if (artefactos.contains(Artefacto.ARBOL)) {
+            iniciarFase("arbol_texto");
+            imprimir(arbolTexto(tree, parser));
+        }
+
+        boolean pideAsm = artefactos.contains(Artefacto.ASM);
+        boolean pideOptimizado = pideAsm || artefactos.contains(Artefacto.OPTIMIZADO);
+        boolean pideCI = pideOptimizado || artefactos.contains(Artefacto.CI);
+
+        // Árbol compacto: se construye una vez y desde aquí el árbol de ANTLR
+        // (con sus tokens y contextos) queda libre para el recolector
+        long nodosArbol = estadisticas != null ? contarNodos(tree) : 0;
+        ArbolCompacto ast = null;
+        if (pideCI) {
+            iniciarFase("arbol_compacto");
+            ast = ConstructorArbol.construir(tree, escucha, nombres);
+        }
+        tree = null;
+        escucha = null;
+
+        // Generación de Código Intermedio
+        CodigoIntermedio instrucciones = null;
+        if (pideCI) {
+            iniciarFase("codigo_intermedio");
+            imprimir("\n--- Generando Código Intermedio ---");
+            GeneradorCodigoIntermedio generadorCI = new GeneradorCodigoIntermedio();
+            generadorCI.setTrazas(trazas);
+            generadorCI.generar(ast);
+            instrucciones = generadorCI.getCodigo();
+
+            // Guardar Código Intermedio
+            if (artefactos.contains(Artefacto.CI)) {
+                escribirInstrucciones(instrucciones, rutaSalida(ARCHIVO_CI));
+            }
+        }
+
+        // Optimización
+        CodigoIntermedio optimizadas = null;
+        if (pideOptimizado) {
+            iniciarFase("optimizacion");
+            imprimir("\n--- Optimizando Código Intermedio ---");
+            Optimizador optimizador = new Optimizador();
+            optimizador.setNombres(nombres);
+            optimizador.setTrazas(trazas);
+            optimizadas = optimizador.optimizar(instrucciones);
+
+            // Guardar Código Optimizado
+            if (artefactos.contains(Artefacto.OPTIMIZADO)) {
+                escribirInstrucciones(optimizadas, rutaSalida(ARCHIVO_OPTIMIZADO));
+            }
+        }
+
+        // Fase 9: Generación de código ensamblador
+        if (pideAsm) {
+            iniciarFase("assembler");
+            imprimir("\n--- Iniciando generación de código ensamblador ---");
+            GeneradorAssembler generador = new GeneradorAssembler(rutaSalida(ARCHIVO_ASM), trazas, nombres);
+            generador.generar(optimizadas);
+            archivosGenerados.add(rutaSalida(ARCHIVO_ASM));
+        }
+
+        // Fase 10: Imprimir mensajes recopilados por el reportador
+        iniciarFase("mensajes");
+        imprimir("\n--- Mensajes del compilador ---");
+        reportador.vaciarSalida();
+        reportador.imprimir(consola);
+
+        if (estadisticas != null) {
+            estadisticas.terminar();
+            // Los tamaños se cuentan fuera de las fases medidas
+            estadisticas.registrarTamanio("bytes_entrada", input.size());
+            estadisticas.registrarTamanio("tokens", tokens.size());
+            estadisticas.registrarTamanio("nodos_arbol", nodosArbol);
+            if (ast != null) {
+                estadisticas.registrarTamanio("nodos_ast", ast.tamanio());
+            }
+            estadisticas.registrarTamanio("reintentos_ll", reintentosLL);
+            if (instrucciones != null) {
+                estadisticas.registrarTamanio("instrucciones_ci", instrucciones.cantidad());
+            }
+            if (optimizadas != null) {
+                estadisticas.registrarTamanio("instrucciones_optimizadas", optimizadas.cantidad());
+            }
+            if (pideAsm) {
+                estadisticas.registrarTamanio("lineas_asm", contarLineas(rutaSalida(ARCHIVO_ASM)));
+            }
+            estadisticas.registrarTamanio("errores", reportador.getCantidadErrores());
+        }
+    }
+
+    /**
+     * Parsing en dos etapas.
+     * <p>
+     * Primero se intenta en modo {@link PredictionMode#SLL} con {@link BailErrorStrategy},
+     * que es mucho más barato en {@code adaptivePredict} y basta para los programas
+     * válidos. En esta etapa el análisis semántico lo hace {@link AnalisisSemantico},
+     * que analiza en paralelo los cuerpos de las funciones; sus mensajes van a un
+     * tramo del reportador que se descarta si la etapa no termina, y sus trazas se
+     * entregan solo si termina. Ante el primer error se
+     * rebobina el {@link CommonTokenStream} y se vuelve a parsear en modo
+     * {@link PredictionMode#LL} completo con {@link ParserErrorListener} y la
+     * recuperación de errores habitual, de modo que los diagnósticos son los mismos
+     * que con una única etapa LL. En ambos casos los errores léxicos quedan antes que
+     * los del parser y los semánticos. Cada tramo se cierra en cuanto su productor
+     * terminó, para que una {@link SalidaDiagnosticos} lo escriba sin esperar al final.
+     * </p>
+     * <p>
+     * El límite de errores corta las dos etapas ({@link CorteErrores}) en el primer
+     * evento del parser después de alcanzarlo. Con límite, {@link AnalisisSemantico}
+     * no separa los cuerpos de las funciones: el análisis sigue el orden del
+     * programa, de modo que se corta en el mismo punto que una única etapa LL y
+     * los mensajes informados son los primeros de la compilación sin límite (salvo
+     * errores léxicos posteriores al corte, que ya no se leen).
+     * </p>
+     */
+    private ProgramaContext analizar(compiladoresParser parser, CommonTokenStream tokens,
+                                     Reportador reportadorLexico) {
+        parser.removeErrorListeners();
+        parser.setErrorHandler(new BailErrorStrategy());
+        parser.getInterpreter().setPredictionMode(PredictionMode.SLL);
+        TiposPorNodo tipos = new TiposPorNodo();
+        Reportador reportadorSLL = reportador.tramo();
+        AnalisisSemantico semantico = new AnalisisSemantico(nombres, tipos, reportadorSLL, trazas);
+        semantico.setEstadisticas(estadisticas);
+        conectarCorte(parser);
+        parser.addParseListener(semantico);
+        try {
+            ProgramaContext tree = parser.programa();
+            reportadorLexico.cerrar();
+            escucha = semantico.terminar();
+            reportadorSLL.cerrar();
+            return tree;
+        } catch (Reportador.LimiteErrores e) {
+            // Los errores de la etapa ya son los primeros: quedan, y la compilación se detiene
+            reportadorLexico.cerrar();
+            reportadorSLL.cerrar();
+            throw e;
+        } catch (ParseCancellationException e) {
+            reportadorSLL.limpiar();
+            reportadorSLL.cerrar();
+            reintentosLL++;
+        } finally {
+            parser.removeParseListeners();
+        }
+
+        // Segunda etapa: LL completo sobre el mismo buffer de tokens
+        tokens.fill();
+        reportadorLexico.cerrar();
+        parser.reset();
+        parser.setErrorHandler(new DefaultErrorStrategy());
+        parser.getInterpreter().setPredictionMode(PredictionMode.LL);
+        parser.addErrorListener(new ParserErrorListener(reportador));
+        tipos = new TiposPorNodo();
+        escucha = new Escucha(new TablaSimbolos(trazas, nombres), reportador, trazas, tipos);
+        conectarCorte(parser);
+        parser.addParseListener(tipos);
+        parser.addParseListener(escucha);
+        try {
+            return parser.programa();
+        } finally {
+            parser.removeParseListeners();
+        }
+    }
+
+    /** Con límite de errores, conecta primero el listener que corta el parsing al alcanzarlo. */
+    private void conectarCorte(compiladoresParser parser) {
+        if (reportador.getLimiteErrores() > 0) {
+            parser.addParseListener(new CorteErrores(parser, reportador));
+        }
+    }
+
+    /**
+     * Igual que {@link Trees#toStringTree(org.antlr.v4.runtime.tree.Tree, org.antlr.v4.runtime.Parser)}
+     * pero con una pila explícita, para árboles de cualquier profundidad.
+     */
+    static String arbolTexto(ParseTree raiz, Parser parser) {
+        StringBuilder sb = new StringBuilder();
+        // Cada entrada es un nodo y el índice del próximo hijo a imprimir
+        Deque<ParseTree> nodos = new ArrayDeque<>();
+        Deque<Integer> siguientes = new ArrayDeque<>();
+        nodos.push(raiz);
+        siguientes.push(0);
+        while (!nodos.isEmpty()) {
+            ParseTree nodo = nodos.peek();
+            int i = siguientes.pop();
+            if (i == 0) {
+                String texto = Utils.escapeWhitespace(Trees.getNodeText(nodo, parser), false);
+                if (nodo.getChildCount() == 0) {
+                    sb.append(texto);
+                    nodos.pop();
+                    continue;
+                }
+                sb.append('(').append(texto).append(' ');
+            }
+            if (i < nodo.getChildCount()) {
+                if (i > 0) {
+                    sb.append(' ');
+                }
+                siguientes.push(i + 1);
+                nodos.push(nodo.getChild(i));
+                siguientes.push(0);
+            } else {
+                sb.append(')');
+                nodos.pop();
+            }
+        }
+        return sb.toString();
+    }
+
+    /** Cantidad de nodos del árbol (reglas y terminales), sin recursión. */
+    static long contarNodos(ParseTree raiz) {
+        long total = 0;
+        Deque<ParseTree> pendientes = new ArrayDeque<>();
+        pendientes.push(raiz);
+        while (!pendientes.isEmpty()) {
+            ParseTree nodo = pendientes.pop();
+            total++;
+            for (int i = 0; i < nodo.getChildCount(); i++) {
+                pendientes.push(nodo.getChild(i));
+            }
+        }
+        return total;
+    }
+
+    /** Escribe una fila de la tabla de tokens. */
+    static void escribirToken(PrintWriter tokenOut, Token t) {
+        String tipo = compiladoresParser.VOCABULARY.getSymbolicName(t.getType());
+        if (tipo == null) {
+            tipo = String.valueOf(t.getType());
+        }
+        String lexema = t.getText().replace("\n", "\\n").replace("\r", "\\r");
+        tokenOut.printf("%s\t%s\t%d\t%d%n", tipo, lexema, t.getLine(), t.getCharPositionInLine());
+    }
+
+    /** Escribe en la consola después de las trazas pendientes, para no desordenarlas. */
+    private void imprimir(String texto) {
+        trazas.vaciar();
+        consola.println(texto);
+    }
+
+    /** Cierra la fase anterior (si la hay) y abre la siguiente cuando se mide con {@code --stats}. */
+    private void iniciarFase(String nombre) {
+        if (estadisticas != null) {
+            estadisticas.iniciar(nombre);
+        }
+    }
+
+    static long contarLineas(String ruta) throws IOException {
+        try (Stream<String> lineas = Files.lines(Paths.get(ruta))) {
+            return lineas.count();
+        }
+    }
+
+    /** Ruta de un archivo de salida dentro del directorio de salida. */
+    private String rutaSalida(String nombre) {
+        return directorioSalida + "/" + nombre;
+    }
+
+    private void escribirInstrucciones(CodigoIntermedio instrucciones, String ruta) throws IOException {
+        try (PrintWriter out = new PrintWriter(new File(ruta))) {
+            instrucciones.escribir(out);
+        }
+        archivosGenerados.add(ruta);
+    }
+}
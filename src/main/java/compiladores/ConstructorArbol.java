@@ -0,0 +1,482 @@
+package compiladores;
+
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.Token;
+import compiladores.compiladoresParser.*;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Construye el {@link ArbolCompacto} a partir del árbol de ANTLR en una sola pasada.
+ * <p>
+ * Los prototipos no generan nodos, los paréntesis desaparecen y las listas
+ * ({@code listaid}, {@code listaidfunc}, {@code listafactfunc}) quedan como hijos
+ * directos. Los tipos de expresión se toman de {@link Escucha}. Las partes que
+ * faltan por errores sintácticos se representan con {@code VACIA}.
+ * </p>
+ * <p>
+ * Las sentencias se recorren recursivamente (su profundidad ya la acotó el parser,
+ * que también es recursivo); las expresiones, que por la recursión a izquierda
+ * pueden ser mucho más profundas, con pilas explícitas.
+ * </p>
+ */
+final class ConstructorArbol {
+
+    private final ArbolCompacto arbol;
+    private final TablaNombres nombres;
+    private final Escucha escucha;
+
+    private ConstructorArbol(Escucha escucha, TablaNombres nombres) {
+        this.escucha = escucha;
+        this.nombres = nombres;
+        this.arbol = new ArbolCompacto(nombres);
+    }
+
+    /**
+     * @param programa raíz del árbol de ANTLR
+     * @param escucha listener que resolvió los tipos de las expresiones (puede ser {@code null})
+     * @param nombres tabla de nombres de la compilación (la fábrica de tokens del lexer)
+     * @return árbol compacto equivalente
+     */
+    static ArbolCompacto construir(ProgramaContext programa, Escucha escucha, TablaNombres nombres) {
+        ConstructorArbol c = new ConstructorArbol(escucha, nombres);
+        c.programa(programa);
+        return c.arbol;
+    }
+
+    /**
+     * Construye el árbol de un único {@code toplevel}, como un {@code PROGRAMA} con
+     * sus nodos (vacío para un prototipo). Lo usa la compilación por partes.
+     *
+     * @param toplevel declaración global, prototipo o función
+     * @param escucha listener que resolvió los tipos de las expresiones (puede ser {@code null})
+     * @param nombres tabla de nombres de la compilación (la fábrica de tokens del lexer)
+     * @return árbol compacto del {@code toplevel}
+     */
+    static ArbolCompacto construir(ToplevelContext toplevel, Escucha escucha, TablaNombres nombres) {
+        ConstructorArbol c = new ConstructorArbol(escucha, nombres);
+        Hijos hijos = new Hijos();
+        c.toplevel(toplevel, hijos);
+        c.nodo(ArbolCompacto.PROGRAMA, -1, -1, null, hijos);
+        return c.arbol;
+    }
+
+    /** Lista de enteros sin boxing para juntar los hijos de un nodo. */
+    private static final class Hijos {
+        int[] datos = new int[4];
+        int cantidad;
+
+        void agregar(int n) {
+            if (cantidad == datos.length) {
+                datos = Arrays.copyOf(datos, cantidad * 2);
+            }
+            datos[cantidad++] = n;
+        }
+    }
+
+    private int nodo(byte clase, int valor, int dato, TipoDato tipo, Hijos hijos) {
+        return arbol.agregar(clase, valor, dato, tipo, hijos.datos, hijos.cantidad);
+    }
+
+    private int hoja(byte clase, int valor, TipoDato tipo) {
+        return arbol.agregar(clase, valor, -1, tipo, new int[0], 0);
+    }
+
+    private int texto(Token t) {
+        return nombres.id(t);
+    }
+
+    /** Tipo de una regla {@code tipo} o {@code tipofunc}, por su token (sin pedir el texto). */
+    private static TipoDato tipoDe(ParserRuleContext ctx) {
+        if (ctx == null || ctx.getStart() == null) {
+            return null;
+        }
+        switch (ctx.getStart().getType()) {
+            case compiladoresParser.INT: return TipoDato.INT;
+            case compiladoresParser.DOUBLE: return TipoDato.DOUBLE;
+            case compiladoresParser.CHAR: return TipoDato.CHAR;
+            case compiladoresParser.BOOL: return TipoDato.BOOL;
+            case compiladoresParser.VOID: return TipoDato.VOID;
+            default: return null;
+        }
+    }
+
+    private int programa(ProgramaContext ctx) {
+        Hijos hijos = new Hijos();
+        for (ToplevelContext t : ctx.toplevel()) {
+            toplevel(t, hijos);
+        }
+        return nodo(ArbolCompacto.PROGRAMA, -1, -1, null, hijos);
+    }
+
+    private void toplevel(ToplevelContext t, Hijos destino) {
+        if (t.declaracion() != null) {
+            declaracion(t.declaracion(), destino);
+        } else if (t.declaracionfunc() != null) {
+            funcion(t.declaracionfunc(), destino);
+        }
+        // Los prototipos no generan código
+    }
+
+    private void funcion(DeclaracionfuncContext ctx, Hijos destino) {
+        if (ctx.ID() == null) {
+            return;
+        }
+        Hijos hijos = new Hijos();
+        IdfuncContext idfunc = ctx.idfunc();
+        if (idfunc != null && idfunc.parametro() != null) {
+            parametro(idfunc.parametro(), hijos);
+            if (idfunc.listaidfunc() != null) {
+                for (ParametroContext p : idfunc.listaidfunc().parametro()) {
+                    parametro(p, hijos);
+                }
+            }
+        }
+        hijos.agregar(bloque(ctx.bloque()));
+        destino.agregar(nodo(ArbolCompacto.FUNCION, texto(ctx.ID().getSymbol()), -1, tipoDe(ctx.tipofunc()), hijos));
+    }
+
+    private void parametro(ParametroContext p, Hijos destino) {
+        int nombre = p.ID() != null ? texto(p.ID().getSymbol()) : -1;
+        destino.agregar(hoja(ArbolCompacto.PARAMETRO, nombre, tipoDe(p.tipo())));
+    }
+
+    /** Agrega un nodo {@code DECLARACION} por cada identificador declarado. */
+    private void declaracion(DeclaracionContext ctx, Hijos destino) {
+        TipoDato tipo = tipoDe(ctx.tipo());
+        declarador(tipo, ctx.ID() != null ? ctx.ID().getSymbol() : null, ctx.dimension(), ctx.inicializacion(), destino);
+        if (ctx.listaid() != null) {
+            for (DeclaradorContext d : ctx.listaid().declarador()) {
+                declarador(tipo, d.ID() != null ? d.ID().getSymbol() : null, d.dimension(), d.inicializacion(), destino);
+            }
+        }
+    }
+
+    private void declarador(TipoDato tipo, Token id, DimensionContext dim, InicializacionContext init, Hijos destino) {
+        if (id == null) {
+            return;
+        }
+        int dimension = (dim != null && dim.NUMERO() != null) ? texto(dim.NUMERO().getSymbol()) : -1;
+        Hijos hijos = new Hijos();
+        if (init != null && init.expresion() != null) {
+            hijos.agregar(expresion(init.expresion()));
+        }
+        destino.agregar(nodo(ArbolCompacto.DECLARACION, texto(id), dimension, tipo, hijos));
+    }
+
+    private int bloque(BloqueContext ctx) {
+        Hijos hijos = new Hijos();
+        if (ctx != null && ctx.instrucciones() != null) {
+            for (InstruccionContext ins : ctx.instrucciones().instruccion()) {
+                sentencia(ins, hijos);
+            }
+        }
+        return nodo(ArbolCompacto.BLOQUE, -1, -1, null, hijos);
+    }
+
+    private void sentencia(InstruccionContext ctx, Hijos destino) {
+        if (ctx.declaracion() != null) {
+            declaracion(ctx.declaracion(), destino);
+        } else if (ctx.asignacion() != null) {
+            destino.agregar(asignacion(ctx.asignacion()));
+        } else if (ctx.bloque() != null) {
+            destino.agregar(bloque(ctx.bloque()));
+        } else if (ctx.iif() != null) {
+            destino.agregar(si(ctx.iif()));
+        } else if (ctx.iwhile() != null) {
+            Hijos hijos = new Hijos();
+            hijos.agregar(condicion(ctx.iwhile().condicion()));
+            hijos.agregar(bloque(ctx.iwhile().bloque()));
+            destino.agregar(nodo(ArbolCompacto.MIENTRAS, -1, -1, null, hijos));
+        } else if (ctx.ifor() != null) {
+            destino.agregar(para(ctx.ifor()));
+        } else if (ctx.ibreak() != null) {
+            destino.agregar(hoja(ArbolCompacto.ROMPER, -1, null));
+        } else if (ctx.icontinue() != null) {
+            destino.agregar(hoja(ArbolCompacto.CONTINUAR, -1, null));
+        } else if (ctx.llamadafunc() != null && ctx.llamadafunc().llamada_expr() != null) {
+            Hijos hijos = new Hijos();
+            hijos.agregar(expresion(ctx.llamadafunc().llamada_expr()));
+            destino.agregar(nodo(ArbolCompacto.EVALUAR, -1, -1, null, hijos));
+        } else if (ctx.ireturn() != null) {
+            Hijos hijos = new Hijos();
+            if (ctx.ireturn().expresion() != null) {
+                hijos.agregar(expresion(ctx.ireturn().expresion()));
+            }
+            destino.agregar(nodo(ArbolCompacto.RETORNO, -1, -1, null, hijos));
+        }
+    }
+
+    private int asignacion(AsignacionContext ctx) {
+        Hijos hijos = new Hijos();
+        if (ctx.dimensionAcceso() != null) {
+            hijos.agregar(expresion(ctx.dimensionAcceso().expresion()));
+        }
+        hijos.agregar(expresion(ctx.expresion()));
+        int nombre = ctx.ID() != null ? texto(ctx.ID().getSymbol()) : nombres.id("");
+        return nodo(ArbolCompacto.ASIGNACION, nombre, -1, tipoDestino(ctx), hijos);
+    }
+
+    private int si(IifContext ctx) {
+        Hijos hijos = new Hijos();
+        hijos.agregar(condicion(ctx.condicion()));
+        hijos.agregar(bloque(ctx.bloque()));
+        IelseContext sino = ctx.ielse();
+        if (sino != null && sino.getChildCount() > 0) {
+            if (sino.IF() != null) {
+                // else if: un SI anidado sin else propio
+                Hijos anidado = new Hijos();
+                anidado.agregar(condicion(sino.condicion()));
+                anidado.agregar(bloque(sino.bloque()));
+                hijos.agregar(nodo(ArbolCompacto.SI, -1, -1, null, anidado));
+            } else {
+                hijos.agregar(bloque(sino.bloque()));
+            }
+        }
+        return nodo(ArbolCompacto.SI, -1, -1, null, hijos);
+    }
+
+    private int para(IforContext ctx) {
+        CicloContext ciclo = ctx.ciclo();
+        Hijos inicio = new Hijos();
+        Hijos actualizacion = new Hijos();
+        int condicion;
+        if (ciclo != null) {
+            if (ciclo.declaracion() != null) {
+                declaracion(ciclo.declaracion(), inicio);
+            } else if (ciclo.asignacion() != null) {
+                inicio.agregar(asignacion(ciclo.asignacion()));
+            }
+            condicion = expresion(ciclo.expresion());
+            if (ciclo.finfor() != null) {
+                actualizacion(ciclo.finfor(), actualizacion);
+            }
+        } else {
+            condicion = expresion(null);
+        }
+        Hijos hijos = new Hijos();
+        hijos.agregar(nodo(ArbolCompacto.SECUENCIA, -1, -1, null, inicio));
+        hijos.agregar(condicion);
+        hijos.agregar(nodo(ArbolCompacto.SECUENCIA, -1, -1, null, actualizacion));
+        hijos.agregar(bloque(ctx.bloque()));
+        return nodo(ArbolCompacto.PARA, -1, -1, null, hijos);
+    }
+
+    /** Parte de actualización de un for: expresión, {@code ID++}, {@code ID--} o {@code ID = expr}. */
+    private void actualizacion(FinforContext ctx, Hijos destino) {
+        if (ctx.expresion() != null && ctx.ASIGN() == null && ctx.ID() == null) {
+            Hijos hijos = new Hijos();
+            hijos.agregar(expresion(ctx.expresion()));
+            destino.agregar(nodo(ArbolCompacto.EVALUAR, -1, -1, null, hijos));
+        } else if (ctx.ID() != null && (ctx.INCREMENTO() != null || ctx.DECREMENTO() != null) && ctx.ASIGN() == null) {
+            byte clase = ctx.INCREMENTO() != null ? ArbolCompacto.INCREMENTO : ArbolCompacto.DECREMENTO;
+            destino.agregar(hoja(clase, texto(ctx.ID().getSymbol()), tipoDestino(ctx)));
+        } else if (ctx.ID() != null && ctx.ASIGN() != null && ctx.expresion() != null) {
+            Hijos hijos = new Hijos();
+            hijos.agregar(expresion(ctx.expresion()));
+            destino.agregar(nodo(ArbolCompacto.ASIGNACION, texto(ctx.ID().getSymbol()), -1, tipoDestino(ctx), hijos));
+        }
+    }
+
+    /** @return tipo de la variable asignada en {@code ctx} según {@link Escucha}, o {@code null} */
+    private TipoDato tipoDestino(ParserRuleContext ctx) {
+        return escucha != null ? escucha.getTipo(ctx) : null;
+    }
+
+    private int condicion(CondicionContext ctx) {
+        return expresion(ctx != null ? ctx.expresion() : null);
+    }
+
+    /**
+     * Construye una expresión (o una llamada, o un argumento) en postorden con
+     * pilas explícitas: primero los operandos, de izquierda a derecha, y luego el
+     * nodo que los combina.
+     */
+    private int expresion(ParserRuleContext raiz) {
+        if (raiz == null) {
+            return hoja(ArbolCompacto.VACIA, -1, null);
+        }
+        Deque<ParserRuleContext> pendientes = new ArrayDeque<>();
+        Deque<Boolean> expandidos = new ArrayDeque<>();
+        // Cantidad de operandos de cada nodo expandido y aún no reducido
+        Hijos cantidades = new Hijos();
+        Hijos valores = new Hijos();
+        pendientes.push(raiz);
+        expandidos.push(false);
+        while (!pendientes.isEmpty()) {
+            ParserRuleContext ctx = pendientes.pop();
+            if (!expandidos.pop()) {
+                pendientes.push(ctx);
+                expandidos.push(true);
+                List<? extends ParserRuleContext> operandos = operandos(ctx);
+                cantidades.agregar(operandos.size());
+                for (int i = operandos.size() - 1; i >= 0; i--) {
+                    pendientes.push(operandos.get(i));
+                    expandidos.push(false);
+                }
+                continue;
+            }
+            int cantidad = cantidades.datos[--cantidades.cantidad];
+            Hijos hijos = new Hijos();
+            hijos.datos = Arrays.copyOfRange(valores.datos, valores.cantidad - cantidad,
+                    valores.cantidad - cantidad + Math.max(cantidad, 1));
+            hijos.cantidad = cantidad;
+            valores.cantidad -= cantidad;
+            valores.agregar(reducir(ctx, hijos));
+        }
+        return valores.datos[0];
+    }
+
+    /** Subexpresiones (o argumentos) de {@code ctx}, en el orden en que se evalúan. */
+    private static List<? extends ParserRuleContext> operandos(ParserRuleContext ctx) {
+        if (ctx instanceof ExpresionContext) {
+            ExpresionContext e = (ExpresionContext) ctx;
+            if (e.getChildCount() == 3 || esUnario(e)) {
+                return e.expresion();
+            }
+            FactorContext f = e.factor();
+            if (f == null) {
+                return Collections.emptyList();
+            }
+            if (f.expresion() != null && (f.PA() != null || esElemento(f))) {
+                return Collections.singletonList(f.expresion());
+            }
+            if (f.llamada_expr() != null) {
+                return operandos(f.llamada_expr());
+            }
+            return Collections.emptyList();
+        }
+        if (ctx instanceof Llamada_exprContext) {
+            FactorfuncContext args = ((Llamada_exprContext) ctx).factorfunc();
+            if (args == null || args.argumento() == null) {
+                return Collections.emptyList();
+            }
+            // Un argumento vacío (f()) o incompleto por un error de sintaxis no cuenta, como en Escucha
+            List<ArgumentoContext> lista = new java.util.ArrayList<>();
+            if (completo(args.argumento())) {
+                lista.add(args.argumento());
+            }
+            if (args.listafactfunc() != null) {
+                for (ArgumentoContext a : args.listafactfunc().argumento()) {
+                    if (completo(a)) {
+                        lista.add(a);
+                    }
+                }
+            }
+            return lista;
+        }
+        if (ctx instanceof ArgumentoContext && ((ArgumentoContext) ctx).expresion() != null) {
+            return Collections.singletonList(((ArgumentoContext) ctx).expresion());
+        }
+        return Collections.emptyList();
+    }
+
+    /** @return si el argumento tiene un valor: un número, un identificador o una expresión */
+    private static boolean completo(ArgumentoContext a) {
+        return a.NUMERO() != null || a.ID() != null || a.expresion() != null;
+    }
+
+    /** {@code -expr} o {@code !expr}: un operador seguido de una expresión. */
+    private static boolean esUnario(ExpresionContext ctx) {
+        if (ctx.getChildCount() != 2 || !(ctx.getChild(0).getPayload() instanceof Token)) {
+            return false;
+        }
+        int tipo = ((Token) ctx.getChild(0).getPayload()).getType();
+        return tipo == compiladoresParser.RESTA || tipo == compiladoresParser.T__0;
+    }
+
+    private static boolean esElemento(FactorContext f) {
+        return f.ID() != null && f.getChildCount() >= 4 && f.CA() != null;
+    }
+
+    /** Crea el nodo de {@code ctx} con sus operandos ya construidos. */
+    private int reducir(ParserRuleContext ctx, Hijos hijos) {
+        if (ctx instanceof ArgumentoContext) {
+            ArgumentoContext a = (ArgumentoContext) ctx;
+            if (a.NUMERO() != null) {
+                return hoja(ArbolCompacto.NUMERO, texto(a.NUMERO().getSymbol()), tipoNumero(a.NUMERO().getText()));
+            }
+            if (a.ID() != null) {
+                return hoja(ArbolCompacto.VARIABLE, texto(a.ID().getSymbol()), escucha != null ? escucha.getTipo(a) : null);
+            }
+            return hijos.cantidad == 1 ? hijos.datos[0] : hoja(ArbolCompacto.VACIA, -1, null);
+        }
+        if (ctx instanceof Llamada_exprContext) {
+            return llamada((Llamada_exprContext) ctx, hijos);
+        }
+
+        ExpresionContext e = (ExpresionContext) ctx;
+        TipoDato tipo = escucha != null ? escucha.getTipo(e) : null;
+        if (e.getChildCount() == 3) {
+            while (hijos.cantidad < 2) {
+                hijos.agregar(hoja(ArbolCompacto.VACIA, -1, null));
+            }
+            return nodo(ArbolCompacto.BINARIA, -1, operador(e), tipo, hijos);
+        }
+        if (esUnario(e)) {
+            if (hijos.cantidad == 0) {
+                hijos.agregar(hoja(ArbolCompacto.VACIA, -1, null));
+            }
+            byte clase = e.RESTA() != null ? ArbolCompacto.NEGATIVO : ArbolCompacto.NEGACION;
+            return nodo(clase, -1, -1, tipo, hijos);
+        }
+
+        FactorContext f = e.factor();
+        if (f == null) {
+            return hoja(ArbolCompacto.VACIA, -1, null);
+        }
+        if (f.NUMERO() != null) return hoja(ArbolCompacto.NUMERO, texto(f.NUMERO().getSymbol()), tipo);
+        if (f.CHAR_CONST() != null) return hoja(ArbolCompacto.CARACTER, texto(f.CHAR_CONST().getSymbol()), tipo);
+        if (f.TRUE() != null) return hoja(ArbolCompacto.VERDADERO, -1, tipo);
+        if (f.FALSE() != null) return hoja(ArbolCompacto.FALSO, -1, tipo);
+        if (esElemento(f)) {
+            if (hijos.cantidad == 0) {
+                hijos.agregar(hoja(ArbolCompacto.VACIA, -1, null));
+            }
+            return nodo(ArbolCompacto.ELEMENTO, texto(f.ID().getSymbol()), -1, tipo, hijos);
+        }
+        if (f.ID() != null) return hoja(ArbolCompacto.VARIABLE, texto(f.ID().getSymbol()), tipo);
+        if (f.llamada_expr() != null) return llamada(f.llamada_expr(), hijos);
+        if (f.expresion() != null) {
+            return hijos.datos[0]; // paréntesis: el nodo es la expresión interior
+        }
+        return hoja(ArbolCompacto.VACIA, -1, null);
+    }
+
+    private int llamada(Llamada_exprContext ctx, Hijos argumentos) {
+        TipoDato tipo = escucha != null ? escucha.getTipo(ctx) : null;
+        int nombre = ctx.ID() != null ? texto(ctx.ID().getSymbol()) : nombres.id("");
+        return nodo(ArbolCompacto.LLAMADA, nombre, -1, tipo, argumentos);
+    }
+
+    private static int operador(ExpresionContext ctx) {
+        Token op = ctx.getChildCount() > 1 && ctx.getChild(1).getPayload() instanceof Token
+                ? (Token) ctx.getChild(1).getPayload() : null;
+        if (op == null) {
+            return -1;
+        }
+        switch (op.getType()) {
+            case compiladoresParser.MULT: return 0;
+            case compiladoresParser.DIV: return 1;
+            case compiladoresParser.MOD: return 2;
+            case compiladoresParser.SUMA: return 3;
+            case compiladoresParser.RESTA: return 4;
+            case compiladoresParser.MAYOR: return 5;
+            case compiladoresParser.MENOR: return 6;
+            case compiladoresParser.MAYORIGUAL: return 7;
+            case compiladoresParser.MENORIGUAL: return 8;
+            case compiladoresParser.EQ: return 9;
+            case compiladoresParser.UEQ: return 10;
+            case compiladoresParser.AND: return 11;
+            case compiladoresParser.OR: return 12;
+            default: return -1;
+        }
+    }
+
+    private static TipoDato tipoNumero(String lexema) {
+        return lexema.contains(".") ? TipoDato.DOUBLE : TipoDato.INT;
+    }
+}
@@ -0,0 +1,39 @@
+package compiladores;
+
+import org.antlr.v4.runtime.ParserRuleContext;
+
+/**
+ * Clase base de todos los contextos que crea {@code compiladoresParser}
+ * (opción {@code contextSuperClass} de la gramática).
+ * <p>
+ * Agrega un número denso por nodo que {@link TiposPorNodo} asigna en orden de
+ * creación. Con él los datos por nodo (por ejemplo, el tipo inferido de una
+ * expresión) se guardan en arreglos primitivos indexados por número en lugar de
+ * mapas por identidad.
+ * </p>
+ * <p>
+ * También lleva el estado de {@link FiltroDiagnosticos}: dónde empieza el primer
+ * error de sintaxis del subárbol y cuántos mensajes informó como región.
+ * </p>
+ */
+public class ContextoNumerado extends ParserRuleContext {
+
+    /** Número del nodo en su compilación, o {@code -1} si todavía no se le asignó. */
+    int numero = -1;
+    /**
+     * Índice del primer token con un error de sintaxis en este subárbol, o
+     * {@link Integer#MAX_VALUE} si no hubo ninguno.
+     */
+    int primerError = Integer.MAX_VALUE;
+    /** Errores semánticos informados con este nodo como región ({@link FiltroDiagnosticos}). */
+    byte semanticos;
+    /** Errores de sintaxis informados con este nodo como región. */
+    byte sintacticos;
+
+    public ContextoNumerado() {
+    }
+
+    public ContextoNumerado(ParserRuleContext padre, int estadoInvocador) {
+        super(padre, estadoInvocador);
+    }
+}
@@ -0,0 +1,55 @@
+package compiladores;
+
+import org.antlr.v4.runtime.Parser;
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.tree.ErrorNode;
+import org.antlr.v4.runtime.tree.ParseTreeListener;
+import org.antlr.v4.runtime.tree.TerminalNode;
+
+/**
+ * Listener del parser que corta el parsing al llegar al límite de errores
+ * ({@link Reportador#setLimiteErrores(long)}).
+ * <p>
+ * Se conecta antes que los demás listeners. En el primer evento después de
+ * alcanzar el límite desconecta todos los listeners del parser y lanza
+ * {@link Reportador.LimiteErrores}: así las reglas que se abandonan no
+ * disparan sus {@code exit} sobre contextos a medio construir.
+ * </p>
+ */
+final class CorteErrores implements ParseTreeListener {
+
+    private final Parser parser;
+    private final Reportador reportador;
+
+    CorteErrores(Parser parser, Reportador reportador) {
+        this.parser = parser;
+        this.reportador = reportador;
+    }
+
+    private void verificar() {
+        if (reportador.limiteAlcanzado()) {
+            parser.removeParseListeners();
+            reportador.verificarLimite();
+        }
+    }
+
+    @Override
+    public void enterEveryRule(ParserRuleContext ctx) {
+        verificar();
+    }
+
+    @Override
+    public void exitEveryRule(ParserRuleContext ctx) {
+        verificar();
+    }
+
+    @Override
+    public void visitTerminal(TerminalNode node) {
+        verificar();
+    }
+
+    @Override
+    public void visitErrorNode(ErrorNode node) {
+        verificar();
+    }
+}
@@ -2,10 +2,11 @@ package compiladores;
 
 import org.antlr.v4.runtime.ParserRuleContext;
 import org.antlr.v4.runtime.tree.ErrorNode;
+import org.antlr.v4.runtime.tree.ParseTree;
 import org.antlr.v4.runtime.tree.TerminalNode;
-import org.antlr.v4.runtime.tree.ParseTreeProperty;
 import org.antlr.v4.runtime.Token;
 
+import compiladores.compiladoresParser.ArgumentoContext;
 import compiladores.compiladoresParser.AsignacionContext;
 import compiladores.compiladoresParser.BloqueContext;
 import compiladores.compiladoresParser.DeclaracionContext;
@@ -18,16 +19,16 @@ import compiladores.compiladoresParser.FactorContext;
 import compiladores.compiladoresParser.FactorfuncContext;
 import compiladores.compiladoresParser.FinforContext;
 import compiladores.compiladoresParser.IdfuncContext;
-import compiladores.compiladoresParser.ListaidfuncContext;
-import compiladores.compiladoresParser.ListafactfuncContext;
 import compiladores.compiladoresParser.LlamadafuncContext;
 import compiladores.compiladoresParser.Llamada_exprContext;
 import compiladores.compiladoresParser.ExpresionContext;
 import compiladores.compiladoresParser.IreturnContext;
+import compiladores.compiladoresParser.ParametroContext;
 import compiladores.compiladoresParser.ProgramaContext;
 import compiladores.compiladoresParser.PrototipofuncContext;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.List;
-import java.util.stream.Collectors;
 
 /**
  * Implementación del patrón Listener de ANTLR4 para análisis semántico del compilador.
@@ -57,12 +58,12 @@ public class Escucha extends compiladoresBaseListener {
      * Contador de nodos visitados durante el recorrido del árbol sintáctico.
      * Incluye todos los nodos de reglas gramaticales (no terminales).
      */
-    private Integer nodos = 0;
+    private int nodos = 0;
     
     /**
      * Contador de tokens (símbolos terminales) encontrados durante el parsing.
      */
-    private Integer tokens = 0;
+    private int tokens = 0;
     
     /**
      * Contador de errores (sintácticos y semánticos) detectados durante la compilación.
@@ -70,28 +71,172 @@ public class Escucha extends compiladoresBaseListener {
     private Integer errors = 0;
     
     /**
-     * Instancia única de la tabla de símbolos para gestionar identificadores.
-     * Utiliza el patrón Singleton obtenido mediante {@link TablaSimbolos#getInstancia()}.
+     * Tabla de símbolos para gestionar identificadores. Por defecto es la
+     * instancia única obtenida mediante {@link TablaSimbolos#getInstancia()}.
      */
-    private TablaSimbolos tabla = TablaSimbolos.getInstancia();
+    private final TablaSimbolos tabla;
 
     /**
      * Reportador centralizado de mensajes (errores, warnings, información).
      */
-    private final Reportador reportador = Reportador.getInstancia();
+    private final Reportador reportador;
+
+    /** Trazas de depuración del listener. */
+    private final Trazas trazas;
+    private final boolean trazaDetalle;
 
     /** Tipo de función actualmente en análisis, para validar retornos si se requiere. */
     private TipoDato tipoFuncionActual = null;
     /** Indica si estamos recorriendo la definición (con cuerpo) de una función. */
     private boolean enDeclaracionFuncion = false;
-    /** Tipos inferidos por nodo de expresión/factor. */
-    private final ParseTreeProperty<TipoDato> tipos = new ParseTreeProperty<>();
+    /** Tipos inferidos de expresiones, factores y llamadas, por número de nodo. */
+    private final TiposPorNodo tipos;
+    /** Tipos de los argumentos de la llamada que se está validando; se reutiliza. */
+    private byte[] tiposArgumentos = new byte[8];
+    /**
+     * Símbolos ya informados como no declarados fuera de las funciones y en la
+     * función actual: la falta de una declaración se informa una vez por lugar.
+     */
+    private final BitSet noDeclaradosGlobal = new BitSet();
+    private final BitSet noDeclaradosFuncion = new BitSet();
 
     /** Profundidad actual de estructuras repetitivas para validar break/continue. */
     private int profundidadBucles = 0;
     /** Marca si se encontró al menos un return en la función actual. */
     private boolean retornoEncontrado = false;
 
+    /**
+     * Crea el listener sobre la tabla de símbolos y el reportador globales.
+     */
+    public Escucha() {
+        this(TablaSimbolos.getInstancia(), Reportador.getInstancia(), Trazas.directas(System.out));
+    }
+
+    /**
+     * Crea el listener sobre una tabla y un reportador propios de una compilación.
+     *
+     * @param tabla tabla de símbolos de la compilación
+     * @param reportador reportador de mensajes de la compilación
+     * @param trazas trazas de la compilación (categoría {@link Trazas.Categoria#PARSER})
+     */
+    public Escucha(TablaSimbolos tabla, Reportador reportador, Trazas trazas) {
+        this(tabla, reportador, trazas, new TiposPorNodo());
+    }
+
+    /**
+     * Crea el listener guardando los tipos inferidos en un almacén compartido,
+     * por ejemplo con los listeners que analizan aparte el cuerpo de cada función
+     * ({@link AnalisisSemantico}).
+     *
+     * @param tabla tabla de símbolos de la compilación
+     * @param reportador reportador de mensajes de la compilación
+     * @param trazas trazas de la compilación (categoría {@link Trazas.Categoria#PARSER})
+     * @param tipos tipos inferidos por nodo
+     */
+    Escucha(TablaSimbolos tabla, Reportador reportador, Trazas trazas, TiposPorNodo tipos) {
+        this.tipos = tipos;
+        this.tabla = tabla;
+        this.reportador = reportador;
+        this.trazas = trazas;
+        this.trazaDetalle = trazas.activa(Trazas.Categoria.PARSER, Trazas.Nivel.DETALLE);
+    }
+
+    /**
+     * Tipo inferido para una expresión, factor o llamada ya recorrida.
+     *
+     * @param nodo nodo del árbol sintáctico
+     * @return tipo inferido, o {@code null} si no se pudo determinar
+     */
+    public TipoDato getTipo(ParseTree nodo) {
+        return nodo instanceof ContextoNumerado ? tipos.tipo((ContextoNumerado) nodo) : null;
+    }
+
+    /**
+     * Olvida los tipos inferidos hasta ahora. La compilación por partes lo llama
+     * al terminar cada {@code toplevel}, cuyo subárbol ya no se vuelve a consultar.
+     */
+    void liberarTipos() {
+        tipos.liberar();
+    }
+
+    private TipoDato tipo(ContextoNumerado nodo) {
+        return tipos.tipo(nodo);
+    }
+
+    private void ponerTipo(ContextoNumerado nodo, TipoDato tipo) {
+        tipos.poner(nodo, tipo);
+    }
+
+    /** @return si {@code nodo} depende de un error ya informado ({@link TiposPorNodo#erroneo(ContextoNumerado)}) */
+    private boolean erroneo(ContextoNumerado nodo) {
+        return nodo != null && tipos.erroneo(nodo);
+    }
+
+    /** Informa un error semántico al comienzo de {@code ctx}. */
+    private boolean error(ParserRuleContext ctx, String texto) {
+        return error(reportador, ctx, texto, ctx.getStart().getLine(), ctx.getStart().getCharPositionInLine());
+    }
+
+    /**
+     * Cuenta un error semántico sobre {@code ctx} y lo informa en {@code destino}
+     * salvo que lo descarte {@link FiltroDiagnosticos}.
+     *
+     * @return si se informó
+     */
+    private boolean error(Reportador destino, ParserRuleContext ctx, String texto, int linea, int columna) {
+        errors++;
+        if (!FiltroDiagnosticos.admitirSemantico(destino, ctx)) {
+            return false;
+        }
+        destino.error(texto, linea, columna);
+        return true;
+    }
+
+    /**
+     * Informa que el identificador {@code id} no está declarado solo la primera
+     * vez en la función actual (o fuera de las funciones): los usos siguientes
+     * son consecuencia de la misma declaración faltante.
+     */
+    private void errorNoDeclarado(ParserRuleContext ctx, TerminalNode id, int linea, int columna) {
+        BitSet informados = enDeclaracionFuncion ? noDeclaradosFuncion : noDeclaradosGlobal;
+        int s = tabla.simbolo(id.getSymbol());
+        if (s >= 0 && informados.get(s)) {
+            return;
+        }
+        if (error(reportador, ctx, "Error semantico: Uso de un identificador no declarado", linea, columna) && s >= 0) {
+            informados.set(s);
+        }
+    }
+
+    private void errorNoDeclarado(ParserRuleContext ctx, TerminalNode id) {
+        errorNoDeclarado(ctx, id, ctx.getStart().getLine(), ctx.getStart().getCharPositionInLine());
+    }
+
+    /**
+     * Prepara este listener para recorrer solo el bloque de una función cuyo
+     * encabezado ya procesó otro listener ({@link AnalisisSemantico}).
+     *
+     * @param tipoFuncion tipo de retorno de la función
+     */
+    void prepararCuerpo(TipoDato tipoFuncion) {
+        tipoFuncionActual = tipoFuncion;
+        enDeclaracionFuncion = true;
+        retornoEncontrado = false;
+        profundidadBucles = 0;
+        noDeclaradosFuncion.clear();
+    }
+
+    /** @return tipo de retorno de la función que se está recorriendo, o {@code null} */
+    TipoDato getTipoFuncionActual() {
+        return tipoFuncionActual;
+    }
+
+    /** Suma los nodos y tokens que recorrió otro listener de la misma compilación. */
+    void sumarConteos(Escucha otro) {
+        nodos += otro.nodos;
+        tokens += otro.tokens;
+    }
+
     /** Devuelve true si el tipo es numérico (no void). */
     private boolean esTipoNumerico(TipoDato t) {
         return t == TipoDato.INT || t == TipoDato.DOUBLE || t == TipoDato.CHAR || t == TipoDato.BOOL;
@@ -145,35 +290,6 @@ public class Escucha extends compiladoresBaseListener {
         return TipoDato.INT;
     }
 
-    private String toLexema(TipoDato tipo) {
-        if (tipo == null) {
-            return "-";
-        }
-        switch (tipo) {
-            case INT: return "int";
-            case DOUBLE: return "double";
-            case CHAR: return "char";
-            case BOOL: return "bool";
-            case VOID: return "void";
-            default: return tipo.toString().toLowerCase();
-        }
-    }
-
-    private String formatearFirma(java.util.List<TipoDato> tiposArgs) {
-        if (tiposArgs == null || tiposArgs.isEmpty()) {
-            return "()";
-        }
-        return "(" + tiposArgs.stream().map(this::toLexema).collect(Collectors.joining(", ")) + ")";
-    }
-
-    private String detalleFuncion(TipoDato retorno, java.util.List<TipoDato> firma, String etiqueta) {
-        String detalle = "retorno=" + toLexema(retorno) + " args=" + formatearFirma(firma);
-        if (etiqueta != null && !etiqueta.isEmpty()) {
-            detalle += " " + etiqueta;
-        }
-        return detalle;
-    }
-
     /** Infere tipo para literales booleanos. */
     private TipoDato tipoBooleano(String lexema) {
         if (lexema == null) return null;
@@ -271,8 +387,8 @@ public class Escucha extends compiladoresBaseListener {
         // Validación de llaves correctas al finalizar un bloque
         Token lastToken = ctx.getStop();
         if (lastToken == null || !lastToken.getText().equals("}")) {
-            reportador.error("Error sintactico: se esperaba '}' al final del bloque", ctx.getStop().getLine(), ctx.getStop().getCharPositionInLine());
-            errors++;
+            error(reportador, ctx, "Error sintactico: se esperaba '}' al final del bloque",
+                    ctx.getStop().getLine(), ctx.getStop().getCharPositionInLine());
         }
         tabla.delContexto();
     }
@@ -290,14 +406,14 @@ public class Escucha extends compiladoresBaseListener {
         tabla.addContexto();
         enDeclaracionFuncion = true;
         retornoEncontrado = false;
+        noDeclaradosFuncion.clear();
 
         // Tipo y nombre de la función (primer token del contexto).
         String tipoFuncLexema = ctx.getStart() != null ? ctx.getStart().getText() : null;
         tipoFuncionActual = resolverTipo(tipoFuncLexema);
 
         if (tipoFuncionActual == null) {
-            reportador.error("Error semantico: Tipo de retorno desconocido", ctx.getStart().getLine(), ctx.getStart().getCharPositionInLine());
-            errors++;
+            error(ctx, "Error semantico: Tipo de retorno desconocido");
             tipoFuncionActual = TipoDato.INT; // Fallback para evitar cascada de errores
         }
 
@@ -317,17 +433,18 @@ public class Escucha extends compiladoresBaseListener {
                 f.setTipoDato(tipoFuncionActual);
                 f.setInicializado(true);
                 f.setUsado(false);
-                f.setArgumentos(extraerTiposParametros(ctx.idfunc()));
+                f.setFirma(tabla.firma(extraerTiposParametros(ctx.idfunc())));
                 f.setLinea(ctx.getStart().getLine());
                 f.setColumna(ctx.getStart().getCharPositionInLine());
-                f.setCategoria("funcion");
-                f.setAmbito("global");
-                f.setDetalles(detalleFuncion(tipoFuncionActual, f.getArgumentos(), "definicion"));
+                f.setCategoria(Id.Categoria.FUNCION);
+                f.setAmbito(Id.Ambito.GLOBAL);
                 tabla.addSimboloGlobal(nombreFunc, f);
             }
         }
 
-        System.out.println("[Escucha] enterDeclaracionfunc tipo=" + tipoFuncionActual + " nombre=" + nombreFunc);
+        if (trazaDetalle) {
+            trazas.linea("[Escucha] enterDeclaracionfunc tipo=" + tipoFuncionActual + " nombre=" + nombreFunc);
+        }
     }
 
     /**
@@ -372,18 +489,24 @@ public class Escucha extends compiladoresBaseListener {
             return tipos;
         }
 
-        if (idfunc.tipo() != null) {
-            tipos.add(resolverTipo(idfunc.tipo().getText()));
+        for (ParametroContext p : parametros(idfunc)) {
+            if (p.tipo() != null) {
+                tipos.add(resolverTipo(p.tipo().getText()));
+            }
         }
+        return tipos;
+    }
 
-        ListaidfuncContext lista = idfunc.listaidfunc();
-        while (lista != null && lista.getChildCount() > 0) {
-            if (lista.tipo() != null) {
-                tipos.add(resolverTipo(lista.tipo().getText()));
+    /** Parámetros de una lista {@code idfunc}, en orden (vacía si no hay parámetros). */
+    private static java.util.List<ParametroContext> parametros(IdfuncContext idfunc) {
+        java.util.List<ParametroContext> lista = new java.util.ArrayList<>();
+        if (idfunc.parametro() != null) {
+            lista.add(idfunc.parametro());
+            if (idfunc.listaidfunc() != null) {
+                lista.addAll(idfunc.listaidfunc().parametro());
             }
-            lista = lista.listaidfunc();
         }
-        return tipos;
+        return lista;
     }
 
     private boolean firmasCompatibles(Funcion funcion, TipoDato retorno, java.util.List<TipoDato> firma) {
@@ -415,35 +538,21 @@ public class Escucha extends compiladoresBaseListener {
             return;
         }
 
-        // Caso vacío: sin parámetros (idfunc ::= epsilon).
-        if (idfunc.getChildCount() == 0) {
-            return;
-        }
-
-        // Primer parámetro (variante tipo ID listaidfunc).
-        if (idfunc.tipo() != null && idfunc.ID() != null) {
-            declararParametro(resolverTipo(idfunc.tipo().getText()), idfunc.ID().getText(),
-                    idfunc.getStart().getLine(), idfunc.getStart().getCharPositionInLine());
-        }
-
-        // Parámetros adicionales en listaidfunc.
-        ListaidfuncContext lista = idfunc.listaidfunc();
-        while (lista != null) {
-            if (lista.tipo() != null && lista.ID() != null) {
-                declararParametro(resolverTipo(lista.tipo().getText()), lista.ID().getText(),
-                        lista.getStart().getLine(), lista.getStart().getCharPositionInLine());
+        // Los parámetros sin nombre solo aportan su tipo a la firma.
+        for (ParametroContext p : parametros(idfunc)) {
+            if (p.tipo() != null && p.ID() != null) {
+                declararParametro(p, resolverTipo(p.tipo().getText()), p.ID().getText(),
+                        p.getStart().getLine(), p.getStart().getCharPositionInLine());
             }
-            lista = lista.listaidfunc();
         }
     }
 
     /**
      * Declara un parámetro como variable inicializada en el contexto actual.
      */
-    private void declararParametro(TipoDato tipo, String nombre, int linea, int columna) {
+    private void declararParametro(ParametroContext ctx, TipoDato tipo, String nombre, int linea, int columna) {
         if (tabla.contieneSimboloLocal(nombre)) {
-            reportador.error("Error semantico: Doble declaracion de parametro " + nombre, linea, columna);
-            errors++;
+            error(reportador, ctx, "Error semantico: Doble declaracion de parametro " + nombre, linea, columna);
             return;
         }
         Variable param = new Variable();
@@ -453,75 +562,97 @@ public class Escucha extends compiladoresBaseListener {
         param.setUsado(false);
         param.setLinea(linea);
         param.setColumna(columna);
-        param.setCategoria("parametro");
-        param.setAmbito("parametros");
-        param.setDetalles("parametro de funcion");
+        param.setCategoria(Id.Categoria.PARAMETRO);
+        param.setAmbito(Id.Ambito.PARAMETROS);
         tabla.addSimbolo(nombre, param);
     }
 
-    /** Devuelve la lista de tipos de argumentos en una llamada. */
-    private java.util.List<TipoDato> recolectarTiposArgumentos(FactorfuncContext ctx) {
-        java.util.List<TipoDato> tiposArgs = new java.util.ArrayList<>();
-        if (ctx == null) {
-            return tiposArgs;
+    /**
+     * Deja en {@link #tiposArgumentos} los tipos de los argumentos de una llamada.
+     *
+     * @return cantidad de argumentos
+     */
+    private int recolectarTiposArgumentos(FactorfuncContext ctx) {
+        if (ctx == null || ctx.argumento() == null) {
+            return 0;
         }
-
-        // Primer argumento
-        if (ctx.NUMERO() != null) {
-            tiposArgs.add(tipoNumero(ctx.NUMERO().getText()));
-        } else if (ctx.ID() != null) {
-            Id s = tabla.getSimbolo(ctx.ID().getText());
-            tiposArgs.add(s != null ? s.getTipoDato() : null);
-        } else if (ctx.expresion() != null) {
-            tiposArgs.add(tipos.get(ctx.expresion()));
+        int cantidad = agregarTipoArgumento(0, ctx.argumento());
+        if (ctx.listafactfunc() != null) {
+            for (int i = 0; i < ctx.listafactfunc().getChildCount(); i++) {
+                if (ctx.listafactfunc().getChild(i) instanceof ArgumentoContext) {
+                    cantidad = agregarTipoArgumento(cantidad, (ArgumentoContext) ctx.listafactfunc().getChild(i));
+                }
+            }
         }
+        return cantidad;
+    }
 
-        // Argumentos adicionales
-        ListafactfuncContext lista = ctx.listafactfunc();
-        while (lista != null && lista.getChildCount() > 0) {
-            if (lista.NUMERO() != null) {
-                tiposArgs.add(tipoNumero(lista.NUMERO().getText()));
-            } else if (lista.ID() != null) {
-                Id s = tabla.getSimbolo(lista.ID().getText());
-                tiposArgs.add(s != null ? s.getTipoDato() : null);
-            } else if (lista.expresion() != null) {
-                tiposArgs.add(tipos.get(lista.expresion()));
-            }
-            lista = lista.listafactfunc();
+    /**
+     * Agrega el tipo de {@code arg} en la posición {@code cantidad}; un argumento
+     * incompleto por un error de sintaxis no cuenta, y uno que depende de un error
+     * ya informado queda como {@link TiposPorNodo#ERRONEO}.
+     *
+     * @return cantidad de argumentos después de agregarlo
+     */
+    private int agregarTipoArgumento(int cantidad, ArgumentoContext arg) {
+        TipoDato tipo;
+        boolean erroneo = false;
+        if (arg.NUMERO() != null) {
+            tipo = tipoNumero(arg.NUMERO().getText());
+        } else if (arg.ID() != null) {
+            Id s = tabla.getSimbolo(arg.ID().getText());
+            tipo = s != null ? s.getTipoDato() : null;
+            erroneo = s == null;
+        } else if (arg.expresion() != null) {
+            tipo = tipo(arg.expresion());
+            erroneo = erroneo(arg.expresion());
+        } else {
+            return cantidad;
         }
-        return tiposArgs;
+        if (cantidad == tiposArgumentos.length) {
+            tiposArgumentos = Arrays.copyOf(tiposArgumentos, cantidad * 2);
+        }
+        tiposArgumentos[cantidad] = erroneo ? TiposPorNodo.ERRONEO : TipoDato.codigo(tipo);
+        return cantidad + 1;
     }
 
-    /** Valida la llamada y retorna el tipo de retorno de la función. */
-    private TipoDato validarLlamada(String nombre, FactorfuncContext argsCtx, int linea, int columna) {
-        Id simbolo = tabla.getSimbolo(nombre);
+    /**
+     * Valida la llamada y retorna el tipo de retorno de la función. Si lo llamado
+     * no es una función declarada, {@code ctx} queda como erróneo.
+     */
+    private TipoDato validarLlamada(ContextoNumerado ctx, TerminalNode id, FactorfuncContext argsCtx) {
+        int linea = ctx.getStart().getLine();
+        int columna = ctx.getStart().getCharPositionInLine();
+        Id simbolo = tabla.getSimbolo(id.getText());
         if (simbolo == null) {
-            reportador.error("Error semantico: Uso de un identificador no declarado", linea, columna);
-            errors++;
+            errorNoDeclarado(ctx, id, linea, columna);
+            tipos.ponerErroneo(ctx);
             return null;
         }
-        simbolo.setUsado(true);
+        tabla.marcarUsado(simbolo);
         if (!(simbolo instanceof Funcion)) {
-            reportador.error("Error semantico: Identificador no es funcion", linea, columna);
-            errors++;
+            error(reportador, ctx, "Error semantico: Identificador no es funcion", linea, columna);
+            tipos.ponerErroneo(ctx);
             return simbolo.getTipoDato();
         }
 
         Funcion f = (Funcion) simbolo;
-        java.util.List<TipoDato> tiposArgs = recolectarTiposArgumentos(argsCtx);
+        int cantidadArgs = recolectarTiposArgumentos(argsCtx);
         List<TipoDato> firma = f.getArgumentos();
-        if (firma != null && tiposArgs.size() != firma.size()) {
-            reportador.error("Error semantico: Cantidad de argumentos incompatible con la firma", linea, columna);
-            errors++;
+        if (firma != null && cantidadArgs != firma.size()) {
+            error(reportador, ctx, "Error semantico: Cantidad de argumentos incompatible con la firma", linea, columna);
         }
         if (firma != null) {
-            int limite = Math.min(firma.size(), tiposArgs.size());
+            int limite = Math.min(firma.size(), cantidadArgs);
             for (int i = 0; i < limite; i++) {
+                if (tiposArgumentos[i] == TiposPorNodo.ERRONEO) {
+                    continue;
+                }
                 TipoDato esperado = firma.get(i);
-                TipoDato recibido = tiposArgs.get(i);
+                TipoDato recibido = TipoDato.deCodigo(tiposArgumentos[i]);
                 if (!puedeAsignar(esperado, recibido)) {
-                    reportador.error("Error semantico: Tipo de argumento incompatible en posicion " + (i + 1), linea, columna);
-                    errors++;
+                    error(reportador, ctx, "Error semantico: Tipo de argumento incompatible en posicion " + (i + 1),
+                            linea, columna);
                 }
             }
         }
@@ -552,8 +683,7 @@ public class Escucha extends compiladoresBaseListener {
             Variable nuevaVariable = new Variable();
             TipoDato tipo = resolverTipo(ctx.getChild(0).getText());
             if (tipo == null) {
-                reportador.error("Error semantico: Tipo de dato desconocido", ctx.getStart().getLine(), ctx.getStart().getCharPositionInLine());
-                errors++;
+                error(ctx, "Error semantico: Tipo de dato desconocido");
                 return;
             }
 
@@ -561,10 +691,9 @@ public class Escucha extends compiladoresBaseListener {
             boolean esGlobal = tabla.estaEnContextoGlobal();
             TipoDato tipoInicializacion = null;
             if (hayInicializacion && ctx.inicializacion().expresion() != null) {
-                tipoInicializacion = tipos.get(ctx.inicializacion().expresion());
+                tipoInicializacion = tipo(ctx.inicializacion().expresion());
                 if (tipoInicializacion != null && !puedeAsignar(tipo, tipoInicializacion)) {
-                    reportador.error("Error semantico: Tipo incompatible en inicializacion", ctx.getStart().getLine(), ctx.getStart().getCharPositionInLine());
-                    errors++;
+                    error(ctx, "Error semantico: Tipo incompatible en inicializacion");
                 }
             }
 
@@ -575,13 +704,11 @@ public class Escucha extends compiladoresBaseListener {
             nuevaVariable.setUsado(false);
             nuevaVariable.setLinea(ctx.getStart().getLine());
             nuevaVariable.setColumna(ctx.getStart().getCharPositionInLine());
-            nuevaVariable.setCategoria("variable");
-            nuevaVariable.setAmbito(esGlobal ? "global" : "local");
-            nuevaVariable.setDetalles("inicializado=" + (esGlobal || hayInicializacion));
+            nuevaVariable.setCategoria(Id.Categoria.VARIABLE);
+            nuevaVariable.setAmbito(esGlobal ? Id.Ambito.GLOBAL : Id.Ambito.LOCAL);
             tabla.addSimbolo(nombre, nuevaVariable);
         } else {
-            reportador.error("Error semantico: Doble declaracion del mismo identificador", ctx.getStart().getLine(), ctx.getStart().getCharPositionInLine());
-            errors++;
+            error(ctx, "Error semantico: Doble declaracion del mismo identificador");
         }
     }
     
@@ -609,8 +736,7 @@ public class Escucha extends compiladoresBaseListener {
         java.util.List<TipoDato> firma = extraerTiposParametros(ctx.idfunc());
 
         if (tipoRetorno == null) {
-            reportador.error("Error semantico: Tipo de retorno desconocido", ctx.getStart().getLine(), ctx.getStart().getCharPositionInLine());
-            errors++;
+            error(ctx, "Error semantico: Tipo de retorno desconocido");
             return;
         }
         // Si no existe aún, lo registramos como prototipo
@@ -620,24 +746,21 @@ public class Escucha extends compiladoresBaseListener {
             nuevaFuncion.setTipoDato(tipoRetorno);
             nuevaFuncion.setUsado(false);
             nuevaFuncion.setInicializado(true);
-            nuevaFuncion.setArgumentos(firma);
+            nuevaFuncion.setFirma(tabla.firma(firma));
             nuevaFuncion.setLinea(ctx.getStart().getLine());
             nuevaFuncion.setColumna(ctx.getStart().getCharPositionInLine());
-            nuevaFuncion.setCategoria("prototipo");
-            nuevaFuncion.setAmbito("global");
-            nuevaFuncion.setDetalles(detalleFuncion(tipoRetorno, firma, "prototipo"));
+            nuevaFuncion.setCategoria(Id.Categoria.PROTOTIPO);
+            nuevaFuncion.setAmbito(Id.Ambito.GLOBAL);
             tabla.addSimboloGlobal(nombre, nuevaFuncion);
         } else if (existente instanceof Funcion) {
             // Si ya hay una función con el mismo nombre, verificamos compatibilidad básica de tipo
             if (!firmasCompatibles((Funcion) existente, tipoRetorno, firma)) {
-                reportador.error("Error semantico: Prototipo incompatible con la funcion existente", ctx.getStart().getLine(), ctx.getStart().getCharPositionInLine());
-                errors++;
+                error(ctx, "Error semantico: Prototipo incompatible con la funcion existente");
             }
             // No consideramos error un prototipo repetido compatible
         } else {
             // Existe un símbolo no función con el mismo nombre
-            reportador.error("Error semantico: Identificador ya usado con otro proposito", ctx.getStart().getLine(), ctx.getStart().getCharPositionInLine());
-            errors++;
+            error(ctx, "Error semantico: Identificador ya usado con otro proposito");
         }
     }
 
@@ -669,8 +792,7 @@ public class Escucha extends compiladoresBaseListener {
     public void exitIbreak(IbreakContext ctx) {
         super.exitIbreak(ctx);
         if (profundidadBucles <= 0) {
-            reportador.error("Error semantico: break fuera de un bucle", ctx.getStart().getLine(), ctx.getStart().getCharPositionInLine());
-            errors++;
+            error(ctx, "Error semantico: break fuera de un bucle");
         }
     }
 
@@ -678,8 +800,7 @@ public class Escucha extends compiladoresBaseListener {
     public void exitIcontinue(IcontinueContext ctx) {
         super.exitIcontinue(ctx);
         if (profundidadBucles <= 0) {
-            reportador.error("Error semantico: continue fuera de un bucle", ctx.getStart().getLine(), ctx.getStart().getCharPositionInLine());
-            errors++;
+            error(ctx, "Error semantico: continue fuera de un bucle");
         }
     }
 
@@ -710,8 +831,7 @@ public class Escucha extends compiladoresBaseListener {
             java.util.List<TipoDato> firma = extraerTiposParametros(ctx.idfunc());
 
             if (tipoRetorno == null) {
-                reportador.error("Error semantico: Tipo de retorno desconocido", ctx.getStart().getLine(), ctx.getStart().getCharPositionInLine());
-                errors++;
+                error(ctx, "Error semantico: Tipo de retorno desconocido");
                 return;
             }
             // se permite double en parámetros
@@ -723,32 +843,25 @@ public class Escucha extends compiladoresBaseListener {
                 nuevaFuncion.setTipoDato(tipoRetorno);
                 nuevaFuncion.setUsado(false);
                 nuevaFuncion.setInicializado(true);
-                nuevaFuncion.setArgumentos(firma);
+                nuevaFuncion.setFirma(tabla.firma(firma));
                 nuevaFuncion.setLinea(ctx.getStart().getLine());
                 nuevaFuncion.setColumna(ctx.getStart().getCharPositionInLine());
-                nuevaFuncion.setCategoria("funcion");
-                nuevaFuncion.setAmbito("global");
-                nuevaFuncion.setDetalles(detalleFuncion(tipoRetorno, firma, "definicion"));
+                nuevaFuncion.setCategoria(Id.Categoria.FUNCION);
+                nuevaFuncion.setAmbito(Id.Ambito.GLOBAL);
                 tabla.addSimboloGlobal(nombre, nuevaFuncion);
             } else if (existente instanceof Funcion) {
                 // Ya había un prototipo; verificamos que el tipo sea compatible
                 if (!firmasCompatibles((Funcion) existente, tipoRetorno, firma)) {
-                    reportador.error("Error semantico: Tipo de retorno o firma distinta al prototipo", ctx.getStart().getLine(), ctx.getStart().getCharPositionInLine());
-                    errors++;
+                    error(ctx, "Error semantico: Tipo de retorno o firma distinta al prototipo");
                 } else if (((Funcion) existente).getArgumentos() == null) {
-                    ((Funcion) existente).setArgumentos(firma);
+                    ((Funcion) existente).setFirma(tabla.firma(firma));
                 }
             } else {
-                reportador.error("Error semantico: Identificador ya usado como variable", ctx.getStart().getLine(), ctx.getStart().getCharPositionInLine());
-                errors++;
+                error(ctx, "Error semantico: Identificador ya usado como variable");
             }
         }
 
-        // Validar que funciones no void tengan al menos un return
-        if (tipoFuncionActual != null && tipoFuncionActual != TipoDato.VOID && !retornoEncontrado) {
-            reportador.error("Error semantico: Funcion sin sentencia return", ctx.getStop().getLine(), ctx.getStop().getCharPositionInLine());
-            errors++;
-        }
+        verificarRetorno(ctx);
 
         // Al salir de la función cerramos el contexto de parámetros/variables locales
         tabla.delContexto();
@@ -757,6 +870,19 @@ public class Escucha extends compiladoresBaseListener {
         retornoEncontrado = false;
     }
 
+    /** Valida que una función no void tenga al menos un return. */
+    void verificarRetorno(DeclaracionfuncContext ctx) {
+        verificarRetorno(ctx, reportador);
+    }
+
+    /** Como {@link #verificarRetorno(DeclaracionfuncContext)}, informando en {@code destino}. */
+    void verificarRetorno(DeclaracionfuncContext ctx, Reportador destino) {
+        if (tipoFuncionActual != null && tipoFuncionActual != TipoDato.VOID && !retornoEncontrado) {
+            error(destino, ctx, "Error semantico: Funcion sin sentencia return",
+                    ctx.getStop().getLine(), ctx.getStop().getCharPositionInLine());
+        }
+    }
+
     /**
      * Se invoca al salir de la regla idfunc y registra parámetros únicamente
      * cuando se está dentro de una declaración de función (no en prototipos).
@@ -796,24 +922,24 @@ public class Escucha extends compiladoresBaseListener {
             if (simbolo == null) {
                 Id simboloGlobal = tabla.getSimboloGlobal(ctx.ID().getText());
                 if (simboloGlobal instanceof Funcion) {
-                    reportador.error("Error semantico: No se puede asignar a una funcion", ctx.getStart().getLine(), ctx.getStart().getCharPositionInLine());
-                    errors++;
+                    error(ctx, "Error semantico: No se puede asignar a una funcion");
                     return;
                 }
                 // La variable destino debe estar declarada previamente
-                reportador.error("Error semantico: Uso de un identificador no declarado", ctx.getStart().getLine(), ctx.getStart().getCharPositionInLine());
-                errors++;
+                errorNoDeclarado(ctx, ctx.ID());
             } else if (simbolo instanceof Funcion) {
-                reportador.error("Error semantico: No se puede asignar a una funcion", ctx.getStart().getLine(), ctx.getStart().getCharPositionInLine());
-                errors++;
+                error(ctx, "Error semantico: No se puede asignar a una funcion");
             } else {
                 TipoDato tipoDestino = simbolo.getTipoDato();
-                TipoDato tipoOrigen = tipos.get(ctx.expresion());
-                if (tipoOrigen == null || tipoDestino == null || !puedeAsignar(tipoDestino, tipoOrigen)) {
-                    reportador.error("Error semantico: Tipo incompatible en asignacion", ctx.getStart().getLine(), ctx.getStart().getCharPositionInLine());
-                    errors++;
+                // El generador de código convierte el valor a este tipo
+                ponerTipo(ctx, tipoDestino);
+                TipoDato tipoOrigen = tipo(ctx.expresion());
+                if (erroneo(ctx.expresion())) {
+                    // El error de la expresión ya se informó
+                } else if (tipoOrigen == null || tipoDestino == null || !puedeAsignar(tipoDestino, tipoOrigen)) {
+                    error(ctx, "Error semantico: Tipo incompatible en asignacion");
                 }
-                simbolo.setInicializado(true);
+                tabla.marcarInicializado(simbolo);
             }
         }
     }
@@ -824,54 +950,63 @@ public class Escucha extends compiladoresBaseListener {
 
         // Caso base: factor
         if (ctx.factor() != null) {
-            tipos.put(ctx, tipos.get(ctx.factor()));
+            if (erroneo(ctx.factor())) {
+                tipos.ponerErroneo(ctx);
+            } else {
+                ponerTipo(ctx, tipo(ctx.factor()));
+            }
+            return;
+        }
+
+        // Un operando que depende de un error ya informado no genera más errores
+        if (erroneo(ctx.expresion(0)) || erroneo(ctx.expresion(1))) {
+            tipos.ponerErroneo(ctx);
             return;
         }
 
         // Unarios: -expr o !expr
-        if (ctx.getChildCount() == 2 && ctx.expresion().size() == 1) {
-            TipoDato t = tipos.get(ctx.expresion(0));
+        if (ctx.getChildCount() == 2 && ctx.expresion(0) != null && ctx.expresion(1) == null) {
+            TipoDato t = tipo(ctx.expresion(0));
             if (!esTipoNumerico(t)) {
-                reportador.error("Error semantico: Operador unario aplicado a tipo no numerico", ctx.getStart().getLine(), ctx.getStart().getCharPositionInLine());
-                errors++;
+                error(ctx, "Error semantico: Operador unario aplicado a tipo no numerico");
             }
-            tipos.put(ctx, TipoDato.INT); // boolean modelado como int
+            ponerTipo(ctx, TipoDato.INT); // boolean modelado como int
             return;
         }
 
         // Binarios
-        if (ctx.expresion().size() == 2) {
-            TipoDato izq = tipos.get(ctx.expresion(0));
-            TipoDato der = tipos.get(ctx.expresion(1));
-            String op = ctx.getChild(1).getText();
-
-            if (op.equals("&&") || op.equals("||")) {
+        if (ctx.expresion(1) != null && ctx.expresion(2) == null) {
+            TipoDato izq = tipo(ctx.expresion(0));
+            TipoDato der = tipo(ctx.expresion(1));
+            // Por tipo de token: el texto de los operadores no está internado
+            int op = ctx.getChild(1) instanceof TerminalNode
+                    ? ((TerminalNode) ctx.getChild(1)).getSymbol().getType() : Token.INVALID_TYPE;
+
+            if (op == compiladoresParser.AND || op == compiladoresParser.OR) {
                 if (!esTipoNumerico(izq) || !esTipoNumerico(der)) {
-                    reportador.error("Error semantico: Operador logico requiere operandos numericos", ctx.getStart().getLine(), ctx.getStart().getCharPositionInLine());
-                    errors++;
+                    error(ctx, "Error semantico: Operador logico requiere operandos numericos");
                 }
-                tipos.put(ctx, TipoDato.INT);
+                ponerTipo(ctx, TipoDato.INT);
                 return;
             }
 
-            if (op.equals("==") || op.equals("!=") || op.equals(">") || op.equals("<")
-                    || op.equals(">=") || op.equals("<=")) {
+            if (op == compiladoresParser.EQ || op == compiladoresParser.UEQ || op == compiladoresParser.MAYOR
+                    || op == compiladoresParser.MENOR || op == compiladoresParser.MAYORIGUAL
+                    || op == compiladoresParser.MENORIGUAL) {
                 if (!esTipoNumerico(izq) || !esTipoNumerico(der)) {
-                    reportador.error("Error semantico: Comparacion requiere operandos numericos", ctx.getStart().getLine(), ctx.getStart().getCharPositionInLine());
-                    errors++;
+                    error(ctx, "Error semantico: Comparacion requiere operandos numericos");
                 }
-                tipos.put(ctx, TipoDato.INT);
+                ponerTipo(ctx, TipoDato.INT);
                 return;
             }
 
             // Aritmeticos
             if (!esTipoNumerico(izq) || !esTipoNumerico(der)) {
-                reportador.error("Error semantico: Operacion aritmetica requiere operandos numericos", ctx.getStart().getLine(), ctx.getStart().getCharPositionInLine());
-                errors++;
-                tipos.put(ctx, null);
+                error(ctx, "Error semantico: Operacion aritmetica requiere operandos numericos");
+                ponerTipo(ctx, null);
                 return;
             }
-            tipos.put(ctx, promocionar(izq, der));
+            ponerTipo(ctx, promocionar(izq, der));
         }
     }
 
@@ -895,16 +1030,16 @@ public class Escucha extends compiladoresBaseListener {
             String nombre = ctx.ID().getText();
             Id simbolo = tabla.getSimbolo(nombre);
             if (simbolo == null) {
-                reportador.error("Error semantico: Uso de un identificador no declarado", ctx.getStart().getLine(), ctx.getStart().getCharPositionInLine());
-                errors++;
+                errorNoDeclarado(ctx, ctx.ID());
+                tipos.ponerErroneo(ctx);
+                return;
             } else {
                 if (Boolean.FALSE.equals(simbolo.getInicializado())
                         && !(ctx.getParent() instanceof compiladoresParser.AsignacionContext
                              && ((compiladoresParser.AsignacionContext) ctx.getParent()).ID() == ctx.ID())) {
-                    reportador.error("Error semantico: Uso de un identificador no inicializado", ctx.getStart().getLine(), ctx.getStart().getCharPositionInLine());
-                    errors++;
+                    error(ctx, "Error semantico: Uso de un identificador no inicializado");
                 }
-                simbolo.setUsado(true);
+                tabla.marcarUsado(simbolo);
                 tipo = simbolo.getTipoDato();
             }
         } else if (ctx.NUMERO() != null) {
@@ -914,12 +1049,20 @@ public class Escucha extends compiladoresBaseListener {
         } else if (ctx.TRUE() != null || ctx.FALSE() != null) {
             tipo = TipoDato.BOOL;
         } else if (ctx.expresion() != null) {
-            tipo = tipos.get(ctx.expresion());
+            if (erroneo(ctx.expresion())) {
+                tipos.ponerErroneo(ctx);
+                return;
+            }
+            tipo = tipo(ctx.expresion());
         } else if (ctx.llamada_expr() != null) {
-            tipo = tipos.get(ctx.llamada_expr());
+            if (erroneo(ctx.llamada_expr())) {
+                tipos.ponerErroneo(ctx);
+                return;
+            }
+            tipo = tipo(ctx.llamada_expr());
         }
 
-        tipos.put(ctx, tipo);
+        ponerTipo(ctx, tipo);
     }
     
     /**
@@ -935,79 +1078,56 @@ public class Escucha extends compiladoresBaseListener {
     public void exitFinfor(FinforContext ctx) {
         super.exitFinfor(ctx);
        if (ctx.ID() != null) {
-            Id simbolo = tabla.getSimbolo(ctx.ID().getText());
-            if (simbolo == null) {
-                reportador.error("Error semantico: Uso de un identificador no declarado", ctx.getStart().getLine(), ctx.getStart().getCharPositionInLine());
-                errors++;
-            }
-            else if (Boolean.FALSE.equals(simbolo.getInicializado())) {
-                reportador.error("Error semantico: Uso de un identificador no inicializado", ctx.getStart().getLine(), ctx.getStart().getCharPositionInLine());
-                errors++;
-            } else {
-                simbolo.setUsado(true);
-            }
-        } 
-    }
-
-    /**
-     * Se invoca al salir de un factor que puede ser una función o variable en contexto de llamada.
-     * <p>
-     * Valida que el identificador referenciado (variable o función) esté:
-     * <ul>
-     *   <li>Declarado previamente en algún contexto visible</li>
-     *   <li>Inicializado antes de su uso</li>
-     * </ul>
-     *
-     * @param ctx el contexto del nodo {@code factorfunc} del árbol sintáctico
-     */
-    @Override
-    public void exitFactorfunc(FactorfuncContext ctx) {
-        super.exitFactorfunc(ctx);
-        if (ctx.ID() != null) {
             String nombre = ctx.ID().getText();
             Id simbolo = tabla.getSimbolo(nombre);
             if (simbolo == null) {
-                System.out.println("[Escucha] exitFactorfunc ID='" + nombre + "' -> no declarado");
-                reportador.error("Error semantico: Uso de un identificador no declarado", ctx.getStart().getLine(), ctx.getStart().getCharPositionInLine());
-                errors++;
+                errorNoDeclarado(ctx, ctx.ID());
             }
             else if (Boolean.FALSE.equals(simbolo.getInicializado())) {
-                reportador.error("Error semantico: Uso de un identificador no inicializado", ctx.getStart().getLine(), ctx.getStart().getCharPositionInLine());
-                errors++;
+                error(ctx, "Error semantico: Uso de un identificador no inicializado");
             } else {
-                simbolo.setUsado(true);
+                tabla.marcarUsado(simbolo);
+            }
+            if (simbolo != null) {
+                // Tipo del destino de ID++, ID-- o ID = expr, para el generador de código
+                ponerTipo(ctx, simbolo.getTipoDato());
             }
         } 
     }
 
     /**
-     * Se invoca al salir de un elemento en la lista de argumentos de una llamada a función.
+     * Se invoca al salir de cada argumento de una llamada a función.
      * <p>
-     * Valida que cada identificador usado como argumento en la llamada a función esté:
+     * Valida que el identificador usado como argumento esté:
      * <ul>
-     *   <li>Declarado previamente</li>
+     *   <li>Declarado previamente en algún contexto visible</li>
      *   <li>Inicializado antes de ser pasado como argumento</li>
      * </ul>
      *
-     * @param ctx el contexto del nodo {@code listafactfunc} del árbol sintáctico
+     * @param ctx el contexto del nodo {@code argumento} del árbol sintáctico
      */
     @Override
-    public void exitListafactfunc(ListafactfuncContext ctx) {
-        super.exitListafactfunc(ctx);
+    public void exitArgumento(ArgumentoContext ctx) {
+        super.exitArgumento(ctx);
         if (ctx.ID() != null) {
             String nombre = ctx.ID().getText();
             Id simbolo = tabla.getSimbolo(nombre);
             if (simbolo == null) {
-                reportador.error("Error semantico: Uso de un identificador no declarado", ctx.getStart().getLine(), ctx.getStart().getCharPositionInLine());
-                errors++;
+                if (trazaDetalle) {
+                    trazas.linea("[Escucha] exitArgumento ID='" + nombre + "' -> no declarado");
+                }
+                errorNoDeclarado(ctx, ctx.ID());
             }
             else if (Boolean.FALSE.equals(simbolo.getInicializado())) {
-                reportador.error("Error semantico: Uso de un identificador no inicializado", ctx.getStart().getLine(), ctx.getStart().getCharPositionInLine());
-                errors++;
+                error(ctx, "Error semantico: Uso de un identificador no inicializado");
             } else {
-                simbolo.setUsado(true);
+                tabla.marcarUsado(simbolo);
             }
-        } 
+            if (simbolo != null) {
+                // El generador de código toma de aquí el tipo del argumento
+                ponerTipo(ctx, simbolo.getTipoDato());
+            }
+        }
     }
 
     /**
@@ -1025,8 +1145,7 @@ public class Escucha extends compiladoresBaseListener {
     public void exitLlamadafunc(LlamadafuncContext ctx) {
         super.exitLlamadafunc(ctx);
         if (ctx.llamada_expr() != null && ctx.llamada_expr().ID() != null) {
-            validarLlamada(ctx.llamada_expr().ID().getText(), ctx.llamada_expr().factorfunc(),
-                    ctx.getStart().getLine(), ctx.getStart().getCharPositionInLine());
+            validarLlamada(ctx, ctx.llamada_expr().ID(), ctx.llamada_expr().factorfunc());
         } 
     }
 
@@ -1034,13 +1153,14 @@ public class Escucha extends compiladoresBaseListener {
     public void exitLlamada_expr(Llamada_exprContext ctx) {
         super.exitLlamada_expr(ctx);
         if (ctx.ID() != null) {
-            TipoDato retorno = validarLlamada(ctx.ID().getText(), ctx.factorfunc(),
-                    ctx.getStart().getLine(), ctx.getStart().getCharPositionInLine());
+            TipoDato retorno = validarLlamada(ctx, ctx.ID(), ctx.factorfunc());
+            if (erroneo(ctx)) {
+                return;
+            }
             if (retorno == TipoDato.VOID) {
-                reportador.error("Error semantico: Funcion void no retorna valor utilizable en expresiones", ctx.getStart().getLine(), ctx.getStart().getCharPositionInLine());
-                errors++;
+                error(ctx, "Error semantico: Funcion void no retorna valor utilizable en expresiones");
             }
-            tipos.put(ctx, retorno);
+            ponerTipo(ctx, retorno);
         }
     }
 
@@ -1048,28 +1168,29 @@ public class Escucha extends compiladoresBaseListener {
     public void exitIreturn(IreturnContext ctx) {
         super.exitIreturn(ctx);
         if (tipoFuncionActual == null) {
-            reportador.error("Error semantico: return fuera de una funcion", ctx.getStart().getLine(), ctx.getStart().getCharPositionInLine());
-            errors++;
+            error(ctx, "Error semantico: return fuera de una funcion");
             return;
         }
 
-        TipoDato tipoExpr = ctx.expresion() != null ? tipos.get(ctx.expresion()) : null;
+        if (erroneo(ctx.expresion())) {
+            // El error de la expresión ya se informó: el return cuenta igual
+            retornoEncontrado = true;
+            return;
+        }
+        TipoDato tipoExpr = tipo(ctx.expresion());
         if (tipoFuncionActual == TipoDato.VOID) {
             if (tipoExpr != null) {
-                reportador.error("Error semantico: return con valor en funcion void", ctx.getStart().getLine(), ctx.getStart().getCharPositionInLine());
-                errors++;
+                error(ctx, "Error semantico: return con valor en funcion void");
             }
             return;
         }
 
         if (tipoExpr == null) {
-            reportador.error("Error semantico: return sin valor en funcion no void", ctx.getStart().getLine(), ctx.getStart().getCharPositionInLine());
-            errors++;
+            error(ctx, "Error semantico: return sin valor en funcion no void");
             return;
         }
         if (!puedeAsignar(tipoFuncionActual, tipoExpr)) {
-            reportador.error("Error semantico: Tipo de retorno incompatible", ctx.getStart().getLine(), ctx.getStart().getCharPositionInLine());
-            errors++;
+            error(ctx, "Error semantico: Tipo de retorno incompatible");
         }
         retornoEncontrado = true;
     }
@@ -1103,6 +1224,7 @@ public class Escucha extends compiladoresBaseListener {
     @Override
     public void visitErrorNode(ErrorNode node) {
         errors++;
+        FiltroDiagnosticos.marcarError((ParserRuleContext) node.getParent(), node.getSymbol().getTokenIndex());
         super.visitErrorNode(node);
     }
 
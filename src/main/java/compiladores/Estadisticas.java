@@ -0,0 +1,222 @@
+package compiladores;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Mide cada fase de una compilación y escribe el resultado en JSON.
+ * <p>
+ * Por fase registra tiempo de reloj, tiempo de CPU y bytes asignados por el
+ * hilo que la ejecuta (vía {@link ThreadMXBean}), más los de los hilos que
+ * trabajan para la compilación mientras la fase está abierta
+ * ({@link #medirAuxiliar(Runnable)}); además guarda tamaños de la
+ * entrada y de los productos intermedios (tokens, nodos del árbol, instrucciones
+ * de CI antes y después de optimizar, líneas de ASM). Se usa con {@code --stats}.
+ * </p>
+ * <p>
+ * Uso típico:
+ * <pre>
+ * estadisticas.iniciar("parser");
+ * ParseTree tree = parser.programa();
+ * estadisticas.terminar();
+ * </pre>
+ * </p>
+ *
+ * @see Compilador
+ */
+public class Estadisticas {
+
+    /** Medición de una fase ya terminada. */
+    private static final class Fase {
+        final String nombre;
+        final long nanosReloj;
+        final long nanosCpu;
+        final long bytesAsignados;
+
+        Fase(String nombre, long nanosReloj, long nanosCpu, long bytesAsignados) {
+            this.nombre = nombre;
+            this.nanosReloj = nanosReloj;
+            this.nanosCpu = nanosCpu;
+            this.bytesAsignados = bytesAsignados;
+        }
+    }
+
+    private final String archivoEntrada;
+    private final ThreadMXBean hilos = ManagementFactory.getThreadMXBean();
+    private final com.sun.management.ThreadMXBean hilosSun;
+    private final List<Fase> fases = new ArrayList<>();
+    private final Map<String, Long> tamanios = new LinkedHashMap<>();
+    /** CPU y bytes de otros hilos durante la fase abierta (ver {@link #medirAuxiliar(Runnable)}). */
+    private final LongAdder cpuAuxiliar = new LongAdder();
+    private final LongAdder asignadosAuxiliar = new LongAdder();
+
+    private String faseActual;
+    private long inicioReloj;
+    private long inicioCpu;
+    private long inicioAsignados;
+
+    /**
+     * @param archivoEntrada archivo fuente medido (se incluye en el reporte)
+     */
+    public Estadisticas(String archivoEntrada) {
+        this.archivoEntrada = archivoEntrada;
+        if (hilos instanceof com.sun.management.ThreadMXBean) {
+            hilosSun = (com.sun.management.ThreadMXBean) hilos;
+            if (hilosSun.isThreadAllocatedMemorySupported()) {
+                hilosSun.setThreadAllocatedMemoryEnabled(true);
+            }
+        } else {
+            hilosSun = null;
+        }
+        if (hilos.isCurrentThreadCpuTimeSupported()) {
+            hilos.setThreadCpuTimeEnabled(true);
+        }
+    }
+
+    /**
+     * Comienza a medir una fase. Si había otra abierta, se cierra primero.
+     *
+     * @param nombre nombre de la fase en el reporte
+     */
+    public void iniciar(String nombre) {
+        if (faseActual != null) {
+            terminar();
+        }
+        faseActual = nombre;
+        inicioAsignados = bytesAsignados();
+        inicioCpu = cpu();
+        inicioReloj = System.nanoTime();
+    }
+
+    /** Cierra la fase abierta y registra su medición. */
+    public void terminar() {
+        long reloj = System.nanoTime() - inicioReloj;
+        long cpu = inicioCpu < 0 ? -1 : cpu() - inicioCpu + cpuAuxiliar.sumThenReset();
+        long asignados = inicioAsignados < 0 ? -1 : bytesAsignados() - inicioAsignados
+                + asignadosAuxiliar.sumThenReset();
+        fases.add(new Fase(faseActual, reloj, cpu, asignados));
+        faseActual = null;
+    }
+
+    /**
+     * Ejecuta {@code trabajo} en el hilo actual y suma su CPU y sus asignaciones a
+     * la fase abierta. Es para los hilos que no son el de la compilación: los
+     * cuerpos que {@link AnalisisSemantico} reparte en el {@code ForkJoinPool} y el
+     * escritor de {@link Trazas}. Lo que el escritor termina después de cerrada una
+     * fase cuenta en la siguiente.
+     *
+     * @param trabajo tarea a medir; puede correr en cualquier hilo
+     */
+    public void medirAuxiliar(Runnable trabajo) {
+        long inicioAsignadosHilo = bytesAsignados();
+        long inicioCpuHilo = cpu();
+        try {
+            trabajo.run();
+        } finally {
+            if (inicioCpuHilo >= 0) {
+                cpuAuxiliar.add(cpu() - inicioCpuHilo);
+            }
+            if (inicioAsignadosHilo >= 0) {
+                asignadosAuxiliar.add(bytesAsignados() - inicioAsignadosHilo);
+            }
+        }
+    }
+
+    /**
+     * Registra un tamaño (cantidad de tokens, nodos, instrucciones, líneas...).
+     *
+     * @param nombre clave en el reporte
+     * @param valor valor medido
+     */
+    public void registrarTamanio(String nombre, long valor) {
+        tamanios.put(nombre, valor);
+    }
+
+    /**
+     * Escribe el reporte JSON.
+     *
+     * @param ruta archivo de destino
+     * @throws IOException si no se puede escribir
+     */
+    public void guardar(String ruta) throws IOException {
+        try (PrintWriter out = new PrintWriter(ruta, "UTF-8")) {
+            out.print(aJson());
+        }
+    }
+
+    /**
+     * Representación JSON del reporte. Los tiempos se expresan en
+     * microsegundos; {@code -1} indica que la JVM no soporta la medición.
+     *
+     * @return objeto JSON con {@code archivo}, {@code fases}, {@code totales} y {@code tamanios}
+     */
+    public String aJson() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\n  \"archivo\": \"").append(escapar(archivoEntrada)).append("\",\n");
+        sb.append("  \"fases\": [\n");
+        long reloj = 0, cpu = 0, asignados = 0;
+        for (int i = 0; i < fases.size(); i++) {
+            Fase f = fases.get(i);
+            sb.append("    {\"nombre\": \"").append(escapar(f.nombre))
+              .append("\", \"reloj_us\": ").append(f.nanosReloj / 1000)
+              .append(", \"cpu_us\": ").append(f.nanosCpu < 0 ? -1 : f.nanosCpu / 1000)
+              .append(", \"bytes_asignados\": ").append(f.bytesAsignados)
+              .append('}').append(i + 1 < fases.size() ? ",\n" : "\n");
+            reloj += f.nanosReloj;
+            cpu += Math.max(0, f.nanosCpu);
+            asignados += Math.max(0, f.bytesAsignados);
+        }
+        sb.append("  ],\n");
+        sb.append("  \"totales\": {\"reloj_us\": ").append(reloj / 1000)
+          .append(", \"cpu_us\": ").append(cpu / 1000)
+          .append(", \"bytes_asignados\": ").append(asignados).append("},\n");
+        sb.append("  \"tamanios\": {");
+        int i = 0;
+        for (Map.Entry<String, Long> e : tamanios.entrySet()) {
+            sb.append(i++ == 0 ? "\n" : ",\n");
+            sb.append("    \"").append(escapar(e.getKey())).append("\": ").append(e.getValue());
+        }
+        sb.append(tamanios.isEmpty() ? "}\n" : "\n  }\n");
+        sb.append("}\n");
+        return sb.toString();
+    }
+
+    private long cpu() {
+        return hilos.isCurrentThreadCpuTimeSupported() ? hilos.getCurrentThreadCpuTime() : -1;
+    }
+
+    private long bytesAsignados() {
+        if (hilosSun == null || !hilosSun.isThreadAllocatedMemorySupported()) {
+            return -1;
+        }
+        return hilosSun.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /** Escapa {@code s} para una cadena JSON (también en {@link SalidaDiagnosticos}). */
+    static String escapar(String s) {
+        StringBuilder sb = new StringBuilder(s.length());
+        for (char c : s.toCharArray()) {
+            switch (c) {
+                case '"': sb.append("\\\""); break;
+                case '\\': sb.append("\\\\"); break;
+                case '\n': sb.append("\\n"); break;
+                case '\r': sb.append("\\r"); break;
+                case '\t': sb.append("\\t"); break;
+                default:
+                    if (c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+        return sb.toString();
+    }
+}
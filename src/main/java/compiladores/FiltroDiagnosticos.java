@@ -0,0 +1,146 @@
+package compiladores;
+
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.Token;
+
+import compiladores.compiladoresParser.InstruccionContext;
+import compiladores.compiladoresParser.ProgramaContext;
+
+/**
+ * Filtro de los diagnósticos que cuelgan de un nodo del árbol sintáctico.
+ * <p>
+ * Un único error de sintaxis (una llave que falta, una expresión cortada) suele
+ * arrastrar muchos mensajes más sobre el mismo código. Para que esos mensajes no
+ * dominen la salida ni el tiempo de la compilación:
+ * <ul>
+ *   <li>Cada <em>región</em> (la instrucción más cercana que contiene al nodo o, fuera
+ *       de las funciones, la declaración de nivel superior) informa a lo sumo
+ *       {@link #MAXIMO_POR_REGION} errores de sintaxis y otros tantos semánticos; al
+ *       pasarse se agrega una única nota y el resto se descarta.</li>
+ *   <li>Un error semántico no se informa si, dentro de su región, algún nodo que
+ *       lo contiene ya tenía un error de sintaxis o un nodo de error
+ *       ({@link #marcarError(ParserRuleContext, int)}) antes de su último token:
+ *       el código ahí no es el que se escribió, y el error sintáctico ya se informó.</li>
+ * </ul>
+ * Las marcas se comparan por índice de token y no por el momento en que se
+ * hicieron: cuando un listener sale de un nodo el parser ya informó todos los
+ * errores anteriores a su último token, tanto si analiza durante el parsing como
+ * si recorre el cuerpo después ({@link AnalisisSemantico}), así que los dos modos
+ * informan lo mismo. El estado se guarda en los propios nodos
+ * ({@link ContextoNumerado}); cada región está entera dentro de un cuerpo o fuera
+ * de todos.
+ * </p>
+ *
+ * @see Escucha
+ * @see ParserErrorListener
+ */
+final class FiltroDiagnosticos {
+
+    /** Cantidad máxima de errores de cada clase que informa una misma región. */
+    static final int MAXIMO_POR_REGION = 3;
+
+    private FiltroDiagnosticos() {
+    }
+
+    /**
+     * Registra un error de sintaxis en el token {@code indice} dentro de {@code ctx}
+     * y sus ancestros.
+     *
+     * @param ctx contexto del parser al detectar el error, o padre del nodo de error
+     * @param indice índice del token del error; los negativos (tokens inventados) se ignoran
+     */
+    static void marcarError(ParserRuleContext ctx, int indice) {
+        if (indice < 0) {
+            return;
+        }
+        for (ParserRuleContext c = ctx; c instanceof ContextoNumerado; c = c.getParent()) {
+            ContextoNumerado n = (ContextoNumerado) c;
+            if (n.primerError <= indice) {
+                // Los ancestros ya tienen una marca igual o anterior
+                return;
+            }
+            n.primerError = indice;
+        }
+    }
+
+    /**
+     * Decide si se informa un error semántico sobre {@code ctx} y, si es así, lo
+     * cuenta en su región.
+     *
+     * @param reportador destino de la nota cuando la región se pasa del máximo
+     * @param ctx nodo del error
+     * @return si el error se informa
+     */
+    static boolean admitirSemantico(Reportador reportador, ParserRuleContext ctx) {
+        ParserRuleContext region = region(ctx);
+        Token ultimo = ctx.getStop() != null ? ctx.getStop() : ctx.getStart();
+        int hasta = ultimo != null ? ultimo.getTokenIndex() : Integer.MAX_VALUE;
+        for (ParserRuleContext c = ctx; c != null; c = c.getParent()) {
+            if (c instanceof ContextoNumerado && ((ContextoNumerado) c).primerError <= hasta) {
+                return false;
+            }
+            if (c == region) {
+                break;
+            }
+        }
+        if (!(region instanceof ContextoNumerado)) {
+            return true;
+        }
+        ContextoNumerado n = (ContextoNumerado) region;
+        if (n.semanticos > MAXIMO_POR_REGION) {
+            return false;
+        }
+        n.semanticos++;
+        return admitir(reportador, n, n.semanticos);
+    }
+
+    /**
+     * Decide si se informa un error sintáctico detectado en {@code ctx} y, si es
+     * así, lo cuenta en su región.
+     *
+     * @param reportador destino de la nota cuando la región se pasa del máximo
+     * @param ctx contexto del parser al detectar el error, o {@code null}
+     * @return si el error se informa
+     */
+    static boolean admitirSintactico(Reportador reportador, ParserRuleContext ctx) {
+        if (ctx == null) {
+            return true;
+        }
+        ParserRuleContext region = region(ctx);
+        if (!(region instanceof ContextoNumerado)) {
+            return true;
+        }
+        ContextoNumerado n = (ContextoNumerado) region;
+        if (n.sintacticos > MAXIMO_POR_REGION) {
+            return false;
+        }
+        n.sintacticos++;
+        return admitir(reportador, n, n.sintacticos);
+    }
+
+    /** @return la instrucción más cercana que contiene a {@code ctx}, o su declaración de nivel superior */
+    private static ParserRuleContext region(ParserRuleContext ctx) {
+        ParserRuleContext c = ctx;
+        while (!(c instanceof InstruccionContext)) {
+            ParserRuleContext padre = c.getParent();
+            if (padre == null || padre instanceof ProgramaContext) {
+                return c;
+            }
+            c = padre;
+        }
+        return c;
+    }
+
+    /**
+     * @param cantidad mensajes de la región contando el actual
+     * @return si el mensaje entra en el máximo; el primero que no entra deja la nota
+     */
+    private static boolean admitir(Reportador reportador, ContextoNumerado region, int cantidad) {
+        if (cantidad <= MAXIMO_POR_REGION) {
+            return true;
+        }
+        reportador.info("Demasiados errores en esta parte del codigo; se omiten los siguientes",
+                region.getStart().getLine(), region.getStart().getCharPositionInLine());
+        return false;
+    }
+}
@@ -1,48 +1,50 @@
 package compiladores;
 
+import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.ArrayList;
-import java.util.List;
 
-import compiladores.compiladoresParser.*;
+import compiladores.CodigoIntermedio.Operacion;
 
 /**
  * Generador de código ensamblador para arquitectura x86 en sintaxis NASM.
  * <p>
- * Esta clase implementa el patrón <b>Visitor</b> de ANTLR4 para recorrer el árbol sintáctico
- * y generar código ensamblador equivalente al código fuente. Produce código compatible con
- * NASM que puede ser ensamblado y ejecutado en sistemas x86/x86-64.
+ * Traduce el código de tres direcciones ya optimizado por {@link Optimizador}
+ * (un {@link CodigoIntermedio}) a un programa NASM de 32 bits, de modo que
+ * la propagación de constantes, el folding, la eliminación de subexpresiones
+ * comunes y la de código muerto se reflejan directamente en el ensamblador.
  * </p>
  * <p>
- * <b>Responsabilidades principales:</b>
- * <ul>
- *   <li>Traducción de declaraciones de variables a directivas de memoria</li>
- *   <li>Generación de código para expresiones aritméticas usando pila</li>
- *   <li>Traducción de estructuras de control (if, while, for) a saltos condicionales</li>
- *   <li>Manejo de funciones (prólogo, epílogo, llamadas)</li>
- *   <li>Gestión de etiquetas únicas para flujo de control</li>
- * </ul>
- * <p>
  * <b>Estrategia de generación:</b>
  * <ul>
- *   <li>Variables almacenadas en la sección .bss (data no inicializada)</li>
- *   <li>Expresiones evaluadas usando registros EAX, EBX como acumuladores</li>
- *   <li>Uso de la pila para operaciones complejas</li>
- *   <li>Etiquetas únicas para cada estructura de control</li>
+ *   <li>Variables globales ({@code decl} fuera de funciones) en la sección .bss con prefijo {@code gv_}</li>
+ *   <li>Cada {@code func}/{@code endfunc} es una función {@code fn_nombre} con marco de pila:
+ *       parámetros en {@code [ebp+8]...}, variables locales y temporales en {@code [ebp-k]}</li>
+ *   <li>Enteros, char y bool en EAX/EBX; double en la pila de la FPU x87 (ST0)</li>
+ *   <li>Los argumentos se apilan de derecha a izquierda; el retorno queda en EAX o ST0</li>
+ *   <li>Las etiquetas del código intermedio se emiten como etiquetas locales ({@code .lN})</li>
+ *   <li>{@code _start} ejecuta la inicialización global, llama a {@code main} y termina con su valor</li>
  * </ul>
  *
  * @author Compiladores 2024
- * @version 1.0
+ * @version 2.0
  * @since 1.0
- * @see compiladoresBaseVisitor
- * @see TablaSimbolos
+ * @see Optimizador
+ * @see GeneradorCodigoIntermedio
  */
-public class GeneradorAssembler extends compiladoresBaseVisitor<String> {
+public class GeneradorAssembler {
 
     /** Tipos simples manejados por el backend. */
     private enum SimpleType {
@@ -61,104 +63,161 @@ public class GeneradorAssembler extends compiladoresBaseVisitor<String> {
             if ("bool".equalsIgnoreCase(lex)) return BOOL;
             return INT;
         }
+
+        /** @return tipo del backend para un tipo del lenguaje; {@code void} y desconocido son {@code INT} */
+        static SimpleType deTipo(TipoDato tipo) {
+            if (tipo == TipoDato.DOUBLE) return DOUBLE;
+            if (tipo == TipoDato.CHAR) return CHAR;
+            if (tipo == TipoDato.BOOL) return BOOL;
+            return INT;
+        }
+
+        /** Bytes que ocupa un elemento de este tipo en memoria. */
+        int tamanio() {
+            return this == DOUBLE ? 8 : (this == CHAR ? 1 : 4);
+        }
     }
-    
-    /**
-     * StringBuilder que acumula el código ensamblador generado.
-     * Permite construcción eficiente de strings grandes.
-     */
-    private StringBuilder codigo;
-    
-    /**
-     * StringBuilder para la sección de datos (variables declaradas).
-     */
-    private StringBuilder seccionDatos;
-    
-    /**
-     * Contador para generar etiquetas únicas en estructuras de control.
-     * Se incrementa cada vez que se necesita una nueva etiqueta.
-     */
+
+    /** Firma de una función definida en el código intermedio. */
+    private static final class Firma {
+        final SimpleType retorno;
+        final boolean esVoid;
+        final List<SimpleType> parametros = new ArrayList<>();
+
+        Firma(String tipoRetorno) {
+            this.esVoid = "void".equals(tipoRetorno);
+            this.retorno = SimpleType.fromTipoLexema(tipoRetorno);
+        }
+
+        Firma(TipoDato tipoRetorno) {
+            this.esVoid = tipoRetorno == TipoDato.VOID;
+            this.retorno = SimpleType.deTipo(tipoRetorno);
+        }
+    }
+
+    /** Variable con almacenamiento: etiqueta global o desplazamiento respecto de EBP. */
+    private static final class Variable {
+        final SimpleType tipo;
+        /** Dirección base sin corchetes: {@code gv_x}, {@code ebp-8} o {@code ebp+12}. */
+        final String direccion;
+        /** Bytes reservados. */
+        final int tamanio;
+        /** Temporal del código intermedio (sin {@code decl}): toma el tipo del valor asignado. */
+        final boolean temporal;
+
+        Variable(SimpleType tipo, String direccion, int tamanio, boolean temporal) {
+            this.tipo = tipo;
+            this.direccion = direccion;
+            this.tamanio = tamanio;
+            this.temporal = temporal;
+        }
+    }
+
+    /** Código de la sección .text. */
+    private final StringBuilder codigo;
+
+    /** Sección .bss (variables globales). */
+    private final StringBuilder seccionDatos;
+
+    /** Sección .data (constantes double). */
+    private final StringBuilder seccionDatosInit;
+
+    /** Constantes double ya emitidas, por valor. */
+    private final Map<String, String> constantes;
+
+    /** Contador de etiquetas internas del backend (no provienen del código intermedio). */
     private int contadorEtiquetas;
-    
-    /**
-     * Mapa que asocia nombres de variables con sus offsets en memoria.
-     * Facilita el acceso a variables durante la generación de código.
-     */
-    private Map<String, Integer> offsetsVariables;
-
-    /** Tipos declarados de variables (int/char/double) para seleccionar el camino de generación. */
-    private Map<String, SimpleType> tiposVariables;
-    /** Tipos de retorno de funciones conocidas. */
-    private Map<String, SimpleType> tiposFunciones;
-    /** Dimensiones declaradas para arreglos simples (tamaño en elementos). */
-    private Map<String, Integer> dimensiones;
-    /** Contenedor de constantes inicializadas (.data) para literales double. */
-    private StringBuilder seccionDatosInit;
-    /** Contador de etiquetas de constante double. */
-    private int contadorConstantes = 0;
-    
-    /**
-     * Offset actual en la pila para asignación de variables locales.
-     * Se decrementa en múltiplos de 4 bytes (tamaño de int/double simplificado).
-     */
-    private int offsetActual;
 
-    /** Nombre de la función actualmente en generación. */
-    private String funcionActual = null;
+    /** Funciones definidas en el programa, por nombre. */
+    private final Map<String, Firma> firmas;
+
+    /** Tabla de nombres de la compilación: las variables se indexan por símbolo. */
+    private final TablaNombres nombres;
+
+    /** Variables globales, por símbolo. */
+    private Variable[] globales = new Variable[0];
+
+    /** Variables de la función en generación (parámetros, locales y temporales), por símbolo. */
+    private Variable[] locales = new Variable[0];
+
+    /** Bytes de variables locales reservados en el marco actual. */
+    private int desplazamiento;
+
+    /** Firma de la función en generación ({@code null} durante la inicialización global). */
+    private Firma funcionActual;
+
+    /** Cantidad de lecturas de cada símbolo en la función actual (para fusionar comparación y salto). */
+    private int[] usos = new int[0];
+
+    /** Símbolos con variable local o lecturas en la función actual, para vaciarlos en la siguiente. */
+    private int[] tocados = new int[16];
+    private int cantidadTocados;
+
+    /** Cuerpo de la función en generación; el prólogo se antepone al conocer el tamaño del marco. */
+    private StringBuilder cuerpo;
+
+    /** Instrucciones fuera de funciones (inicialización global), en orden. */
+    private final CodigoIntermedio inicializacion;
+
+    /** Funciones ya generadas; ante una redefinición se genera solo la primera. */
+    private final Set<String> generadas = new HashSet<>();
+
+    /** En modo incremental, archivo temporal con el código de las funciones ya generadas. */
+    private Path funcionesEmitidas;
+    private Writer salidaFunciones;
 
-    /** Etiqueta de salida de la función actual para soportar returns múltiples. */
-    private String etiquetaFinFuncion = null;
-    /** Cantidad de bytes de argumentos apilados en la llamada actual. */
-    private int bytesArgumentosActual = 0;
-    
     /**
      * Ruta del archivo de salida donde se escribirá el código ensamblador.
      */
-    private String archivoSalida;
-    
-    /**
-     * Conjunto de variables ya declaradas en la sección .bss para evitar duplicados.
-     * Previene errores de ensamblador cuando variables con el mismo nombre se declaran múltiples veces.
-     */
-    private Set<String> variablesDeclaradas;
+    private final String archivoSalida;
 
-    private java.util.Deque<String> pilaBreak = new java.util.ArrayDeque<>();
-    private java.util.Deque<String> pilaContinue = new java.util.ArrayDeque<>();
+    /** Trazas donde se informa el resultado de la generación. */
+    private final Trazas trazas;
 
     /**
      * Constructor que inicializa el generador de código ensamblador.
-     * <p>
-     * Prepara todas las estructuras de datos necesarias para la generación
-     * de código y establece el archivo de salida.
-     * </p>
      *
      * @param archivoSalida ruta del archivo donde se guardará el código ensamblador generado
      */
     public GeneradorAssembler(String archivoSalida) {
+        this(archivoSalida, Trazas.directas(System.out));
+    }
+
+    /**
+     * Constructor que además indica las trazas donde se informa el resultado.
+     *
+     * @param archivoSalida ruta del archivo donde se guardará el código ensamblador generado
+     * @param trazas trazas de la compilación (categoría {@link Trazas.Categoria#BACKEND})
+     */
+    public GeneradorAssembler(String archivoSalida, Trazas trazas) {
+        this(archivoSalida, trazas, new TablaNombres());
+    }
+
+    /**
+     * Constructor que además indica la tabla de nombres con la que se generó el
+     * código intermedio, para indexar las variables por el mismo símbolo.
+     *
+     * @param archivoSalida ruta del archivo donde se guardará el código ensamblador generado
+     * @param trazas trazas de la compilación (categoría {@link Trazas.Categoria#BACKEND})
+     * @param nombres tabla de nombres de la compilación
+     */
+    public GeneradorAssembler(String archivoSalida, Trazas trazas, TablaNombres nombres) {
+        this.trazas = trazas;
+        this.nombres = nombres;
+        this.inicializacion = new CodigoIntermedio(nombres);
+        this.archivoSalida = archivoSalida;
         this.codigo = new StringBuilder();
         this.seccionDatos = new StringBuilder();
         this.seccionDatosInit = new StringBuilder();
+        this.constantes = new HashMap<>();
+        this.firmas = new HashMap<>();
         this.contadorEtiquetas = 0;
-        this.offsetsVariables = new HashMap<>();
-        this.tiposVariables = new HashMap<>();
-        this.tiposFunciones = new HashMap<>();
-        this.dimensiones = new HashMap<>();
-        this.offsetActual = 0;
-        this.archivoSalida = archivoSalida;
-        this.variablesDeclaradas = new HashSet<>();
-        
+
         inicializarCodigo();
     }
 
     /**
-     * Inicializa el código ensamblador con las directivas y secciones necesarias.
-     * <p>
-     * Genera el encabezado del archivo NASM incluyendo:
-     * <ul>
-     *   <li>Formato de 32 bits</li>
-     *   <li>Declaración de función _start como punto de entrada</li>
-     *   <li>Sección de texto (.text) para código ejecutable</li>
-     * </ul>
+     * Inicializa el encabezado y las secciones del archivo NASM.
      */
     private void inicializarCodigo() {
         codigo.append("; Código ensamblador generado automáticamente\n");
@@ -166,7 +225,7 @@ public class GeneradorAssembler extends compiladoresBaseVisitor<String> {
         codigo.append("; Sintaxis: NASM (x86)\n\n");
         codigo.append("bits 32\n");
         codigo.append("global _start\n\n");
-        
+
         seccionDatosInit.append("section .data\n");
         seccionDatosInit.append("    ; Constantes inicializadas\n");
         seccionDatos.append("section .bss\n");
@@ -174,1067 +233,915 @@ public class GeneradorAssembler extends compiladoresBaseVisitor<String> {
     }
 
     /**
-     * Genera una nueva etiqueta única para estructuras de control.
-     * <p>
-     * Las etiquetas siguen el formato "L{número}" donde el número se incrementa
-     * secuencialmente para garantizar unicidad.
-     * </p>
+     * Genera el programa completo a partir del código intermedio optimizado y lo
+     * escribe en el archivo de salida.
      *
-     * @return una cadena con la etiqueta única generada
+     * @param instrucciones código de tres direcciones (normalmente la salida de {@link Optimizador})
      */
-    private String generarEtiqueta() {
-        return "L" + (contadorEtiquetas++);
-    }
-
-    /** Devuelve etiqueta de constante double en .data. */
-    private String constanteDouble(String valorLexema) {
-        String nombre = "_cd" + (contadorConstantes++);
-        seccionDatosInit.append("    ").append(nombre).append(" dq ").append(valorLexema).append("\n");
-        return nombre;
-    }
+    public void generar(CodigoIntermedio instrucciones) {
+        recolectarDeclaraciones(instrucciones);
 
-    /** Registra tipos de parámetros de una función en el mapa de variables. */
-    private void registrarParametrosTipos(IdfuncContext idfunc) {
-        if (idfunc == null) return;
-        if (idfunc.tipo() != null && idfunc.ID() != null) {
-            tiposVariables.put(idfunc.ID().getText(), SimpleType.fromTipoLexema(idfunc.tipo().getText()));
-        }
-        ListaidfuncContext lista = idfunc.listaidfunc();
-        while (lista != null && lista.getChildCount() > 0) {
-            if (lista.tipo() != null && lista.ID() != null) {
-                tiposVariables.put(lista.ID().getText(), SimpleType.fromTipoLexema(lista.tipo().getText()));
-            }
-            lista = lista.listaidfunc();
-        }
-    }
+        codigo.append("section .text\n");
+        generarInicio(inicializacion);
+        generarFunciones(instrucciones);
 
-    /**
-     * Materializa el resultado actual en ST0 o EAX dentro de una variable double destino.
-     */
-    private void materializarDoubleDesdeTipo(SimpleType tipoExpr, String destino) {
-        if (tipoExpr == SimpleType.DOUBLE) {
-            codigo.append("    fstp qword [").append(destino).append("]\n");
-        } else {
-            codigo.append("    push eax\n");
-            codigo.append("    fild dword [esp]\n");
-            codigo.append("    add esp, 4\n");
-            codigo.append("    fstp qword [").append(destino).append("]\n");
-        }
+        guardarArchivo();
     }
 
     /**
-     * Visita el nodo raíz del programa e inicia la generación de código.
+     * Modo incremental: genera las funciones de una parte del programa (uno o más
+     * {@code toplevel} ya optimizados) y las vuelca a un archivo temporal, de modo
+     * que en memoria queda solo la función en generación. La inicialización global
+     * se acumula y {@link #terminar()} arma el archivo final.
      * <p>
-     * Este método establece la estructura principal del programa ensamblador,
-     * incluyendo el punto de entrada _start y la finalización del programa.
+     * Una función puede llamar a otra definida más adelante solo si antes hay un
+     * prototipo; su firma se registra con {@link #declararPrototipo(String, String, List)}.
      * </p>
      *
-     * @param ctx el contexto del nodo {@code programa} del árbol sintáctico
-     * @return cadena vacía (el resultado se acumula en el StringBuilder interno)
+     * @param parte código de tres direcciones de la parte
+     * @throws IOException si no se puede escribir el archivo temporal
      */
-    @Override
-    public String visitPrograma(ProgramaContext ctx) {
-        codigo.append("section .text\n");
-        codigo.append("_start:\n");
-        codigo.append("    ; Inicio del programa\n");
-        
-        // Visitar todas las instrucciones del programa
-        super.visitPrograma(ctx);
-        
-        // Finalizar el programa con syscall exit
-        codigo.append("\n    ; Fin del programa\n");
-        codigo.append("    mov eax, 1        ; syscall: exit\n");
-        codigo.append("    xor ebx, ebx      ; código de salida: 0\n");
-        codigo.append("    int 0x80          ; llamada al sistema\n");
-        
-        // Guardar el código generado en el archivo
-        guardarArchivo();
-        
-        return "";
+    public void agregar(CodigoIntermedio parte) throws IOException {
+        recolectarDeclaraciones(parte);
+        int inicio = codigo.length();
+        generarFunciones(parte);
+        if (codigo.length() > inicio) {
+            if (salidaFunciones == null) {
+                Path directorio = Paths.get(archivoSalida).toAbsolutePath().getParent();
+                funcionesEmitidas = Files.createTempFile(directorio, "funciones", ".asm.tmp");
+                salidaFunciones = new FileWriter(funcionesEmitidas.toFile());
+            }
+            salidaFunciones.append(codigo, inicio, codigo.length());
+            codigo.setLength(inicio);
+        }
     }
 
     /**
-     * Procesa la declaración completa de una función y genera su etiqueta y cuerpo.
-     * <p>
-     * Para cada función definida en el código fuente se genera una etiqueta con su
-     * nombre, se traduce el bloque asociado y, si no hay un {@code return} explícito
-     * que termine la función, se emite un retorno por defecto que coloca 0 en
-     * {@code eax} y ejecuta {@code ret}.
-     * </p>
-     * <p>
-     * <b>Nota:</b> el manejo de prólogo/epílogo y variables locales es simplificado;
-     * no se utiliza {@code ebp} ni un frame de pila completo.
-     * </p>
+     * Registra la firma de un prototipo (modo incremental), para las llamadas
+     * anteriores a la definición. Si la función ya se conoce no cambia nada.
      *
-     * @param ctx el contexto del nodo {@code declaracionfunc} del árbol sintáctico
-     * @return cadena vacía
+     * @param nombre nombre de la función
+     * @param tipoRetorno lexema del tipo de retorno
+     * @param tiposParametros lexemas de los tipos de los parámetros, en orden
      */
-    @Override
-    public String visitDeclaracionfunc(DeclaracionfuncContext ctx) {
-        String nombre = ctx.ID().getText();
-        SimpleType tipoRet = SimpleType.fromTipoLexema(ctx.tipofunc().getText());
-        tiposFunciones.put(nombre, tipoRet);
-        registrarParametrosTipos(ctx.idfunc());
-        funcionActual = nombre;
-        etiquetaFinFuncion = nombre + "_end";
-        codigo.append("\n").append(nombre).append(":\n");
-        codigo.append("    push ebp\n");
-        codigo.append("    mov ebp, esp\n");
-        codigo.append("    ; cuerpo de función\n");
-        visitBloque(ctx.bloque());
-        // Si no hubo return explícito, devolver 0
-        codigo.append(etiquetaFinFuncion).append(":\n");
-        codigo.append("    mov esp, ebp\n");
-        codigo.append("    pop ebp\n");
-        codigo.append("    mov eax, 0\n");
-        codigo.append("    ret\n");
-        etiquetaFinFuncion = null;
-        funcionActual = null;
-        return "";
+    public void declararPrototipo(String nombre, String tipoRetorno, List<String> tiposParametros) {
+        Firma firma = new Firma(tipoRetorno);
+        for (String tipo : tiposParametros) {
+            firma.parametros.add(SimpleType.fromTipoLexema(tipo));
+        }
+        firmas.putIfAbsent(nombre, firma);
     }
 
     /**
-     * Procesa una declaración de variable y genera código ensamblador.
-     * <p>
-     * Reserva espacio en la sección .bss para la variable y, si está inicializada,
-     * genera código para asignarle su valor inicial.
-     * </p>
-     * <p>
-     * <b>Generación para declaración:</b>
-     * <pre>
-     * int x = 5;  →  x: resd 1          ; en sección .bss
-     *                 mov dword [x], 5   ; en sección .text
-     * </pre>
-     * </p>
+     * Termina el modo incremental: genera {@code _start} con la inicialización
+     * global acumulada y escribe el archivo final (datos, {@code _start} y las
+     * funciones del archivo temporal, que después se borra).
      *
-     * @param ctx el contexto del nodo {@code declaracion} del árbol sintáctico
-     * @return cadena vacía
+     * @throws IOException si no se puede escribir el archivo de salida
      */
-    @Override
-    public String visitDeclaracion(DeclaracionContext ctx) {
-        String nombre = ctx.ID().getText();
-        String tipoLexema = ctx.tipo().getText();
-        SimpleType tipo = SimpleType.fromTipoLexema(tipoLexema);
-        int dimension = 1;
-        if (ctx.dimension() != null && ctx.dimension().NUMERO() != null) {
-            try {
-                dimension = Integer.parseInt(ctx.dimension().NUMERO().getText());
-            } catch (NumberFormatException e) {
-                dimension = 1;
-            }
-        }
-        
-        // Reservar espacio en la sección de datos solo si no ha sido declarada antes
-        if (!variablesDeclaradas.contains(nombre)) {
-            if (tipo == SimpleType.CHAR) {
-                seccionDatos.append("    ").append(nombre).append(": resb ").append(dimension).append("  ; char\n");
-            } else if (tipo == SimpleType.DOUBLE) {
-                seccionDatos.append("    ").append(nombre).append(": resq ").append(dimension).append("  ; double\n");
-            } else {
-                seccionDatos.append("    ").append(nombre).append(": resd ").append(dimension).append("  ; ")
-                           .append(tipoLexema).append("\n");
-            }
-            offsetsVariables.put(nombre, offsetActual);
-            offsetActual += (tipo == SimpleType.DOUBLE ? 8 : 4) * dimension;
-            variablesDeclaradas.add(nombre);
-            tiposVariables.put(nombre, tipo);
-            dimensiones.put(nombre, dimension);
-        }
-        
-        // Si tiene inicialización, generar código de asignación evaluando la expresion
-        if (ctx.inicializacion() != null && ctx.inicializacion().expresion() != null) {
-            codigo.append("    ; Inicialización de ").append(nombre).append("\n");
-            SimpleType tipoExpr = visitExpresionConTipo(ctx.inicializacion().expresion());
-            if (tipo == SimpleType.DOUBLE) {
-                materializarDoubleDesdeTipo(tipoExpr, nombre);
-            } else if (tipo == SimpleType.CHAR) {
-                if (tipoExpr == SimpleType.DOUBLE) {
-                    codigo.append("    sub esp, 4\n");
-                    codigo.append("    fistp dword [esp]\n");
-                    codigo.append("    pop eax\n");
-                }
-                codigo.append("    mov byte [").append(nombre).append("], al\n");
-            } else {
-                if (tipoExpr == SimpleType.DOUBLE) {
-                    codigo.append("    fistp dword [").append(nombre).append("]\n");
-                } else {
-                    codigo.append("    mov dword [").append(nombre).append("], eax\n");
+    public void terminar() throws IOException {
+        codigo.append("section .text\n");
+        generarInicio(inicializacion);
+        try (Writer writer = new FileWriter(archivoSalida)) {
+            writer.write(seccionDatosInit + "\n" + seccionDatos + "\n");
+            writer.append(codigo);
+            if (salidaFunciones != null) {
+                salidaFunciones.close();
+                try (Reader funciones = new FileReader(funcionesEmitidas.toFile())) {
+                    funciones.transferTo(writer);
                 }
             }
+        } finally {
+            descartar();
         }
-        
-        return super.visitDeclaracion(ctx);
+        informarGenerado();
     }
 
     /**
-     * Procesa una asignación y genera el código correspondiente.
-     * <p>
-     * Evalúa la expresión del lado derecho y almacena el resultado en la variable
-     * del lado izquierdo.
-     * </p>
-     * <p>
-     * <b>Generación para asignación:</b>
-     * <pre>
-     * x = 10;  →  mov eax, 10
-     *             mov [x], eax
-     * </pre>
-     * </p>
+     * Abandona una generación incremental y borra su archivo temporal.
      *
-     * @param ctx el contexto del nodo {@code asignacion} del árbol sintáctico
-     * @return cadena vacía
+     * @throws IOException si no se puede borrar el archivo temporal
      */
-    @Override
-    public String visitAsignacion(AsignacionContext ctx) {
-        String variable = ctx.ID().getText();
-        SimpleType tipoDestino = tiposVariables.getOrDefault(variable, SimpleType.INT);
-        boolean esArreglo = ctx.dimensionAcceso() != null;
-
-        codigo.append("\n    ; Asignación a ").append(variable).append(esArreglo ? " (arreglo)" : "").append("\n");
-
-        // Evaluar la expresión del lado derecho
-        SimpleType tipoExpr = visitExpresionConTipo(ctx.expresion());
-
-        if (esArreglo) {
-            String base = variable;
-            // dirección destino en EBX
-            SimpleType tipoBase = calcularDireccion(base, ctx.dimensionAcceso());
-            if (tipoBase == SimpleType.DOUBLE) {
-                if (tipoExpr == SimpleType.DOUBLE) {
-                    codigo.append("    fstp qword [ebx]\n");
-                } else {
-                    codigo.append("    push eax\n");
-                    codigo.append("    fild dword [esp]\n");
-                    codigo.append("    add esp, 4\n");
-                    codigo.append("    fstp qword [ebx]\n");
-                }
-            } else if (tipoBase == SimpleType.CHAR) {
-                if (tipoExpr == SimpleType.DOUBLE) {
-                    codigo.append("    sub esp, 4\n");
-                    codigo.append("    fistp dword [esp]\n");
-                    codigo.append("    pop eax\n");
-                }
-                codigo.append("    mov byte [ebx], al\n");
-            } else {
-                if (tipoExpr == SimpleType.DOUBLE) {
-                    codigo.append("    fistp dword [ebx]\n");
-                } else {
-                    codigo.append("    mov [ebx], eax\n");
-                }
-            }
-            return "";
+    public void descartar() throws IOException {
+        if (salidaFunciones != null) {
+            salidaFunciones.close();
+            Files.deleteIfExists(funcionesEmitidas);
+            salidaFunciones = null;
         }
-
-        if (tipoDestino == SimpleType.DOUBLE) {
-            materializarDoubleDesdeTipo(tipoExpr, variable);
-        } else {
-            if (tipoExpr == SimpleType.DOUBLE) {
-                codigo.append("    sub esp, 4\n");
-                codigo.append("    fistp dword [esp]\n");
-                codigo.append("    pop eax\n");
-            }
-            if (tipoDestino == SimpleType.CHAR) {
-                codigo.append("    mov byte [").append(variable).append("], al\n");
-            } else {
-                codigo.append("    mov [").append(variable).append("], eax\n");
-            }
-        }
-
-        return "";
     }
 
     /**
-     * Procesa una expresión aritmética y genera código para evaluarla.
-     * <p>
-     * Las expresiones se evalúan usando el registro EAX como acumulador principal
-     * y la pila para operandos temporales.
-     * </p>
-     *
-     * @param ctx el contexto del nodo {@code expresion} del árbol sintáctico
-     * @return cadena vacía
+     * Genera cada función ({@link CodigoIntermedio#funciones()}) sin copiar sus
+     * instrucciones; ante una redefinición se genera solo la primera.
      */
-    @Override
-    public String visitExpresion(ExpresionContext ctx) {
-        visitExpresionConTipo(ctx);
-        return "";
-    }
-
-    /** Evalúa expresión y devuelve su tipo, dejando el resultado en eax (int/char) o ST0 (double). */
-    private SimpleType visitExpresionConTipo(ExpresionContext ctx) {
-        if (ctx == null) {
-            return SimpleType.INT;
+    private void generarFunciones(CodigoIntermedio instrucciones) {
+        for (CodigoIntermedio.Unidad funcion : instrucciones.funciones()) {
+            generarFuncion(instrucciones, funcion);
         }
+    }
 
-        // unario -expr
-        if (ctx.RESTA() != null && ctx.expresion().size() == 1) {
-            SimpleType t = visitExpresionConTipo(ctx.expresion(0));
-            if (t == SimpleType.DOUBLE) {
-                codigo.append("    fchs\n");
-            } else {
-                codigo.append("    neg eax\n");
-            }
-            return t;
-        }
-
-        // !expr
-        if (ctx.getChildCount() == 2 && ctx.getChild(0).getText().equals("!")) {
-            SimpleType t = visitExpresionConTipo(ctx.expresion(0));
-            if (t == SimpleType.DOUBLE) {
-                codigo.append("    fldz\n");
-                codigo.append("    fcomip st0, st1\n");
-                codigo.append("    fstp st0\n");
-                codigo.append("    mov eax, 0\n");
-                codigo.append("    sete al\n");
-            } else {
-                codigo.append("    cmp eax, 0\n");
-                codigo.append("    mov eax, 0\n");
-                codigo.append("    sete al\n");
+    /**
+     * Registra las firmas de todas las funciones (para llamadas anteriores a su
+     * definición), reserva las variables globales en .bss y agrega a la
+     * inicialización global las instrucciones fuera de funciones, salvo las
+     * declaraciones.
+     */
+    private void recolectarDeclaraciones(CodigoIntermedio instrucciones) {
+        Firma firma = null;
+        for (int i = 0; i < instrucciones.cantidad(); i++) {
+            switch (instrucciones.operacion(i)) {
+                case FUNCION:
+                    firma = new Firma(tipo(instrucciones.primero(i)));
+                    // Ante una redefinición (error semántico ya reportado) vale la primera
+                    firmas.putIfAbsent(instrucciones.operando(instrucciones.resultado(i)), firma);
+                    break;
+                case FORMAL:
+                    firma.parametros.add(SimpleType.deTipo(tipo(instrucciones.primero(i))));
+                    break;
+                case FIN_FUNCION:
+                    firma = null;
+                    break;
+                case DECLARACION:
+                    if (firma == null && global(Operando.simbolo(instrucciones.resultado(i))) == null) {
+                        declararGlobal(instrucciones, i);
+                    }
+                    break;
+                default:
+                    if (firma == null) {
+                        inicializacion.agregarTodo(instrucciones, i, i + 1);
+                    }
+                    break;
             }
-            return SimpleType.INT;
         }
+    }
 
-        // binario expr op expr
-        if (ctx.expresion().size() == 2) {
-            SimpleType tIzq = visitExpresionConTipo(ctx.expresion(0));
-            // Materializar izq si es double en la pila
-            if (tIzq == SimpleType.DOUBLE) {
-                codigo.append("    sub esp, 8\n");
-                codigo.append("    fstp qword [esp]\n");
-            } else {
-                // Guardar int/char en la pila para recuperarlo después
-                codigo.append("    push eax\n");
-            }
-
-            SimpleType tDer = visitExpresionConTipo(ctx.expresion(1));
+    /** @return tipo del lenguaje de un operando {@link Operando#TIPO} */
+    private static TipoDato tipo(int operando) {
+        return TipoDato.deCodigo((byte) Operando.simbolo(operando));
+    }
 
-            boolean usaDouble = (tIzq == SimpleType.DOUBLE) || (tDer == SimpleType.DOUBLE);
+    private void declararGlobal(CodigoIntermedio instrucciones, int i) {
+        TipoDato declarado = tipo(instrucciones.primero(i));
+        SimpleType tipo = SimpleType.deTipo(declarado);
+        int dimension = dimension(instrucciones, i);
+        String etiqueta = "gv_" + instrucciones.operando(instrucciones.resultado(i));
+        String directiva = tipo == SimpleType.CHAR ? "resb" : (tipo == SimpleType.DOUBLE ? "resq" : "resd");
+        seccionDatos.append("    ").append(etiqueta).append(": ").append(directiva).append(" ").append(dimension)
+                    .append("  ; ").append(ArbolCompacto.lexema(declarado)).append("\n");
+        int simbolo = Operando.simbolo(instrucciones.resultado(i));
+        if (simbolo >= globales.length) {
+            globales = Arrays.copyOf(globales, Math.max(simbolo + 1, nombres.cantidad()));
+        }
+        globales[simbolo] = new Variable(tipo, etiqueta, tipo.tamanio() * dimension, false);
+    }
 
-            if (usaDouble) {
-                // Cargar izquierda en ST0, derecha en ST1
-                if (tDer != SimpleType.DOUBLE) {
-                    // convertir der int->double en ST0
-                    codigo.append("    push eax\n");
-                    codigo.append("    fild dword [esp]\n");
-                    codigo.append("    add esp, 4\n");
-                }
-                if (tIzq == SimpleType.DOUBLE) {
-                    codigo.append("    fld qword [esp]\n");
-                    codigo.append("    add esp, 8\n");
-                } else {
-                    codigo.append("    pop eax\n");
-                    codigo.append("    push eax\n");
-                    codigo.append("    fild dword [esp]\n");
-                    codigo.append("    add esp, 4\n");
-                }
+    /** @return cantidad de elementos del {@code decl} {@code i}: su dimensión, o 1 */
+    private static int dimension(CodigoIntermedio instrucciones, int i) {
+        int dimension = instrucciones.segundo(i);
+        if (dimension == Operando.NINGUNO) {
+            return 1;
+        }
+        try {
+            return Math.max(1, Integer.parseInt(instrucciones.operando(dimension)));
+        } catch (NumberFormatException e) {
+            return 1;
+        }
+    }
 
-                // Ahora ST0 = izq, ST1 = der si izq fue cargado al final; ajustemos para no conmutativos
-                if (ctx.SUMA() != null) {
-                    codigo.append("    faddp st1, st0\n");
-                } else if (ctx.RESTA() != null) {
-                    codigo.append("    fxch st1\n");
-                    codigo.append("    fsubp st1, st0\n");
-                } else if (ctx.MULT() != null) {
-                    codigo.append("    fmulp st1, st0\n");
-                } else if (ctx.DIV() != null) {
-                    codigo.append("    fxch st1\n");
-                    codigo.append("    fdivp st1, st0\n");
-                } else if (ctx.MOD() != null) {
-                    codigo.append("    ; MOD no soportado para double, resultado 0\n");
-                    codigo.append("    fstp st0\n");
-                    codigo.append("    fstp st0\n");
-                    codigo.append("    fldz\n");
-                } else if (ctx.EQ() != null || ctx.UEQ() != null || ctx.MAYOR() != null || ctx.MENOR() != null
-                        || ctx.MAYORIGUAL() != null || ctx.MENORIGUAL() != null) {
-                    codigo.append("    fcomip st0, st1\n");
-                    codigo.append("    fstp st0\n");
-                    codigo.append("    mov eax, 0\n");
-                    if (ctx.EQ() != null) {
-                        codigo.append("    sete al\n");
-                    } else if (ctx.UEQ() != null) {
-                        codigo.append("    setne al\n");
-                    } else if (ctx.MAYOR() != null) {
-                        codigo.append("    seta al\n");
-                    } else if (ctx.MENOR() != null) {
-                        codigo.append("    setb al\n");
-                    } else if (ctx.MAYORIGUAL() != null) {
-                        codigo.append("    setae al\n");
-                    } else if (ctx.MENORIGUAL() != null) {
-                        codigo.append("    setbe al\n");
-                    }
-                    return SimpleType.INT;
-                }
-                return SimpleType.DOUBLE;
+    /**
+     * Punto de entrada: inicializa las globales, llama a {@code main} y termina
+     * el proceso con su valor de retorno como código de salida.
+     */
+    private void generarInicio(CodigoIntermedio inicializacion) {
+        iniciarMarco(null);
+        generarCuerpo(inicializacion, 0, inicializacion.cantidad());
+
+        Firma main = firmas.get("main");
+        if (main != null) {
+            cuerpo.append("    call fn_main\n");
+            if (main.esVoid) {
+                cuerpo.append("    xor eax, eax\n");
+            } else if (main.retorno == SimpleType.DOUBLE) {
+                cuerpo.append("    sub esp, 4\n");
+                cuerpo.append("    fisttp dword [esp]\n");
+                cuerpo.append("    pop eax\n");
             }
+        } else {
+            cuerpo.append("    xor eax, eax      ; no hay main\n");
+        }
+        cuerpo.append("\n    ; Fin del programa\n");
+        cuerpo.append("    mov ebx, eax      ; código de salida: valor de main\n");
+        cuerpo.append("    mov eax, 1        ; syscall: exit\n");
+        cuerpo.append("    int 0x80          ; llamada al sistema\n");
 
-            // Camino INT/CHAR
-            codigo.append("    mov ebx, eax\n");
-            codigo.append("    pop eax\n");
-
-            if (ctx.SUMA() != null) {
-                codigo.append("    add eax, ebx\n");
-            } else if (ctx.RESTA() != null) {
-                codigo.append("    sub eax, ebx\n");
-            } else if (ctx.MULT() != null) {
-                codigo.append("    imul eax, ebx\n");
-            } else if (ctx.DIV() != null) {
-                codigo.append("    cdq\n");
-                codigo.append("    idiv ebx\n");
-            } else if (ctx.MOD() != null) {
-                codigo.append("    cdq\n");
-                codigo.append("    idiv ebx\n");
-                codigo.append("    mov eax, edx\n");
-            } else if (ctx.EQ() != null || ctx.UEQ() != null || ctx.MAYOR() != null || ctx.MENOR() != null
-                    || ctx.MAYORIGUAL() != null || ctx.MENORIGUAL() != null) {
-                codigo.append("    cmp eax, ebx\n");
-                codigo.append("    mov eax, 0\n");
-                if (ctx.EQ() != null) {
-                    codigo.append("    sete al\n");
-                } else if (ctx.UEQ() != null) {
-                    codigo.append("    setne al\n");
-                } else if (ctx.MAYOR() != null) {
-                    codigo.append("    setg al\n");
-                } else if (ctx.MENOR() != null) {
-                    codigo.append("    setl al\n");
-                } else if (ctx.MAYORIGUAL() != null) {
-                    codigo.append("    setge al\n");
-                } else if (ctx.MENORIGUAL() != null) {
-                    codigo.append("    setle al\n");
-                }
-                return SimpleType.INT;
-            } else if (ctx.AND() != null) {
-                codigo.append("    cmp eax, 0\n");
-                codigo.append("    setne al\n");
-                codigo.append("    movzx eax, al\n");
-                codigo.append("    cmp ebx, 0\n");
-                codigo.append("    setne bl\n");
-                codigo.append("    movzx ebx, bl\n");
-                codigo.append("    and eax, ebx\n");
-                return SimpleType.INT;
-            } else if (ctx.OR() != null) {
-                codigo.append("    cmp eax, 0\n");
-                codigo.append("    setne al\n");
-                codigo.append("    movzx eax, al\n");
-                codigo.append("    cmp ebx, 0\n");
-                codigo.append("    setne bl\n");
-                codigo.append("    movzx ebx, bl\n");
-                codigo.append("    or eax, ebx\n");
-                return SimpleType.INT;
-            }
+        codigo.append("_start:\n");
+        emitirPrologo();
+        codigo.append(cuerpo);
+    }
 
-            return SimpleType.INT;
+    /**
+     * Genera una función completa: prólogo, cuerpo y epílogo común en {@code .fin}.
+     *
+     * @param funcion código que contiene la función
+     * @param inicio índice de su {@code func}
+     * @param fin índice siguiente a su {@code endfunc}
+     */
+    private void generarFuncion(CodigoIntermedio instrucciones, CodigoIntermedio.Unidad funcion) {
+        String nombre = instrucciones.operando(instrucciones.resultado(funcion.inicio));
+        if (!generadas.add(nombre)) {
+            return;
+        }
+        iniciarMarco(firmas.get(nombre));
+
+        // Parámetros: el primero en [ebp+8]
+        int offsetParametro = 8;
+        for (int i = funcion.inicio + 1; i < funcion.cuerpo; i++) {
+            SimpleType tipo = SimpleType.deTipo(tipo(instrucciones.primero(i)));
+            ponerLocal(Operando.simbolo(instrucciones.resultado(i)),
+                    new Variable(tipo, "ebp+" + offsetParametro, Math.max(4, tipo.tamanio()), false));
+            offsetParametro += tipo == SimpleType.DOUBLE ? 8 : 4;
         }
+        generarCuerpo(instrucciones, funcion.cuerpo, funcion.fin);
 
-        // Caso base: factor
-        if (ctx.factor() != null) {
-            return visitFactorConTipo(ctx.factor());
+        // Retorno por defecto si el flujo llega al final sin return
+        if (funcionActual.retorno == SimpleType.DOUBLE && !funcionActual.esVoid) {
+            cuerpo.append("    fldz              ; retorno por defecto\n");
+        } else {
+            cuerpo.append("    xor eax, eax      ; retorno por defecto\n");
         }
+        cuerpo.append(".fin:\n");
+        cuerpo.append("    leave\n");
+        cuerpo.append("    ret\n");
 
-        return SimpleType.INT;
+        codigo.append("\nfn_").append(nombre).append(":\n");
+        emitirPrologo();
+        codigo.append(cuerpo);
     }
 
-    /**
-     * Procesa un factor (elemento básico de una expresión).
-     * <p>
-     * Los factores pueden ser:
-     * <ul>
-     *   <li>Números literales</li>
-     *   <li>Identificadores (variables)</li>
-     *   <li>Expresiones entre paréntesis</li>
-     * </ul>
-     * </p>
-     *
-     * @param ctx el contexto del nodo {@code factor} del árbol sintáctico
-     * @return cadena vacía
-     */
-    @Override
-    public String visitFactor(FactorContext ctx) {
-        visitFactorConTipo(ctx);
-        return "";
+    private void iniciarMarco(Firma firma) {
+        funcionActual = firma;
+        for (int k = 0; k < cantidadTocados; k++) {
+            locales[tocados[k]] = null;
+            usos[tocados[k]] = 0;
+        }
+        cantidadTocados = 0;
+        desplazamiento = 0;
+        cuerpo = new StringBuilder();
     }
 
-    private SimpleType visitFactorConTipo(FactorContext ctx) {
-        if (ctx.NUMERO() != null) {
-            String numero = ctx.NUMERO().getText();
-            if (numero.contains(".")) {
-                String constLabel = constanteDouble(numero);
-                codigo.append("    fld qword [").append(constLabel).append("]\n");
-                return SimpleType.DOUBLE;
-            }
-            codigo.append("    mov eax, ").append(numero).append("\n");
-            return SimpleType.INT;
-        } else if (ctx.CHAR_CONST() != null) {
-            String lexema = ctx.CHAR_CONST().getText();
-            char c = lexema.charAt(1);
-            int ascii = (int) c;
-            codigo.append("    mov eax, ").append(ascii).append("\n");
-            return SimpleType.CHAR;
-        } else if (ctx.TRUE() != null) {
-            codigo.append("    mov eax, 1\n");
-            return SimpleType.BOOL;
-        } else if (ctx.FALSE() != null) {
-            codigo.append("    mov eax, 0\n");
-            return SimpleType.BOOL;
-        } else if (ctx.ID() != null) {
-            // Acceso simple o indexado
-            if (ctx.getChildCount() >= 4 && "[".equals(ctx.getChild(1).getText())) {
-                String base = ctx.ID().getText();
-                SimpleType tipoBase = calcularDireccion(base, (compiladoresParser.DimensionAccesoContext) null, ctx.expresion());
-                if (tipoBase == SimpleType.DOUBLE) {
-                    codigo.append("    fld qword [ebx]\n");
-                } else if (tipoBase == SimpleType.CHAR) {
-                    codigo.append("    movzx eax, byte [ebx]\n");
-                } else {
-                    codigo.append("    mov eax, [ebx]\n");
-                }
-                return tipoBase;
-            } else {
-                String variable = ctx.ID().getText();
-                SimpleType t = tiposVariables.getOrDefault(variable, SimpleType.INT);
-                if (t == SimpleType.DOUBLE) {
-                    codigo.append("    fld qword [").append(variable).append("]\n");
-                } else if (t == SimpleType.CHAR) {
-                    codigo.append("    movzx eax, byte [").append(variable).append("]\n");
-                } else {
-                    codigo.append("    mov eax, [").append(variable).append("]\n");
-                }
-                return t;
-            }
-        } else if (ctx.llamada_expr() != null) {
-            SimpleType t = visitLlamadaExprConTipo(ctx.llamada_expr());
-            return t;
-        } else if (ctx.expresion() != null) {
-            return visitExpresionConTipo(ctx.expresion());
+    private void emitirPrologo() {
+        codigo.append("    push ebp\n");
+        codigo.append("    mov ebp, esp\n");
+        int marco = (desplazamiento + 15) & ~15;
+        if (marco > 0) {
+            codigo.append("    sub esp, ").append(marco).append("\n");
         }
-        return SimpleType.INT;
     }
 
     /**
-     * Extrae los argumentos de factorfunc como lista de strings.
+     * Traduce las instrucciones {@code [desde, hasta)} de la función actual; los
+     * {@code formal} (ya ubicados) y el {@code endfunc} se saltean.
      */
-    private List<String> extraerArgumentos(FactorfuncContext ctx) {
-        List<String> args = new ArrayList<>();
-        if (ctx == null) {
-            return args;
-        }
-        if (ctx.NUMERO() != null) {
-            args.add(ctx.NUMERO().getText());
+    private void generarCuerpo(CodigoIntermedio instrucciones, int desde, int hasta) {
+        for (int i = desde; i < hasta; i++) {
+            contarUsos(instrucciones, i);
         }
-        if (ctx.ID() != null) {
-            args.add(ctx.ID().getText());
+        for (int i = desde; i < hasta; i++) {
+            Operacion op = instrucciones.operacion(i);
+            if (op == Operacion.FORMAL || op == Operacion.FIN_FUNCION) {
+                continue;
+            }
+            if (op != Operacion.ETIQUETA && op != Operacion.DECLARACION) {
+                cuerpo.append("    ; ").append(instrucciones.texto(i)).append("\n");
+            }
+            switch (op) {
+                case ETIQUETA:
+                    cuerpo.append(".").append(instrucciones.operando(instrucciones.resultado(i))).append(":\n");
+                    break;
+                case SALTO:
+                    cuerpo.append("    jmp .").append(instrucciones.operando(instrucciones.resultado(i))).append("\n");
+                    break;
+                case SI:
+                    i += generarSalto(instrucciones, i, null);
+                    break;
+                case DECLARACION:
+                    declararLocal(instrucciones, i);
+                    break;
+                case ASIGNACION:
+                    guardar(instrucciones.resultado(i),
+                            cargar(instrucciones.primero(i), SimpleType.deTipo(instrucciones.tipo(i))));
+                    break;
+                case CONVERSION:
+                    i += generarConversion(instrucciones, i);
+                    break;
+                case NEGACION:
+                    cargarBooleano(instrucciones.primero(i), "al");
+                    cuerpo.append("    xor al, 1\n");
+                    cuerpo.append("    movzx eax, al\n");
+                    guardar(instrucciones.resultado(i), SimpleType.BOOL);
+                    break;
+                case ARGUMENTO:
+                    break; // se apila en el call
+                case LLAMADA:
+                    generarLlamada(instrucciones, i);
+                    break;
+                case RETORNO:
+                    generarRetorno(instrucciones.primero(i));
+                    break;
+                default:
+                    i += generarBinaria(instrucciones, i);
+                    break;
+            }
         }
-        if (ctx.expresion() != null) {
-            // Evaluamos la expresión en EAX y la materializamos en un temporal anónimo en la pila
-            visitExpresion(ctx.expresion());
-            codigo.append("    push eax\n");
-            args.add("[esp]");
+    }
+
+    /** Reserva en el marco una variable local declarada con {@code decl}. */
+    private void declararLocal(CodigoIntermedio instrucciones, int i) {
+        if (funcionActual == null) {
+            return; // las globales ya están en .bss
         }
-        if (ctx.listafactfunc() != null) {
-            args.addAll(extraerArgumentos(ctx.listafactfunc()));
+        SimpleType tipo = SimpleType.deTipo(tipo(instrucciones.primero(i)));
+        int tamanio = tipo.tamanio() * dimension(instrucciones, i);
+        int simbolo = Operando.simbolo(instrucciones.resultado(i));
+        Variable previa = local(simbolo);
+        if (previa != null && previa.tipo == tipo && previa.tamanio >= tamanio && previa.direccion.startsWith("ebp-")) {
+            return; // redeclaración en otro bloque: se reutiliza el slot
         }
-        return args;
+        ponerLocal(simbolo, new Variable(tipo, reservar(tamanio), tamanio, false));
     }
 
-    private List<String> extraerArgumentos(ListafactfuncContext ctx) {
-        List<String> args = new ArrayList<>();
-        if (ctx == null) {
-            return args;
+    /** Reserva {@code tamanio} bytes en el marco y devuelve su dirección base. */
+    private String reservar(int tamanio) {
+        desplazamiento += (tamanio + 3) & ~3;
+        return "ebp-" + desplazamiento;
+    }
+
+    private void contarUsos(CodigoIntermedio instrucciones, int i) {
+        Operacion op = instrucciones.operacion(i);
+        if (op == Operacion.FORMAL || op == Operacion.FIN_FUNCION) {
+            return;
         }
-        if (ctx.NUMERO() != null) {
-            args.add(ctx.NUMERO().getText());
+        if (op != Operacion.ETIQUETA && op != Operacion.SALTO && op != Operacion.DECLARACION
+                && op != Operacion.LLAMADA) {
+            contarUso(instrucciones.primero(i));
+            contarUso(instrucciones.segundo(i));
         }
-        if (ctx.ID() != null) {
-            args.add(ctx.ID().getText());
+        int result = instrucciones.resultado(i);
+        if (Operando.elemento(result)) {
+            contarUso(Operando.deSimbolo(nombres, nombres.indice(Operando.simbolo(result))));
         }
-        if (ctx.expresion() != null) {
-            visitExpresion(ctx.expresion());
-            codigo.append("    push eax\n");
-            args.add("[esp]");
+    }
+
+    private void contarUso(int operando) {
+        if (operando == Operando.NINGUNO) {
+            return;
         }
-        if (ctx.listafactfunc() != null) {
-            args.addAll(extraerArgumentos(ctx.listafactfunc()));
+        int simbolo = Operando.simbolo(operando);
+        if (Operando.elemento(operando)) {
+            contarUso(Operando.deSimbolo(nombres, nombres.indice(simbolo)));
+            simbolo = nombres.base(simbolo);
         }
-        return args;
+        tocar(simbolo);
+        usos[simbolo]++;
     }
 
-    /**
-     * Procesa una llamada a función y genera el código correspondiente.
-     * <p>
-     * Evalúa opcionalmente un argumento (modelo simplificado de un solo
-     * parámetro), lo pasa por la pila con {@code push eax}, invoca la
-     * función mediante {@code call nombre} y, tras el retorno, limpia la
-     * pila con {@code add esp, 4}. El valor de retorno se asume en
-     * {@code eax} según la convención utilizada.
-     * </p>
-     *
-     * @param ctx el contexto del nodo {@code llamadafunc} del árbol sintáctico
-     * @return cadena vacía
-     */
-    @Override
-    public String visitLlamadafunc(compiladoresParser.LlamadafuncContext ctx) {
-        // llamadafunc ahora es llamada_expr PYC
-        visit(ctx.llamada_expr());
-        return "";
+    /** @return lecturas del símbolo en la función actual */
+    private int usos(int simbolo) {
+        return simbolo >= 0 && simbolo < usos.length ? usos[simbolo] : 0;
     }
 
-    @Override
-    public String visitLlamada_expr(compiladoresParser.Llamada_exprContext ctx) {
-        visitLlamadaExprConTipo(ctx);
-        return "";
+    private Variable local(int simbolo) {
+        return simbolo >= 0 && simbolo < locales.length ? locales[simbolo] : null;
     }
 
-    private java.util.List<Object> gatherArgs(FactorfuncContext ctx) {
-        java.util.List<Object> list = new java.util.ArrayList<>();
-        if (ctx == null) return list;
-        list.add(ctx);
-        ListafactfuncContext tail = ctx.listafactfunc();
-        while (tail != null && tail.getChildCount() > 0) {
-            list.add(tail);
-            tail = tail.listafactfunc();
-        }
-        return list;
+    private Variable global(int simbolo) {
+        return simbolo >= 0 && simbolo < globales.length ? globales[simbolo] : null;
     }
 
-    private SimpleType evaluarArgumento(Object nodo) {
-        org.antlr.v4.runtime.tree.TerminalNode num = null;
-        org.antlr.v4.runtime.tree.TerminalNode id = null;
-        ExpresionContext expr = null;
-        if (nodo instanceof FactorfuncContext) {
-            FactorfuncContext ctx = (FactorfuncContext) nodo;
-            num = ctx.NUMERO();
-            id = ctx.ID();
-            expr = ctx.expresion();
-        } else if (nodo instanceof ListafactfuncContext) {
-            ListafactfuncContext ctx = (ListafactfuncContext) nodo;
-            num = ctx.NUMERO();
-            id = ctx.ID();
-            expr = ctx.expresion();
-        }
-
-        if (num != null) {
-            String numero = num.getText();
-            if (numero.contains(".")) {
-                String constLabel = constanteDouble(numero);
-                codigo.append("    fld qword [").append(constLabel).append("]\n");
-                return SimpleType.DOUBLE;
-            }
-            codigo.append("    mov eax, ").append(numero).append("\n");
-            return SimpleType.INT;
-        }
-        if (id != null) {
-            String nombre = id.getText();
-            SimpleType t = tiposVariables.getOrDefault(nombre, SimpleType.INT);
-            if (t == SimpleType.DOUBLE) {
-                codigo.append("    fld qword [").append(nombre).append("]\n");
-            } else if (t == SimpleType.CHAR) {
-                codigo.append("    movzx eax, byte [").append(nombre).append("]\n");
-            } else {
-                codigo.append("    mov eax, [").append(nombre).append("]\n");
-            }
-            return t;
+    private void ponerLocal(int simbolo, Variable v) {
+        tocar(simbolo);
+        locales[simbolo] = v;
+    }
+
+    /** Anota el símbolo entre los de la función actual, agrandando los arreglos si hace falta. */
+    private void tocar(int simbolo) {
+        if (simbolo >= locales.length) {
+            int capacidad = Math.max(simbolo + 1, nombres.cantidad());
+            locales = Arrays.copyOf(locales, capacidad);
+            usos = Arrays.copyOf(usos, capacidad);
         }
-        if (expr != null) {
-            return visitExpresionConTipo(expr);
+        if (locales[simbolo] == null && usos[simbolo] == 0) {
+            if (cantidadTocados == tocados.length) {
+                tocados = Arrays.copyOf(tocados, cantidadTocados * 2);
+            }
+            tocados[cantidadTocados++] = simbolo;
         }
-        return SimpleType.INT;
     }
 
-    private SimpleType visitLlamadaExprConTipo(compiladoresParser.Llamada_exprContext ctx) {
-        String nombre = ctx.ID().getText();
-        java.util.List<Object> args = gatherArgs(ctx.factorfunc());
-        bytesArgumentosActual = 0;
-        // Push args de derecha a izquierda
-        for (int i = args.size() - 1; i >= 0; i--) {
-            SimpleType tArg = evaluarArgumento(args.get(i));
-            if (tArg == SimpleType.DOUBLE) {
-                codigo.append("    sub esp, 8\n");
-                codigo.append("    fstp qword [esp]\n");
-                bytesArgumentosActual += 8;
-            } else {
-                codigo.append("    push eax\n");
-                bytesArgumentosActual += 4;
-            }
+    // ------------------------------------------------------------------
+    // Operandos
+    // ------------------------------------------------------------------
+
+    /** Valor entero de un literal no double (número, char o bool). */
+    private String valorInmediato(int op) {
+        String texto = nombres.texto(Operando.simbolo(op));
+        switch (Operando.clase(op)) {
+            case Operando.CARACTER:
+                return String.valueOf((int) texto.charAt(1));
+            case Operando.LOGICO:
+                return "true".equals(texto) ? "1" : "0";
+            default:
+                return texto;
         }
+    }
 
-        codigo.append("    call ").append(nombre).append("\n");
-        if (bytesArgumentosActual > 0) {
-            codigo.append("    add esp, ").append(bytesArgumentosActual).append("\n");
+    /**
+     * Tipo con que está guardado un operando: el de su literal o el de su
+     * variable; un temporal toma el de la instrucción que lo definió.
+     */
+    private SimpleType tipoDe(int op) {
+        switch (Operando.clase(op)) {
+            case Operando.DOUBLE:
+                return SimpleType.DOUBLE;
+            case Operando.CARACTER:
+                return SimpleType.CHAR;
+            case Operando.LOGICO:
+                return SimpleType.BOOL;
+            case Operando.TEMPORAL:
+            case Operando.VARIABLE:
+            case Operando.ELEMENTO: {
+                int simbolo = Operando.simbolo(op);
+                int base = nombres.base(simbolo);
+                Variable v = buscar(base >= 0 ? base : simbolo);
+                return v != null ? v.tipo : SimpleType.INT;
+            }
+            default:
+                return SimpleType.INT;
         }
-        bytesArgumentosActual = 0;
+    }
 
-        SimpleType ret = tiposFunciones.getOrDefault(nombre, SimpleType.INT);
-        return ret;
+    private Variable buscar(int simbolo) {
+        Variable v = local(simbolo);
+        return v != null ? v : global(simbolo);
     }
 
     /**
-     * Calcula la dirección efectiva (en EBX) para un acceso a arreglo base[idx].
-     * Variante usada cuando hay DimensionAcceso en asignaciones.
+     * Variable existente o un slot nuevo de 8 bytes para un nombre no declarado
+     * (temporales), de modo que pueda contener cualquier tipo.
      */
-    private SimpleType calcularDireccion(String base, DimensionAccesoContext dimCtx) {
-        SimpleType tipoBase = tiposVariables.getOrDefault(base, SimpleType.INT);
-        SimpleType tipoIdx = visitExpresionConTipo(dimCtx.expresion());
-        if (tipoIdx == SimpleType.DOUBLE) {
-            codigo.append("    sub esp, 4\n");
-            codigo.append("    fistp dword [esp]\n");
-            codigo.append("    pop eax\n");
-        }
-        int size = (tipoBase == SimpleType.DOUBLE) ? 8 : (tipoBase == SimpleType.CHAR ? 1 : 4);
-        if (size == 8) {
-            codigo.append("    shl eax, 3\n");
-        } else if (size == 4) {
-            codigo.append("    shl eax, 2\n");
-        }
-        codigo.append("    lea ebx, [").append(base).append("]\n");
-        codigo.append("    add ebx, eax\n");
-        return tipoBase;
+    private Variable variable(int simbolo, SimpleType tipo) {
+        Variable v = buscar(simbolo);
+        if (v == null) {
+            v = new Variable(tipo, reservar(8), 8, true);
+            ponerLocal(simbolo, v);
+        }
+        return v;
     }
 
     /**
-     * Variante para acceso a arreglo desde factor (usa expresion del factor).
+     * Operando de memoria para una variable o un elemento {@code a[i]}. Para
+     * elementos deja el índice en ECX y la base en EDX.
+     *
+     * @throws IllegalStateException si el operando no es un temporal, una
+     *         variable ni un elemento (un código intermedio mal formado)
      */
-    private SimpleType calcularDireccion(String base, DimensionAccesoContext dimCtx, ExpresionContext idxExpr) {
-        // Reutiliza la misma lógica pero con la expresión provista
-        SimpleType tipoBase = tiposVariables.getOrDefault(base, SimpleType.INT);
-        SimpleType tipoIdx = visitExpresionConTipo(idxExpr);
-        if (tipoIdx == SimpleType.DOUBLE) {
-            codigo.append("    sub esp, 4\n");
-            codigo.append("    fistp dword [esp]\n");
-            codigo.append("    pop eax\n");
-        }
-        int size = (tipoBase == SimpleType.DOUBLE) ? 8 : (tipoBase == SimpleType.CHAR ? 1 : 4);
-        if (size == 8) {
-            codigo.append("    shl eax, 3\n");
-        } else if (size == 4) {
-            codigo.append("    shl eax, 2\n");
-        }
-        codigo.append("    lea ebx, [").append(base).append("]\n");
-        codigo.append("    add ebx, eax\n");
-        return tipoBase;
+    private String memoria(int op) {
+        if (!Operando.almacenamiento(op)) {
+            throw new IllegalStateException("operando sin variable en el código intermedio: " + op);
+        }
+        int simbolo = Operando.simbolo(op);
+        if (!Operando.elemento(op)) {
+            return "[" + variable(simbolo, SimpleType.INT).direccion + "]";
+        }
+        Variable arreglo = variable(nombres.base(simbolo), SimpleType.INT);
+        int indice = Operando.deSimbolo(nombres, nombres.indice(simbolo));
+        int escala = arreglo.tipo.tamanio();
+        if (Operando.literal(indice) && Operando.clase(indice) != Operando.DOUBLE) {
+            int desplazamientoElemento = Integer.parseInt(valorInmediato(indice)) * escala;
+            return "[" + arreglo.direccion + "+" + desplazamientoElemento + "]";
+        }
+        cargarEntero(indice, "ecx");
+        cuerpo.append("    lea edx, [").append(arreglo.direccion).append("]\n");
+        return "[edx+ecx" + (escala > 1 ? "*" + escala : "") + "]";
     }
 
-    @Override
-    public String visitPrototipofunc(PrototipofuncContext ctx) {
-        String nombre = ctx.ID().getText();
-        tiposFunciones.put(nombre, SimpleType.fromTipoLexema(ctx.tipofunc().getText()));
-        registrarParametrosTipos(ctx.idfunc());
-        return super.visitPrototipofunc(ctx);
+    /** Etiqueta en .data con el valor double del literal. */
+    private String constanteDouble(String literal) {
+        String valor = literal.contains(".") ? literal : literal + ".0";
+        return constantes.computeIfAbsent(valor, v -> {
+            String nombre = "_cd" + constantes.size();
+            seccionDatosInit.append("    ").append(nombre).append(" dq ").append(v).append("\n");
+            return nombre;
+        });
     }
 
-    @Override
-    public String visitIreturn(IreturnContext ctx) {
-        SimpleType tipoRet = tiposFunciones.getOrDefault(funcionActual, SimpleType.INT);
-        SimpleType tipoExpr = SimpleType.INT;
-        if (ctx.expresion() != null) {
-            tipoExpr = visitExpresionConTipo(ctx.expresion());
+    /**
+     * Deja el valor del operando en ST0 si {@code tipo} es double o en EAX si no,
+     * convirtiéndolo si está guardado con el otro, y devuelve {@code tipo}.
+     */
+    private SimpleType cargar(int op, SimpleType tipo) {
+        if (tipo == SimpleType.DOUBLE) {
+            cargarDouble(op);
         } else {
-            if (tipoRet == SimpleType.DOUBLE) {
-                codigo.append("    fldz\n");
+            cargarEntero(op, "eax");
+        }
+        return tipo;
+    }
+
+    /** Carga el operando como entero de 32 bits en el registro indicado (double se trunca). */
+    private void cargarEntero(int op, String registro) {
+        if (Operando.literal(op)) {
+            if (Operando.clase(op) == Operando.DOUBLE) {
+                cuerpo.append("    mov ").append(registro).append(", ").append((long) nombres.valor(Operando.simbolo(op))).append("\n");
             } else {
-                codigo.append("    mov eax, 0\n");
+                cuerpo.append("    mov ").append(registro).append(", ").append(valorInmediato(op)).append("\n");
             }
+            return;
         }
-        if (tipoRet == SimpleType.DOUBLE && tipoExpr != SimpleType.DOUBLE) {
-            codigo.append("    push eax\n");
-            codigo.append("    fild dword [esp]\n");
-            codigo.append("    add esp, 4\n");
+        SimpleType tipo = tipoDe(op);
+        if (tipo == SimpleType.DOUBLE) {
+            cargarDouble(op);
+            cuerpo.append("    sub esp, 4\n");
+            cuerpo.append("    fisttp dword [esp]\n");
+            cuerpo.append("    pop ").append(registro).append("\n");
+        } else if (tipo == SimpleType.CHAR) {
+            String mem = memoria(op);
+            cuerpo.append("    movzx ").append(registro).append(", byte ").append(mem).append("\n");
+        } else {
+            String mem = memoria(op);
+            cuerpo.append("    mov ").append(registro).append(", dword ").append(mem).append("\n");
+        }
+    }
+
+    /** Apila el operando en la FPU como double (los enteros se convierten). Usa EAX para char. */
+    private void cargarDouble(int op) {
+        if (Operando.literal(op)) {
+            String valor = valorInmediato(op);
+            if (Double.parseDouble(valor) == 0) {
+                cuerpo.append("    fldz\n");
+            } else if (Double.parseDouble(valor) == 1) {
+                cuerpo.append("    fld1\n");
+            } else {
+                cuerpo.append("    fld qword [").append(constanteDouble(valor)).append("]\n");
+            }
+            return;
         }
-        if (etiquetaFinFuncion != null) {
-            codigo.append("    jmp ").append(etiquetaFinFuncion).append("\n");
+        SimpleType tipo = tipoDe(op);
+        if (tipo == SimpleType.DOUBLE) {
+            String mem = memoria(op);
+            cuerpo.append("    fld qword ").append(mem).append("\n");
+        } else if (tipo == SimpleType.CHAR) {
+            String mem = memoria(op);
+            cuerpo.append("    movzx eax, byte ").append(mem).append("\n");
+            cuerpo.append("    push eax\n");
+            cuerpo.append("    fild dword [esp]\n");
+            cuerpo.append("    add esp, 4\n");
         } else {
-            codigo.append("    ret\n");
+            String mem = memoria(op);
+            cuerpo.append("    fild dword ").append(mem).append("\n");
         }
-        return "";
     }
 
-    /**
-     * Procesa una estructura if-else y genera saltos condicionales.
-     * <p>
-     * Genera etiquetas para el bloque else y el final del if, implementando
-     * saltos basados en la evaluación de la condición.
-     * </p>
-     * <p>
-     * <b>Estructura generada:</b>
-     * <pre>
-     * if (x > 5) { ... } else { ... }
-     * →
-     *     cmp [x], 5
-     *     jle else_label
-     *     ; bloque if
-     *     jmp end_if
-     * else_label:
-     *     ; bloque else
-     * end_if:
-     * </pre>
-     * </p>
-     *
-     * @param ctx el contexto del nodo {@code iif} del árbol sintáctico
-     * @return cadena vacía
-     */
-    @Override
-    public String visitIif(IifContext ctx) {
-        String etiquetaElse = generarEtiqueta();
-        String etiquetaFin = generarEtiqueta();
-        
-        codigo.append("\n    ; Estructura IF\n");
-        
-        // Evaluar condición
-        visitCondicion(ctx.condicion());
-        
-        // Saltar a else si la condición es falsa
-        codigo.append("    je ").append(etiquetaElse).append("  ; saltar si falso\n");
-        
-        // Bloque del if
-        visitBloque(ctx.bloque());
-        codigo.append("    jmp ").append(etiquetaFin).append("  ; saltar al final\n");
-        
-        // Etiqueta del else
-        codigo.append(etiquetaElse).append(":\n");
-        
-        // Visitar el bloque else si existe
-        if (ctx.ielse() != null) {
-            visitIelse(ctx.ielse());
-        }
-        
-        codigo.append(etiquetaFin).append(":\n");
-        
-        return "";
+    /** Deja 0/1 en el registro de 8 bits indicado según el operando sea falso/verdadero. */
+    private void cargarBooleano(int op, String registro8) {
+        evaluarCondicion(op, "e" + registro8.charAt(0) + "x");
+        cuerpo.append("    setne ").append(registro8).append("\n");
+    }
+
+    /** Deja ZF = 1 si el operando es falso (cero), usando el registro indicado para enteros. */
+    private void evaluarCondicion(int op, String registro32) {
+        if (tipoDe(op) == SimpleType.DOUBLE) {
+            cargarDouble(op);
+            cuerpo.append("    fldz\n");
+            cuerpo.append("    fcomip st0, st1\n");
+            cuerpo.append("    fstp st0\n");
+        } else {
+            cargarEntero(op, registro32);
+            cuerpo.append("    test ").append(registro32).append(", ").append(registro32).append("\n");
+        }
     }
 
     /**
-     * Procesa una estructura while y genera código de bucle.
-     * <p>
-     * Implementa el bucle usando etiquetas para el inicio y fin,
-     * con salto condicional basado en la evaluación de la condición.
-     * </p>
-     * <p>
-     * <b>Estructura generada:</b>
-     * <pre>
-     * while (x < 10) { ... }
-     * →
-     * loop_start:
-     *     cmp [x], 10
-     *     jge loop_end
-     *     ; cuerpo del bucle
-     *     jmp loop_start
-     * loop_end:
-     * </pre>
-     * </p>
-     *
-     * @param ctx el contexto del nodo {@code iwhile} del árbol sintáctico
-     * @return cadena vacía
+     * Guarda en {@code destino} el valor que dejó {@link #cargar} (EAX o ST0),
+     * convirtiéndolo al tipo del destino. Un temporal nuevo toma el tipo del valor.
      */
-    @Override
-    public String visitIwhile(IwhileContext ctx) {
-        String etiquetaInicio = generarEtiqueta();
-        String etiquetaFin = generarEtiqueta();
+    private void guardar(int destino, SimpleType tipoValor) {
+        int simbolo = Operando.simbolo(destino);
+        int base = Operando.elemento(destino) ? nombres.base(simbolo) : -1;
+        Variable v = variable(base >= 0 ? base : simbolo, tipoValor);
+        if (base < 0 && v.temporal && v.tipo != tipoValor) {
+            // Temporal reasignado con otro tipo: el slot de 8 bytes admite cualquiera
+            v = new Variable(tipoValor, v.direccion, v.tamanio, true);
+            ponerLocal(simbolo, v);
+        }
+        String mem = memoria(destino);
+        if (v.tipo == SimpleType.DOUBLE) {
+            if (tipoValor != SimpleType.DOUBLE) {
+                cuerpo.append("    push eax\n");
+                cuerpo.append("    fild dword [esp]\n");
+                cuerpo.append("    add esp, 4\n");
+            }
+            cuerpo.append("    fstp qword ").append(mem).append("\n");
+            return;
+        }
+        if (tipoValor == SimpleType.DOUBLE) {
+            if (v.tipo == SimpleType.CHAR) {
+                cuerpo.append("    sub esp, 4\n");
+                cuerpo.append("    fisttp dword [esp]\n");
+                cuerpo.append("    pop eax\n");
+            } else {
+                cuerpo.append("    fisttp dword ").append(mem).append("\n");
+                return;
+            }
+        }
+        if (v.tipo == SimpleType.CHAR) {
+            cuerpo.append("    mov byte ").append(mem).append(", al\n");
+        } else {
+            cuerpo.append("    mov dword ").append(mem).append(", eax\n");
+        }
+    }
 
-        pilaContinue.push(etiquetaInicio);
-        pilaBreak.push(etiquetaFin);
+    /** Verdadero si el operando no está declarado (temporal del código intermedio). */
+    private boolean esTemporal(int operando) {
+        Variable v = buscar(Operando.simbolo(operando));
+        return v == null || v.temporal;
+    }
 
-        codigo.append("\n    ; Estructura WHILE\n");
-        codigo.append(etiquetaInicio).append(":\n");
+    // ------------------------------------------------------------------
+    // Instrucciones
+    // ------------------------------------------------------------------
+
+    /** Sufijo de setcc/jcc para comparaciones enteras con signo. */
+    private static String condicionEntera(Operacion op) {
+        switch (op) {
+            case MENOR: return "l";
+            case MAYOR: return "g";
+            case MENOR_IGUAL: return "le";
+            case MAYOR_IGUAL: return "ge";
+            case IGUAL: return "e";
+            default: return "ne";
+        }
+    }
 
-        // Evaluar condición
-        visitCondicion(ctx.condicion());
+    /** Sufijo de setcc/jcc para comparaciones de la FPU (flags sin signo). */
+    private static String condicionDouble(Operacion op) {
+        switch (op) {
+            case MENOR: return "b";
+            case MAYOR: return "a";
+            case MENOR_IGUAL: return "be";
+            case MAYOR_IGUAL: return "ae";
+            case IGUAL: return "e";
+            default: return "ne";
+        }
+    }
 
-        // Saltar al final si la condición es falsa
-        codigo.append("    je ").append(etiquetaFin).append("  ; salir si falso\n");
+    private static String negar(String cc) {
+        switch (cc) {
+            case "l": return "ge";
+            case "ge": return "l";
+            case "g": return "le";
+            case "le": return "g";
+            case "b": return "ae";
+            case "ae": return "b";
+            case "a": return "be";
+            case "be": return "a";
+            case "e": return "ne";
+            default: return "e";
+        }
+    }
 
-        // Cuerpo del while
-        visitBloque(ctx.bloque());
+    /**
+     * Traduce {@code result = arg1 op arg2}. Si es una comparación cuyo único uso
+     * es el {@code if} siguiente, emite directamente {@code cmp}/{@code jcc}.
+     *
+     * @return cantidad de instrucciones adicionales consumidas
+     */
+    private int generarBinaria(CodigoIntermedio instrucciones, int i) {
+        Operacion op = instrucciones.operacion(i);
+        int arg1 = instrucciones.primero(i);
+        int arg2 = instrucciones.segundo(i);
+        int result = instrucciones.resultado(i);
+        boolean usaDouble = instrucciones.tipo(i) == TipoDato.DOUBLE;
+
+        if (op.comparacion()) {
+            String cc;
+            if (usaDouble) {
+                // ST0 = arg1, ST1 = arg2
+                cargarDouble(arg2);
+                cargarDouble(arg1);
+                cuerpo.append("    fcomip st0, st1\n");
+                cuerpo.append("    fstp st0\n");
+                cc = condicionDouble(op);
+            } else {
+                cargarEntero(arg1, "eax");
+                compararConSegundo(arg2);
+                cc = condicionEntera(op);
+            }
+            if (i + 1 < instrucciones.cantidad() && instrucciones.operacion(i + 1) == Operacion.SI
+                    && result == instrucciones.primero(i + 1)
+                    && esTemporal(result) && usos(Operando.simbolo(result)) == 1) {
+                cuerpo.append("    ; ").append(instrucciones.texto(i + 1)).append("\n");
+                return 1 + generarSalto(instrucciones, i + 1, cc);
+            }
+            cuerpo.append("    set").append(cc).append(" al\n");
+            cuerpo.append("    movzx eax, al\n");
+            guardar(result, SimpleType.BOOL);
+            return 0;
+        }
 
-        // Volver al inicio del bucle
-        codigo.append("    jmp ").append(etiquetaInicio).append("  ; repetir bucle\n");
-        codigo.append(etiquetaFin).append(":\n");
+        if (op == Operacion.Y || op == Operacion.O) {
+            cargarBooleano(arg1, "al");
+            cargarBooleano(arg2, "bl");
+            cuerpo.append("    ").append(op == Operacion.Y ? "and" : "or").append(" al, bl\n");
+            cuerpo.append("    movzx eax, al\n");
+            guardar(result, SimpleType.BOOL);
+            return 0;
+        }
 
-        pilaBreak.pop();
-        pilaContinue.pop();
+        if (usaDouble) {
+            cargarDouble(arg1);
+            cargarDouble(arg2);
+            switch (op) {
+                case SUMA: cuerpo.append("    faddp st1, st0\n"); break;
+                case RESTA: cuerpo.append("    fsubp st1, st0\n"); break;
+                case PRODUCTO: cuerpo.append("    fmulp st1, st0\n"); break;
+                case DIVISION: cuerpo.append("    fdivp st1, st0\n"); break;
+                case MODULO: {
+                    // fprem calcula ST0 mod ST1 de forma parcial: repetir hasta que C2 = 0
+                    String etiqueta = ".r" + (contadorEtiquetas++);
+                    cuerpo.append("    fxch st1\n");
+                    cuerpo.append(etiqueta).append(":\n");
+                    cuerpo.append("    fprem\n");
+                    cuerpo.append("    fnstsw ax\n");
+                    cuerpo.append("    sahf\n");
+                    cuerpo.append("    jp ").append(etiqueta).append("\n");
+                    cuerpo.append("    fstp st1\n");
+                    break;
+                }
+                default:
+                    cuerpo.append("    ; operación ").append(op.texto()).append(" no soportada\n");
+                    break;
+            }
+            guardar(result, SimpleType.DOUBLE);
+            return 0;
+        }
 
-        return "";
+        cargarEntero(arg1, "eax");
+        switch (op) {
+            case SUMA: operarConSegundo("add", arg2); break;
+            case RESTA: operarConSegundo("sub", arg2); break;
+            case PRODUCTO: operarConSegundo("imul", arg2); break;
+            case DIVISION:
+            case MODULO:
+                cargarEntero(arg2, "ebx");
+                cuerpo.append("    cdq\n");
+                cuerpo.append("    idiv ebx\n");
+                if (op == Operacion.MODULO) {
+                    cuerpo.append("    mov eax, edx\n");
+                }
+                break;
+            default:
+                cuerpo.append("    ; operación ").append(op.texto()).append(" no soportada\n");
+                break;
+        }
+        guardar(result, SimpleType.INT);
+        return 0;
     }
 
     /**
-     * Procesa una estructura for y genera código de bucle con inicialización.
-     * <p>
-     * Traduce el bucle for a una estructura equivalente con inicialización,
-     * condición de continuación y expresión de actualización.
-     * </p>
-     * <p>
-     * <b>Estructura generada:</b>
-     * <pre>
-     * for (int i = 0; i < 5; i++) { ... }
-     * →
-     *     mov dword [i], 0      ; inicialización
-     * loop_start:
-     *     cmp [i], 5            ; condición
-     *     jge loop_end          ; salir si falso
-     *     ; cuerpo del bucle
-     *     inc dword [i]         ; actualización
-     *     jmp loop_start
-     * loop_end:
-     * </pre>
-     * </p>
+     * Traduce {@code result = (tipo) arg}. Si el único uso del temporal es la
+     * asignación siguiente, guarda directamente en su destino.
      *
-     * @param ctx el contexto del nodo {@code ifor} del árbol sintáctico
-     * @return cadena vacía
+     * @return cantidad de instrucciones adicionales consumidas
      */
-    @Override
-    public String visitIfor(IforContext ctx) {
-        String etiquetaInicio = generarEtiqueta();
-        String etiquetaFin = generarEtiqueta();
-
-        pilaContinue.push(etiquetaInicio);
-        pilaBreak.push(etiquetaFin);
-
-        codigo.append("\n    ; Estructura FOR\n");
-        
-        // Obtener el contexto del ciclo: PA declaracion comparacion PYC finfor PC
-        CicloContext ciclo = ctx.ciclo();
-        
-        // 1. Procesar inicialización (declaracion)
-        if (ciclo.declaracion() != null) {
-            visitDeclaracion(ciclo.declaracion());
-        }
-        
-        // 2. Etiqueta de inicio del bucle (ANTES de la condición)
-        codigo.append(etiquetaInicio).append(":\n");
-        
-        // 3. Evaluar condición general (la parte central es una expresion)
-        if (ciclo.expresion() != null) {
-            visitExpresion(ciclo.expresion());
-        }
-        
-        // 4. Saltar al final si la condición es falsa
-        codigo.append("    je ").append(etiquetaFin).append("  ; salir si falso\n");
-        
-        // 5. Cuerpo del for
-        visitBloque(ctx.bloque());
-        
-        // 6. Procesar actualización (finfor: i++, i--, o expresion)
-        if (ciclo.finfor() != null) {
-            visitFinfor(ciclo.finfor());
-        }
-        
-        // 7. Volver al inicio del bucle
-        codigo.append("    jmp ").append(etiquetaInicio).append("  ; repetir bucle\n");
-        codigo.append(etiquetaFin).append(":\n");
-
-        pilaBreak.pop();
-        pilaContinue.pop();
-
-        return "";
-    }
-
-    @Override
-    public String visitIbreak(IbreakContext ctx) {
-        if (!pilaBreak.isEmpty()) {
-            String destino = pilaBreak.peek();
-            codigo.append("    ; break\n");
-            codigo.append("    jmp ").append(destino).append("\n");
+    private int generarConversion(CodigoIntermedio instrucciones, int i) {
+        SimpleType tipo = cargar(instrucciones.primero(i), SimpleType.deTipo(instrucciones.tipo(i)));
+        int result = instrucciones.resultado(i);
+        if (i + 1 < instrucciones.cantidad() && instrucciones.operacion(i + 1) == Operacion.ASIGNACION
+                && result == instrucciones.primero(i + 1)
+                && esTemporal(result) && usos(Operando.simbolo(result)) == 1) {
+            cuerpo.append("    ; ").append(instrucciones.texto(i + 1)).append("\n");
+            guardar(instrucciones.resultado(i + 1), tipo);
+            return 1;
         }
-        return "";
+        guardar(result, tipo);
+        return 0;
     }
 
-    @Override
-    public String visitIcontinue(IcontinueContext ctx) {
-        if (!pilaContinue.isEmpty()) {
-            String destino = pilaContinue.peek();
-            codigo.append("    ; continue\n");
-            codigo.append("    jmp ").append(destino).append("\n");
+    /** {@code instruccion eax, arg2} usando un inmediato cuando el operando es literal. */
+    private void operarConSegundo(String instruccion, int arg2) {
+        if (Operando.literal(arg2) && tipoDe(arg2) != SimpleType.DOUBLE) {
+            cuerpo.append("    ").append(instruccion).append(" eax, ").append(valorInmediato(arg2)).append("\n");
+        } else {
+            cargarEntero(arg2, "ebx");
+            cuerpo.append("    ").append(instruccion).append(" eax, ebx\n");
         }
-        return "";
     }
-    
-    /**
-     * Procesa la actualización del bucle for (incremento, decremento o expresión).
-     * <p>
-     * Maneja las tres formas posibles de actualización en un for:
-     * <ul>
-     *   <li>ID++ (incremento)</li>
-     *   <li>ID-- (decremento)</li>
-     *   <li>expresion (asignación general)</li>
-     * </ul>
-     * </p>
-     *
-     * @param ctx el contexto del nodo {@code finfor} del árbol sintáctico
-     * @return cadena vacía
-     */
-    @Override
-    public String visitFinfor(FinforContext ctx) {
-        if (ctx.INCREMENTO() != null && ctx.ID() != null) {
-            // Caso: i++
-            String variable = ctx.ID().getText();
-            codigo.append("    ; Incremento de ").append(variable).append("\n");
-            codigo.append("    inc dword [").append(variable).append("]\n");
-        } else if (ctx.DECREMENTO() != null && ctx.ID() != null) {
-            // Caso: i--
-            String variable = ctx.ID().getText();
-            codigo.append("    ; Decremento de ").append(variable).append("\n");
-            codigo.append("    dec dword [").append(variable).append("]\n");
-        } else if (ctx.expresion() != null) {
-            // Caso: expresión general (ej: i = i + 1)
-            codigo.append("    ; Actualización por expresión\n");
-            visitExpresion(ctx.expresion());
-        }
-        return "";
+
+    private void compararConSegundo(int arg2) {
+        operarConSegundo("cmp", arg2);
     }
-    
+
     /**
-     * Procesa el ciclo del for sin generar código adicional.
-     * <p>
-     * Este método existe para evitar que el visitor por defecto procese
-     * el ciclo de manera incorrecta. El procesamiento real se hace en visitIfor.
-     * </p>
+     * Traduce {@code if x goto A}. Con el patrón habitual
+     * {@code if x goto A; goto B; A:} emite un único salto invertido a B.
      *
-     * @param ctx el contexto del nodo {@code ciclo} del árbol sintáctico
-     * @return cadena vacía
+     * @param cc condición ya evaluada en los flags, o {@code null} para evaluar {@code x}
+     * @return cantidad de instrucciones adicionales consumidas
      */
-    @Override
-    public String visitCiclo(CicloContext ctx) {
-        // No hacer nada aquí - el procesamiento se hace en visitIfor
-        return "";
+    private int generarSalto(CodigoIntermedio instrucciones, int i, String cc) {
+        int condicion = instrucciones.primero(i);
+        String destino = instrucciones.operando(instrucciones.resultado(i));
+        if (cc == null) {
+            if (Operando.literal(condicion)) {
+                // Condición constante: salto incondicional o ninguno
+                if (Double.parseDouble(valorInmediato(condicion)) != 0) {
+                    cuerpo.append("    jmp .").append(destino).append("\n");
+                }
+                return 0;
+            }
+            evaluarCondicion(condicion, "eax");
+            cc = "ne";
+        }
+        if (i + 2 < instrucciones.cantidad() && instrucciones.operacion(i + 1) == Operacion.SALTO
+                && instrucciones.operacion(i + 2) == Operacion.ETIQUETA
+                && instrucciones.resultado(i) == instrucciones.resultado(i + 2)) {
+            cuerpo.append("    ; ").append(instrucciones.texto(i + 1)).append("\n");
+            cuerpo.append("    j").append(negar(cc)).append(" .")
+                    .append(instrucciones.operando(instrucciones.resultado(i + 1))).append("\n");
+            return 1;
+        }
+        cuerpo.append("    j").append(cc).append(" .").append(destino).append("\n");
+        return 0;
     }
 
     /**
-     * Procesa la condición de una estructura de control.
-     * <p>
-     * Evalúa la comparación y establece flags para saltos condicionales.
-     * El resultado se refleja en los flags del procesador para uso de
-     * instrucciones de salto condicional (je, jne, jg, jl, etc.).
-     * </p>
-     *
-     * @param ctx el contexto del nodo {@code condicion} del árbol sintáctico
-     * @return cadena vacía
+     * Apila de derecha a izquierda los argumentos (los {@code param} que preceden
+     * al {@code call}), llama y guarda el valor de retorno.
      */
-    @Override
-    public String visitCondicion(CondicionContext ctx) {
-        if (ctx != null && ctx.expresion() != null) {
-            visitExpresion(ctx.expresion());
+    private void generarLlamada(CodigoIntermedio instrucciones, int i) {
+        String nombre = instrucciones.operando(instrucciones.primero(i));
+        Firma firma = firmas.get(nombre);
+        int cantidad = (int) nombres.valor(Operando.simbolo(instrucciones.segundo(i)));
+        int bytes = 0;
+        for (int k = cantidad - 1; k >= 0; k--) {
+            int arg = instrucciones.primero(i - cantidad + k);
+            SimpleType tipo = (firma != null && k < firma.parametros.size()) ? firma.parametros.get(k)
+                    : SimpleType.deTipo(instrucciones.tipo(i - cantidad + k));
+            if (tipo == SimpleType.DOUBLE) {
+                cargarDouble(arg);
+                cuerpo.append("    sub esp, 8\n");
+                cuerpo.append("    fstp qword [esp]\n");
+                bytes += 8;
+            } else {
+                cargarEntero(arg, "eax");
+                cuerpo.append("    push eax\n");
+                bytes += 4;
+            }
+        }
+        cuerpo.append("    call fn_").append(nombre).append("\n");
+        if (bytes > 0) {
+            cuerpo.append("    add esp, ").append(bytes).append("\n");
+        }
+        TipoDato tipo = instrucciones.tipo(i);
+        if (tipo == TipoDato.VOID || tipo == null && firma != null && firma.esVoid) {
+            return;
+        }
+        SimpleType retorno = tipo != null ? SimpleType.deTipo(tipo) : (firma != null ? firma.retorno : SimpleType.INT);
+        int result = instrucciones.resultado(i);
+        if (result != Operando.NINGUNO) {
+            guardar(result, retorno);
+        } else if (retorno == SimpleType.DOUBLE) {
+            cuerpo.append("    fstp st0\n");
         }
-        return "";
     }
 
-    /**
-     * Procesa un bloque de código delimitado por llaves.
-     * <p>
-     * Los bloques crean un nuevo ámbito para variables locales en el
-     * análisis semántico, pero en la generación de código simplemente
-     * se procesan las instrucciones contenidas.
-     * </p>
-     *
-     * @param ctx el contexto del nodo {@code bloque} del árbol sintáctico
-     * @return cadena vacía
-     */
-    @Override
-    public String visitBloque(BloqueContext ctx) {
-        codigo.append("    ; Inicio de bloque\n");
-        super.visitBloque(ctx);
-        codigo.append("    ; Fin de bloque\n");
-        return "";
+    /** @param valor operando devuelto, o {@link Operando#NINGUNO} */
+    private void generarRetorno(int valor) {
+        if (funcionActual == null) {
+            return;
+        }
+        boolean conValor = valor != Operando.NINGUNO;
+        if (!funcionActual.esVoid) {
+            if (funcionActual.retorno == SimpleType.DOUBLE) {
+                if (conValor) {
+                    cargarDouble(valor);
+                } else {
+                    cuerpo.append("    fldz\n");
+                }
+            } else if (conValor) {
+                cargarEntero(valor, "eax");
+            } else {
+                cuerpo.append("    xor eax, eax\n");
+            }
+        }
+        cuerpo.append("    jmp .fin\n");
     }
 
     /**
      * Guarda el código ensamblador generado en el archivo especificado.
      * <p>
-     * Combina la sección de datos (.bss) con la sección de código (.text)
+     * Combina la sección .data, la sección .bss y la sección de código (.text)
      * y escribe el resultado completo en el archivo de salida.
      * </p>
      * <p>
@@ -1244,27 +1151,22 @@ public class GeneradorAssembler extends compiladoresBaseVisitor<String> {
      */
     private void guardarArchivo() {
         try (FileWriter writer = new FileWriter(archivoSalida)) {
-            // Sección .data (constantes inicializadas)
-            writer.write(seccionDatosInit.toString());
-            writer.write("\n");
-
-            // Sección .bss (variables sin inicializar)
-            writer.write(seccionDatos.toString());
-            writer.write("\n");
-            
-            // Luego la sección de código
-            writer.write(codigo.toString());
-            
-            System.out.println("\n===========================================");
-            System.out.println("Código ensamblador generado exitosamente:");
-            System.out.println("Archivo: " + archivoSalida);
-            System.out.println("===========================================\n");
-            
+            writer.write(obtenerCodigo());
+            informarGenerado();
         } catch (IOException e) {
             System.err.println("Error al guardar el archivo de ensamblador: " + e.getMessage());
         }
     }
 
+    private void informarGenerado() {
+        if (trazas.activa(Trazas.Categoria.BACKEND, Trazas.Nivel.INFO)) {
+            trazas.linea("\n===========================================");
+            trazas.linea("Código ensamblador generado exitosamente:");
+            trazas.linea("Archivo: " + archivoSalida);
+            trazas.linea("===========================================\n");
+        }
+    }
+
     /**
      * Obtiene el código ensamblador generado como cadena.
      * <p>
@@ -1272,10 +1174,9 @@ public class GeneradorAssembler extends compiladoresBaseVisitor<String> {
      * sin escribirlo a un archivo.
      * </p>
      *
-     * @return el código ensamblador completo (sección de datos + código)
+     * @return el código ensamblador completo (secciones de datos + código)
      */
     public String obtenerCodigo() {
-        return seccionDatos.toString() + "\n" + codigo.toString();
+        return seccionDatosInit + "\n" + seccionDatos + "\n" + codigo;
     }
 }
-
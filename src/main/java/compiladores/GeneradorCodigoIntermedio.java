@@ -1,37 +1,129 @@
 package compiladores;
 
-import org.antlr.v4.runtime.tree.TerminalNode;
-import compiladores.compiladoresParser.*;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Deque;
 import java.util.List;
 
+import compiladores.CodigoIntermedio.Operacion;
+
 /**
  * Generador de código intermedio en forma de instrucciones de tres direcciones.
  * <p>
- * Recorre el árbol sintáctico generado por ANTLR usando el patrón Visitor y
- * construye una lista de {@link Instruccion} que representa asignaciones,
- * expresiones, comparaciones, estructuras de control (if/while/for) y
- * construcciones de alto nivel como llamadas a funciones y sentencias return.
+ * Recorre el {@link ArbolCompacto} que construye {@link ConstructorArbol} después
+ * del parsing y construye un {@link CodigoIntermedio} que representa
+ * asignaciones, expresiones, comparaciones, estructuras de control
+ * (if/while/for) y construcciones de alto nivel como llamadas a funciones y
+ * sentencias return.
+ * </p>
+ * <p>
+ * Además de las operaciones, el código incluye la información estructural que
+ * necesita el backend ({@link GeneradorAssembler}):
+ * <ul>
+ *   <li>{@code func tipo nombre} / {@code endfunc nombre}: límites de cada función</li>
+ *   <li>{@code formal tipo nombre}: parámetros formales, en orden</li>
+ *   <li>{@code decl tipo nombre [dim]}: declaración de variable (global si está fuera de una función)</li>
+ * </ul>
+ * Las instrucciones fuera de cualquier función forman la inicialización global.
+ * Cada operando sale ya clasificado ({@link Operando}): temporal, variable,
+ * literal, elemento, etiqueta, función o tipo.
+ * </p>
+ * <p>
+ * Cada instrucción lleva su tipo, calculado a partir de los que {@link Escucha}
+ * dejó en el árbol: una operación entre {@code int} y {@code double} convierte
+ * antes el operando {@code int} con un {@code CONVERSION}, al igual que una
+ * asignación o un {@code return} cuyo valor no es del tipo del destino, y las
+ * operaciones lógicas y las condiciones comparan un {@code double} con
+ * {@code 0.0} para operar sobre un valor de verdad entero.
  * </p>
  * <p>
  * También mantiene pilas de etiquetas para soportar correctamente las
  * sentencias <code>break</code> y <code>continue</code> en bucles anidados.
  * </p>
  */
-public class GeneradorCodigoIntermedio extends compiladoresBaseVisitor<String> {
-    private List<Instruccion> instrucciones = new ArrayList<>();
+public class GeneradorCodigoIntermedio {
+    private CodigoIntermedio codigo;
     private int tempCounter = 0;
     private int labelCounter = 0;
-    private List<String> breakLabels = new ArrayList<>();
-    private List<String> continueLabels = new ArrayList<>();
+    private List<Integer> breakLabels = new ArrayList<>();
+    private List<Integer> continueLabels = new ArrayList<>();
+    private ArbolCompacto arbol;
+    /** Tabla de nombres del árbol: los temporales, etiquetas y elementos también se internan. */
+    private TablaNombres nombres;
+    private Trazas trazas = Trazas.ninguna();
+    private boolean trazaDetalle;
+    /** Tipo del valor de la última expresión traducida con {@link #expresion(int)}. */
+    private TipoDato tipoExpresion;
+    /** Tipo de retorno de la función que se traduce. */
+    private TipoDato tipoFuncion;
+
+    /**
+     * Indica las trazas de la compilación; con la categoría {@link Trazas.Categoria#CI}
+     * en {@link Trazas.Nivel#DETALLE} se informa cada función traducida.
+     *
+     * @param trazas trazas de la compilación
+     */
+    public void setTrazas(Trazas trazas) {
+        this.trazas = trazas;
+        this.trazaDetalle = trazas.activa(Trazas.Categoria.CI, Trazas.Nivel.DETALLE);
+    }
+
+    /**
+     * Nombre en el código intermedio de cada variable local visible, más uno
+     * (cero si no hay una local visible con ese nombre). Una declaración que
+     * oculta a una variable visible recibe un nombre propio ({@code x.1}), de
+     * modo que la del bloque tiene su propio lugar y la externa vuelve a ser la
+     * visible al cerrarlo.
+     */
+    private int[] locales = new int[0];
+    /** Pares (símbolo, valor anterior en {@link #locales}) para cerrar cada ámbito. */
+    private int[] ocultas = new int[16];
+    private int cantidadOcultas;
+    /** Símbolos de las variables globales declaradas hasta ahora. */
+    private final BitSet globales = new BitSet();
+    /** Si se traduce el cuerpo de una función (las declaraciones son locales). */
+    private boolean enFuncion;
+    /** Contador de los nombres propios de las variables que ocultan a otra. */
+    private int ocultamientos;
+
+    /**
+     * Devuelve el código de tres direcciones generado.
+     *
+     * @return instrucciones generadas durante la visita
+     */
+    public CodigoIntermedio getCodigo() {
+        return codigo;
+    }
 
     /**
-     * Devuelve la lista de instrucciones de tres direcciones generadas.
+     * Devuelve las instrucciones generadas hasta ahora y empieza un código nuevo;
+     * los contadores de temporales y etiquetas siguen corriendo. Lo usa la
+     * compilación por partes para emitir cada {@code toplevel} por separado.
      *
-     * @return lista inmutable de instrucciones generadas durante la visita
+     * @return instrucciones generadas desde la llamada anterior
      */
-    public List<Instruccion> getInstrucciones() {
-        return instrucciones;
+    public CodigoIntermedio tomarCodigo() {
+        CodigoIntermedio generado = codigo;
+        codigo = new CodigoIntermedio(nombres);
+        return generado;
+    }
+
+    /**
+     * Genera el código intermedio de un programa completo.
+     *
+     * @param arbol árbol compacto del programa
+     */
+    public void generar(ArbolCompacto arbol) {
+        this.arbol = arbol;
+        if (nombres != arbol.nombres()) {
+            this.nombres = arbol.nombres();
+            this.codigo = new CodigoIntermedio(nombres);
+        }
+        if (arbol.tamanio() > 0) {
+            sentencia(arbol.raiz());
+        }
     }
 
     /**
@@ -39,8 +131,8 @@ public class GeneradorCodigoIntermedio extends compiladoresBaseVisitor<String> {
      *
      * @return identificador del nuevo temporal
      */
-    private String newTemp() {
-        return "t" + (tempCounter++);
+    private int newTemp() {
+        return Operando.de(Operando.TEMPORAL, nombres.id("t" + (tempCounter++)));
     }
 
     /**
@@ -48,321 +140,492 @@ public class GeneradorCodigoIntermedio extends compiladoresBaseVisitor<String> {
      *
      * @return identificador de la nueva etiqueta
      */
-    private String newLabel() {
-        return "l" + (labelCounter++);
+    private int newLabel() {
+        return Operando.de(Operando.ETIQUETA, nombres.id("l" + (labelCounter++)));
     }
 
-    @Override
-    public String visitAsignacion(AsignacionContext ctx) {
-        String id = ctx.ID().getText();
-        String destino = id;
-        // Soporte simple para asignación a arreglo: ID '[' expr ']'
-        if (ctx.dimensionAcceso() != null) {
-            String idx = visit(ctx.dimensionAcceso().expresion());
-            destino = id + "[" + idx + "]";
+    /** @return operando de la variable o parámetro del nodo {@code n} */
+    private int variable(int n) {
+        return Operando.de(Operando.VARIABLE, visible(arbol.valor(n)));
+    }
+
+    /** @return nombre en el código intermedio de la variable visible con el nombre {@code simbolo} */
+    private int visible(int simbolo) {
+        return simbolo >= 0 && simbolo < locales.length && locales[simbolo] > 0 ? locales[simbolo] - 1 : simbolo;
+    }
+
+    /**
+     * @return nombre en el código intermedio para una local nueva llamada
+     *         {@code simbolo}: el mismo, o uno propio si oculta a una variable visible
+     */
+    private int nombreLocal(int simbolo) {
+        boolean oculta = simbolo >= 0 && (simbolo < locales.length && locales[simbolo] > 0 || globales.get(simbolo));
+        return oculta ? nombres.id(nombres.texto(simbolo) + "." + (++ocultamientos)) : simbolo;
+    }
+
+    /** Hace visible hasta el fin del ámbito actual la local {@code simbolo} con el nombre {@code nombre}. */
+    private void mostrarLocal(int simbolo, int nombre) {
+        if (simbolo >= locales.length) {
+            locales = Arrays.copyOf(locales, Math.max(simbolo + 1, nombres.cantidad()));
         }
-        String val = visit(ctx.expresion());
-        instrucciones.add(new Instruccion("=", val, null, destino));
-        return destino;
+        if (cantidadOcultas + 2 > ocultas.length) {
+            ocultas = Arrays.copyOf(ocultas, ocultas.length * 2);
+        }
+        ocultas[cantidadOcultas++] = simbolo;
+        ocultas[cantidadOcultas++] = locales[simbolo];
+        locales[simbolo] = nombre + 1;
+    }
+
+    /** @return marca del ámbito que se abre, para {@link #cerrarAmbito(int)} */
+    private int abrirAmbito() {
+        return cantidadOcultas;
     }
 
-    @Override
-    public String visitExpresion(ExpresionContext ctx) {
-        if (ctx == null) {
-            return "";
+    /** Quita las locales declaradas desde {@code marca}: vuelven a verse las que ocultaban. */
+    private void cerrarAmbito(int marca) {
+        while (cantidadOcultas > marca) {
+            cantidadOcultas -= 2;
+            locales[ocultas[cantidadOcultas]] = ocultas[cantidadOcultas + 1];
         }
+    }
+
+    /** @return operando del tipo declarado del nodo {@code n} */
+    private int tipo(int n) {
+        return Operando.de(Operando.TIPO, TipoDato.codigo(arbol.tipo(n)));
+    }
+
+    /** @return operando del elemento {@code base[indice]} del arreglo del nodo {@code n} */
+    private int elemento(int n, int indice) {
+        return Operando.de(Operando.ELEMENTO, nombres.elemento(visible(arbol.valor(n)), Operando.simbolo(indice)));
+    }
+
+    private void salto(int etiqueta) {
+        codigo.agregar(Operacion.SALTO, Operando.NINGUNO, Operando.NINGUNO, etiqueta);
+    }
+
+    private void etiqueta(int etiqueta) {
+        codigo.agregar(Operacion.ETIQUETA, Operando.NINGUNO, Operando.NINGUNO, etiqueta);
+    }
+
+    private void si(int condicion, int etiqueta) {
+        codigo.agregar(Operacion.SI, condicion, Operando.NINGUNO, etiqueta);
+    }
+
+    /** @return tipo del nodo según {@link Escucha}; {@code int} si no lo tiene */
+    private TipoDato tipoValor(int n) {
+        TipoDato tipo = arbol.tipo(n);
+        return tipo != null ? tipo : TipoDato.INT;
+    }
+
+    /** @return tipo en que se calcula una operación entre valores de estos tipos */
+    private static TipoDato tipoOperacion(TipoDato a, TipoDato b) {
+        return a == TipoDato.DOUBLE || b == TipoDato.DOUBLE ? TipoDato.DOUBLE : TipoDato.INT;
+    }
 
-        // Caso unario -expr
-        if (ctx.RESTA() != null && ctx.expresion().size() == 1) {
-            String valor = visit(ctx.expresion(0));
-            String cero = "0";
-            String temp = newTemp();
-            instrucciones.add(new Instruccion("-", cero, valor, temp));
-            return temp;
+    /** @return literal entero, o double si {@code tipo} lo es, con el texto dado sin decimales */
+    private int literal(String entero, TipoDato tipo) {
+        return tipo == TipoDato.DOUBLE
+                ? Operando.de(Operando.DOUBLE, nombres.id(entero + ".0"))
+                : Operando.de(Operando.ENTERO, nombres.id(entero));
+    }
+
+    /**
+     * Convierte un valor entre {@code int} y {@code double} con un {@code CONVERSION};
+     * {@code char} y {@code bool} son enteros y no necesitan conversión.
+     *
+     * @return operando con el valor en el tipo {@code destino}
+     */
+    private int convertir(int valor, TipoDato origen, TipoDato destino) {
+        boolean deDouble = origen == TipoDato.DOUBLE;
+        if (destino == null || destino == TipoDato.VOID || deDouble == (destino == TipoDato.DOUBLE)) {
+            return valor;
         }
+        int temp = newTemp();
+        codigo.agregar(Operacion.CONVERSION, deDouble ? TipoDato.INT : TipoDato.DOUBLE, valor, Operando.NINGUNO, temp);
+        return temp;
+    }
 
-        // Caso binario: expr op expr
-        if (ctx.expresion().size() == 2) {
-            String left = visit(ctx.expresion(0));
-            String right = visit(ctx.expresion(1));
-            String op = ctx.SUMA() != null ? "+" :
-                        ctx.RESTA() != null ? "-" :
-                        ctx.MULT() != null ? "*" :
-                        ctx.DIV() != null ? "/" :
-                        ctx.MOD() != null ? "%" :
-                        ctx.EQ() != null ? "==" :
-                        ctx.UEQ() != null ? "!=" :
-                        ctx.MAYOR() != null ? ">" :
-                        ctx.MENOR() != null ? "<" :
-                        ctx.MAYORIGUAL() != null ? ">=" :
-                        ctx.MENORIGUAL() != null ? "<=" :
-                        ctx.AND() != null ? "&&" :
-                        ctx.OR() != null ? "||" : "";
-
-            String temp = newTemp();
-            instrucciones.add(new Instruccion(op, left, right, temp));
-            return temp;
+    /** @return valor de verdad entero de un valor: un {@code double} se compara con {@code 0.0} */
+    private int verdad(int valor, TipoDato tipo) {
+        if (tipo != TipoDato.DOUBLE) {
+            return valor;
         }
+        int temp = newTemp();
+        codigo.agregar(Operacion.DISTINTO, TipoDato.DOUBLE, valor, literal("0", TipoDato.DOUBLE), temp);
+        return temp;
+    }
 
-        // Caso !expr (unario lógico)
-        if (ctx.getChildCount() == 2 && ctx.getChild(0).getText().equals("!")) {
-            String valor = visit(ctx.expresion(0));
-            String temp = newTemp();
-            instrucciones.add(new Instruccion("!", valor, null, temp));
-            return temp;
+    /** Traduce la condición {@code n} de un if, while o for a un valor de verdad entero. */
+    private int condicion(int n) {
+        int valor = expresion(n);
+        return verdad(valor, tipoExpresion);
+    }
+
+    private void sentencia(int n) {
+        switch (arbol.clase(n)) {
+            case ArbolCompacto.PROGRAMA:
+            case ArbolCompacto.SECUENCIA:
+                for (int i = 0; i < arbol.cantidadHijos(n); i++) {
+                    sentencia(arbol.hijo(n, i));
+                }
+                break;
+            case ArbolCompacto.BLOQUE: {
+                int ambito = abrirAmbito();
+                for (int i = 0; i < arbol.cantidadHijos(n); i++) {
+                    sentencia(arbol.hijo(n, i));
+                }
+                cerrarAmbito(ambito);
+                break;
+            }
+            case ArbolCompacto.FUNCION:
+                funcion(n);
+                break;
+            case ArbolCompacto.DECLARACION:
+                declarar(n);
+                break;
+            case ArbolCompacto.ASIGNACION:
+                asignacion(n);
+                break;
+            case ArbolCompacto.SI:
+                si(n);
+                break;
+            case ArbolCompacto.MIENTRAS:
+                mientras(n);
+                break;
+            case ArbolCompacto.PARA:
+                para(n);
+                break;
+            case ArbolCompacto.EVALUAR:
+                // Se evalúa y se descarta (llamada como sentencia, actualización de un for)
+                expresion(arbol.hijo(n, 0));
+                break;
+            case ArbolCompacto.INCREMENTO:
+            case ArbolCompacto.DECREMENTO: {
+                int id = variable(n);
+                TipoDato tipo = tipoValor(n);
+                TipoDato calculo = tipoOperacion(tipo, TipoDato.INT);
+                Operacion op = arbol.clase(n) == ArbolCompacto.INCREMENTO ? Operacion.SUMA : Operacion.RESTA;
+                if (tipo == calculo) {
+                    codigo.agregar(op, calculo, id, literal("1", calculo), id);
+                } else {
+                    // char y bool se calculan en int y se angostan al guardar
+                    int temp = newTemp();
+                    codigo.agregar(op, calculo, id, literal("1", calculo), temp);
+                    codigo.agregar(Operacion.ASIGNACION, tipo, temp, Operando.NINGUNO, id);
+                }
+                break;
+            }
+            case ArbolCompacto.ROMPER:
+                if (!breakLabels.isEmpty()) {
+                    salto(breakLabels.get(breakLabels.size() - 1));
+                }
+                break;
+            case ArbolCompacto.CONTINUAR:
+                if (!continueLabels.isEmpty()) {
+                    salto(continueLabels.get(continueLabels.size() - 1));
+                }
+                break;
+            case ArbolCompacto.RETORNO: {
+                int valor = Operando.NINGUNO;
+                if (arbol.cantidadHijos(n) > 0) {
+                    valor = expresion(arbol.hijo(n, 0));
+                    valor = convertir(valor, tipoExpresion, tipoFuncion);
+                }
+                codigo.agregar(Operacion.RETORNO, tipoFuncion, valor, Operando.NINGUNO, Operando.NINGUNO);
+                break;
+            }
+            default:
+                break;
         }
+    }
 
-        // Caso base: factor
-        if (ctx.factor() != null) {
-            return visit(ctx.factor());
+    private void funcion(int n) {
+        int nombre = Operando.de(Operando.FUNCION, arbol.valor(n));
+        int inicio = codigo.cantidad();
+        tipoFuncion = arbol.tipo(n);
+        codigo.agregar(Operacion.FUNCION, tipo(n), Operando.NINGUNO, nombre);
+        // Los parámetros forman un ámbito que encierra al bloque del cuerpo
+        int ambito = abrirAmbito();
+        enFuncion = true;
+        int ultimo = arbol.cantidadHijos(n) - 1;
+        for (int i = 0; i < ultimo; i++) {
+            // Los parámetros sin nombre reciben uno sintético
+            int p = arbol.hijo(n, i);
+            int formal = Operando.de(Operando.VARIABLE, arbol.valor(p) >= 0 ? arbol.valor(p) : nombres.id("_p" + i));
+            if (arbol.valor(p) >= 0) {
+                mostrarLocal(arbol.valor(p), arbol.valor(p));
+            }
+            codigo.agregar(Operacion.FORMAL, tipo(p), Operando.NINGUNO, formal);
         }
+        sentencia(arbol.hijo(n, ultimo));
+        enFuncion = false;
+        cerrarAmbito(ambito);
+        codigo.agregar(Operacion.FIN_FUNCION, Operando.NINGUNO, Operando.NINGUNO, nombre);
+        if (trazaDetalle) {
+            trazas.linea("[CI] funcion " + arbol.texto(n) + ": " + (codigo.cantidad() - inicio) + " instrucciones");
+        }
+    }
 
-        return "";
+    /**
+     * Emite {@code decl} para una variable y, si tiene inicialización, la
+     * evaluación de la expresión seguida de la asignación. Una local queda
+     * visible después de su inicialización, como en {@link Escucha}: en
+     * {@code int x = x + 1;} el {@code x} de la derecha es el externo.
+     */
+    private void declarar(int n) {
+        int simbolo = arbol.valor(n);
+        int nombre;
+        if (enFuncion) {
+            nombre = nombreLocal(simbolo);
+        } else {
+            if (simbolo >= 0) {
+                globales.set(simbolo);
+            }
+            nombre = simbolo;
+        }
+        int operando = Operando.de(Operando.VARIABLE, nombre);
+        int dimension = arbol.dato(n) >= 0 ? Operando.de(Operando.ENTERO, arbol.dato(n)) : Operando.NINGUNO;
+        codigo.agregar(Operacion.DECLARACION, tipo(n), dimension, operando);
+        if (arbol.cantidadHijos(n) > 0) {
+            TipoDato tipo = tipoValor(n);
+            int val = convertir(expresion(arbol.hijo(n, 0)), tipoExpresion, tipo);
+            codigo.agregar(Operacion.ASIGNACION, tipo, val, Operando.NINGUNO, operando);
+        }
+        if (enFuncion && simbolo >= 0) {
+            mostrarLocal(simbolo, nombre);
+        }
     }
 
-    @Override
-    public String visitFactor(FactorContext ctx) {
-        if (ctx.NUMERO() != null) return ctx.NUMERO().getText();
-        if (ctx.CHAR_CONST() != null) return ctx.CHAR_CONST().getText();
-        if (ctx.TRUE() != null) return "true";
-        if (ctx.FALSE() != null) return "false";
-        if (ctx.ID() != null && ctx.getChildCount() >= 4 && "[".equals(ctx.getChild(1).getText())) {
-            String idx = visit(ctx.expresion());
-            return ctx.ID().getText() + "[" + idx + "]";
+    private void asignacion(int n) {
+        int destino = variable(n);
+        // Soporte simple para asignación a arreglo: ID '[' expr ']'
+        if (arbol.cantidadHijos(n) == 2) {
+            int indice = expresion(arbol.hijo(n, 0));
+            destino = elemento(n, convertir(indice, tipoExpresion, TipoDato.INT));
         }
-        if (ctx.ID() != null) return ctx.ID().getText();
-        if (ctx.llamada_expr() != null) return visit(ctx.llamada_expr());
-        if (ctx.expresion() != null) return visit(ctx.expresion());
-        return "";
+        TipoDato tipo = tipoValor(n);
+        int val = convertir(expresion(arbol.hijo(n, arbol.cantidadHijos(n) - 1)), tipoExpresion, tipo);
+        codigo.agregar(Operacion.ASIGNACION, tipo, val, Operando.NINGUNO, destino);
     }
 
-    @Override
-    public String visitIif(IifContext ctx) {
+    private void si(int n) {
         // Estructura: if cond goto Ltrue, goto Lfalse, label Ltrue, bloque, [else], label Lend/Lfalse
-        String cond = visit(ctx.condicion());
-        String labelTrue = newLabel();
-        String labelFalse = newLabel();
-        
-        // if cond goto labelTrue
-        instrucciones.add(new Instruccion("if", cond, null, labelTrue));
-        // goto labelFalse (if condition fails)
-        instrucciones.add(new Instruccion("goto", null, null, labelFalse));
-        
-        instrucciones.add(new Instruccion("label", null, null, labelTrue));
-        visit(ctx.bloque());
-        
-        // Handle else
-        if (ctx.ielse() != null && ctx.ielse().getChildCount() > 0) {
-            String labelEnd = newLabel();
-            instrucciones.add(new Instruccion("goto", null, null, labelEnd));
-            instrucciones.add(new Instruccion("label", null, null, labelFalse));
-            visit(ctx.ielse());
-            instrucciones.add(new Instruccion("label", null, null, labelEnd));
+        int cond = condicion(arbol.hijo(n, 0));
+        int labelTrue = newLabel();
+        int labelFalse = newLabel();
+
+        si(cond, labelTrue);
+        salto(labelFalse);
+
+        etiqueta(labelTrue);
+        sentencia(arbol.hijo(n, 1));
+
+        // else: un BLOQUE, o un SI anidado para else if
+        if (arbol.cantidadHijos(n) == 3) {
+            int labelEnd = newLabel();
+            salto(labelEnd);
+            etiqueta(labelFalse);
+            sentencia(arbol.hijo(n, 2));
+            etiqueta(labelEnd);
         } else {
-            instrucciones.add(new Instruccion("label", null, null, labelFalse));
+            etiqueta(labelFalse);
         }
-        
-        return null;
     }
 
-    @Override
-    public String visitIwhile(IwhileContext ctx) {
+    private void mientras(int n) {
         // Estructura: label Lstart, if cond goto Lbody, goto Lend, label Lbody, bloque, goto Lstart, label Lend
-        String labelStart = newLabel();
-        String labelTrue = newLabel();
-        String labelEnd = newLabel();
+        int labelStart = newLabel();
+        int labelTrue = newLabel();
+        int labelEnd = newLabel();
 
         breakLabels.add(labelEnd);
         continueLabels.add(labelStart);
 
-        instrucciones.add(new Instruccion("label", null, null, labelStart));
-        String cond = visit(ctx.condicion());
+        etiqueta(labelStart);
+        int cond = condicion(arbol.hijo(n, 0));
 
-        instrucciones.add(new Instruccion("if", cond, null, labelTrue));
-        instrucciones.add(new Instruccion("goto", null, null, labelEnd));
+        si(cond, labelTrue);
+        salto(labelEnd);
 
-        instrucciones.add(new Instruccion("label", null, null, labelTrue));
-        visit(ctx.bloque());
-        instrucciones.add(new Instruccion("goto", null, null, labelStart));
+        etiqueta(labelTrue);
+        sentencia(arbol.hijo(n, 1));
+        salto(labelStart);
 
-        instrucciones.add(new Instruccion("label", null, null, labelEnd));
+        etiqueta(labelEnd);
 
         breakLabels.remove(breakLabels.size() - 1);
         continueLabels.remove(continueLabels.size() - 1);
+    }
 
-        return null;
-    }
-
-    @Override
-    public String visitIfor(IforContext ctx) {
-        // ifor : FOR ciclo bloque ;
-        // ciclo : PA (declaracion | asignacion) comparacion PYC finfor PC ;
-        
-        // We need to decompose 'ciclo' manually or visit it
-        // Structure: init -> labelStart -> cond -> if true goto labelBody, else goto labelEnd
-        // labelBody -> block -> update -> goto labelStart
-        // labelEnd
-        
-        CicloContext ciclo = ctx.ciclo();
-
-        // Inicialización: puede ser una declaración o una asignación
-        if (ciclo.declaracion() != null) {
-            visit(ciclo.declaracion());
-        } else if (ciclo.asignacion() != null) {
-            visit(ciclo.asignacion());
-        }
+    private void para(int n) {
+        // Estructura: init, label Lstart, cond, if true goto Lbody, goto Lend,
+        // label Lbody, bloque, label Lupdate, actualización, goto Lstart, label Lend
+        sentencia(arbol.hijo(n, 0));
 
-        String labelStart = newLabel();
-        String labelTrue = newLabel();
-        String labelEnd = newLabel();
+        int labelStart = newLabel();
+        int labelTrue = newLabel();
+        int labelEnd = newLabel();
+        // continue salta a la actualización, no directamente a la condición
+        int labelUpdate = newLabel();
 
         breakLabels.add(labelEnd);
-        continueLabels.add(labelStart);
+        continueLabels.add(labelUpdate);
 
-        instrucciones.add(new Instruccion("label", null, null, labelStart));
+        etiqueta(labelStart);
+        int cond = condicion(arbol.hijo(n, 1));
 
-        // Condición general: la parte central del for es una expresion
-        String cond = visit(ciclo.expresion());
+        si(cond, labelTrue);
+        salto(labelEnd);
 
-        instrucciones.add(new Instruccion("if", cond, null, labelTrue));
-        instrucciones.add(new Instruccion("goto", null, null, labelEnd));
+        etiqueta(labelTrue);
+        sentencia(arbol.hijo(n, 3));
+        etiqueta(labelUpdate);
+        sentencia(arbol.hijo(n, 2));
+        salto(labelStart);
 
-        instrucciones.add(new Instruccion("label", null, null, labelTrue));
-        visit(ctx.bloque());
-        visit(ciclo.finfor()); // Update
-        instrucciones.add(new Instruccion("goto", null, null, labelStart));
-
-        instrucciones.add(new Instruccion("label", null, null, labelEnd));
+        etiqueta(labelEnd);
 
         breakLabels.remove(breakLabels.size() - 1);
         continueLabels.remove(continueLabels.size() - 1);
-
-        return null;
     }
 
-    @Override
-    public String visitIbreak(IbreakContext ctx) {
-        if (!breakLabels.isEmpty()) {
-            String destino = breakLabels.get(breakLabels.size() - 1);
-            instrucciones.add(new Instruccion("goto", null, null, destino));
-        }
-        return null;
-    }
-
-    @Override
-    public String visitIcontinue(IcontinueContext ctx) {
-        if (!continueLabels.isEmpty()) {
-            String destino = continueLabels.get(continueLabels.size() - 1);
-            instrucciones.add(new Instruccion("goto", null, null, destino));
-        }
-        return null;
-    }
-    
-    // Helper for for-loop update step
-    @Override
-    public String visitFinfor(FinforContext ctx) {
-        // Maneja la parte de incremento del for: expresion, ID++/-- o asignacion
-        // Caso 1: expresión genérica como actualización (se evalúa y se descarta)
-        if (ctx.expresion() != null && ctx.ASIGN() == null && ctx.ID() == null) {
-            return visit(ctx.expresion());
-        }
-
-        // Caso 2: ID++ o ID--
-        if (ctx.ID() != null && (ctx.INCREMENTO() != null || ctx.DECREMENTO() != null) && ctx.ASIGN() == null) {
-            String id = ctx.ID().getText();
-            String op = ctx.INCREMENTO() != null ? "+" : "-";
-            instrucciones.add(new Instruccion(op, id, "1", id));
-            return id;
-        }
-
-        // Caso 3: asignación tipo ID = expresion
-        if (ctx.ID() != null && ctx.ASIGN() != null && ctx.expresion() != null) {
-            String id = ctx.ID().getText();
-            String val = visit(ctx.expresion());
-            instrucciones.add(new Instruccion("=", val, null, id));
-            return id;
-        }
-
-        return "";
-    }
-
-    @Override
-    public String visitCondicion(CondicionContext ctx) {
-        if (ctx == null || ctx.expresion() == null) {
-            return "";
-        }
-        return visit(ctx.expresion());
-    }
-
-    @Override
-    public String visitLlamadafunc(LlamadafuncContext ctx) {
-        // llamadafunc ahora es una sentencia: llamada_expr PYC
-        String resultado = visit(ctx.llamada_expr());
-        // El valor de retorno queda en 'resultado', pero como sentencia no lo usamos
-        return null;
-    }
-
-    @Override
-    public String visitLlamada_expr(compiladoresParser.Llamada_exprContext ctx) {
-        // Genera instruccion call con args empaquetados en string (backend reinterpreta tipos)
-        String nombre = ctx.ID().getText();
-        String resultado = newTemp();
-        String argsTemp = visit(ctx.factorfunc());
-        instrucciones.add(new Instruccion("call", nombre, argsTemp, resultado));
-        return resultado;
-    }
-
-    @Override
-    public String visitFactorfunc(FactorfuncContext ctx) {
-        // Construye lista de argumentos como string separado por comas en orden de aparición
-        List<String> args = new ArrayList<>();
-        if (ctx.NUMERO() != null) {
-            args.add(ctx.NUMERO().getText());
-        }
-        if (ctx.ID() != null) {
-            args.add(ctx.ID().getText());
-        }
-        if (ctx.expresion() != null) {
-            args.add(visit(ctx.expresion()));
-        }
-        if (ctx.listafactfunc() != null) {
-            String rest = visit(ctx.listafactfunc());
-            if (!rest.isBlank()) {
-                args.add(rest);
+    /**
+     * Traduce una expresión sin recursión de Java, en postorden con una pila
+     * explícita de nodos pendientes y otras de operandos ya traducidos y de sus
+     * tipos. Las instrucciones se emiten en el mismo orden que un recorrido
+     * recursivo (operando izquierdo, derecho, operación); una llamada reserva su
+     * temporal antes de traducir sus argumentos. El tipo del valor queda en
+     * {@link #tipoExpresion}.
+     */
+    private int expresion(int raiz) {
+        Deque<Integer> pendientes = new ArrayDeque<>();
+        Deque<Boolean> expandidos = new ArrayDeque<>();
+        Deque<Integer> valores = new ArrayDeque<>();
+        Deque<TipoDato> tipos = new ArrayDeque<>();
+        Deque<Integer> resultadosLlamadas = new ArrayDeque<>();
+        pendientes.push(raiz);
+        expandidos.push(false);
+        while (!pendientes.isEmpty()) {
+            int n = pendientes.pop();
+            if (!expandidos.pop()) {
+                // Primera visita: volver a este nodo después de sus operandos
+                pendientes.push(n);
+                expandidos.push(true);
+                if (arbol.clase(n) == ArbolCompacto.LLAMADA) {
+                    resultadosLlamadas.push(newTemp());
+                }
+                for (int i = arbol.cantidadHijos(n) - 1; i >= 0; i--) {
+                    pendientes.push(arbol.hijo(n, i));
+                    expandidos.push(false);
+                }
+                continue;
             }
+            reducir(n, valores, tipos, resultadosLlamadas);
         }
-        return String.join(",", args);
+        tipoExpresion = tipos.pop();
+        return valores.pop();
     }
 
-    @Override
-    public String visitListafactfunc(ListafactfuncContext ctx) {
-        List<String> args = new ArrayList<>();
-        if (ctx.NUMERO() != null) {
-            args.add(ctx.NUMERO().getText());
-        }
-        if (ctx.ID() != null) {
-            args.add(ctx.ID().getText());
-        }
-        if (ctx.expresion() != null) {
-            args.add(visit(ctx.expresion()));
-        }
-        if (ctx.listafactfunc() != null) {
-            String rest = visit(ctx.listafactfunc());
-            if (!rest.isBlank()) {
-                args.add(rest);
+    /**
+     * Emite la operación de {@code n}, cuyos operandos ya están en el tope de
+     * {@code valores} (y sus tipos en el de {@code tipos}), y deja en su lugar
+     * el operando que la representa y su tipo.
+     */
+    private void reducir(int n, Deque<Integer> valores, Deque<TipoDato> tipos, Deque<Integer> resultadosLlamadas) {
+        switch (arbol.clase(n)) {
+            case ArbolCompacto.NUMERO: {
+                int simbolo = arbol.valor(n);
+                boolean decimal = nombres.decimal(simbolo);
+                valores.push(Operando.de(decimal ? Operando.DOUBLE : Operando.ENTERO, simbolo));
+                tipos.push(decimal ? TipoDato.DOUBLE : TipoDato.INT);
+                return;
             }
+            case ArbolCompacto.CARACTER:
+                valores.push(Operando.de(Operando.CARACTER, arbol.valor(n)));
+                tipos.push(TipoDato.CHAR);
+                return;
+            case ArbolCompacto.VARIABLE:
+                valores.push(variable(n));
+                tipos.push(tipoValor(n));
+                return;
+            case ArbolCompacto.VERDADERO:
+            case ArbolCompacto.FALSO:
+                valores.push(Operando.de(Operando.LOGICO,
+                        nombres.id(arbol.clase(n) == ArbolCompacto.VERDADERO ? "true" : "false")));
+                tipos.push(TipoDato.BOOL);
+                return;
+            case ArbolCompacto.ELEMENTO: {
+                int indice = convertir(valores.pop(), tipos.pop(), TipoDato.INT);
+                valores.push(elemento(n, indice));
+                tipos.push(tipoValor(n));
+                return;
+            }
+            case ArbolCompacto.NEGATIVO: {
+                // Caso unario -expr: 0 - expr en el tipo del operando
+                int valor = valores.pop();
+                TipoDato tipo = tipoOperacion(tipos.pop(), TipoDato.INT);
+                int temp = newTemp();
+                codigo.agregar(Operacion.RESTA, tipo, literal("0", tipo), valor, temp);
+                valores.push(temp);
+                tipos.push(tipo);
+                return;
+            }
+            case ArbolCompacto.NEGACION: {
+                // Caso !expr (unario lógico)
+                int valor = verdad(valores.pop(), tipos.pop());
+                int temp = newTemp();
+                codigo.agregar(Operacion.NEGACION, TipoDato.INT, valor, Operando.NINGUNO, temp);
+                valores.push(temp);
+                tipos.push(TipoDato.INT);
+                return;
+            }
+            case ArbolCompacto.BINARIA: {
+                int right = valores.pop();
+                TipoDato tipoRight = tipos.pop();
+                int left = valores.pop();
+                TipoDato tipoLeft = tipos.pop();
+                // Sin operador solo en árboles con errores, que no llegan a generarse
+                Operacion op = arbol.dato(n) >= 0 ? Operacion.deOperador(arbol.dato(n)) : Operacion.ASIGNACION;
+                TipoDato tipo;
+                if (op == Operacion.Y || op == Operacion.O) {
+                    left = verdad(left, tipoLeft);
+                    right = verdad(right, tipoRight);
+                    tipo = TipoDato.INT;
+                } else {
+                    tipo = tipoOperacion(tipoLeft, tipoRight);
+                    left = convertir(left, tipoLeft, tipo);
+                    right = convertir(right, tipoRight, tipo);
+                }
+                int temp = newTemp();
+                codigo.agregar(op, tipo, left, right, temp);
+                valores.push(temp);
+                tipos.push(op.comparacion() ? TipoDato.INT : tipo);
+                return;
+            }
+            case ArbolCompacto.LLAMADA: {
+                // Un param por argumento, de izquierda a derecha, justo antes del call
+                int cantidad = arbol.cantidadHijos(n);
+                int[] args = new int[cantidad];
+                TipoDato[] tiposArgs = new TipoDato[cantidad];
+                for (int i = cantidad - 1; i >= 0; i--) {
+                    args[i] = valores.pop();
+                    tiposArgs[i] = tipos.pop();
+                }
+                for (int i = 0; i < cantidad; i++) {
+                    codigo.agregar(Operacion.ARGUMENTO, tiposArgs[i], args[i], Operando.NINGUNO, Operando.NINGUNO);
+                }
+                int resultado = resultadosLlamadas.pop();
+                TipoDato tipo = tipoValor(n);
+                codigo.agregar(Operacion.LLAMADA, tipo, Operando.de(Operando.FUNCION, arbol.valor(n)),
+                        Operando.de(Operando.ENTERO, nombres.id(String.valueOf(cantidad))), resultado);
+                valores.push(resultado);
+                tipos.push(tipo);
+                return;
+            }
+            default:
+                valores.push(Operando.NINGUNO);
+                tipos.push(TipoDato.INT);
+                return;
         }
-        return String.join(",", args);
-    }
-
-    @Override
-    public String visitIreturn(IreturnContext ctx) {
-        String valor = "";
-        if (ctx.expresion() != null) {
-            valor = visit(ctx.expresion());
-        }
-        instrucciones.add(new Instruccion("return", valor, null, null));
-        return null;
     }
 }
-
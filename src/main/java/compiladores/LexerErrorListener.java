@@ -11,7 +11,15 @@ import org.antlr.v4.runtime.Token;
  */
 public class LexerErrorListener extends BaseErrorListener {
 
-    private final Reportador reportador = Reportador.getInstancia();
+    private final Reportador reportador;
+
+    public LexerErrorListener() {
+        this(Reportador.getInstancia());
+    }
+
+    public LexerErrorListener(Reportador reportador) {
+        this.reportador = reportador;
+    }
 
     @Override
     public void syntaxError(Recognizer<?, ?> recognizer,
@@ -0,0 +1,138 @@
+package compiladores;
+
+/**
+ * Operandos de {@link CodigoIntermedio} codificados en un {@code int}.
+ * <p>
+ * Los 4 bits altos son la <em>clase</em> del operando y los 28 bajos su dato:
+ * para casi todas las clases, el símbolo de su texto en la {@link TablaNombres}
+ * de la compilación; para {@link #TIPO}, el código del {@link TipoDato}
+ * ({@link TipoDato#codigo(TipoDato)}). Las fases clasifican un operando con
+ * {@link #clase(int)} en lugar de mirar su texto, y siguen indexando sus arreglos
+ * por símbolo ({@link #simbolo(int)}). La ausencia de operando es {@link #NINGUNO}.
+ * </p>
+ * <p>
+ * Las clases de valor (de {@link #TEMPORAL} a {@link #ELEMENTO}) son menores que 8,
+ * así que sus operandos son siempre no negativos.
+ * </p>
+ */
+final class Operando {
+
+    /** Sin operando. */
+    static final int NINGUNO = -1;
+
+    /** Temporal del código intermedio ({@code t0, t1...}). */
+    static final int TEMPORAL = 1;
+    /** Variable o parámetro del programa. */
+    static final int VARIABLE = 2;
+    /** Literal entero. */
+    static final int ENTERO = 3;
+    /** Literal double (su texto lleva punto). */
+    static final int DOUBLE = 4;
+    /** Literal de carácter, con sus comillas. */
+    static final int CARACTER = 5;
+    /** {@code true} o {@code false}. */
+    static final int LOGICO = 6;
+    /** Elemento de arreglo {@code a[i]}: base e índice en {@link TablaNombres#base(int)} e {@link TablaNombres#indice(int)}. */
+    static final int ELEMENTO = 7;
+    /** Etiqueta de salto ({@code l0, l1...}). */
+    static final int ETIQUETA = 8;
+    /** Nombre de una función. */
+    static final int FUNCION = 9;
+    /** Tipo de una declaración; el dato es el código del {@link TipoDato}. */
+    static final int TIPO = 10;
+
+    private static final int BITS_DATO = 28;
+    private static final int MASCARA_DATO = (1 << BITS_DATO) - 1;
+
+    private Operando() {
+    }
+
+    /**
+     * @param clase clase del operando
+     * @param dato símbolo o código del tipo, menor que 2<sup>28</sup>
+     * @return operando codificado
+     */
+    static int de(int clase, int dato) {
+        return clase << BITS_DATO | dato;
+    }
+
+    /** @return clase del operando, o {@code 15} para {@link #NINGUNO} */
+    static int clase(int operando) {
+        return operando >>> BITS_DATO;
+    }
+
+    /** @return símbolo (o código de tipo) del operando */
+    static int simbolo(int operando) {
+        return operando & MASCARA_DATO;
+    }
+
+    /** @return si el operando es un literal numérico ({@link #ENTERO} o {@link #DOUBLE}) */
+    static boolean numerico(int operando) {
+        int clase = clase(operando);
+        return clase == ENTERO || clase == DOUBLE;
+    }
+
+    /** @return si el operando es un literal de cualquier clase */
+    static boolean literal(int operando) {
+        int clase = clase(operando);
+        return clase >= ENTERO && clase <= LOGICO;
+    }
+
+    /** @return si el operando es un lugar donde se puede escribir: temporal, variable o elemento */
+    static boolean almacenamiento(int operando) {
+        int clase = clase(operando);
+        return clase == TEMPORAL || clase == VARIABLE || clase == ELEMENTO;
+    }
+
+    /** @return si el operando es un temporal o una variable (no un elemento de arreglo) */
+    static boolean escalar(int operando) {
+        int clase = clase(operando);
+        return clase == TEMPORAL || clase == VARIABLE;
+    }
+
+    /** @return si el operando es un elemento de arreglo */
+    static boolean elemento(int operando) {
+        return clase(operando) == ELEMENTO;
+    }
+
+    /**
+     * Operando de un valor dado por su símbolo, clasificado con lo que la tabla ya
+     * sabe del texto: lo usa el índice de un {@link #ELEMENTO}, que se guarda
+     * como símbolo.
+     *
+     * @param nombres tabla de nombres de la compilación
+     * @param simbolo símbolo del valor, o {@code -1}
+     * @return operando del valor, o {@link #NINGUNO}
+     */
+    static int deSimbolo(TablaNombres nombres, int simbolo) {
+        if (simbolo < 0) {
+            return NINGUNO;
+        }
+        if (nombres.base(simbolo) >= 0) {
+            return de(ELEMENTO, simbolo);
+        }
+        if (nombres.numerico(simbolo)) {
+            return de(nombres.decimal(simbolo) ? DOUBLE : ENTERO, simbolo);
+        }
+        if (nombres.variable(simbolo)) {
+            return de(VARIABLE, simbolo);
+        }
+        String texto = nombres.texto(simbolo);
+        return de(texto.startsWith("'") ? CARACTER : LOGICO, simbolo);
+    }
+
+    /**
+     * @param nombres tabla de nombres de la compilación
+     * @param operando operando codificado
+     * @return texto del operando; vacío para {@link #NINGUNO}
+     */
+    static String texto(TablaNombres nombres, int operando) {
+        if (operando == NINGUNO) {
+            return "";
+        }
+        if (clase(operando) == TIPO) {
+            return ArbolCompacto.lexema(TipoDato.deCodigo((byte) simbolo(operando)));
+        }
+        return nombres.texto(simbolo(operando));
+    }
+}
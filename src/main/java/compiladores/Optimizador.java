@@ -1,10 +1,10 @@
 package compiladores;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Iterator;
-import java.util.List;
-import java.util.Map;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.function.IntPredicate;
+
+import compiladores.CodigoIntermedio.Operacion;
 
 /**
  * Implementa optimizaciones sobre código intermedio en tres direcciones.
@@ -15,367 +15,919 @@ import java.util.Map;
  *   <li>Constant folding (simplificación de expresiones constantes)</li>
  *   <li>Eliminación de subexpresiones comunes dentro de bloques básicos</li>
  * </ul>
- * Las optimizaciones se realizan hasta alcanzar un punto fijo (sin cambios).
+ * Las optimizaciones se realizan hasta alcanzar un punto fijo (sin cambios),
+ * por separado en cada función y en la inicialización global.
+ * </p>
+ * <p>
+ * El resultado lo consume directamente {@link GeneradorAssembler}, por lo que
+ * las transformaciones deben preservar la semántica: las instrucciones
+ * estructurales ({@code func}, {@code endfunc}, {@code formal}, {@code decl})
+ * nunca se eliminan, las escrituras a variables globales y a elementos de
+ * arreglo se consideran efectos visibles y una llamada invalida lo conocido
+ * sobre globales y arreglos.
+ * </p>
+ * <p>
+ * Los operandos se reconocen por su clase ({@link Operando}); los análisis que
+ * recuerdan algo de una variable se indexan por su símbolo.
+ * </p>
+ * <p>
+ * El folding calcula en el tipo de cada instrucción, con la semántica del
+ * backend: en {@code int}, aritmética de 32 bits que da la vuelta al
+ * desbordar y división y resto truncados; en {@code double}, aritmética de
+ * punto flotante. Una asignación a un {@code char} guarda solo el byte bajo.
+ * No se pliega lo que en ejecución fallaría o no tiene un literal que lo
+ * represente (división por cero, {@code MIN / -1}, resultados infinitos).
  * </p>
  */
 public class Optimizador {
 
+    /** Tabla de nombres de la compilación; los análisis se indexan por símbolo. */
+    private TablaNombres nombres = new TablaNombres();
+    /**
+     * Símbolos declarados fuera de toda función en el código optimizado hasta
+     * ahora (se acumulan si se optimiza un programa por partes).
+     */
+    private final BitSet globales = new BitSet();
+    private Trazas trazas = Trazas.ninguna();
+    private boolean trazaInfo;
+
+    /** Variables eliminables y etiquetas de la unidad que analiza {@link #eliminarMuertas(CodigoIntermedio)}. */
+    private final Numeracion variablesRegion = new Numeracion();
+    private final Numeracion etiquetasRegion = new Numeracion();
+
+    /**
+     * Indica la tabla de nombres de la compilación, la misma con la que se
+     * generaron las instrucciones. Debe llamarse antes de la primera optimización.
+     *
+     * @param nombres tabla de nombres de la compilación
+     */
+    public void setNombres(TablaNombres nombres) {
+        this.nombres = nombres;
+    }
+
     /**
-     * Optimiza una lista de instrucciones de tres direcciones.
+     * Indica las trazas de la compilación; con la categoría
+     * {@link Trazas.Categoria#OPTIMIZADOR} activa se informa el resultado de cada llamada.
      *
-     * @param instrucciones lista original de instrucciones
-     * @return nueva lista con las instrucciones optimizadas
+     * @param trazas trazas de la compilación
      */
-    public List<Instruccion> optimizar(List<Instruccion> instrucciones) {
-        List<Instruccion> optimizadas = new ArrayList<>();
-        // Deep copy to avoid modifying original list objects if we want to preserve them (optional but safer)
-        for (Instruccion inst : instrucciones) {
-            optimizadas.add(new Instruccion(inst.op, inst.arg1, inst.arg2, inst.result));
+    public void setTrazas(Trazas trazas) {
+        this.trazas = trazas;
+        this.trazaInfo = trazas.activa(Trazas.Categoria.OPTIMIZADOR, Trazas.Nivel.INFO);
+    }
+
+    /**
+     * Optimiza un código de tres direcciones.
+     * <p>
+     * Cada unidad se optimiza por separado, hasta su propio punto fijo: la
+     * inicialización global (las instrucciones fuera de funciones, juntas y en
+     * orden) y cada función ({@link CodigoIntermedio#funciones()}). El flujo no
+     * pasa de una unidad a otra, así que nada de lo que se sabe en una vale en
+     * otra, y el costo de cada pasada y de cada instrucción que se quita queda
+     * acotado por el tamaño de la unidad y no por el del programa. El resultado
+     * tiene primero la inicialización global y después las funciones.
+     * </p>
+     *
+     * @param codigo código original, que no se modifica
+     * @return nuevo código con las instrucciones optimizadas
+     */
+    public CodigoIntermedio optimizar(CodigoIntermedio codigo) {
+        CodigoIntermedio inicializacion = codigo.inicializacion();
+        recolectarGlobales(inicializacion);
+        Constantes constantes = new Constantes();
+        Expresiones expresiones = new Expresiones();
+
+        CodigoIntermedio optimizadas = new CodigoIntermedio(nombres);
+        int unidades = 0;
+        int pasadas = 0;
+        if (!inicializacion.vacio()) {
+            pasadas = optimizarUnidad(inicializacion, constantes, expresiones);
+            optimizadas.agregarTodo(inicializacion);
+            unidades++;
+        }
+        for (CodigoIntermedio.Unidad funcion : codigo.funciones()) {
+            CodigoIntermedio unidad = codigo.parte(funcion.inicio, funcion.fin);
+            pasadas = Math.max(pasadas, optimizarUnidad(unidad, constantes, expresiones));
+            optimizadas.agregarTodo(unidad);
+            unidades++;
+        }
+        if (trazaInfo) {
+            trazas.linea("[OPT] " + codigo.cantidad() + " -> " + optimizadas.cantidad()
+                    + " instrucciones en " + unidades + " unidades (hasta " + pasadas + " pasadas)");
         }
+        return optimizadas;
+    }
 
+    /**
+     * Optimiza en el lugar una unidad (una función o la inicialización global)
+     * hasta un punto fijo y después le quita el código muerto.
+     *
+     * @return cantidad de pasadas hasta el punto fijo
+     */
+    private int optimizarUnidad(CodigoIntermedio optimizadas, Constantes constantes, Expresiones expresiones) {
         boolean cambios = true;
+        int pasadas = 0;
 
         while (cambios) {
+            pasadas++;
             // Primero limpia código inalcanzable generado por saltos incondicionales previos.
             eliminarInalcanzable(optimizadas);
             cambios = false;
-            Map<String, String> constantes = new HashMap<>();
-            Map<String, String> expresiones = new HashMap<>(); // Key: "op,arg1,arg2", Value: resultTemp
-            
-            for (int i = 0; i < optimizadas.size(); i++) {
-                Instruccion inst = optimizadas.get(i);
-                
-                // Reset analysis on basic block boundaries (labels, jumps)
-                if (inst.op.equals("label") || inst.op.startsWith("if") || inst.op.equals("goto")) {
-                    constantes.clear();
-                    expresiones.clear();
+            constantes.limpiar();
+            expresiones.limpiar();
+
+            for (int i = 0; i < optimizadas.cantidad(); i++) {
+                Operacion op = optimizadas.operacion(i);
+                int arg1 = optimizadas.primero(i);
+
+                if (op == Operacion.SI) {
+                    // La condición de un salto también recibe constantes conocidas
+                    int valor = constante(arg1, constantes);
+                    if (valor >= 0) {
+                        optimizadas.ponerPrimero(i, arg1 = valor);
+                        cambios = true;
+                    }
+                    // if constante: salto incondicional o ninguno (el bloque muerto lo quita eliminarInalcanzable)
+                    if (Operando.literal(arg1)) {
+                        if (valor(arg1) != 0) {
+                            optimizadas.poner(i, Operacion.SALTO, null, Operando.NINGUNO, Operando.NINGUNO,
+                                    optimizadas.resultado(i));
+                        } else {
+                            optimizadas.quitar(i);
+                            i--;
+                        }
+                        cambios = true;
+                        constantes.limpiar();
+                        expresiones.limpiar();
+                        continue;
+                    }
+                }
+
+                // Reset analysis on basic block boundaries (labels, jumps, functions)
+                if (op.control() || op == Operacion.FUNCION || op == Operacion.FIN_FUNCION) {
+                    constantes.limpiar();
+                    expresiones.limpiar();
+                    continue;
+                }
+
+                // Una declaración o un parámetro crea una variable nueva de valor desconocido
+                if (op == Operacion.DECLARACION || op == Operacion.FORMAL) {
+                    invalidar(Operando.simbolo(optimizadas.resultado(i)), constantes, expresiones);
                     continue;
                 }
-                
-                String op = inst.op;
-                String arg1 = inst.arg1;
-                String arg2 = inst.arg2;
-                String result = inst.result;
+
+                int arg2 = optimizadas.segundo(i);
+                int result = optimizadas.resultado(i);
 
                 // 0. Eliminar asignaciones redundantes del tipo x = x;
-                if ("=".equals(op) && result != null && result.equals(arg1)) {
-                    optimizadas.remove(i);
+                if (op == Operacion.ASIGNACION && result >= 0 && result == arg1) {
+                    optimizadas.quitar(i);
                     i--; // stay at current index after removal
                     cambios = true;
                     continue;
                 }
-                
+
                 // 1. Propagación de Constantes
                 boolean localChange = false;
-                if (arg1 != null && constantes.containsKey(arg1)) {
-                    inst.arg1 = constantes.get(arg1);
-                    arg1 = inst.arg1;
+                if (op != Operacion.LLAMADA && constante(arg1, constantes) >= 0) {
+                    optimizadas.ponerPrimero(i, arg1 = constante(arg1, constantes));
                     localChange = true;
                 }
-                if (arg2 != null && constantes.containsKey(arg2)) {
-                    inst.arg2 = constantes.get(arg2);
-                    arg2 = inst.arg2;
+                int nuevo2 = propagar(arg2, constantes);
+                if (nuevo2 != arg2) {
+                    optimizadas.ponerSegundo(i, arg2 = nuevo2);
+                    localChange = true;
+                }
+                // Índices constantes en accesos a arreglo: a[t1] -> a[3]
+                int nuevo1 = propagarIndice(arg1, constantes);
+                int nuevoRes = propagarIndice(result, constantes);
+                if (nuevo1 != arg1 || nuevoRes != result) {
+                    optimizadas.ponerPrimero(i, arg1 = nuevo1);
+                    optimizadas.ponerResultado(i, result = nuevoRes);
                     localChange = true;
                 }
                 if (localChange) cambios = true;
-                
+
+                // Un char guarda solo el byte bajo del valor asignado
+                if (op == Operacion.ASIGNACION && optimizadas.tipo(i) == TipoDato.CHAR && Operando.numerico(arg1)) {
+                    int angosto = angostar(arg1);
+                    if (angosto != arg1) {
+                        optimizadas.ponerPrimero(i, arg1 = angosto);
+                        cambios = true;
+                    }
+                }
+
                 // 2. Constant Folding (Carpeta de constantes)
-                if (isNumeric(arg1) && (arg2 == null || isNumeric(arg2)) && !op.equals("=")) {
-                   String val = calcular(op, arg1, arg2);
-                   if (val != null) {
-                       inst.op = "=";
-                       inst.arg1 = val;
-                       inst.arg2 = null;
+                if (op.calcula() && Operando.literal(arg1) && (arg2 == Operando.NINGUNO || Operando.literal(arg2))) {
+                   int val = calcular(op, optimizadas.tipo(i), arg1, arg2);
+                   if (val >= 0) {
+                       optimizadas.poner(i, Operacion.ASIGNACION, optimizadas.tipoResultado(i), arg1 = val,
+                               Operando.NINGUNO, result);
                        // Update local vars for next steps
-                       op = "=";
-                       arg1 = val;
-                       arg2 = null;
+                       op = Operacion.ASIGNACION;
+                       arg2 = Operando.NINGUNO;
                        cambios = true;
                    }
                 }
-                
+
                 // 3. Eliminación de Subexpresiones Comunes
-                if (!op.equals("=") && arg1 != null) {
-                     String key = op + "," + arg1 + "," + (arg2 == null ? "" : arg2);
-                     if (expresiones.containsKey(key)) {
-                         String existingVar = expresiones.get(key);
+                if (op.calcula()) {
+                     // El tipo es parte de la expresión: la misma operación en int y en double no se comparte
+                     int operador = op.ordinal() * 8 + TipoDato.codigo(optimizadas.tipo(i));
+                     int existente = expresiones.buscar(operador, arg1, arg2);
+                     if (existente >= 0) {
                          // Replace with assignment
-                         inst.op = "=";
-                         inst.arg1 = existingVar;
-                         inst.arg2 = null;
+                         optimizadas.poner(i, Operacion.ASIGNACION, optimizadas.tipoResultado(i), existente,
+                                 Operando.NINGUNO, result);
                          cambios = true;
                          // Result is now an alias to existingVar, handled by const/copy propagation logic below?
                          // If result = existingVar, and existingVar is const, next pass handles it.
                          // If existingVar is variable, it's a copy.
-                     } else {
-                         expresiones.put(key, result);
+                     } else if (!Operando.elemento(result)) {
+                         expresiones.agregar(operador, arg1, arg2, result);
                      }
                 }
 
+                // Una llamada puede modificar globales y arreglos
+                if (op == Operacion.LLAMADA) {
+                    invalidarEfectosLlamada(constantes, expresiones);
+                }
+
                 // Update analysis maps
                 // Invalidate expressions that use the modified variable 'result'
-                if (result != null) {
-                    Iterator<Map.Entry<String, String>> it = expresiones.entrySet().iterator();
-                    while (it.hasNext()) {
-                        String key = it.next().getKey();
-                        // Key format: op,arg1,arg2
-                        String[] parts = key.split(",");
-                        if ((parts.length > 1 && parts[1].equals(result)) || 
-                            (parts.length > 2 && parts[2].equals(result))) {
-                            it.remove();
-                        }
-                    }
-                    
-                    // Update constants
-                    if (op.equals("=") && isNumeric(arg1)) {
-                        constantes.put(result, arg1);
-                    } else {
-                        constantes.remove(result);
+                if (result >= 0) {
+                    int simbolo = Operando.simbolo(result);
+                    int base = nombres.base(simbolo);
+                    invalidar(base >= 0 ? base : simbolo, constantes, expresiones);
+
+                    // Update constants (los elementos de arreglo no se rastrean)
+                    if (base < 0 && op == Operacion.ASIGNACION && Operando.literal(arg1)) {
+                        constantes.poner(simbolo, arg1);
                     }
                 }
             }
         }
-        // Pasada final: eliminación de código muerto sobre la lista ya optimizada
-        eliminarCodigoMuerto(optimizadas);
-        return optimizadas;
+        // Pasada final: eliminación de código muerto sobre el código ya optimizado
+        while (eliminarMuertas(optimizadas)) {
+            // Otra pasada: quitar una instrucción puede dejar muertas las que la alimentaban
+        }
+        return pasadas;
+    }
+
+    /** @return constante conocida de un temporal o una variable, o {@code -1} */
+    private static int constante(int operando, Constantes constantes) {
+        return Operando.escalar(operando) ? constantes.valor(Operando.simbolo(operando)) : -1;
+    }
+
+    /** Propaga constantes e índices constantes al segundo operando. */
+    private int propagar(int operando, Constantes constantes) {
+        int valor = constante(operando, constantes);
+        return propagarIndice(valor >= 0 ? valor : operando, constantes);
     }
 
     /**
      * Elimina instrucciones que son inalcanzables debido a un salto incondicional previo
      * (goto) hasta la siguiente etiqueta. Mantiene etiquetas y saltos para no romper el CFG.
      */
-    private void eliminarInalcanzable(List<Instruccion> instrucciones) {
+    private void eliminarInalcanzable(CodigoIntermedio codigo) {
         boolean cambio = true;
         while (cambio) {
             cambio = false;
-            List<Instruccion> resultado = new ArrayList<>();
+            boolean[] inalcanzables = new boolean[codigo.cantidad()];
             boolean enZonaMuerta = false;
-            for (Instruccion inst : instrucciones) {
-                if ("label".equals(inst.op)) {
+            for (int i = 0; i < codigo.cantidad(); i++) {
+                Operacion op = codigo.operacion(i);
+                if (op == Operacion.ETIQUETA || op == Operacion.FUNCION || op == Operacion.FIN_FUNCION) {
                     enZonaMuerta = false;
-                    resultado.add(inst);
                     continue;
                 }
-                if (enZonaMuerta) {
+                // Las declaraciones no son código: el backend las necesita aunque no se alcancen
+                if (enZonaMuerta && op != Operacion.DECLARACION) {
                     // Saltar cualquier instrucción no esencial
+                    inalcanzables[i] = true;
                     cambio = true;
                     continue;
                 }
-                resultado.add(inst);
-                if ("goto".equals(inst.op) || "return".equals(inst.op)) {
+                if (op == Operacion.SALTO || op == Operacion.RETORNO) {
                     enZonaMuerta = true;
                 }
             }
-            instrucciones.clear();
-            instrucciones.addAll(resultado);
+            if (cambio) {
+                codigo.quitar(inalcanzables);
+            }
         }
     }
 
     /**
-     * Elimina instrucciones cuyo resultado nunca se usa posteriormente.
+     * Una pasada de eliminación de instrucciones cuyo resultado nunca se usa
+     * posteriormente.
      * <p>
-     * Recorre la lista de instrucciones de atrás hacia adelante y mantiene
-     * un conjunto de variables "vivas" (live). Si una instrucción asigna a
-     * una variable que no está viva y que parece un temporal (por ejemplo,
-     * nombres que comienzan con {@code "t"}), la instrucción se considera
-     * código muerto y se elimina.
+     * Calcula la vida de las variables (liveness) hacia atrás sobre los bloques
+     * básicos de una unidad. Si una instrucción pura asigna a una variable que
+     * no está viva a su salida, es código muerto y se elimina; quitarla puede
+     * dejar muertas las que la alimentaban, por lo que se repite hasta que no
+     * quede ninguna. Los conjuntos son {@link BitSet} sobre las variables que la
+     * unidad puede eliminar, numeradas desde cero.
      * </p>
      * <p>
      * Las instrucciones de control de flujo (labels, if, goto, call, return)
      * nunca se eliminan por seguridad, aun si su resultado es un temporal.
      * </p>
      *
-     * @param instrucciones lista de instrucciones ya optimizadas sobre la que
-     *                      se aplicará eliminación de código muerto in-place
+     * @param region unidad ya optimizada, que se modifica
+     * @return si se eliminó alguna instrucción
      */
-    private void eliminarCodigoMuerto(List<Instruccion> instrucciones) {
-        boolean cambio = true;
-        while (cambio) {
-            cambio = false;
+    private boolean eliminarMuertas(CodigoIntermedio region) {
+        int n = region.cantidad();
 
-            // Construye mapa de etiquetas para los saltos
-            Map<String, Integer> etiquetas = new HashMap<>();
-            for (int i = 0; i < instrucciones.size(); i++) {
-                Instruccion inst = instrucciones.get(i);
-                if ("label".equals(inst.op) && inst.result != null) {
-                    etiquetas.put(inst.result, i);
+        // Variables eliminables de la unidad, numeradas desde cero
+        variablesRegion.reiniciar();
+        int[] defs = new int[n];
+        for (int i = 0; i < n; i++) {
+            int def = obtenerDef(region, i);
+            defs[i] = def < 0 ? -1 : variablesRegion.asignar(def);
+        }
+
+        // Lecturas de cada instrucción, solo de esas variables
+        int[] inicioUsos = new int[n + 1];
+        Enteros usos = new Enteros();
+        Enteros leidos = new Enteros();
+        for (int i = 0; i < n; i++) {
+            inicioUsos[i] = usos.cantidad;
+            obtenerUsos(region, i, leidos);
+            for (int k = 0; k < leidos.cantidad; k++) {
+                int v = variablesRegion.numero(leidos.datos[k]);
+                if (v >= 0) {
+                    usos.agregar(v);
                 }
             }
+        }
+        inicioUsos[n] = usos.cantidad;
 
-            // Dataflow de liveness con CFG explícito
-            List<java.util.Set<String>> in = new ArrayList<>(instrucciones.size());
-            List<java.util.Set<String>> out = new ArrayList<>(instrucciones.size());
-            for (int i = 0; i < instrucciones.size(); i++) {
-                in.add(new java.util.HashSet<>());
-                out.add(new java.util.HashSet<>());
+        // Bloques básicos: empiezan en una etiqueta o después de un salto, return o endfunc
+        int[] inicioBloque = new int[n + 1];
+        int bloques = 0;
+        etiquetasRegion.reiniciar();
+        for (int i = 0; i < n; i++) {
+            Operacion op = region.operacion(i);
+            if (i == 0 || op == Operacion.ETIQUETA || terminaBloque(region.operacion(i - 1))) {
+                inicioBloque[bloques++] = i;
+            }
+            if (op == Operacion.ETIQUETA) {
+                etiquetasRegion.poner(Operando.simbolo(region.resultado(i)), bloques - 1);
             }
+        }
+        inicioBloque[bloques] = n;
+        // USE (leídas antes de escribirse) y DEF de cada bloque
+        BitSet[] usoBloque = new BitSet[bloques];
+        BitSet[] defBloque = new BitSet[bloques];
+        BitSet[] entrada = new BitSet[bloques];
+        BitSet[] salida = new BitSet[bloques];
+        for (int b = 0; b < bloques; b++) {
+            BitSet uso = new BitSet();
+            BitSet def = new BitSet();
+            for (int i = inicioBloque[b + 1] - 1; i >= inicioBloque[b]; i--) {
+                if (defs[i] >= 0) {
+                    uso.clear(defs[i]);
+                    def.set(defs[i]);
+                }
+                for (int k = inicioUsos[i]; k < inicioUsos[i + 1]; k++) {
+                    uso.set(usos.datos[k]);
+                }
+            }
+            usoBloque[b] = uso;
+            defBloque[b] = def;
+            entrada[b] = (BitSet) uso.clone();
+            salida[b] = new BitSet();
+        }
 
-            boolean actualizado = true;
-            while (actualizado) {
-                actualizado = false;
-                for (int i = instrucciones.size() - 1; i >= 0; i--) {
-                    Instruccion inst = instrucciones.get(i);
-                    java.util.Set<String> uso = obtenerUsos(inst);
-                    String def = obtenerDef(inst);
-
-                    java.util.Set<String> outActual = calcularSucesoresOut(in, etiquetas, i, instrucciones.size(), inst);
-                    java.util.Set<String> inNuevo = new java.util.HashSet<>(uso);
-                    java.util.Set<String> outMenosDef = new java.util.HashSet<>(outActual);
-                    if (def != null) {
-                        outMenosDef.remove(def);
-                    }
-                    inNuevo.addAll(outMenosDef);
+        // Punto fijo: OUT = unión de IN de los sucesores; IN = USE ∪ (OUT − DEF)
+        int[] sucesores = new int[2];
+        BitSet nuevaEntrada = new BitSet();
+        boolean actualizado = true;
+        while (actualizado) {
+            actualizado = false;
+            for (int b = bloques - 1; b >= 0; b--) {
+                BitSet out = salida[b];
+                out.clear();
+                int cantidad = sucesores(region, inicioBloque, bloques, b, sucesores);
+                for (int k = 0; k < cantidad; k++) {
+                    out.or(entrada[sucesores[k]]);
+                }
+                nuevaEntrada.clear();
+                nuevaEntrada.or(out);
+                nuevaEntrada.andNot(defBloque[b]);
+                nuevaEntrada.or(usoBloque[b]);
+                if (!nuevaEntrada.equals(entrada[b])) {
+                    entrada[b].clear();
+                    entrada[b].or(nuevaEntrada);
+                    actualizado = true;
+                }
+            }
+        }
 
-                    if (!outActual.equals(out.get(i)) || !inNuevo.equals(in.get(i))) {
-                        out.set(i, outActual);
-                        in.set(i, inNuevo);
-                        actualizado = true;
+        // Eliminación: recorre cada bloque hacia atrás desde su OUT
+        boolean[] muerta = new boolean[n];
+        boolean cambio = false;
+        BitSet vivas = new BitSet();
+        for (int b = 0; b < bloques; b++) {
+            vivas.clear();
+            vivas.or(salida[b]);
+            for (int i = inicioBloque[b + 1] - 1; i >= inicioBloque[b]; i--) {
+                if (defs[i] >= 0) {
+                    if (!vivas.get(defs[i]) && instruccionPura(region.operacion(i))) {
+                        muerta[i] = true;
+                        cambio = true;
                     }
+                    vivas.clear(defs[i]);
+                }
+                for (int k = inicioUsos[i]; k < inicioUsos[i + 1]; k++) {
+                    vivas.set(usos.datos[k]);
                 }
             }
+        }
+        if (cambio) {
+            region.quitar(muerta);
+        }
+        return cambio;
+    }
 
-            // Pasada de eliminación usando in/out calculados
-            for (int i = instrucciones.size() - 1; i >= 0; i--) {
-                Instruccion inst = instrucciones.get(i);
-                String def = obtenerDef(inst);
-                if (def == null) {
-                    continue;
-                }
+    private static boolean terminaBloque(Operacion op) {
+        return op == Operacion.SALTO || op == Operacion.SI || op == Operacion.RETORNO || op == Operacion.FIN_FUNCION;
+    }
 
-                boolean usado = out.get(i).contains(def);
-                boolean esEliminable = instruccionPura(inst);
+    /**
+     * Bloques sucesores de {@code b} en el CFG (lineal y con saltos); un salto a
+     * una etiqueta desconocida sigue de largo.
+     *
+     * @return cantidad de sucesores escritos en {@code destino}
+     */
+    private int sucesores(CodigoIntermedio region, int[] inicioBloque, int bloques, int b, int[] destino) {
+        int ultima = inicioBloque[b + 1] - 1;
+        boolean hayLineal = b + 1 < bloques;
+        Operacion op = region.operacion(ultima);
 
-                if (!usado && esEliminable) {
-                    instrucciones.remove(i);
-                    cambio = true;
+        // return y fin de función no tienen sucesores
+        if (op == Operacion.RETORNO || op == Operacion.FIN_FUNCION) {
+            return 0;
+        }
+        int cantidad = 0;
+        if (op == Operacion.SALTO || op == Operacion.SI) {
+            int destinoSalto = etiquetasRegion.numero(Operando.simbolo(region.resultado(ultima)));
+            if (destinoSalto >= 0) {
+                destino[cantidad++] = destinoSalto;
+                // goto lX: solo el destino; if cond goto lX: el destino y el siguiente
+                if (op == Operacion.SALTO) {
+                    return cantidad;
                 }
             }
         }
+        if (hayLineal) {
+            destino[cantidad++] = b + 1;
+        }
+        return cantidad;
     }
 
-    private java.util.Set<String> obtenerUsos(Instruccion inst) {
-        java.util.Set<String> usos = new java.util.HashSet<>();
-        if (esVariable(inst.arg1)) usos.add(inst.arg1);
-        if (esVariable(inst.arg2)) usos.add(inst.arg2);
+    /** Escribe en {@code usos} los símbolos que lee la instrucción {@code i}. */
+    private void obtenerUsos(CodigoIntermedio codigo, int i, Enteros usos) {
+        usos.cantidad = 0;
+        Operacion op = codigo.operacion(i);
+        if (op.estructural()) {
+            return;
+        }
+        // Los argumentos de un call los leen sus param, como cualquier operando
+        agregarUsoOperando(codigo.primero(i), usos);
+        agregarUsoOperando(codigo.segundo(i), usos);
+        // El índice de un destino a[i] también se lee
+        int result = codigo.resultado(i);
+        if (Operando.elemento(result)) {
+            int simbolo = Operando.simbolo(result);
+            agregarUso(simbolo, usos);
+            usos.quitar(nombres.base(simbolo));
+        }
+    }
 
-        // Los argumentos de call vienen empaquetados en un string "a,b,c"
-        if ("call".equals(inst.op) && inst.arg2 != null) {
-            for (String token : inst.arg2.split(",")) {
-                token = token.trim();
-                if (esVariable(token)) {
-                    usos.add(token);
-                }
+    /** Agrega a {@code usos} las variables que lee un operando de valor. */
+    private void agregarUsoOperando(int operando, Enteros usos) {
+        if (Operando.almacenamiento(operando)) {
+            agregarUso(Operando.simbolo(operando), usos);
+        }
+    }
+
+    /** Agrega a {@code usos} la variable leída por un símbolo (para a[i]: a e i). */
+    private void agregarUso(int simbolo, Enteros usos) {
+        int base = nombres.base(simbolo);
+        if (base >= 0) {
+            usos.agregar(base);
+            agregarUso(nombres.indice(simbolo), usos);
+        } else if (nombres.variable(simbolo)) {
+            usos.agregar(simbolo);
+        }
+    }
+
+    /**
+     * Variable definida por la instrucción {@code i}, si su definición puede
+     * eliminarse cuando no se usa. Las escrituras a globales y a elementos de
+     * arreglo son efectos visibles y no cuentan como definiciones eliminables.
+     *
+     * @return símbolo de la variable, o {@code -1}
+     */
+    private int obtenerDef(CodigoIntermedio codigo, int i) {
+        Operacion op = codigo.operacion(i);
+        int result = codigo.resultado(i);
+        if (!Operando.escalar(result)) return -1;
+        if (op.estructural() || op.control()) return -1;
+        int simbolo = Operando.simbolo(result);
+        return globales.get(simbolo) ? -1 : simbolo;
+    }
+
+    /** Agrega a {@link #globales} los nombres declarados en la inicialización global. */
+    private void recolectarGlobales(CodigoIntermedio inicializacion) {
+        for (int i = 0; i < inicializacion.cantidad(); i++) {
+            if (inicializacion.operacion(i) == Operacion.DECLARACION) {
+                globales.set(Operando.simbolo(inicializacion.resultado(i)));
             }
         }
-        return usos;
     }
 
-    private String obtenerDef(Instruccion inst) {
-        if (inst.result == null || inst.result.isEmpty()) return null;
-        return esVariable(inst.result) ? inst.result : null;
+    /** Reemplaza un índice variable con valor constante conocido: a[t1] -> a[3]. */
+    private int propagarIndice(int operando, Constantes constantes) {
+        if (!Operando.elemento(operando)) return operando;
+        int simbolo = Operando.simbolo(operando);
+        int valor = constantes.valor(nombres.indice(simbolo));
+        return valor >= 0
+                ? Operando.de(Operando.ELEMENTO, nombres.elemento(nombres.base(simbolo), Operando.simbolo(valor)))
+                : operando;
     }
 
-    private boolean esVariable(String s) {
-        if (s == null || s.isEmpty()) return false;
-        if (isNumeric(s)) return false;
-        // Literales de char vienen con comillas simples
-        if ((s.startsWith("'") && s.endsWith("'")) || (s.startsWith("\"") && s.endsWith("\""))) return false;
-        // Etiquetas lX también deberían excluirse como variables
-        if (s.startsWith("l")) return false;
-        return true;
+    /** Verdadero si el operando lee la variable (directamente, como base o como índice). */
+    private boolean menciona(int operando, int variable) {
+        if (!Operando.almacenamiento(operando)) return false;
+        int simbolo = Operando.simbolo(operando);
+        while (simbolo >= 0) {
+            if (simbolo == variable) return true;
+            int base = nombres.base(simbolo);
+            if (base < 0) return false;
+            if (base == variable) return true;
+            simbolo = nombres.indice(simbolo);
+        }
+        return false;
+    }
+
+    /** Olvida la constante de {@code variable} y las expresiones que la leen. */
+    private void invalidar(int variable, Constantes constantes, Expresiones expresiones) {
+        constantes.quitar(variable);
+        expresiones.quitarSi(e -> menciona(expresiones.primeros[e], variable)
+                || menciona(expresiones.segundos[e], variable)
+                || Operando.simbolo(expresiones.resultados[e]) == variable);
+    }
+
+    /** Tras una llamada, nada se sabe de globales ni del contenido de arreglos. */
+    private void invalidarEfectosLlamada(Constantes constantes, Expresiones expresiones) {
+        constantes.quitarGlobales(globales);
+        expresiones.quitarSi(e -> globales.get(Operando.simbolo(expresiones.resultados[e]))
+                || efectoLlamada(expresiones.primeros[e]) || efectoLlamada(expresiones.segundos[e]));
+    }
+
+    /** Verdadero si una llamada puede cambiar el valor del operando (global o elemento de arreglo). */
+    private boolean efectoLlamada(int operando) {
+        return Operando.elemento(operando)
+                || Operando.clase(operando) == Operando.VARIABLE && globales.get(Operando.simbolo(operando));
     }
 
     /**
      * Devuelve true si la instrucción es una asignación pura sin efectos secundarios.
      * Las operaciones de control de flujo y llamadas se excluyen para no eliminarlas.
      */
-    private boolean instruccionPura(Instruccion inst) {
-        String op = inst.op;
-        if (op == null) return false;
-
+    private static boolean instruccionPura(Operacion op) {
         // Instrucciones con efectos de control o potenciales efectos externos no se tocan
-        if (op.equals("call") || op.equals("return") || op.equals("goto") || op.equals("if") || op.equals("label")) {
+        if (op == Operacion.LLAMADA || op == Operacion.ARGUMENTO || op == Operacion.RETORNO
+                || op.control() || op.estructural()) {
             return false;
         }
         // El resto se considera una asignación pura (\n, +, -, *, /, %, !, ==, etc.)
         return true;
     }
 
+    /** @return valor de un literal: los char valen su código y los bool 1 o 0 */
+    private double valor(int literal) {
+        switch (Operando.clase(literal)) {
+            case Operando.CARACTER:
+                return nombres.texto(Operando.simbolo(literal)).charAt(1);
+            case Operando.LOGICO:
+                return "true".equals(nombres.texto(Operando.simbolo(literal))) ? 1 : 0;
+            default:
+                return nombres.valor(Operando.simbolo(literal));
+        }
+    }
+
+    /** @return literal entero de 32 bits como lo carga el backend (el texto se trunca a 32 bits) */
+    private int entero(int literal) {
+        return (int) (long) valor(literal);
+    }
+
+    /** @return literal entero con el byte bajo de {@code literal}, como queda al guardarlo en un char */
+    private int angostar(int literal) {
+        if (Operando.clase(literal) != Operando.ENTERO) {
+            return literal;
+        }
+        int v = entero(literal) & 0xFF;
+        return v == valor(literal) ? literal : Operando.de(Operando.ENTERO, nombres.id(String.valueOf(v)));
+    }
+
     /**
-     * Calcula el conjunto OUT de un nodo usando sus sucesores en el CFG (lineal y con saltos).
+     * Calcula una operación entre literales en el tipo de la instrucción.
+     *
+     * @param tipo tipo de la instrucción: {@code DOUBLE} en punto flotante, si no en int de 32 bits
+     * @param segundo segundo literal, o {@link Operando#NINGUNO} para {@code !} y las conversiones
+     * @return operando del literal resultante, o {@code -1} si no se puede calcular
      */
-    private java.util.Set<String> calcularSucesoresOut(List<java.util.Set<String>> in,
-                                                       Map<String, Integer> etiquetas,
-                                                       int indice,
-                                                       int total,
-                                                       Instruccion inst) {
-        java.util.Set<String> resultado = new java.util.HashSet<>();
-        String op = inst.op;
-
-        // goto lX
-        if ("goto".equals(op) && inst.result != null && etiquetas.containsKey(inst.result)) {
-            resultado.addAll(in.get(etiquetas.get(inst.result)));
-            return resultado;
-        }
-
-        // if cond goto lX : flujo cae al siguiente y al destino
-        if ("if".equals(op)) {
-            if (inst.result != null && etiquetas.containsKey(inst.result)) {
-                resultado.addAll(in.get(etiquetas.get(inst.result)));
-            }
-            if (indice + 1 < total) {
-                resultado.addAll(in.get(indice + 1));
+    private int calcular(Operacion op, TipoDato tipo, int primero, int segundo) {
+        if (op == Operacion.CONVERSION) {
+            return convertir(tipo, primero);
+        }
+        if (op == Operacion.Y || op == Operacion.O || op == Operacion.NEGACION) {
+            boolean a = valor(primero) != 0;
+            boolean b = segundo != Operando.NINGUNO && valor(segundo) != 0;
+            boolean r = op == Operacion.Y ? a && b : (op == Operacion.O ? a || b : !a);
+            return literal(r ? "1" : "0");
+        }
+        if (tipo == TipoDato.DOUBLE) {
+            double v1 = valor(primero);
+            double v2 = valor(segundo);
+            double r;
+            switch (op) {
+                case SUMA: r = v1 + v2; break;
+                case RESTA: r = v1 - v2; break;
+                case PRODUCTO: r = v1 * v2; break;
+                case DIVISION: if (v2 == 0) return -1; r = v1 / v2; break;
+                case MODULO: if (v2 == 0) return -1; r = v1 % v2; break;
+                default: return comparar(op, v1 < v2 ? -1 : (v1 > v2 ? 1 : 0));
             }
-            return resultado;
+            return Double.isFinite(r) ? literal(format(r)) : -1;
         }
+        int v1 = entero(primero);
+        int v2 = entero(segundo);
+        int r;
+        switch (op) {
+            case SUMA: r = v1 + v2; break;
+            case RESTA: r = v1 - v2; break;
+            case PRODUCTO: r = v1 * v2; break;
+            // idiv falla con divisor 0 y con MIN / -1: se deja para la ejecución
+            case DIVISION: if (v2 == 0 || v1 == Integer.MIN_VALUE && v2 == -1) return -1; r = v1 / v2; break;
+            case MODULO: if (v2 == 0 || v1 == Integer.MIN_VALUE && v2 == -1) return -1; r = v1 % v2; break;
+            default: return comparar(op, Integer.compare(v1, v2));
+        }
+        return literal(String.valueOf(r));
+    }
 
-        // return no tiene sucesores
-        if ("return".equals(op)) {
-            return resultado;
+    /**
+     * @param orden negativo, cero o positivo según el primer operando sea menor, igual o mayor
+     * @return literal 1 o 0 de la comparación, o {@code -1} si {@code op} no es una comparación
+     */
+    private int comparar(Operacion op, int orden) {
+        boolean r;
+        switch (op) {
+            case MENOR: r = orden < 0; break;
+            case MAYOR: r = orden > 0; break;
+            case MENOR_IGUAL: r = orden <= 0; break;
+            case MAYOR_IGUAL: r = orden >= 0; break;
+            case IGUAL: r = orden == 0; break;
+            case DISTINTO: r = orden != 0; break;
+            default: return -1;
         }
+        return literal(r ? "1" : "0");
+    }
 
-        // resto: sucesor lineal
-        if (indice + 1 < total) {
-            resultado.addAll(in.get(indice + 1));
+    /** Convierte un literal a {@code tipo}: a double, o a int truncando como {@code fisttp}. */
+    private int convertir(TipoDato tipo, int literal) {
+        if (tipo == TipoDato.DOUBLE) {
+            return literal(format(Operando.clase(literal) == Operando.DOUBLE ? valor(literal) : entero(literal)));
+        }
+        double v = valor(literal);
+        // Fuera de rango fisttp da 0x80000000; solo se pliega lo representable
+        if (!(v > Integer.MIN_VALUE - 1.0 && v < Integer.MAX_VALUE + 1.0)) {
+            return -1;
         }
-        return resultado;
+        return literal(String.valueOf((int) v));
     }
 
-    private boolean isNumeric(String s) {
-        if (s == null) return false;
-        try {
-            Double.parseDouble(s);
-            return true;
-        } catch (NumberFormatException e) {
-            return false;
+    private int literal(String texto) {
+        return Operando.deSimbolo(nombres, nombres.id(texto));
+    }
+
+    /** Formatea un resultado double; conserva el punto para no perder su tipo. */
+    private static String format(double d) {
+        if (d == (long) d) return (long) d + ".0";
+        return String.valueOf(d);
+    }
+
+    /** Lista de enteros sin boxing. */
+    private static final class Enteros {
+        int[] datos = new int[8];
+        int cantidad;
+
+        void agregar(int valor) {
+            if (cantidad == datos.length) {
+                datos = Arrays.copyOf(datos, cantidad * 2);
+            }
+            datos[cantidad++] = valor;
+        }
+
+        /** Quita todas las apariciones de {@code valor}. */
+        void quitar(int valor) {
+            int j = 0;
+            for (int i = 0; i < cantidad; i++) {
+                if (datos[i] != valor) {
+                    datos[j++] = datos[i];
+                }
+            }
+            cantidad = j;
         }
     }
 
-    private String calcular(String op, String arg1, String arg2) {
-        try {
-            double v1 = Double.parseDouble(arg1);
-            double v2 = (arg2 != null && !arg2.isEmpty()) ? Double.parseDouble(arg2) : 0;
-            
-            switch (op) {
-                case "+": return format(v1 + v2);
-                case "-": return format(v1 - v2);
-                case "*": return format(v1 * v2);
-                case "/": if (v2 == 0) return null; return format(v1 / v2);
-                case "%": if (v2 == 0) return null; return format(v1 % v2);
-                case "<": return (v1 < v2) ? "1" : "0";
-                case ">": return (v1 > v2) ? "1" : "0";
-                case "==": return (v1 == v2) ? "1" : "0";
-                case "!=": return (v1 != v2) ? "1" : "0";
-                default: return null;
+    /**
+     * Número asociado a algunos símbolos, en arreglos indexados por símbolo que se
+     * vacían en O(1): un valor solo cuenta si su sello es el de la numeración actual.
+     */
+    private static final class Numeracion {
+        private int[] valores = new int[0];
+        private int[] sellos = new int[0];
+        private int sello;
+        private int cantidad;
+
+        /** Olvida todos los valores; los números asignados vuelven a empezar en cero. */
+        void reiniciar() {
+            sello++;
+            cantidad = 0;
+        }
+
+        /** @return valor del símbolo, o {@code -1} si no tiene */
+        int numero(int simbolo) {
+            return simbolo >= 0 && simbolo < sellos.length && sellos[simbolo] == sello ? valores[simbolo] : -1;
+        }
+
+        /** @return número del símbolo, asignándole el siguiente si no tenía */
+        int asignar(int simbolo) {
+            int v = numero(simbolo);
+            if (v < 0) {
+                v = cantidad++;
+                poner(simbolo, v);
             }
-        } catch (Exception e) {
-            return null;
+            return v;
+        }
+
+        void poner(int simbolo, int valor) {
+            if (simbolo >= sellos.length) {
+                int capacidad = Math.max(simbolo + 1, sellos.length * 2);
+                valores = Arrays.copyOf(valores, capacidad);
+                sellos = Arrays.copyOf(sellos, capacidad);
+            }
+            sellos[simbolo] = sello;
+            valores[simbolo] = valor;
         }
     }
-    
-    private String format(double d) {
-        if (d == (long) d) return String.valueOf((long) d);
-        return String.valueOf(d);
+
+    /** Valor constante conocido de cada variable dentro del bloque básico actual. */
+    private static final class Constantes {
+        private final Numeracion valores = new Numeracion();
+        /** Variables con valor puesto desde la última limpieza (puede repetir o tener quitadas). */
+        private final Enteros puestas = new Enteros();
+
+        Constantes() {
+            valores.reiniciar();
+        }
+
+        /** @return símbolo del valor de {@code variable}, o {@code -1} si no se conoce */
+        int valor(int variable) {
+            return valores.numero(variable);
+        }
+
+        void poner(int variable, int valor) {
+            valores.poner(variable, valor);
+            puestas.agregar(variable);
+        }
+
+        void quitar(int variable) {
+            if (valores.numero(variable) >= 0) {
+                valores.poner(variable, -1);
+            }
+        }
+
+        void quitarGlobales(BitSet globales) {
+            for (int k = 0; k < puestas.cantidad; k++) {
+                if (globales.get(puestas.datos[k])) {
+                    quitar(puestas.datos[k]);
+                }
+            }
+        }
+
+        void limpiar() {
+            valores.reiniciar();
+            puestas.cantidad = 0;
+        }
     }
-}
 
+    /**
+     * Expresiones disponibles en el bloque básico actual: operador y operandos
+     * (símbolos) con el símbolo que guarda su valor. Se buscan con una tabla hash
+     * abierta sobre la clave numérica, sin armar cadenas.
+     */
+    private static final class Expresiones {
+        int[] operadores = new int[16];
+        int[] primeros = new int[16];
+        int[] segundos = new int[16];
+        int[] resultados = new int[16];
+        /** Ranura de la tabla que ocupa cada expresión. */
+        private int[] ranuras = new int[16];
+        private int cantidad;
+        /** Tabla hash con sondeo lineal: expresión + 1, o 0 si la ranura está libre. */
+        private int[] tabla = new int[32];
+
+        /** @return símbolo con el valor de la expresión, o {@code -1} si no está disponible */
+        int buscar(int operador, int primero, int segundo) {
+            int mascara = tabla.length - 1;
+            for (int r = hash(operador, primero, segundo) & mascara; tabla[r] != 0; r = (r + 1) & mascara) {
+                int e = tabla[r] - 1;
+                if (operadores[e] == operador && primeros[e] == primero && segundos[e] == segundo) {
+                    return resultados[e];
+                }
+            }
+            return -1;
+        }
+
+        void agregar(int operador, int primero, int segundo, int resultado) {
+            if (cantidad == operadores.length) {
+                int capacidad = cantidad * 2;
+                operadores = Arrays.copyOf(operadores, capacidad);
+                primeros = Arrays.copyOf(primeros, capacidad);
+                segundos = Arrays.copyOf(segundos, capacidad);
+                resultados = Arrays.copyOf(resultados, capacidad);
+                ranuras = Arrays.copyOf(ranuras, capacidad);
+            }
+            if ((cantidad + 1) * 2 > tabla.length) {
+                vaciarTabla();
+                tabla = new int[tabla.length * 2];
+                for (int e = 0; e < cantidad; e++) {
+                    ubicar(e);
+                }
+            }
+            int e = cantidad++;
+            operadores[e] = operador;
+            primeros[e] = primero;
+            segundos[e] = segundo;
+            resultados[e] = resultado;
+            ubicar(e);
+        }
+
+        /** Quita las expresiones que cumplen la condición (recibe el número de expresión). */
+        void quitarSi(IntPredicate condicion) {
+            int j = 0;
+            for (int e = 0; e < cantidad; e++) {
+                if (!condicion.test(e)) {
+                    if (j != e) {
+                        operadores[j] = operadores[e];
+                        primeros[j] = primeros[e];
+                        segundos[j] = segundos[e];
+                        resultados[j] = resultados[e];
+                    }
+                    j++;
+                }
+            }
+            if (j != cantidad) {
+                vaciarTabla();
+                cantidad = j;
+                for (int e = 0; e < cantidad; e++) {
+                    ubicar(e);
+                }
+            }
+        }
+
+        void limpiar() {
+            vaciarTabla();
+            cantidad = 0;
+        }
+
+        /** Libera las ranuras ocupadas (en O(cantidad), no en O(tamaño de la tabla)). */
+        private void vaciarTabla() {
+            for (int e = 0; e < cantidad; e++) {
+                tabla[ranuras[e]] = 0;
+            }
+        }
+
+        private void ubicar(int e) {
+            int mascara = tabla.length - 1;
+            int r = hash(operadores[e], primeros[e], segundos[e]) & mascara;
+            while (tabla[r] != 0) {
+                r = (r + 1) & mascara;
+            }
+            tabla[r] = e + 1;
+            ranuras[e] = r;
+        }
+
+        private static int hash(int operador, int primero, int segundo) {
+            int h = (operador * 31 + primero) * 0x9E3779B1 + segundo;
+            return h ^ (h >>> 16);
+        }
+    }
+}
@@ -1,6 +1,8 @@
 package compiladores;
 
 import org.antlr.v4.runtime.BaseErrorListener;
+import org.antlr.v4.runtime.Parser;
+import org.antlr.v4.runtime.ParserRuleContext;
 import org.antlr.v4.runtime.RecognitionException;
 import org.antlr.v4.runtime.Recognizer;
 import org.antlr.v4.runtime.Token;
@@ -8,10 +10,29 @@ import org.antlr.v4.runtime.Token;
 /**
  * ErrorListener sintáctico personalizado que redirige los errores del parser
  * al sistema centralizado de mensajes {@link Reportador}.
+ * <p>
+ * Cada error queda marcado en el árbol para que no se informen errores
+ * semánticos sobre el código que lo rodea, y pasa por {@link FiltroDiagnosticos}:
+ * se informan a lo sumo unos pocos por instrucción. Un error con el mismo texto
+ * y lugar que el anterior (la recuperación a veces vuelve a fallar en el mismo
+ * token) no se repite.
+ * </p>
  */
 public class ParserErrorListener extends BaseErrorListener {
 
-    private final Reportador reportador = Reportador.getInstancia();
+    private final Reportador reportador;
+    /** Mensaje y posición del último error informado. */
+    private String ultimo;
+    private int ultimaLinea;
+    private int ultimaColumna;
+
+    public ParserErrorListener() {
+        this(Reportador.getInstancia());
+    }
+
+    public ParserErrorListener(Reportador reportador) {
+        this.reportador = reportador;
+    }
 
     @Override
     public void syntaxError(Recognizer<?, ?> recognizer,
@@ -21,10 +42,14 @@ public class ParserErrorListener extends BaseErrorListener {
                             String msg,
                             RecognitionException e) {
         String lexema = "";
+        int indice = -1;
         if (offendingSymbol instanceof Token) {
             Token t = (Token) offendingSymbol;
             lexema = t.getText();
+            indice = t.getTokenIndex();
         }
+        ParserRuleContext ctx = recognizer instanceof Parser ? ((Parser) recognizer).getContext() : null;
+        FiltroDiagnosticos.marcarError(ctx, indice);
 
         String detalle;
         if (msg.contains("mismatched input")) {
@@ -43,6 +68,14 @@ public class ParserErrorListener extends BaseErrorListener {
                 (lexema != null && !lexema.isEmpty() ? " cerca de '" + lexema + "'" : "") +
                 ": " + msg;
 
-        reportador.error(mensaje, line, charPositionInLine);
+        if (mensaje.equals(ultimo) && line == ultimaLinea && charPositionInLine == ultimaColumna) {
+            return;
+        }
+        ultimo = mensaje;
+        ultimaLinea = line;
+        ultimaColumna = charPositionInLine;
+        if (FiltroDiagnosticos.admitirSintactico(reportador, ctx)) {
+            reportador.error(mensaje, line, charPositionInLine);
+        }
     }
 }
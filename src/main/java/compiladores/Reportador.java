@@ -1,8 +1,13 @@
 package compiladores;
 
+import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Gestor centralizado de mensajes del compilador.
@@ -10,23 +15,239 @@ import java.util.List;
  * Acumula mensajes de distintos componentes (lexer, parser, listener, etc.)
  * y permite luego consultarlos o imprimirlos de forma unificada.
  * </p>
+ * <p>
+ * Puede escribirse desde varios hilos sin locks en el camino de cada mensaje.
+ * Para que el orden no dependa de cómo se repartieron los hilos, cada productor
+ * toma su propio {@link #tramo()}: el lugar del tramo entre los mensajes queda
+ * fijado al pedirlo, y sus mensajes se leen ahí aunque se escriban después y
+ * desde otro hilo. Así el lexer, cada cuerpo de función o una etapa de parsing
+ * que puede descartarse escriben cada uno en lo suyo. Un hilo que escribe sin
+ * tramo en un reportador ajeno recibe uno propio la primera vez; esos mensajes
+ * no se pierden, pero su orden respecto de los del dueño no está fijado.
+ * </p>
+ * <p>
+ * Las cantidades por tipo se llevan al agregar cada mensaje
+ * ({@link #getCantidad(Mensaje.Tipo)}), compartidas entre un reportador y sus
+ * tramos. {@link #getMensajes()} junta los tramos; debe llamarse cuando los
+ * productores ya terminaron.
+ * </p>
+ * <p>
+ * Con una {@link SalidaDiagnosticos} ({@link #setSalida(SalidaDiagnosticos, String)})
+ * cada mensaje se escribe apenas queda definitivo y no se retiene: los del dueño
+ * del reportador principal en cuanto llegan, los de un tramo cuando se lo da por
+ * terminado ({@link #cerrar()}) y todo lo anterior ya se escribió. Con un límite
+ * ({@link #setLimiteErrores(long)}) los errores que lo exceden se descartan y la
+ * compilación se corta en el próximo {@link #verificarLimite()}.
+ * </p>
  */
 public class Reportador {
 
     private static final Reportador INSTANCIA = new Reportador();
 
-    private final List<Mensaje> mensajes = new ArrayList<>();
+    /** Corta la compilación que llegó al límite de {@link #setLimiteErrores(long)}. */
+    public static final class LimiteErrores extends RuntimeException {
+        private static final long serialVersionUID = 1L;
 
-    private Reportador() {
+        LimiteErrores(long limite) {
+            super("se alcanzó el límite de " + limite + " errores");
+        }
+    }
+
+    /** Estado compartido por un reportador y todos sus tramos. */
+    private static final class Comun {
+        final Reportador raiz;
+        final LongAdder[] cantidades = nuevasCantidades();
+        SalidaDiagnosticos salida;
+        String archivo;
+        long limiteErrores;
+
+        Comun(Reportador raiz) {
+            this.raiz = raiz;
+        }
+    }
+
+    /** Listas de mensajes del dueño y tramos, en el orden en que se leen. */
+    private final List<Object> partes = new ArrayList<>();
+    /** Lista del dueño donde va el próximo mensaje, o {@code null} si hay que abrir otra. */
+    private List<Mensaje> actual;
+    /** Primer hilo que escribió; solo él escribe en {@link #actual}. */
+    private final AtomicReference<Thread> duenio = new AtomicReference<>();
+    /** Tramos de los demás hilos que escribieron sin pedir uno. */
+    private final ConcurrentHashMap<Thread, Reportador> porHilo = new ConcurrentHashMap<>();
+    /** Cantidades, salida y límite, compartidos con los tramos. */
+    private final Comun comun;
+    /** Cantidad de mensajes por {@link Mensaje.Tipo}, compartida con los tramos. */
+    private final LongAdder[] cantidades;
+    /** Si el productor del tramo ya no escribe más ({@link #cerrar()}). */
+    private volatile boolean cerrado;
+
+    /**
+     * Crea un reportador independiente de la instancia global.
+     * Cada compilación en modo lote acumula sus mensajes por separado.
+     */
+    public Reportador() {
+        this.comun = new Comun(this);
+        this.cantidades = comun.cantidades;
+    }
+
+    private Reportador(Comun comun) {
+        this.comun = comun;
+        this.cantidades = comun.cantidades;
     }
 
     public static Reportador getInstancia() {
         return INSTANCIA;
     }
 
+    /**
+     * Escribe los mensajes en {@code salida} a medida que quedan definitivos, en
+     * lugar de retenerlos. Debe llamarse antes del primer mensaje.
+     *
+     * @param salida destino de los mensajes, o {@code null} para retenerlos
+     * @param archivo archivo fuente que se informa en cada mensaje
+     */
+    public void setSalida(SalidaDiagnosticos salida, String archivo) {
+        comun.salida = salida;
+        comun.archivo = archivo;
+    }
+
+    /**
+     * Limita la cantidad de errores: los que exceden {@code limite} se descartan
+     * y {@link #verificarLimite()} corta la compilación.
+     *
+     * @param limite cantidad máxima de errores, o {@code 0} sin límite
+     */
+    public void setLimiteErrores(long limite) {
+        comun.limiteErrores = limite;
+    }
+
+    /** @return cantidad máxima de errores, o {@code 0} sin límite */
+    public long getLimiteErrores() {
+        return comun.limiteErrores;
+    }
+
+    /** @return si hay un límite de errores y ya se alcanzó */
+    public boolean limiteAlcanzado() {
+        long limite = comun.limiteErrores;
+        return limite > 0 && cantidades[Mensaje.Tipo.ERROR.ordinal()].sum() >= limite;
+    }
+
+    /**
+     * Punto de corte de la compilación.
+     *
+     * @throws LimiteErrores si ya se alcanzó el límite de errores
+     */
+    public void verificarLimite() {
+        if (limiteAlcanzado()) {
+            throw new LimiteErrores(comun.limiteErrores);
+        }
+    }
+
+    /**
+     * Reserva el lugar de los próximos mensajes de otro productor: los que se
+     * agreguen al tramo se leen aquí, antes de los que este reportador reciba
+     * después. El tramo lo escribe un hilo a la vez.
+     *
+     * @return tramo vacío, con las mismas cantidades que este reportador
+     */
+    public Reportador tramo() {
+        Reportador tramo = new Reportador(comun);
+        synchronized (partes) {
+            partes.add(tramo);
+            actual = null;
+        }
+        return tramo;
+    }
+
+    /** Tramo de un hilo que no es el dueño; no corta la lista del dueño, que escribe otro hilo. */
+    private Reportador tramoDeHilo() {
+        Reportador tramo = new Reportador(comun);
+        synchronized (partes) {
+            partes.add(tramo);
+        }
+        return tramo;
+    }
+
+    /**
+     * Indica que el productor del tramo terminó. Con una salida de diagnósticos,
+     * sus mensajes se escriben en cuanto también lo anterior quedó escrito.
+     */
+    public void cerrar() {
+        cerrado = true;
+        if (comun.salida != null) {
+            comun.raiz.emitir(false);
+        }
+    }
+
+    /**
+     * Escribe en la salida de diagnósticos todo lo pendiente, también lo de los
+     * tramos sin cerrar; debe llamarse cuando los productores ya terminaron.
+     */
+    public void vaciarSalida() {
+        if (comun.salida != null) {
+            comun.raiz.emitir(true);
+            comun.salida.flush();
+        }
+    }
+
     public void agregar(Mensaje mensaje) {
-        if (mensaje != null) {
-            mensajes.add(mensaje);
+        if (mensaje == null || mensaje.getTipo() == Mensaje.Tipo.ERROR && limiteAlcanzado()) {
+            return;
+        }
+        Thread hilo = Thread.currentThread();
+        Thread d = duenio.get();
+        if (d != hilo && (d != null || !duenio.compareAndSet(null, hilo))) {
+            porHilo.computeIfAbsent(hilo, h -> tramoDeHilo()).agregar(mensaje);
+            return;
+        }
+        if (comun.salida != null && this == comun.raiz) {
+            // Las listas del reportador principal se escriben desde cualquier hilo
+            synchronized (partes) {
+                agregarPropio(mensaje);
+                emitir(false);
+            }
+        } else {
+            agregarPropio(mensaje);
+        }
+        cantidades[mensaje.getTipo().ordinal()].increment();
+    }
+
+    private void agregarPropio(Mensaje mensaje) {
+        if (actual == null) {
+            actual = new ArrayList<>();
+            synchronized (partes) {
+                partes.add(actual);
+            }
+        }
+        actual.add(mensaje);
+    }
+
+    /**
+     * Escribe en orden los mensajes definitivos y los quita de las partes. Se
+     * detiene en el primer tramo sin cerrar, salvo con {@code todo}.
+     *
+     * @return si no quedó nada pendiente
+     */
+    private boolean emitir(boolean todo) {
+        synchronized (partes) {
+            for (Iterator<Object> it = partes.iterator(); it.hasNext(); ) {
+                Object parte = it.next();
+                if (parte instanceof Reportador) {
+                    Reportador tramo = (Reportador) parte;
+                    if (!todo && !tramo.cerrado || !tramo.emitir(todo)) {
+                        return false;
+                    }
+                } else {
+                    for (Mensaje m : mensajesDe(parte)) {
+                        comun.salida.escribir(comun.archivo, m);
+                    }
+                    if (parte == actual) {
+                        actual = null;
+                    }
+                }
+                it.remove();
+            }
+            return true;
         }
     }
 
@@ -42,24 +263,85 @@ public class Reportador {
         agregar(new Mensaje(Mensaje.Tipo.ERROR, texto, linea, columna));
     }
 
+    /**
+     * @return mensajes de este reportador y sus tramos, en orden; con una salida
+     *         de diagnósticos, solo los que todavía no se escribieron
+     */
     public List<Mensaje> getMensajes() {
+        List<Mensaje> mensajes = new ArrayList<>();
+        juntar(mensajes);
         return Collections.unmodifiableList(mensajes);
     }
 
+    /** @return cantidad de mensajes del tipo, contando todos los tramos */
+    public long getCantidad(Mensaje.Tipo tipo) {
+        return cantidades[tipo.ordinal()].sum();
+    }
+
     public long getCantidadErrores() {
-        return mensajes.stream().filter(m -> m.getTipo() == Mensaje.Tipo.ERROR).count();
+        return getCantidad(Mensaje.Tipo.ERROR);
     }
 
+    /**
+     * Descarta los mensajes de este reportador y de sus tramos, y los descuenta
+     * de las cantidades compartidas; los tramos ya pedidos siguen en su lugar.
+     */
     public void limpiar() {
-        mensajes.clear();
+        synchronized (partes) {
+            for (Object parte : partes) {
+                if (parte instanceof Reportador) {
+                    ((Reportador) parte).limpiar();
+                } else {
+                    for (Mensaje m : mensajesDe(parte)) {
+                        cantidades[m.getTipo().ordinal()].decrement();
+                    }
+                }
+            }
+            partes.removeIf(parte -> !(parte instanceof Reportador));
+            actual = null;
+        }
     }
 
     /**
      * Imprime todos los mensajes en consola, con un formato simple.
      */
     public void imprimirEnConsola() {
-        for (Mensaje m : mensajes) {
-            System.out.println(m.toString());
+        imprimir(System.out);
+    }
+
+    /**
+     * Imprime todos los mensajes en la salida indicada.
+     *
+     * @param salida destino de los mensajes
+     */
+    public void imprimir(PrintStream salida) {
+        for (Mensaje m : getMensajes()) {
+            salida.println(m.toString());
+        }
+    }
+
+    private void juntar(List<Mensaje> destino) {
+        synchronized (partes) {
+            for (Object parte : partes) {
+                if (parte instanceof Reportador) {
+                    ((Reportador) parte).juntar(destino);
+                } else {
+                    destino.addAll(mensajesDe(parte));
+                }
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Mensaje> mensajesDe(Object parte) {
+        return (List<Mensaje>) parte;
+    }
+
+    private static LongAdder[] nuevasCantidades() {
+        LongAdder[] cantidades = new LongAdder[Mensaje.Tipo.values().length];
+        for (int i = 0; i < cantidades.length; i++) {
+            cantidades[i] = new LongAdder();
         }
+        return cantidades;
     }
 }
@@ -0,0 +1,175 @@
+package compiladores;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+/**
+ * Diagnósticos legibles por herramientas ({@code --diagnosticos=formato[:ruta]}).
+ * <p>
+ * Escribe cada {@link Mensaje} en cuanto el {@link Reportador} lo da por
+ * definitivo, a través de un {@link BufferedWriter}, en uno de dos formatos:
+ * <ul>
+ *   <li>{@code jsonl}: un objeto JSON por línea con {@code archivo}, {@code nivel},
+ *       {@code linea}, {@code columna} y {@code texto}.</li>
+ *   <li>{@code sarif}: un documento SARIF 2.1.0 con una única corrida; cada mensaje
+ *       es un resultado y el cierre del documento se escribe en {@link #close()}.</li>
+ * </ul>
+ * Los mensajes escritos no quedan en memoria, así que un archivo con muchísimos
+ * errores no los acumula. Las columnas de SARIF empiezan en 1; las del JSON Lines
+ * son las mismas de la consola. Una misma salida puede recibir los mensajes de
+ * varias compilaciones a la vez ({@link CompilacionLote}): cada registro se
+ * escribe entero y lleva su archivo.
+ * </p>
+ *
+ * @see Reportador#setSalida(SalidaDiagnosticos, String)
+ */
+public final class SalidaDiagnosticos implements Closeable {
+
+    /** Formatos de {@code --diagnosticos}. */
+    public enum Formato {
+        JSONL,
+        SARIF
+    }
+
+    private final Writer salida;
+    private final Formato formato;
+    /** Si {@link #close()} cierra el destino; la salida estándar solo se vacía. */
+    private final boolean propia;
+    private long escritos;
+
+    /**
+     * @param destino donde se escriben los diagnósticos; se envuelve en un {@link BufferedWriter}
+     * @param formato formato de los registros
+     * @param propia si {@link #close()} también cierra {@code destino}
+     */
+    public SalidaDiagnosticos(Writer destino, Formato formato, boolean propia) {
+        this.salida = new BufferedWriter(destino, 1 << 16);
+        this.formato = formato;
+        this.propia = propia;
+        if (formato == Formato.SARIF) {
+            escribirTexto("{\"$schema\":\"https://json.schemastore.org/sarif-2.1.0.json\",\"version\":\"2.1.0\","
+                    + "\"runs\":[{\"tool\":{\"driver\":{\"name\":\"compiladores\"}},\"results\":[\n");
+        }
+    }
+
+    /**
+     * Abre la salida que indica {@code --diagnosticos=}: {@code jsonl} o
+     * {@code sarif}, seguido opcionalmente de {@code :ruta}; sin ruta se escribe
+     * en la salida estándar.
+     *
+     * @param especificacion valor de la opción
+     * @return salida abierta
+     * @throws IllegalArgumentException si el formato es desconocido
+     * @throws IOException si no se puede crear el archivo
+     */
+    public static SalidaDiagnosticos abrir(String especificacion) throws IOException {
+        int dosPuntos = especificacion.indexOf(':');
+        String nombre = dosPuntos < 0 ? especificacion : especificacion.substring(0, dosPuntos);
+        Formato formato;
+        switch (nombre) {
+            case "jsonl":
+                formato = Formato.JSONL;
+                break;
+            case "sarif":
+                formato = Formato.SARIF;
+                break;
+            default:
+                throw new IllegalArgumentException("Formato de diagnósticos desconocido: '" + nombre
+                        + "' (válidos: jsonl, sarif)");
+        }
+        if (dosPuntos < 0) {
+            return new SalidaDiagnosticos(new OutputStreamWriter(System.out, StandardCharsets.UTF_8), formato, false);
+        }
+        String ruta = especificacion.substring(dosPuntos + 1);
+        return new SalidaDiagnosticos(Files.newBufferedWriter(Paths.get(ruta), StandardCharsets.UTF_8), formato, true);
+    }
+
+    /** @return si escribe en la salida estándar */
+    public boolean esSalidaEstandar() {
+        return !propia;
+    }
+
+    /**
+     * Escribe un mensaje.
+     *
+     * @param archivo archivo fuente del mensaje
+     * @param m mensaje
+     * @throws UncheckedIOException si falla la escritura
+     */
+    synchronized void escribir(String archivo, Mensaje m) {
+        StringBuilder sb = new StringBuilder(96 + m.getTexto().length());
+        if (formato == Formato.JSONL) {
+            sb.append("{\"archivo\":\"").append(Estadisticas.escapar(archivo))
+                    .append("\",\"nivel\":\"").append(m.getTipo().name().toLowerCase())
+                    .append("\",\"linea\":").append(m.getLinea())
+                    .append(",\"columna\":").append(m.getColumna())
+                    .append(",\"texto\":\"").append(Estadisticas.escapar(m.getTexto())).append("\"}\n");
+        } else {
+            if (escritos > 0) {
+                sb.append(",\n");
+            }
+            sb.append("{\"level\":\"").append(nivelSarif(m.getTipo()))
+                    .append("\",\"message\":{\"text\":\"").append(Estadisticas.escapar(m.getTexto()))
+                    .append("\"},\"locations\":[{\"physicalLocation\":{\"artifactLocation\":{\"uri\":\"")
+                    .append(Estadisticas.escapar(archivo.replace('\\', '/'))).append("\"}");
+            if (m.getLinea() > 0) {
+                sb.append(",\"region\":{\"startLine\":").append(m.getLinea());
+                if (m.getColumna() >= 0) {
+                    sb.append(",\"startColumn\":").append(m.getColumna() + 1);
+                }
+                sb.append('}');
+            }
+            sb.append("}}]}");
+        }
+        escritos++;
+        escribirTexto(sb);
+    }
+
+    private static String nivelSarif(Mensaje.Tipo tipo) {
+        switch (tipo) {
+            case ERROR:
+                return "error";
+            case WARNING:
+                return "warning";
+            default:
+                return "note";
+        }
+    }
+
+    /** Vacía el buffer en el destino. */
+    public synchronized void flush() {
+        try {
+            salida.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** Termina el documento (SARIF) y vacía o cierra el destino. */
+    @Override
+    public synchronized void close() throws IOException {
+        if (formato == Formato.SARIF) {
+            salida.write("\n]}]}\n");
+        }
+        if (propia) {
+            salida.close();
+        } else {
+            salida.flush();
+        }
+    }
+
+    private void escribirTexto(CharSequence texto) {
+        try {
+            salida.append(texto);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package compiladores;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
+
+/**
+ * Demonio de compilación que atiende pedidos por un socket de dominio Unix.
+ * <p>
+ * Mantiene la JVM viva entre compilaciones, de modo que la carga de clases, la
+ * deserialización del ATN y los caches DFA de {@link compiladoresLexer} y
+ * {@link compiladoresParser} (estáticos y compartidos) quedan calientes. Cada
+ * pedido se compila con su propio {@link Compilador}.
+ * </p>
+ * <p>
+ * <b>Protocolo</b> (texto UTF-8, una línea por pedido):
+ * <pre>
+ * → entrada TAB directorioSalida TAB archivoTokens [TAB artefactos]
+ * ← [ERROR|WARNING|INFO] (linea,columna) texto      (una línea por mensaje)
+ * ← SALIDA ruta                                      (una línea por artefacto)
+ * ← FIN errores=N ms=T
+ * </pre>
+ * Todo pedido termina con su línea {@code FIN}, aun si la compilación falla
+ * con una excepción o un {@link Error}; una conexión que se cierra antes es un
+ * fallo del demonio.
+ * {@code artefactos} es la lista de {@code --emit} (por ejemplo {@code ir,asm});
+ * si se omite se producen todos, y si está vacía el pedido es de solo verificación
+ * ({@link Compilador#setSoloVerificacion(boolean)}). Las rutas relativas se resuelven contra el directorio de trabajo del demonio,
+ * por lo que {@link ClienteCompilacion} envía rutas absolutas.
+ * </p>
+ *
+ * @see ClienteCompilacion
+ */
+public class ServidorCompilacion {
+
+    /** Ruta por defecto del socket. */
+    public static final String SOCKET_POR_DEFECTO = "/tmp/teccompilacion.sock";
+
+    /** Programa pequeño que recorre todas las reglas para calentar los caches DFA. */
+    private static final String PROGRAMA_CALENTAMIENTO =
+            "int g = 1; double h; int f(int a, double b); char c(char x) { return x; }\n"
+            + "int f(int a, double b) { int v[3]; v[0] = a; bool t = true;\n"
+            + "  if (a > 0 && b <= 2.5 || !t) { a = -a; } else if (a != 1) { a = a % 2; }\n"
+            + "  while (a < 10) { a = a * 2 / 1 + 1 - 0; if (a == 3) { continue; } break; }\n"
+            + "  for (int i = 0; i >= 0; i++) { g = f(i, 1, (a + 1)); }\n"
+            + "  c(a); return g; }\n";
+
+    /** Compilaciones del programa de calentamiento antes de aceptar pedidos. */
+    private static final int ITERACIONES_CALENTAMIENTO = 200;
+
+    private final Path socket;
+
+    /**
+     * @param socket ruta del socket de dominio Unix a crear
+     */
+    public ServidorCompilacion(String socket) {
+        this.socket = Paths.get(socket);
+    }
+
+    /**
+     * Calienta el lexer y el parser y atiende pedidos hasta que se termine el proceso.
+     *
+     * @throws IOException si no se puede crear el socket
+     */
+    public void ejecutar() throws IOException {
+        calentar();
+        Files.deleteIfExists(socket);
+        ExecutorService pool = Executors.newCachedThreadPool();
+        try (ServerSocketChannel servidor = ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            servidor.bind(UnixDomainSocketAddress.of(socket));
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    Files.deleteIfExists(socket);
+                } catch (IOException e) {
+                    // El socket queda huérfano; se reemplaza en el próximo arranque
+                }
+            }));
+            System.out.println("Servidor de compilación escuchando en " + socket);
+            while (true) {
+                SocketChannel cliente = servidor.accept();
+                pool.execute(() -> atender(cliente));
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Compila varias veces un programa que usa todas las reglas para poblar los
+     * caches DFA compartidos y disparar el JIT en todas las fases.
+     */
+    private void calentar() throws IOException {
+        Path directorio = Files.createTempDirectory("teccompilacion");
+        Path fuente = Files.writeString(directorio.resolve("calentamiento.txt"), PROGRAMA_CALENTAMIENTO);
+        PrintStream descarte = new PrintStream(OutputStream.nullOutputStream());
+        try {
+            for (int i = 0; i < ITERACIONES_CALENTAMIENTO; i++) {
+                new Compilador(fuente.toString(), directorio.resolve("Tokens.txt").toString(),
+                        directorio.toString(), descarte).compilar();
+            }
+        } finally {
+            try (Stream<Path> archivos = Files.list(directorio)) {
+                for (Path p : (Iterable<Path>) archivos::iterator) {
+                    Files.deleteIfExists(p);
+                }
+            }
+            Files.deleteIfExists(directorio);
+        }
+    }
+
+    private void atender(SocketChannel canal) {
+        try (SocketChannel c = canal;
+             BufferedReader in = new BufferedReader(new InputStreamReader(Channels.newInputStream(c), StandardCharsets.UTF_8));
+             PrintWriter out = new PrintWriter(Channels.newOutputStream(c), false, StandardCharsets.UTF_8)) {
+            String linea;
+            while ((linea = in.readLine()) != null) {
+                if (!linea.isBlank()) {
+                    compilar(linea, out);
+                    out.flush();
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Conexión de cliente interrumpida: " + e.getMessage());
+        }
+    }
+
+    private void compilar(String pedido, PrintWriter out) {
+        String[] campos = pedido.split("\t", -1);
+        String entrada = campos[0];
+        String directorioSalida = campos.length > 1 ? campos[1] : "salida";
+        String archivoTokens = campos.length > 2 ? campos[2] : "doc/Tokens.txt";
+        String emit = campos.length > 3 ? campos[3] : null;
+
+        long inicio = System.nanoTime();
+        long errores;
+        PrintStream descarte = new PrintStream(OutputStream.nullOutputStream());
+        try {
+            Compilador compilador = new Compilador(entrada, archivoTokens, directorioSalida, descarte);
+            // La consola se descarta: sin trazas no se arma su texto
+            compilador.setTrazas("");
+            if (emit != null && emit.isEmpty()) {
+                compilador.setSoloVerificacion(true);
+            } else if (emit != null) {
+                compilador.setArtefactos(Artefacto.parsear(emit));
+            }
+            compilador.compilar();
+            for (Mensaje m : compilador.getReportador().getMensajes()) {
+                out.println("[" + m.getTipo() + "] (" + m.getLinea() + "," + m.getColumna() + ") " + m.getTexto());
+            }
+            errores = compilador.getReportador().getCantidadErrores();
+            for (String ruta : compilador.getArchivosGenerados()) {
+                out.println("SALIDA " + ruta);
+            }
+        } catch (Throwable e) {
+            // También un Error (falta de memoria, pila agotada): el cliente siempre recibe su FIN
+            out.println("[ERROR] (0,0) No se pudo compilar " + entrada + ": "
+                    + (e.getMessage() != null ? e.getMessage() : e.toString()));
+            errores = 1;
+        }
+        long ms = (System.nanoTime() - inicio) / 1_000_000;
+        out.println("FIN errores=" + errores + " ms=" + ms);
+    }
+}
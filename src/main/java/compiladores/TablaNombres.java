@@ -0,0 +1,317 @@
+package compiladores;
+
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CommonToken;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.TokenFactory;
+import org.antlr.v4.runtime.TokenSource;
+import org.antlr.v4.runtime.misc.Interval;
+import org.antlr.v4.runtime.misc.Pair;
+import java.util.Arrays;
+
+/**
+ * Tabla de nombres internados de una compilación: cada texto distinto
+ * (identificador, literal, temporal, etiqueta u operando {@code a[i]}) recibe una
+ * única vez un número denso, su <em>símbolo</em>, que comparten todas las fases.
+ * <p>
+ * La tabla es también la fábrica de tokens del lexer: los tokens {@code ID},
+ * {@code NUMERO} y {@code CHAR_CONST} se internan al crearse, guardan su símbolo
+ * ({@link Internado}) y su texto es la instancia única de la tabla, así que ni
+ * {@link ConstructorArbol} ni {@link Escucha} vuelven a copiar el lexema del
+ * archivo. Con un {@link CharStreamMapeado} el lexema se busca directamente en
+ * el archivo mapeado y solo se copia la primera vez que aparece. A partir del
+ * símbolo, {@link TablaSimbolos}, {@link Optimizador} y {@link GeneradorAssembler}
+ * indexan arreglos en lugar de mapas por cadena.
+ * </p>
+ * <p>
+ * Al internar un texto se calcula una sola vez su clase ({@link #numerico(int)},
+ * {@link #variable(int)}), el valor de un literal numérico ({@link #valor(int)}) y,
+ * para un operando {@code a[i]}, los símbolos de la base y del índice
+ * ({@link #base(int)}, {@link #indice(int)}); las fases ya no parsean ni cortan
+ * cadenas para averiguarlo. No es segura para hilos: cada
+ * compilación usa la suya.
+ * </p>
+ */
+public final class TablaNombres implements TokenFactory<CommonToken> {
+
+    /** Token cuyo texto está internado; {@link #simbolo} es su número en la tabla. */
+    public static final class Internado extends CommonToken {
+        private static final long serialVersionUID = 1L;
+        final int simbolo;
+
+        Internado(Pair<TokenSource, CharStream> fuente, int tipo, int canal, int inicio, int fin,
+                  String texto, int simbolo) {
+            super(fuente, tipo, canal, inicio, fin);
+            this.simbolo = simbolo;
+            this.text = texto;
+        }
+    }
+
+    private static final byte VACIO = 0;
+    private static final byte NOMBRE = 1;
+    private static final byte NUMERO = 2;
+    /** Literal que no es número ni variable: carácter, cadena, {@code true}, {@code false}. */
+    private static final byte LITERAL = 3;
+    /** Literal numérico con punto decimal. */
+    private static final byte DECIMAL = 4;
+
+    private static final int CAPACIDAD_INICIAL = 256;
+
+    /**
+     * Tabla hash abierta (sondeo lineal) de los textos: símbolo + 1, o 0 si la
+     * ranura está libre. El hash es el de {@link String#hashCode()}, que también se
+     * puede calcular sobre los caracteres del archivo sin crear la cadena.
+     */
+    private int[] ranuras = new int[CAPACIDAD_INICIAL * 2];
+    private int[] hashes = new int[CAPACIDAD_INICIAL];
+    private String[] textos = new String[CAPACIDAD_INICIAL];
+    private byte[] clases = new byte[CAPACIDAD_INICIAL];
+    /** Valor de los literales numéricos; 0 para el resto. */
+    private double[] valores = new double[CAPACIDAD_INICIAL];
+    private int[] bases = new int[CAPACIDAD_INICIAL];
+    private int[] indices = new int[CAPACIDAD_INICIAL];
+    private int cantidad;
+
+    /**
+     * Símbolo de {@code texto}, internándolo si es nuevo.
+     *
+     * @param texto texto a internar ({@code null} no tiene símbolo)
+     * @return símbolo del texto, o {@code -1} si es {@code null}
+     */
+    public int id(String texto) {
+        if (texto == null) {
+            return -1;
+        }
+        int h = texto.hashCode();
+        int mascara = ranuras.length - 1;
+        for (int r = mezclar(h) & mascara; ranuras[r] != 0; r = (r + 1) & mascara) {
+            int s = ranuras[r] - 1;
+            if (hashes[s] == h && textos[s].equals(texto)) {
+                return s;
+            }
+        }
+        return agregar(texto, h);
+    }
+
+    /** @return símbolo de {@code texto}, o {@code -1} si no está en la tabla */
+    public int buscar(String texto) {
+        if (texto == null) {
+            return -1;
+        }
+        int h = texto.hashCode();
+        int mascara = ranuras.length - 1;
+        for (int r = mezclar(h) & mascara; ranuras[r] != 0; r = (r + 1) & mascara) {
+            int s = ranuras[r] - 1;
+            if (hashes[s] == h && textos[s].equals(texto)) {
+                return s;
+            }
+        }
+        return -1;
+    }
+
+    /** Símbolo del lexema {@code [inicio, fin]} del archivo; lo copia solo si es nuevo. */
+    private int id(CharStreamMapeado archivo, int inicio, int fin) {
+        int h = 0;
+        for (int i = inicio; i <= fin; i++) {
+            h = 31 * h + archivo.caracter(i);
+        }
+        int largo = fin - inicio + 1;
+        int mascara = ranuras.length - 1;
+        for (int r = mezclar(h) & mascara; ranuras[r] != 0; r = (r + 1) & mascara) {
+            int s = ranuras[r] - 1;
+            if (hashes[s] == h && iguales(textos[s], archivo, inicio, largo)) {
+                return s;
+            }
+        }
+        return agregar(archivo.getText(Interval.of(inicio, fin)), h);
+    }
+
+    private static boolean iguales(String texto, CharStreamMapeado archivo, int inicio, int largo) {
+        if (texto.length() != largo) {
+            return false;
+        }
+        for (int k = 0; k < largo; k++) {
+            if (texto.charAt(k) != archivo.caracter(inicio + k)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** @return instancia única de {@code texto} en la tabla (la interna si es nuevo) */
+    public String interno(String texto) {
+        int s = id(texto);
+        return s < 0 ? null : textos[s];
+    }
+
+    /** @return texto del símbolo, o {@code null} para {@code -1} */
+    public String texto(int simbolo) {
+        return simbolo < 0 ? null : textos[simbolo];
+    }
+
+    /** @return cantidad de símbolos; todos son menores que este valor */
+    public int cantidad() {
+        return cantidad;
+    }
+
+    /** @return si el símbolo es un literal numérico ({@code 3}, {@code -2.5}) */
+    public boolean numerico(int simbolo) {
+        return simbolo >= 0 && (clases[simbolo] == NUMERO || clases[simbolo] == DECIMAL);
+    }
+
+    /** @return si el símbolo es un literal numérico con punto decimal ({@code 2.5}) */
+    public boolean decimal(int simbolo) {
+        return simbolo >= 0 && clases[simbolo] == DECIMAL;
+    }
+
+    /** @return valor de un literal numérico; {@code 0} si el símbolo no lo es */
+    public double valor(int simbolo) {
+        return valores[simbolo];
+    }
+
+    /**
+     * @return si el símbolo nombra una variable o un operando {@code a[i]}: no es
+     *         vacío, ni número, ni carácter o cadena entre comillas, ni {@code true}/{@code false}
+     */
+    public boolean variable(int simbolo) {
+        return simbolo >= 0 && clases[simbolo] == NOMBRE;
+    }
+
+    /** @return símbolo de la base de un operando {@code a[i]}, o {@code -1} si no es un elemento */
+    public int base(int simbolo) {
+        return simbolo < 0 ? -1 : bases[simbolo];
+    }
+
+    /** @return símbolo del índice de un operando {@code a[i]}, o {@code -1} si no es un elemento */
+    public int indice(int simbolo) {
+        return simbolo < 0 ? -1 : indices[simbolo];
+    }
+
+    /** @return símbolo del operando {@code base[indice]} */
+    public int elemento(int base, int indice) {
+        return id(textos[base] + "[" + textos[indice] + "]");
+    }
+
+    /** @return símbolo de un token; sin búsqueda si el token lo creó esta tabla */
+    public int id(Token token) {
+        return token instanceof Internado ? ((Internado) token).simbolo : id(token.getText());
+    }
+
+    @Override
+    public CommonToken create(Pair<TokenSource, CharStream> fuente, int tipo, String texto, int canal,
+                              int inicio, int fin, int linea, int columna) {
+        CommonToken t;
+        if (seInterna(tipo)) {
+            int s;
+            if (texto == null && fuente.b instanceof CharStreamMapeado) {
+                s = id((CharStreamMapeado) fuente.b, inicio, fin);
+            } else {
+                if (texto == null && fuente.b != null) {
+                    texto = fuente.b.getText(Interval.of(inicio, fin));
+                }
+                s = id(texto);
+            }
+            t = new Internado(fuente, tipo, canal, inicio, fin, texto(s), s);
+        } else {
+            t = new CommonToken(fuente, tipo, canal, inicio, fin);
+            if (texto != null) {
+                t.setText(texto);
+            }
+        }
+        t.setLine(linea);
+        t.setCharPositionInLine(columna);
+        return t;
+    }
+
+    @Override
+    public CommonToken create(int tipo, String texto) {
+        return new CommonToken(tipo, seInterna(tipo) ? interno(texto) : texto);
+    }
+
+    private static boolean seInterna(int tipo) {
+        return tipo == compiladoresLexer.ID || tipo == compiladoresLexer.NUMERO
+                || tipo == compiladoresLexer.CHAR_CONST;
+    }
+
+    private int agregar(String texto, int h) {
+        if (cantidad == textos.length) {
+            int capacidad = textos.length * 2;
+            hashes = Arrays.copyOf(hashes, capacidad);
+            textos = Arrays.copyOf(textos, capacidad);
+            clases = Arrays.copyOf(clases, capacidad);
+            valores = Arrays.copyOf(valores, capacidad);
+            bases = Arrays.copyOf(bases, capacidad);
+            indices = Arrays.copyOf(indices, capacidad);
+        }
+        int s = cantidad++;
+        textos[s] = texto;
+        hashes[s] = h;
+        if (cantidad * 2 > ranuras.length) {
+            ranuras = new int[ranuras.length * 2];
+            for (int k = 0; k < cantidad; k++) {
+                ubicar(k);
+            }
+        } else {
+            ubicar(s);
+        }
+        clases[s] = clasificar(texto);
+        if (clases[s] == NUMERO || clases[s] == DECIMAL) {
+            valores[s] = Double.parseDouble(texto);
+        }
+        bases[s] = -1;
+        indices[s] = -1;
+        int corchete = texto.indexOf('[');
+        if (corchete > 0 && texto.endsWith("]")) {
+            // Internar base e índice puede agrandar los arreglos: se escriben después
+            int b = id(texto.substring(0, corchete));
+            int i = id(texto.substring(corchete + 1, texto.length() - 1));
+            bases[s] = b;
+            indices[s] = i;
+        }
+        return s;
+    }
+
+    private void ubicar(int s) {
+        int mascara = ranuras.length - 1;
+        int r = mezclar(hashes[s]) & mascara;
+        while (ranuras[r] != 0) {
+            r = (r + 1) & mascara;
+        }
+        ranuras[r] = s + 1;
+    }
+
+    /** Dispersa los bits altos del hash, que {@link String#hashCode()} reparte mal en textos cortos. */
+    private static int mezclar(int h) {
+        h *= 0x9E3779B1;
+        return h ^ (h >>> 16);
+    }
+
+    private static byte clasificar(String texto) {
+        if (texto.isEmpty()) {
+            return VACIO;
+        }
+        if (esNumero(texto)) {
+            return texto.indexOf('.') >= 0 ? DECIMAL : NUMERO;
+        }
+        // Literales de char vienen con comillas simples
+        if ((texto.startsWith("'") && texto.endsWith("'")) || (texto.startsWith("\"") && texto.endsWith("\""))
+                || "true".equals(texto) || "false".equals(texto)) {
+            return LITERAL;
+        }
+        return NOMBRE;
+    }
+
+    private static boolean esNumero(String s) {
+        // Descarta identificadores que Double.parseDouble aceptaría (NaN, Infinity)
+        char c = s.charAt(0);
+        if (!Character.isDigit(c) && c != '-' && c != '.') {
+            return false;
+        }
+        try {
+            Double.parseDouble(s);
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+}
@@ -1,9 +1,18 @@
 package compiladores;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.Map;
-import java.util.LinkedList;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.antlr.v4.runtime.Token;
 
 /**
  * Tabla de símbolos para el compilador que gestiona los identificadores y sus contextos.
@@ -14,9 +23,25 @@ import java.util.List;
  * de alcance léxico del lenguaje.
  * </p>
  * <p>
- * La tabla mantiene una lista de mapas donde cada mapa representa un contexto (scope).
  * Los contextos se apilan cuando se entra a un bloque y se desapilan cuando se sale,
  * permitiendo el sombreado (shadowing) de identificadores en contextos internos.
+ * Un único índice por nombre guarda la cadena de declaraciones visibles de ese
+ * nombre, de la más interna a la más externa, y cada declaración recuerda el nivel
+ * del contexto donde se hizo. Buscar, agregar y cerrar un contexto cuestan O(1)
+ * amortizado sin importar la profundidad del anidamiento; un contexto solo reserva
+ * memoria (la lista de nombres a retirar al cerrarlo) si declara algo. El índice
+ * es un arreglo por símbolo de la {@link TablaNombres} de la compilación: los
+ * nombres llegan internados desde el lexer, así que encontrar su símbolo no vuelve
+ * a calcular el hash ni a comparar caracteres.
+ * </p>
+ * <p>
+ * Para analizar en paralelo el cuerpo de cada función ({@link AnalisisSemantico})
+ * la tabla entrega vistas ({@link #vistaCuerpo(Trazas)}): cada vista tiene su
+ * propia pila de contextos locales y consulta los globales de la tabla principal
+ * sin modificarlos, viendo solo los declarados antes de la función. Las marcas de
+ * uso e inicialización sobre globales quedan pendientes en la vista hasta
+ * {@link #aplicarMarcas(TablaSimbolos)}. Como los globales se declaran ya
+ * inicializados, ningún cuerpo depende de lo que marque otro.
  * </p>
  *
  * @author Compiladores 2024
@@ -31,30 +56,228 @@ public final class TablaSimbolos {
      * Instancia única de la tabla de símbolos (Patrón Singleton).
      */
     private static TablaSimbolos instancia;
-    
+
     /**
-     * Lista de contextos (scopes) donde cada contexto es un mapa de identificadores.
-     * El último elemento de la lista representa el contexto actual (más interno).
+     * Declaración visible de un nombre: el símbolo, el nivel del contexto donde se
+     * declaró y la declaración del mismo nombre que sombrea (de un contexto externo).
      */
-    private List<Map<String, Id>> ts;
+    private static final class Entrada {
+        final Id id;
+        final int nivel;
+        Entrada sombreada;
+
+        Entrada(Id id, int nivel, Entrada sombreada) {
+            this.id = id;
+            this.nivel = nivel;
+            this.sombreada = sombreada;
+        }
+    }
+
+    /** Símbolos declarados en un contexto, para retirarlos al cerrarlo. */
+    private static final class Declarados {
+        int[] simbolos = new int[4];
+        int cantidad;
+
+        void agregar(int simbolo) {
+            if (cantidad == simbolos.length) {
+                simbolos = Arrays.copyOf(simbolos, cantidad * 2);
+            }
+            simbolos[cantidad++] = simbolo;
+        }
+    }
+
+    /** Tabla de nombres de la compilación; los índices siguientes son por símbolo. */
+    private final TablaNombres nombres;
+    /** Declaración más interna visible de cada símbolo. */
+    private Entrada[] indice = new Entrada[0];
+    /** Declaraciones del contexto global (nivel 1), para {@link #getSimboloGlobal(String)}. */
+    private Entrada[] globales = new Entrada[0];
+    /** Orden en que se agregó cada global; las vistas solo ven los anteriores a su límite. */
+    private int[] ordenGlobal = new int[0];
+    private int cantidadGlobales;
+    /**
+     * Símbolos declarados en cada contexto abierto, indexado por nivel; {@code null}
+     * mientras el contexto no declare nada.
+     */
+    private final List<Declarados> declarados = new ArrayList<>();
+    /** Cantidad de contextos abiertos; el actual tiene este nivel y el global el 1. */
+    private int nivel;
     /** Historial de todos los símbolos añadidos (para warnings posteriores). */
-    private List<Id> historial;
+    private final List<Id> historial = new ArrayList<>();
+    /** Firmas de función ya creadas, para compartirlas entre funciones iguales. */
+    private final Map<List<TipoDato>, Firma> firmas = new HashMap<>();
+    /** Trazas de contextos y símbolos, y la tabla impresa. */
+    private final Trazas trazas;
+    private final boolean trazaDetalle;
+    private final boolean trazaTabla;
+
+    /** Tabla principal de una vista de cuerpo, o {@code null} en la tabla principal. */
+    private final TablaSimbolos base;
+    /** Globales de {@link #base} visibles en la vista: los de orden menor. */
+    private final int limiteGlobal;
+    /** Lugar del historial de {@link #base} donde van los símbolos de la vista. */
+    private final int posicionHistorial;
+    /** Globales de {@link #base} que la vista marcó como usados o inicializados. */
+    private Set<Id> usadosBase;
+    private Set<Id> inicializadosBase;
+    /** Locales abiertos cuando se creó la vista, que se declaran en {@link #abrirVista()}. */
+    private Entrada[] iniciales;
+    private int nivelInicial;
+    /** Índices de vistas ya cerradas, todos vacíos, para reutilizar. */
+    private final Queue<Entrada[]> indicesLibres = new ConcurrentLinkedQueue<>();
 
     /**
-     * Constructor privado para prevenir instanciación directa (Patrón Singleton).
-     * Inicializa la lista de contextos vacía.
+     * Constructor privado usado por la instancia única (Patrón Singleton).
+     * Inicializa la tabla sin contextos.
      */
     private TablaSimbolos() {
-        ts = new LinkedList<>();
-        historial = new LinkedList<>();
+        this(Trazas.directas(System.out), new TablaNombres());
+    }
+
+    /**
+     * Crea una tabla independiente de la instancia única.
+     * <p>
+     * Cada compilación en modo lote usa su propia tabla para que varias
+     * compilaciones puedan ejecutarse en paralelo sin compartir contextos.
+     * </p>
+     *
+     * @param trazas trazas de la compilación (categoría {@link Trazas.Categoria#TABLA})
+     * @param nombres tabla de nombres de la compilación
+     */
+    TablaSimbolos(Trazas trazas, TablaNombres nombres) {
+        this(trazas, nombres, null, 0, 0);
+    }
+
+    private TablaSimbolos(Trazas trazas, TablaNombres nombres, TablaSimbolos base,
+                          int limiteGlobal, int posicionHistorial) {
+        this.trazas = trazas;
+        this.nombres = nombres;
+        this.trazaDetalle = trazas.activa(Trazas.Categoria.TABLA, Trazas.Nivel.DETALLE);
+        this.trazaTabla = trazas.activa(Trazas.Categoria.TABLA, Trazas.Nivel.INFO);
+        this.base = base;
+        this.limiteGlobal = limiteGlobal;
+        this.posicionHistorial = posicionHistorial;
+        declarados.add(null); // nivel 0: sin contexto
+    }
+
+    /**
+     * Vista para analizar aparte el cuerpo de la función cuyo encabezado se está
+     * procesando. Empieza en el contexto actual, con copia de los símbolos locales
+     * abiertos (los parámetros), y ve los globales declarados hasta ahora.
+     * <p>
+     * Mientras existan vistas en uso la tabla principal no debe modificarse; así
+     * varias vistas pueden usarse a la vez desde hilos distintos. Los nombres de un
+     * cuerpo llegan internados desde el lexer, de modo que la vista solo consulta
+     * la {@link TablaNombres}.
+     * </p>
+     *
+     * @param trazasCuerpo trazas donde la vista escribe
+     * @return vista que se usa entre {@link #abrirVista()} y {@link #cerrarVista()},
+     *         y luego se entrega a {@link #aplicarMarcas(TablaSimbolos)} y
+     *         {@link #incorporarCuerpos(List)}
+     */
+    TablaSimbolos vistaCuerpo(Trazas trazasCuerpo) {
+        TablaSimbolos vista = new TablaSimbolos(trazasCuerpo, nombres, this, cantidadGlobales, historial.size());
+        // Los locales abiertos, del contexto más externo al más interno
+        List<Entrada> locales = new ArrayList<>();
+        for (int n = 2; n <= nivel; n++) {
+            Declarados contexto = declarados.get(n);
+            if (contexto == null) {
+                continue;
+            }
+            for (int k = 0; k < contexto.cantidad; k++) {
+                Entrada e = indice[contexto.simbolos[k]];
+                while (e != null && e.nivel != n) {
+                    e = e.sombreada;
+                }
+                if (e != null) {
+                    locales.add(e);
+                }
+            }
+        }
+        vista.iniciales = locales.toArray(new Entrada[0]);
+        vista.nivelInicial = nivel;
+        vista.usadosBase = Collections.newSetFromMap(new IdentityHashMap<>());
+        vista.inicializadosBase = Collections.newSetFromMap(new IdentityHashMap<>());
+        return vista;
+    }
+
+    /**
+     * Prepara una vista de cuerpo para usarla: le da un índice, reutilizando el de
+     * una vista ya cerrada si lo hay, y declara los locales con que empieza.
+     */
+    void abrirVista() {
+        Entrada[] libre = base.indicesLibres.poll();
+        indice = libre != null && libre.length >= nombres.cantidad() ? libre : new Entrada[nombres.cantidad()];
+        for (int n = 1; n <= nivelInicial; n++) {
+            declarados.add(null);
+        }
+        nivel = nivelInicial;
+        for (Entrada e : iniciales) {
+            int s = nombres.buscar(e.id.getNombre());
+            indice[s] = new Entrada(e.id, e.nivel, indice[s]);
+            registrarEnContexto(e.nivel, s);
+        }
+    }
+
+    /**
+     * Termina de usar una vista de cuerpo, cuyos contextos propios ya se cerraron,
+     * y devuelve su índice para otra vista.
+     */
+    void cerrarVista() {
+        for (int n = nivel; n >= 2; n--) {
+            Declarados contexto = declarados.get(n);
+            for (int k = 0; contexto != null && k < contexto.cantidad; k++) {
+                indice[contexto.simbolos[k]] = null;
+            }
+        }
+        base.indicesLibres.offer(indice);
+        indice = null;
+        declarados.clear();
+    }
+
+    /** Aplica a los globales las marcas de uso e inicialización que la vista dejó pendientes. */
+    void aplicarMarcas(TablaSimbolos vista) {
+        for (Id id : vista.usadosBase) {
+            id.setUsado(true);
+        }
+        for (Id id : vista.inicializadosBase) {
+            id.setInicializado(true);
+        }
+    }
+
+    /**
+     * Incorpora los símbolos de las vistas de cuerpo al historial, en el lugar
+     * que tenían en el programa.
+     *
+     * @param vistas vistas creadas con {@link #vistaCuerpo(Trazas)}, en el orden en que se crearon
+     */
+    void incorporarCuerpos(List<TablaSimbolos> vistas) {
+        if (vistas.isEmpty()) {
+            return;
+        }
+        int total = historial.size();
+        for (TablaSimbolos vista : vistas) {
+            total += vista.historial.size();
+        }
+        List<Id> combinado = new ArrayList<>(total);
+        int desde = 0;
+        for (TablaSimbolos vista : vistas) {
+            combinado.addAll(historial.subList(desde, vista.posicionHistorial));
+            combinado.addAll(vista.historial);
+            desde = vista.posicionHistorial;
+        }
+        combinado.addAll(historial.subList(desde, historial.size()));
+        historial.clear();
+        historial.addAll(combinado);
     }
     
     /**
      * Obtiene la instancia única de la tabla de símbolos.
      * <p>
      * Implementa lazy initialization: crea la instancia solo cuando se solicita
-     * por primera vez. Este método no es thread-safe, pero es suficiente para
-     * el contexto de un compilador de un solo hilo.
+     * por primera vez. Este método no es thread-safe; las compilaciones
+     * concurrentes crean su propia tabla con {@link #TablaSimbolos(Trazas, TablaNombres)}.
      * </p>
      *
      * @return la instancia única de {@link TablaSimbolos}
@@ -73,81 +296,105 @@ public final class TablaSimbolos {
      * while, for, etc.). El nuevo contexto se apila sobre los existentes.
      * </p>
      * <p>
-     * <b>Postcondición:</b> Un nuevo mapa vacío se añade al final de la lista de contextos.
+     * <b>Postcondición:</b> El contexto actual es uno nuevo, todavía sin símbolos.
      * </p>
      *
      * @see #delContexto()
      */
     public void addContexto() {
-        ts.add(new HashMap<>());
-        System.out.println("[TS] addContexto -> size=" + ts.size());
+        nivel++;
+        if (declarados.size() <= nivel) {
+            declarados.add(null);
+        }
+        if (trazaDetalle) {
+            trazas.linea("[TS] addContexto -> size=" + nivel);
+        }
     }
 
     /**
      * Elimina el contexto (scope) actual de la tabla de símbolos.
      * <p>
-     * Se debe invocar al salir de un bloque de código. Remueve el último contexto
-     * añadido, liberando todos los símbolos declarados en ese scope.
+     * Se debe invocar al salir de un bloque de código. Retira las declaraciones
+     * hechas en ese contexto, dejando visibles las que sombreaban; el costo es
+     * proporcional a la cantidad de símbolos declarados en el contexto.
      * </p>
      * <p>
-     * <b>Precondición:</b> La lista de contextos no debe estar vacía.
+     * <b>Precondición:</b> Debe haber al menos un contexto abierto.
      * </p>
      * <p>
-     * <b>Postcondición:</b> El último contexto es removido de la lista.
+     * <b>Postcondición:</b> El contexto actual es el que lo contenía.
      * </p>
      *
      * @see #addContexto()
      */
     public void delContexto() {
-        if (!ts.isEmpty()) {
-            System.out.println("[TS] delContexto <- size=" + ts.size());
-            ts.remove(ts.size() - 1);
+        if (nivel == 0) {
+            return;
         }
+        if (trazaDetalle) {
+            trazas.linea("[TS] delContexto <- size=" + nivel);
+        }
+        Declarados contexto = declarados.get(nivel);
+        if (contexto != null) {
+            for (int k = 0; k < contexto.cantidad; k++) {
+                int s = contexto.simbolos[k];
+                Entrada e = indice[s];
+                // Un global agregado por addSimboloGlobal queda al final de la cadena
+                if (e != null && e.nivel == nivel) {
+                    indice[s] = e.sombreada;
+                }
+                if (nivel == 1) {
+                    globales[s] = null;
+                }
+            }
+            declarados.set(nivel, null);
+        }
+        nivel--;
     }
 
     /**
-     * Añade un símbolo al contexto actual si no existe globalmente.
+     * Añade un símbolo al contexto actual si no está declarado en ese mismo contexto.
      * <p>
-     * Verifica que el símbolo no exista en ningún contexto visible antes de añadirlo
-     * al contexto actual. Esto previene declaraciones duplicadas dentro del alcance visible.
+     * Otros contextos (externos) pueden tener el mismo nombre para permitir
+     * sombreado y reutilización en funciones distintas.
      * </p>
      * <p>
      * <b>Precondición:</b> Debe existir al menos un contexto en la tabla.
      * </p>
      * <p>
-     * <b>Postcondición:</b> Si el símbolo no existe, se añade al contexto actual.
+     * <b>Postcondición:</b> Si el símbolo no existía en el contexto actual, se añade.
      * </p>
      *
      * @param nombre el nombre del identificador a añadir
      * @param id el objeto {@link Id} que representa el símbolo (variable o función)
-     * @see #contieneSimbolo(String)
+     * @see #contieneSimboloLocal(String)
      */
     public void addSimbolo(String nombre, Id id) {    
-        if (!ts.isEmpty()) {
-            Map<String, Id> contextoActual = ts.get(ts.size() - 1);
-            // Solo evitamos duplicados dentro del contexto actual.
-            // Otros contextos (externos) pueden tener el mismo nombre
-            // para permitir sombreado y reutilización en funciones distintas.
-            if (!contextoActual.containsKey(nombre)) {
-                if (id.getInicializado() == null) {
-                    id.setInicializado(false);
-                }
-                if (id.getUsado() == null) {
-                    id.setUsado(false);
-                }
-                contextoActual.put(nombre, id);
-                historial.add(id);
-                System.out.println("[TS] addSimbolo '" + nombre + "' en contexto=" + (ts.size()-1));
-            }
+        if (nivel == 0) {
+            return;
+        }
+        int s = simbolo(nombre);
+        Entrada visible = indice[s];
+        if (visible != null && visible.nivel == nivel) {
+            return;
+        }
+        inicializarMarcas(id);
+        indice[s] = new Entrada(id, nivel, visible);
+        registrarEnContexto(nivel, s);
+        if (nivel == 1) {
+            ponerGlobal(s, indice[s]);
+        }
+        historial.add(id);
+        if (trazaDetalle) {
+            trazas.linea("[TS] addSimbolo '" + nombre + "' en contexto=" + (nivel - 1));
         }
     }
 
     /**
      * Busca y retorna un símbolo por su nombre en todos los contextos visibles.
      * <p>
-     * Realiza una búsqueda desde el contexto más interno hacia el más externo,
-     * implementando la regla de alcance léxico del lenguaje. Retorna el primer
-     * símbolo encontrado, permitiendo el sombreado (shadowing) de identificadores.
+     * Devuelve la declaración del contexto más interno que tenga ese nombre,
+     * implementando la regla de alcance léxico y el sombreado de identificadores.
      * </p>
      *
      * @param nombre el nombre del identificador a buscar
@@ -155,28 +402,51 @@ public final class TablaSimbolos {
      * @see #contieneSimbolo(String)
      */
     public Id getSimbolo(String nombre) {
-        for (int i = ts.size() - 1; i >= 0; i--) {
-            Map<String, Id> contextoActual = ts.get(i);
-            if (contextoActual.containsKey(nombre)) {
-                return contextoActual.get(nombre);
-            }
-        }
-        return null;
+        Entrada e = visible(nombre);
+        return e == null ? null : e.id;
     }
 
     /** Devuelve el símbolo solo si está declarado en el contexto global. */
     public Id getSimboloGlobal(String nombre) {
-        if (ts.isEmpty()) {
-            return null;
+        Entrada e = global(nombres.buscar(nombre));
+        return e == null ? null : e.id;
+    }
+
+    /**
+     * Marca un símbolo como usado. En una vista de cuerpo, la marca sobre un
+     * global queda pendiente hasta {@link #incorporarCuerpos(List)}.
+     */
+    public void marcarUsado(Id id) {
+        if (esGlobalDeBase(id)) {
+            usadosBase.add(id);
+        } else {
+            id.setUsado(true);
         }
-        Map<String, Id> global = ts.get(0);
-        return global.get(nombre);
+    }
+
+    /**
+     * Marca un símbolo como inicializado. En una vista de cuerpo, la marca sobre
+     * un global queda pendiente hasta {@link #incorporarCuerpos(List)}.
+     */
+    public void marcarInicializado(Id id) {
+        if (esGlobalDeBase(id)) {
+            inicializadosBase.add(id);
+        } else {
+            id.setInicializado(true);
+        }
+    }
+
+    private boolean esGlobalDeBase(Id id) {
+        if (base == null) {
+            return false;
+        }
+        int s = nombres.buscar(id.getNombre());
+        return s >= 0 && s < base.globales.length && base.globales[s] != null && base.globales[s].id == id;
     }
 
     /**
      * Verifica si un símbolo existe en alguno de los contextos visibles.
      * <p>
-     * Busca el símbolo desde el contexto más interno hacia el más externo.
      * Útil para validaciones semánticas como la detección de uso de variables
      * no declaradas.
      * </p>
@@ -188,25 +458,16 @@ public final class TablaSimbolos {
      * @see #contieneSimboloLocal(String)
      */
     public Boolean contieneSimbolo(String nombre) {
-        for (int i = ts.size() - 1; i >= 0; i--) {
-            Map<String, Id> contextoActual = ts.get(i);
-            if (contextoActual.containsKey(nombre)) {
-                return true;
-            }
-        }
-        return false;
+        return visible(nombre) != null;
     }   
     
     /**
      * Verifica si un símbolo existe solo en el contexto actual (más interno).
      * <p>
-     * A diferencia de {@link #contieneSimbolo(String)}, esta función solo busca
-     * en el último contexto añadido. Es útil para detectar declaraciones duplicadas
+     * A diferencia de {@link #contieneSimbolo(String)}, esta función solo mira
+     * el último contexto añadido. Es útil para detectar declaraciones duplicadas
      * en el mismo scope.
      * </p>
-     * <p>
-     * <b>Precondición:</b> Debe existir al menos un contexto en la tabla.
-     * </p>
      *
      * @param nombre el nombre del identificador a verificar
      * @return {@code true} si el símbolo existe en el contexto actual,
@@ -214,16 +475,13 @@ public final class TablaSimbolos {
      * @see #contieneSimbolo(String)
      */
     public Boolean contieneSimboloLocal(String nombre) {
-        Map<String, Id> contextoActual = ts.get(ts.size() - 1);
-        if (contextoActual.containsKey(nombre)) {
-            return true;
-        }
-        return false;
+        Entrada e = visible(nombre);
+        return e != null && e.nivel == nivel;
     }  
 
     /** Indica si el contexto actual es el global (raíz). */
     public boolean estaEnContextoGlobal() {
-        return ts.size() == 1;
+        return nivel == 1;
     }
 
     /**
@@ -231,21 +489,129 @@ public final class TablaSimbolos {
      * Útil para registrar funciones sin que se eliminen al cerrar su bloque local.
      */
     public void addSimboloGlobal(String nombre, Id id) {
-        if (ts.isEmpty()) {
+        if (base != null) {
+            throw new IllegalStateException("Una vista de cuerpo no declara globales: " + nombre);
+        }
+        if (nivel == 0 || getSimboloGlobal(nombre) != null) {
             return;
         }
-        Map<String, Id> global = ts.get(0);
-        if (!global.containsKey(nombre)) {
-            if (id.getInicializado() == null) {
-                id.setInicializado(false);
+        inicializarMarcas(id);
+        int s = simbolo(nombre);
+        Entrada visible = indice[s];
+        Entrada nueva = new Entrada(id, 1, null);
+        if (visible == null) {
+            indice[s] = nueva;
+        } else {
+            // Queda debajo de las declaraciones locales que ya lo sombrean
+            Entrada e = visible;
+            while (e.sombreada != null) {
+                e = e.sombreada;
             }
-            if (id.getUsado() == null) {
-                id.setUsado(false);
+            e.sombreada = nueva;
+        }
+        registrarEnContexto(1, s);
+        ponerGlobal(s, nueva);
+        historial.add(id);
+        if (trazaDetalle) {
+            trazas.linea("[TS] addSimboloGlobal '" + nombre + "'");
+        }
+    }
+
+    private static void inicializarMarcas(Id id) {
+        if (id.getInicializado() == null) {
+            id.setInicializado(false);
+        }
+        if (id.getUsado() == null) {
+            id.setUsado(false);
+        }
+        id.fijarInicializacionDeclarada();
+    }
+
+    /**
+     * Firma con los tipos de argumentos indicados, compartida por todas las
+     * funciones de esta tabla que tengan la misma.
+     *
+     * @param argumentos tipos de los argumentos, en orden
+     * @return la firma única para esos tipos
+     */
+    public Firma firma(List<TipoDato> argumentos) {
+        Firma f = firmas.get(argumentos);
+        if (f == null) {
+            f = new Firma(argumentos);
+            firmas.put(f.argumentos, f);
+        }
+        return f;
+    }
+
+    /** Anota el símbolo {@code s} para retirarlo al cerrar el contexto {@code n}. */
+    private void registrarEnContexto(int n, int s) {
+        Declarados contexto = declarados.get(n);
+        if (contexto == null) {
+            contexto = new Declarados();
+            declarados.set(n, contexto);
+        }
+        contexto.agregar(s);
+    }
+
+    /** Declaración visible de {@code nombre}, o {@code null}; no interna nombres nuevos. */
+    private Entrada visible(String nombre) {
+        int s = nombres.buscar(nombre);
+        if (s < 0) {
+            return null;
+        }
+        Entrada e = s < indice.length ? indice[s] : null;
+        // En una vista los globales no están en el índice propio
+        return e != null || base == null ? e : global(s);
+    }
+
+    /** Declaración global del símbolo {@code s}, o {@code null}; en una vista, solo si es anterior a su límite. */
+    private Entrada global(int s) {
+        if (s < 0) {
+            return null;
+        }
+        if (base != null) {
+            Entrada e = s < base.globales.length ? base.globales[s] : null;
+            return e != null && base.ordenGlobal[s] < limiteGlobal ? e : null;
+        }
+        return s < globales.length ? globales[s] : null;
+    }
+
+    private void ponerGlobal(int s, Entrada e) {
+        globales[s] = e;
+        ordenGlobal[s] = cantidadGlobales++;
+    }
+
+    /**
+     * @return símbolo del token de un identificador, sin búsqueda si lo creó la
+     *         {@link TablaNombres}, o {@code -1} si su texto no está internado
+     */
+    int simbolo(Token token) {
+        return token instanceof TablaNombres.Internado ? ((TablaNombres.Internado) token).simbolo
+                : nombres.buscar(token.getText());
+    }
+
+    /** Símbolo de {@code nombre}, internándolo y agrandando los índices si hace falta. */
+    private int simbolo(String nombre) {
+        if (base != null) {
+            // Una vista comparte la tabla de nombres con otros hilos: solo la consulta
+            int s = nombres.buscar(nombre);
+            if (s < 0) {
+                throw new IllegalStateException("Nombre no internado en una vista de cuerpo: " + nombre);
             }
-            global.put(nombre, id);
-            historial.add(id);
-            System.out.println("[TS] addSimboloGlobal '" + nombre + "'");
+            if (s >= indice.length) {
+                indice = Arrays.copyOf(indice, Math.max(nombres.cantidad(), indice.length * 2));
+            }
+            return s;
+        }
+        int s = nombres.id(nombre);
+        if (s >= indice.length) {
+            // Con el lexer a la par del parser los nombres llegan de a uno: crece al doble
+            int capacidad = Math.max(Math.max(s + 1, nombres.cantidad()), indice.length * 2);
+            indice = Arrays.copyOf(indice, capacidad);
+            globales = Arrays.copyOf(globales, capacidad);
+            ordenGlobal = Arrays.copyOf(ordenGlobal, capacidad);
         }
+        return s;
     }
 
     /**
@@ -292,17 +658,20 @@ public final class TablaSimbolos {
      * Incluye nombre, tipo, categoría, posición y ámbito.
      */
     public void imprimirTablaSimbolos() {
-        System.out.println("\n--- Tabla de simbolos ---");
-        System.out.printf("%-15s %-8s %-12s %-6s %-8s %-10s %s%n", "Nombre", "Tipo", "Categoria", "Linea", "Columna", "Ambito", "Detalles");
+        if (!trazaTabla) {
+            return;
+        }
+        trazas.linea("\n--- Tabla de simbolos ---");
+        trazas.linea(String.format("%-15s %-8s %-12s %-6s %-8s %-10s %s", "Nombre", "Tipo", "Categoria", "Linea", "Columna", "Ambito", "Detalles"));
         for (Id id : historial) {
-            String tipo = id.getTipoDato() != null ? id.getTipoDato().name().toLowerCase() : "-";
-            String categoria = id.getCategoria() != null ? id.getCategoria() : (id instanceof Funcion ? "funcion" : "variable");
-            String ambito = id.getAmbito() != null ? id.getAmbito() : "global";
+            String tipo = id.getTipoDato() != null ? id.getTipoDato().lexema() : "-";
+            String categoria = id.getCategoria() != null ? id.getCategoria().texto : (id instanceof Funcion ? "funcion" : "variable");
+            String ambito = id.getAmbito() != null ? id.getAmbito().texto : "global";
             String detalles = id.getDetalles() != null ? id.getDetalles() : "";
-            System.out.printf("%-15s %-8s %-12s %-6d %-8d %-10s %s%n",
-                    id.getNombre(), tipo, categoria, id.getLinea(), id.getColumna(), ambito, detalles);
+            trazas.linea(String.format("%-15s %-8s %-12s %-6d %-8d %-10s %s",
+                    id.getNombre(), tipo, categoria, id.getLinea(), id.getColumna(), ambito, detalles));
         }
-        System.out.println("--- Fin tabla de simbolos ---\n");
+        trazas.linea("--- Fin tabla de simbolos ---\n");
     }
 }
 
@@ -315,6 +684,11 @@ public final class TablaSimbolos {
  * y estado de uso.
  * </p>
  * <p>
+ * Un programa puede declarar millones de locales, así que cada símbolo ocupa lo
+ * mínimo: las marcas van en bits de un byte, categoría y ámbito son ordinales de
+ * enumeración y los detalles impresos se arman al pedirlos.
+ * </p>
+ * <p>
  * Esta clase implementa el patrón <b>Template Method</b> al definir la estructura
  * común de todos los identificadores, permitiendo que las subclases extiendan
  * o especialicen el comportamiento según el tipo de identificador.
@@ -327,6 +701,44 @@ public final class TablaSimbolos {
  * @see Funcion
  */
 abstract class Id {
+    /** Categoría del símbolo, tal como se imprime en la tabla. */
+    enum Categoria {
+        VARIABLE("variable"),
+        PARAMETRO("parametro"),
+        FUNCION("funcion"),
+        PROTOTIPO("prototipo");
+
+        final String texto;
+
+        Categoria(String texto) {
+            this.texto = texto;
+        }
+    }
+
+    /** Ámbito donde se declaró el símbolo, tal como se imprime en la tabla. */
+    enum Ambito {
+        GLOBAL("global"),
+        LOCAL("local"),
+        PARAMETROS("parametros");
+
+        final String texto;
+
+        Ambito(String texto) {
+            this.texto = texto;
+        }
+    }
+
+    private static final Categoria[] CATEGORIAS = Categoria.values();
+    private static final Ambito[] AMBITOS = Ambito.values();
+
+    /** Bits de {@link #banderas}; las marcas sin su bit "conocido" valen {@code null}. */
+    private static final int INICIALIZADO_CONOCIDO = 1;
+    private static final int INICIALIZADO = 1 << 1;
+    private static final int USADO_CONOCIDO = 1 << 2;
+    private static final int USADO = 1 << 3;
+    /** Valor de {@link #INICIALIZADO} al agregarse a la tabla, para los detalles impresos. */
+    private static final int INICIALIZADO_AL_DECLARAR = 1 << 4;
+
     /**
      * Nombre del identificador tal como aparece en el código fuente.
      */
@@ -336,31 +748,22 @@ abstract class Id {
      * Tipo de dato del identificador (ej: "int", "double", "void").
      */
     private TipoDato tipoDato;
-    
-    /**
-     * Indica si el identificador ha sido inicializado con un valor.
-     * Permite detectar uso de variables no inicializadas.
-     */
-    private Boolean inicializado;
-    
-    /**
-     * Indica si el identificador ha sido utilizado en alguna expresión.
-     * Permite detectar variables o funciones declaradas pero nunca usadas.
-     */
-    private Boolean usado;
 
     /** Línea y columna donde se declaró el símbolo. */
     private int linea = -1;
     private int columna = -1;
 
-    /** Categoría del símbolo (variable, funcion, parametro, prototipo, etc.). */
-    private String categoria;
+    /**
+     * Marcas de inicialización y uso empaquetadas en bits: permiten detectar
+     * variables usadas sin inicializar y símbolos declarados pero nunca usados.
+     */
+    private byte banderas;
 
-    /** Ámbito textual (global, local, parametros, etc.). */
-    private String ambito;
+    /** Ordinal de {@link Categoria} más uno; {@code 0} si no se asignó. */
+    private byte categoria;
 
-    /** Detalles adicionales como firma de función o banderas de estado. */
-    private String detalles;
+    /** Ordinal de {@link Ambito} más uno; {@code 0} si no se asignó. */
+    private byte ambito;
 
     /**
      * Obtiene el nombre del identificador.
@@ -406,10 +809,11 @@ abstract class Id {
      * en su declaración o mediante una asignación posterior.
      * </p>
      *
-     * @return {@code true} si está inicializado, {@code false} en caso contrario
+     * @return {@code true} si está inicializado, {@code false} en caso contrario,
+     *         {@code null} si todavía no se estableció
      */
     public Boolean getInicializado() {
-        return inicializado;
+        return marca(INICIALIZADO_CONOCIDO, INICIALIZADO);
     }
 
     /**
@@ -423,7 +827,7 @@ abstract class Id {
      *                     {@code false} en caso contrario
      */
     public void setInicializado(Boolean inicializado) {
-        this.inicializado = inicializado;
+        marcar(INICIALIZADO_CONOCIDO, INICIALIZADO, inicializado);
     }
 
     /**
@@ -433,10 +837,11 @@ abstract class Id {
      * pero nunca utilizadas en el código.
      * </p>
      *
-     * @return {@code true} si ha sido usado, {@code false} en caso contrario
+     * @return {@code true} si ha sido usado, {@code false} en caso contrario,
+     *         {@code null} si todavía no se estableció
      */
     public Boolean getUsado() {
-        return usado;
+        return marca(USADO_CONOCIDO, USADO);
     }
 
     /**
@@ -449,7 +854,36 @@ abstract class Id {
      * @param usado {@code true} para marcar como usado, {@code false} en caso contrario
      */
     public void setUsado(Boolean usado) {
-        this.usado = usado;
+        marcar(USADO_CONOCIDO, USADO, usado);
+    }
+
+    /** Recuerda si el símbolo estaba inicializado al agregarse a la tabla. */
+    void fijarInicializacionDeclarada() {
+        if ((banderas & INICIALIZADO) != 0) {
+            banderas |= INICIALIZADO_AL_DECLARAR;
+        } else {
+            banderas &= ~INICIALIZADO_AL_DECLARAR;
+        }
+    }
+
+    /** @return si el símbolo estaba inicializado al agregarse a la tabla */
+    boolean inicializadoAlDeclarar() {
+        return (banderas & INICIALIZADO_AL_DECLARAR) != 0;
+    }
+
+    private Boolean marca(int conocido, int valor) {
+        if ((banderas & conocido) == 0) {
+            return null;
+        }
+        return (banderas & valor) != 0;
+    }
+
+    private void marcar(int conocido, int valor, Boolean v) {
+        int b = banderas & ~(conocido | valor);
+        if (v != null) {
+            b |= conocido | (v ? valor : 0);
+        }
+        banderas = (byte) b;
     }
 
     public int getLinea() {
@@ -468,35 +902,37 @@ abstract class Id {
         this.columna = columna;
     }
 
-    public String getCategoria() {
-        return categoria;
+    /** @return categoría del símbolo, o {@code null} si no se asignó */
+    public Categoria getCategoria() {
+        return categoria == 0 ? null : CATEGORIAS[categoria - 1];
     }
 
-    public void setCategoria(String categoria) {
-        this.categoria = categoria;
+    public void setCategoria(Categoria categoria) {
+        this.categoria = (byte) (categoria == null ? 0 : categoria.ordinal() + 1);
     }
 
-    public String getAmbito() {
-        return ambito;
+    /** @return ámbito del símbolo, o {@code null} si no se asignó */
+    public Ambito getAmbito() {
+        return ambito == 0 ? null : AMBITOS[ambito - 1];
     }
 
-    public void setAmbito(String ambito) {
-        this.ambito = ambito;
+    public void setAmbito(Ambito ambito) {
+        this.ambito = (byte) (ambito == null ? 0 : ambito.ordinal() + 1);
     }
 
-    public String getDetalles() {
-        return detalles;
-    }
-
-    public void setDetalles(String detalles) {
-        this.detalles = detalles;
-    }
+    /**
+     * Detalles impresos en la tabla (firma de función o estado al declararse).
+     * Se arman al pedirlos a partir de los demás campos; no se guardan por símbolo.
+     *
+     * @return los detalles, o {@code null} si el símbolo no tiene categoría
+     */
+    public abstract String getDetalles();
 }
 
 /**
  * Representa una variable en la tabla de símbolos.
  * <p>
- * Extiende {@link Id} sin añadir funcionalidad adicional. Sirve para distinguir
+ * Extiende {@link Id} sin añadir campos. Sirve para distinguir
  * semánticamente las variables de otros tipos de identificadores como funciones.
  * </p>
  * <p>
@@ -509,14 +945,25 @@ abstract class Id {
  * @since 1.0
  * @see Id
  */
-class Variable extends Id {}
+class Variable extends Id {
+    @Override
+    public String getDetalles() {
+        Categoria c = getCategoria();
+        if (c == null) {
+            return null;
+        }
+        if (c == Categoria.PARAMETRO) {
+            return "parametro de funcion";
+        }
+        return inicializadoAlDeclarar() ? "inicializado=true" : "inicializado=false";
+    }
+}
 
 /**
  * Representa una función en la tabla de símbolos.
  * <p>
- * Extiende {@link Id} añadiendo información específica de funciones como la
- * lista de tipos de sus argumentos. Permite validar llamadas a funciones
- * verificando el número y tipo de argumentos.
+ * Extiende {@link Id} añadiendo la {@link Firma} con los tipos de sus argumentos.
+ * Permite validar llamadas a funciones verificando el número y tipo de argumentos.
  * </p>
  *
  * @author Compiladores 2024
@@ -527,30 +974,64 @@ class Variable extends Id {}
  */
 class Funcion extends Id {
     /**
-     * Lista de tipos de datos de los argumentos de la función.
-     * <p>
-     * Mantiene el orden de los parámetros para validar la correspondencia
-     * con los argumentos en las llamadas a la función.
-     * </p>
+     * Tipos de los argumentos de la función, compartidos con las demás funciones
+     * de igual firma ({@link TablaSimbolos#firma(List)}).
      */
-    private List<TipoDato> argumentos;
+    private Firma firma;
 
     /**
      * Obtiene la lista de tipos de datos de los argumentos de la función.
      *
-     * @return la lista de {@link TipoDato} de los argumentos, o {@code null} si no está definida
+     * @return la lista inmodificable de {@link TipoDato} de los argumentos, o
+     *         {@code null} si no está definida
      */
     public List<TipoDato> getArgumentos() {
-        return argumentos;
+        return firma == null ? null : firma.argumentos;
+    }
+
+    /** @return la firma de la función, o {@code null} si no está definida */
+    public Firma getFirma() {
+        return firma;
     }
 
     /**
-     * Establece la lista de tipos de datos de los argumentos de la función.
+     * Establece la firma de la función.
      *
-     * @param argumentos la lista de {@link TipoDato} que representa los tipos de los parámetros
+     * @param firma firma obtenida de {@link TablaSimbolos#firma(List)}
      */
-    public void setArgumentos(List<TipoDato> argumentos) {
-        this.argumentos = argumentos;
+    public void setFirma(Firma firma) {
+        this.firma = firma;
+    }
+
+    @Override
+    public String getDetalles() {
+        Categoria c = getCategoria();
+        if (c == null) {
+            return null;
+        }
+        String retorno = getTipoDato() != null ? getTipoDato().lexema() : "-";
+        return "retorno=" + retorno + " args=" + (firma != null ? firma.texto : "()")
+                + (c == Categoria.PROTOTIPO ? " prototipo" : " definicion");
+    }
+}
+
+/**
+ * Tipos de los argumentos de una función, en orden. Cada firma distinta existe una
+ * sola vez por tabla de símbolos y la comparten todas las funciones que la tienen.
+ */
+final class Firma {
+    /** Tipos de los argumentos; inmodificable. */
+    final List<TipoDato> argumentos;
+    /** Firma impresa en los detalles de la tabla, por ejemplo {@code (int, double)}. */
+    final String texto;
+
+    Firma(List<TipoDato> argumentos) {
+        this.argumentos = Collections.unmodifiableList(new ArrayList<>(argumentos));
+        StringJoiner partes = new StringJoiner(", ", "(", ")");
+        for (TipoDato t : argumentos) {
+            partes.add(t != null ? t.lexema() : "-");
+        }
+        this.texto = partes.toString();
     }
 }
 
@@ -570,17 +1051,40 @@ enum TipoDato {
     /**
      * Tipo void, utilizado para funciones que no retornan valor.
      */
-    VOID,
+    VOID("void"),
     
     /**
      * Tipo entero de 32 bits con signo.
      */
-    INT,
+    INT("int"),
     
     /**
      * Tipo punto flotante de doble precisión (64 bits).
      */
-    DOUBLE,
-    CHAR,
-    BOOL
-}
\ No newline at end of file
+    DOUBLE("double"),
+    CHAR("char"),
+    BOOL("bool");
+
+    private static final TipoDato[] TIPOS = values();
+
+    private final String lexema;
+
+    TipoDato(String lexema) {
+        this.lexema = lexema;
+    }
+
+    /** @return el tipo como se escribe en el código fuente */
+    String lexema() {
+        return lexema;
+    }
+
+    /** @return código de un byte del tipo para arreglos primitivos: {@code 0} es {@code null} */
+    static byte codigo(TipoDato tipo) {
+        return tipo == null ? 0 : (byte) (tipo.ordinal() + 1);
+    }
+
+    /** @return tipo de un código obtenido con {@link #codigo(TipoDato)} */
+    static TipoDato deCodigo(byte codigo) {
+        return codigo == 0 ? null : TIPOS[codigo - 1];
+    }
+}
@@ -0,0 +1,100 @@
+package compiladores;
+
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.tree.ErrorNode;
+import org.antlr.v4.runtime.tree.ParseTreeListener;
+import org.antlr.v4.runtime.tree.TerminalNode;
+import java.util.Arrays;
+
+/**
+ * Tipos inferidos por {@link Escucha} para expresiones, factores y llamadas,
+ * indexados por el número de cada nodo ({@link ContextoNumerado}); cada tipo
+ * ocupa un byte ({@link TipoDato#codigo(TipoDato)}). Un nodo cuyo tipo no se
+ * pudo calcular por un error ya informado se marca como {@link #erroneo(ContextoNumerado) erróneo}:
+ * su tipo es {@code null} y las validaciones que lo usan no vuelven a informar.
+ * <p>
+ * Conectado al parser como listener, numera cada contexto al crearlo. Un nodo
+ * que llega sin número lo recibe al guardarse su tipo. Si todos los nodos ya están
+ * numerados, varios hilos pueden guardar tipos a la vez siempre que cada uno
+ * escriba nodos distintos: ningún hilo agranda el arreglo.
+ * </p>
+ */
+final class TiposPorNodo implements ParseTreeListener {
+
+    /** Código de un nodo erróneo; no es el código de ningún {@link TipoDato}. */
+    static final byte ERRONEO = -1;
+
+    private byte[] tipos = new byte[1024];
+    /** Nodos numerados desde el último {@link #liberar()}. */
+    private int cantidad;
+
+    /** @return tipo guardado para el nodo, o {@code null} si no tiene o no hay nodo */
+    TipoDato tipo(ContextoNumerado nodo) {
+        if (nodo == null) {
+            return null;
+        }
+        int n = nodo.numero;
+        return n >= 0 && n < cantidad && tipos[n] != ERRONEO ? TipoDato.deCodigo(tipos[n]) : null;
+    }
+
+    /** @return si el nodo quedó sin tipo por un error ya informado */
+    boolean erroneo(ContextoNumerado nodo) {
+        if (nodo == null) {
+            return false;
+        }
+        int n = nodo.numero;
+        return n >= 0 && n < cantidad && tipos[n] == ERRONEO;
+    }
+
+    void poner(ContextoNumerado nodo, TipoDato tipo) {
+        guardar(nodo, TipoDato.codigo(tipo));
+    }
+
+    /** Marca el nodo como erróneo: sin tipo y sin más errores que informar sobre él. */
+    void ponerErroneo(ContextoNumerado nodo) {
+        guardar(nodo, ERRONEO);
+    }
+
+    private void guardar(ContextoNumerado nodo, byte codigo) {
+        if (nodo.numero < 0 || nodo.numero >= cantidad) {
+            numerar(nodo);
+        }
+        tipos[nodo.numero] = codigo;
+    }
+
+    /**
+     * Olvida los tipos guardados y vuelve a numerar desde cero; los nodos ya
+     * numerados no deben volver a consultarse.
+     */
+    void liberar() {
+        cantidad = 0;
+    }
+
+    /** Da al nodo el siguiente número libre, sin tipo todavía. */
+    private void numerar(ContextoNumerado nodo) {
+        if (cantidad == tipos.length) {
+            tipos = Arrays.copyOf(tipos, cantidad * 2);
+        }
+        tipos[cantidad] = 0;
+        nodo.numero = cantidad++;
+    }
+
+    @Override
+    public void enterEveryRule(ParserRuleContext ctx) {
+        if (ctx instanceof ContextoNumerado) {
+            numerar((ContextoNumerado) ctx);
+        }
+    }
+
+    @Override
+    public void exitEveryRule(ParserRuleContext ctx) {
+    }
+
+    @Override
+    public void visitTerminal(TerminalNode node) {
+    }
+
+    @Override
+    public void visitErrorNode(ErrorNode node) {
+    }
+}
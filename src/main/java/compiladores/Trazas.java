@@ -0,0 +1,307 @@
+package compiladores;
+
+import java.io.Closeable;
+import java.io.InterruptedIOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Trazas de depuración del compilador, por categoría y nivel ({@code --trace}).
+ * <p>
+ * Cada componente pregunta una sola vez, al construirse, si su categoría está
+ * activa ({@link #activa(Categoria, Nivel)}) y guarda la respuesta en un campo;
+ * con la categoría apagada una traza cuesta una comparación y no se arma ningún
+ * texto. Las líneas activas se juntan en bloques que un hilo propio escribe en la
+ * salida, así que la compilación no espera a la consola. Quien escriba en la misma
+ * salida por fuera de las trazas debe llamar antes a {@link #vaciar()} para
+ * conservar el orden.
+ * </p>
+ * <p>
+ * La lista de categorías es la de {@code --trace=}: claves separadas por comas,
+ * cada una con un nivel opcional ({@code ts:info}); sin nivel se toma
+ * {@link Nivel#DETALLE}. La lista vacía apaga todas las trazas.
+ * </p>
+ */
+public final class Trazas implements Closeable {
+
+    /** Origen de una traza. */
+    public enum Categoria {
+        /** Contextos y símbolos de {@link TablaSimbolos}, y la tabla impresa al final. */
+        TABLA("ts"),
+        /** Eventos del listener semántico {@link Escucha}. */
+        PARSER("parser"),
+        /** Funciones traducidas por {@link GeneradorCodigoIntermedio}. */
+        CI("ir"),
+        /** Resultado de cada llamada a {@link Optimizador#optimizar(CodigoIntermedio)}. */
+        OPTIMIZADOR("opt"),
+        /** Progreso de {@link GeneradorAssembler}. */
+        BACKEND("asm");
+
+        private final String clave;
+
+        Categoria(String clave) {
+            this.clave = clave;
+        }
+    }
+
+    /** Detalle de una traza; un nivel activo incluye a los anteriores. */
+    public enum Nivel {
+        /** Resúmenes: una línea o tabla por fase. */
+        INFO("info"),
+        /** Un evento por símbolo, contexto o función. */
+        DETALLE("detalle");
+
+        private final String clave;
+
+        Nivel(String clave) {
+            this.clave = clave;
+        }
+    }
+
+    /** Categorías activas cuando no se indica {@code --trace}: la salida histórica. */
+    public static final String POR_DEFECTO = "ts,parser,asm";
+
+    /** Caracteres acumulados antes de entregar un bloque al hilo escritor. */
+    private static final int TAMANIO_BLOQUE = 16 * 1024;
+    /** Bloques entregados y todavía no escritos; si se llena, la compilación espera. */
+    private static final int BLOQUES_EN_VUELO = 32;
+    private static final String FIN_LINEA = System.lineSeparator();
+
+    /** Nivel máximo activo por categoría ({@code -1}: apagada). */
+    private final int[] umbrales;
+    private final PrintStream destino;
+    private final boolean asincronica;
+    /** Si las líneas se guardan hasta {@link #tomar()} en lugar de escribirse. */
+    private final boolean captura;
+    private final StringBuilder pendiente = new StringBuilder();
+    private final Semaphore lugares = new Semaphore(BLOQUES_EN_VUELO);
+    private ExecutorService escritor;
+    /** Estadísticas que cuentan el trabajo del hilo escritor, o {@code null}. */
+    private Estadisticas estadisticas;
+
+    private Trazas(int[] umbrales, PrintStream destino, boolean asincronica) {
+        this(umbrales, destino, asincronica, false);
+    }
+
+    private Trazas(int[] umbrales, PrintStream destino, boolean asincronica, boolean captura) {
+        this.umbrales = umbrales;
+        this.destino = destino;
+        this.asincronica = asincronica;
+        this.captura = captura;
+    }
+
+    /**
+     * Trazas de las categorías indicadas, escritas en {@code destino} por un hilo propio.
+     *
+     * @param destino salida de las trazas
+     * @param categorias lista con el formato de {@code --trace=}
+     * @throws IllegalArgumentException si la lista tiene una categoría o nivel desconocido
+     */
+    public Trazas(PrintStream destino, String categorias) {
+        this(parsear(categorias), destino, true);
+    }
+
+    /** Trazas apagadas: todas las consultas responden {@code false}. */
+    public static Trazas ninguna() {
+        return new Trazas(apagadas(), null, false);
+    }
+
+    /**
+     * Trazas {@link #POR_DEFECTO} escritas directamente, sin hilo; para los
+     * componentes que se usan sueltos (instancias únicas, constructores sin argumentos).
+     */
+    public static Trazas directas(PrintStream destino) {
+        return new Trazas(parsear(POR_DEFECTO), destino, false);
+    }
+
+    /** Trazas con las mismas categorías que estas, escritas en otra salida. */
+    public Trazas conDestino(PrintStream otro) {
+        Trazas otras = new Trazas(umbrales, otro, asincronica);
+        otras.estadisticas = estadisticas;
+        return otras;
+    }
+
+    /**
+     * Suma a {@code estadisticas} la CPU y las asignaciones del hilo escritor
+     * ({@code --stats}).
+     *
+     * @param estadisticas medición de la compilación, o {@code null}
+     */
+    public void setEstadisticas(Estadisticas estadisticas) {
+        this.estadisticas = estadisticas;
+    }
+
+    /**
+     * Trazas con las mismas categorías que estas que no escriben nada: guardan el
+     * texto hasta {@link #tomar()}. Sirven para analizar una parte en otro hilo y
+     * después entregar su texto en orden.
+     */
+    public Trazas enMemoria() {
+        return new Trazas(umbrales, null, false, true);
+    }
+
+    /** @return texto guardado por unas trazas {@link #enMemoria()}, que quedan vacías */
+    public String tomar() {
+        String texto = pendiente.toString();
+        pendiente.setLength(0);
+        return texto;
+    }
+
+    /**
+     * Verifica una lista de categorías sin crear trazas.
+     *
+     * @throws IllegalArgumentException si la lista tiene una categoría o nivel desconocido
+     */
+    public static void validar(String categorias) {
+        parsear(categorias);
+    }
+
+    /** @return si las trazas de {@code categoria} con nivel {@code nivel} se escriben */
+    public boolean activa(Categoria categoria, Nivel nivel) {
+        return nivel.ordinal() <= umbrales[categoria.ordinal()];
+    }
+
+    /** @return si alguna categoría está activa */
+    public boolean algunaActiva() {
+        for (int u : umbrales) {
+            if (u >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Agrega una línea; el llamador ya verificó que su categoría esté activa. */
+    public void linea(String texto) {
+        pendiente.append(texto).append(FIN_LINEA);
+        if (!asincronica || pendiente.length() >= TAMANIO_BLOQUE) {
+            despachar();
+        }
+    }
+
+    /** Agrega texto sin fin de línea (por ejemplo, el árbol impreso por partes). */
+    public void texto(String texto) {
+        pendiente.append(texto);
+        if (!asincronica || pendiente.length() >= TAMANIO_BLOQUE) {
+            despachar();
+        }
+    }
+
+    /**
+     * Escribe todo lo pendiente y espera a que llegue a la salida.
+     *
+     * @throws UncheckedIOException si se interrumpe la espera
+     */
+    public void vaciar() {
+        despachar();
+        if (escritor == null) {
+            if (destino != null) {
+                destino.flush();
+            }
+            return;
+        }
+        try {
+            escritor.submit(destino::flush).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new UncheckedIOException(new InterruptedIOException("Escritura de trazas interrumpida"));
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /** Vacía las trazas y termina el hilo escritor. */
+    @Override
+    public void close() {
+        vaciar();
+        if (escritor != null) {
+            escritor.shutdown();
+            escritor = null;
+        }
+    }
+
+    private void despachar() {
+        if (captura || pendiente.length() == 0) {
+            return;
+        }
+        String bloque = pendiente.toString();
+        pendiente.setLength(0);
+        if (destino == null) {
+            return;
+        }
+        if (!asincronica) {
+            destino.print(bloque);
+            return;
+        }
+        if (escritor == null) {
+            escritor = Executors.newSingleThreadExecutor(r -> {
+                Thread hilo = new Thread(r, "trazas");
+                hilo.setDaemon(true);
+                return hilo;
+            });
+        }
+        lugares.acquireUninterruptibly();
+        Estadisticas medicion = estadisticas;
+        escritor.execute(() -> {
+            try {
+                if (medicion != null) {
+                    medicion.medirAuxiliar(() -> destino.print(bloque));
+                } else {
+                    destino.print(bloque);
+                }
+            } finally {
+                lugares.release();
+            }
+        });
+    }
+
+    private static int[] apagadas() {
+        int[] umbrales = new int[Categoria.values().length];
+        Arrays.fill(umbrales, -1);
+        return umbrales;
+    }
+
+    private static int[] parsear(String lista) {
+        int[] umbrales = apagadas();
+        for (String parte : lista.split(",")) {
+            String p = parte.trim();
+            if (p.isEmpty()) {
+                continue;
+            }
+            String clave = p;
+            Nivel nivel = Nivel.DETALLE;
+            int dosPuntos = p.indexOf(':');
+            if (dosPuntos >= 0) {
+                clave = p.substring(0, dosPuntos);
+                nivel = buscarNivel(p.substring(dosPuntos + 1));
+            }
+            umbrales[buscarCategoria(clave).ordinal()] = nivel.ordinal();
+        }
+        return umbrales;
+    }
+
+    private static Categoria buscarCategoria(String clave) {
+        for (Categoria c : Categoria.values()) {
+            if (c.clave.equals(clave)) {
+                return c;
+            }
+        }
+        throw new IllegalArgumentException("Categoría desconocida en --trace: " + clave
+                + " (válidas: ts, parser, ir, opt, asm)");
+    }
+
+    private static Nivel buscarNivel(String clave) {
+        for (Nivel n : Nivel.values()) {
+            if (n.clave.equals(clave)) {
+                return n;
+            }
+        }
+        throw new IllegalArgumentException("Nivel desconocido en --trace: " + clave
+                + " (válidos: info, detalle)");
+    }
+}
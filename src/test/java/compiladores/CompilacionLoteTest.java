@@ -0,0 +1,48 @@
+package compiladores;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/** Un archivo con errores o con una falla interna no detiene al resto del lote. */
+public class CompilacionLoteTest {
+
+    @Rule
+    public TemporaryFolder temporal = new TemporaryFolder();
+
+    @Test
+    public void fallaDeEntradaSalidaQuedaEnSuArchivo() throws Exception {
+        Path fuentes = temporal.newFolder("fuentes").toPath();
+        Programas.escribir(fuentes, "a_sin_salida", "int main() { return 1; }\n");
+        Programas.escribir(fuentes, "b_valido", "int main() { return 3; }\n");
+        Path salida = temporal.newFolder("salida").toPath();
+        // Un archivo ocupa el lugar del directorio de salida de a_sin_salida
+        Files.createFile(salida.resolve("a_sin_salida"));
+
+        Programas.Lote lote = Programas.compilarLote(salida, fuentes.toString());
+        assertEquals(lote.consola, 1, lote.conErrores);
+        assertTrue(lote.consola, lote.consola.contains("Error interno compilando"));
+        assertTrue(Files.exists(salida.resolve("b_valido").resolve("programa.asm")));
+        assertTrue(lote.consola, lote.consola.contains("Compilados 2 archivos, 1 con errores"));
+    }
+
+    @Test
+    public void argumentoErroneoNoDetieneElLote() throws Exception {
+        Path fuentes = temporal.newFolder("fuentes").toPath();
+        Programas.escribir(fuentes, "a_erroneo", LlamadasTest.ARGUMENTO_ERRONEO);
+        Programas.escribir(fuentes, "b_valido", "int main() { return 3; }\n");
+        Path salida = temporal.newFolder("salida").toPath();
+
+        Programas.Lote lote = Programas.compilarLote(salida, fuentes.toString());
+        assertEquals(lote.consola, 1, lote.conErrores);
+        assertTrue(Files.exists(salida.resolve("a_erroneo").resolve(Compilador.ARCHIVO_ASM)));
+        assertTrue(Files.exists(salida.resolve("b_valido").resolve(Compilador.ARCHIVO_ASM)));
+        assertTrue(lote.consola, lote.consola.contains("Compilados 2 archivos, 1 con errores"));
+    }
+}
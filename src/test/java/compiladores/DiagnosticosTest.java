@@ -0,0 +1,50 @@
+package compiladores;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/** Los errores repetidos por una misma causa se informan una vez; los demás, todos. */
+public class DiagnosticosTest {
+
+    @Rule
+    public TemporaryFolder temporal = new TemporaryFolder();
+
+    /** La falta de una declaración se informa una vez por función; cada uso sin inicializar, siempre. */
+    @Test
+    public void noDeclaradoUnaVezYNoInicializadoEnCadaUso() throws Exception {
+        String fuente = "int f(int a, int b);\n"
+                + "int main() {\n"
+                + "  int a;\n"
+                + "  x = 1;\n"
+                + "  x = 2;\n"
+                + "  int r = f(a, 1);\n"
+                + "  int s = f(a, 2);\n"
+                + "  return r + s;\n"
+                + "}\n"
+                + "int g() {\n"
+                + "  x = 3;\n"
+                + "  return 0;\n"
+                + "}\n"
+                + "int f(int a, int b) { return a + b; }\n";
+        for (boolean porPartes : new boolean[] { false, true }) {
+            String consola = Programas.compilar(temporal.newFolder().toPath(), fuente, porPartes).consola;
+            assertEquals(consola, 2, ocurrencias(consola, "identificador no declarado"));
+            assertEquals(consola, 2, ocurrencias(consola, "identificador no inicializado"));
+        }
+    }
+
+    private static int ocurrencias(String texto, String buscado) {
+        Matcher m = Pattern.compile(Pattern.quote(buscado)).matcher(texto);
+        int cantidad = 0;
+        while (m.find()) {
+            cantidad++;
+        }
+        return cantidad;
+    }
+}
@@ -0,0 +1,203 @@
+package compiladores;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Compila programas, los ensambla con NASM, los enlaza y compara el código de
+ * salida (el valor de retorno de {@code main}) con el esperado, en la
+ * compilación completa y en la compilación por partes. Las pruebas que
+ * ejecutan se omiten si no están {@code nasm} y {@code ld}; las que revisan el
+ * código intermedio corren siempre.
+ */
+public class EjecucionTest {
+
+    private static final String OCULTA_EN_IF =
+            "int main() { int x = 1; if (x > 0) { int x = 2; x = x + 1; } return x; }\n";
+
+    private static final String OCULTAMIENTOS = "int x = 7;\n"
+            + "int f(int y) {\n"
+            + "  int x = 1;\n"
+            + "  if (x > 0) { int x = 2; x = x + 1; y = y + x; }\n"
+            + "  { int y = 100; x = x + y; }\n"
+            + "  for (int i = 0; i < 2; i++) { int x = 50; y = y + x; }\n"
+            + "  return x + y;\n"
+            + "}\n"
+            + "int main() {\n"
+            + "  int r = f(4);\n"
+            + "  { int x = x + 1; r = r + x; }\n"
+            + "  return r + x;\n"
+            + "}\n";
+
+    private static final String ARITMETICA_TIPADA = "int main() {\n"
+            + "    double d = 3;\n"
+            + "    double h = d / 2;\n"
+            + "    int big = 2147483647;\n"
+            + "    int w = big + 1;\n"
+            + "    int q = -7 / 2;\n"
+            + "    int m = -7 % 3;\n"
+            + "    char c = 300;\n"
+            + "    int k = c + 1;\n"
+            + "    int r = h * 10;\n"
+            + "    if (w < 0) { r = r + 100; }\n"
+            + "    r = r + q + m;\n"
+            + "    if (k == 45) { r = r + 50; }\n"
+            + "    double e = 7 / 2;\n"
+            + "    int s = e * 2;\n"
+            + "    return r + s;\n"
+            + "}\n";
+
+    private static final String GLOBALES_ENTRE_FUNCIONES = "int a = 5;\n"
+            + "int f(int x) { a = a + x; return a; }\n"
+            + "int b = a + 2;\n"
+            + "int g() { return b * 2; }\n"
+            + "int c = f(3) + b;\n"
+            + "int main() { return c + g() + a; }\n";
+
+    private static boolean herramientas;
+
+    @Rule
+    public TemporaryFolder temporal = new TemporaryFolder();
+
+    @BeforeClass
+    public static void buscarHerramientas() {
+        herramientas = disponible("nasm", "-v") && disponible("ld", "-v");
+    }
+
+    @Test
+    public void localQueOcultaNoPisaLaExterna() throws Exception {
+        verificar(1, OCULTA_EN_IF);
+    }
+
+    @Test
+    public void ocultamientoEnBloquesParametrosYGlobales() throws Exception {
+        verificar(223, OCULTAMIENTOS);
+    }
+
+    @Test
+    public void aritmeticaTipada() throws Exception {
+        verificar(167, ARITMETICA_TIPADA);
+    }
+
+    @Test
+    public void inicializacionGlobalEntreFunciones() throws Exception {
+        verificar(37, GLOBALES_ENTRE_FUNCIONES);
+    }
+
+    /**
+     * En la compilación completa la inicialización global es una sola unidad, en
+     * orden y antes de las funciones (por partes se optimiza a medida que llega).
+     */
+    @Test
+    public void inicializacionGlobalAntesDeLasFunciones() throws Exception {
+        String optimizado = Programas.compilar(temporal.newFolder().toPath(), GLOBALES_ENTRE_FUNCIONES, false)
+                .artefacto(Compilador.ARCHIVO_OPTIMIZADO);
+        assertTrue(optimizado, optimizado.startsWith("decl int a\na = 5\ndecl int b\nb = 7\ndecl int c\n"));
+        assertTrue(optimizado, optimizado.indexOf("c = t") < optimizado.indexOf("func int f\n"));
+    }
+
+    /** La local del bloque tiene su propio nombre y la asignación a la externa no es código muerto. */
+    @Test
+    public void localQueOcultaTieneNombrePropio() throws Exception {
+        for (boolean porPartes : new boolean[] { false, true }) {
+            Programas.Resultado r = Programas.compilar(temporal.newFolder().toPath(), OCULTA_EN_IF, porPartes);
+            String ci = r.artefacto(Compilador.ARCHIVO_CI);
+            assertTrue(ci, ci.contains("decl int x.1\nx.1 = 2\n"));
+            assertTrue(ci, ci.contains("return x\n"));
+            String optimizado = r.artefacto(Compilador.ARCHIVO_OPTIMIZADO);
+            assertTrue(optimizado, optimizado.contains("x = 1\n"));
+            assertTrue(optimizado, optimizado.contains("return x\n"));
+        }
+    }
+
+    /** Cada local que oculta a un bloque externo, un parámetro o una global tiene su nombre. */
+    @Test
+    public void ocultamientosTienenNombresPropios() throws Exception {
+        for (boolean porPartes : new boolean[] { false, true }) {
+            String ci = Programas.compilar(temporal.newFolder().toPath(), OCULTAMIENTOS, porPartes)
+                    .artefacto(Compilador.ARCHIVO_CI);
+            assertEquals(ci, 4, lineasQueEmpiezan(ci, "decl int x."));
+            assertEquals(ci, 1, lineasQueEmpiezan(ci, "decl int y."));
+            // La global no se renombra, y el inicializador de la local de main la lee a ella
+            assertEquals(ci, 1, lineasQueEmpiezan(ci, "decl int x\n"));
+            assertTrue(ci, ci.contains(" = x + 1\n"));
+        }
+    }
+
+    /**
+     * Cada mezcla de {@code int} y {@code double} lleva su conversión explícita, y
+     * la división entera se hace antes de convertir su resultado.
+     */
+    @Test
+    public void conversionesExplicitas() throws Exception {
+        for (boolean porPartes : new boolean[] { false, true }) {
+            String ci = Programas.compilar(temporal.newFolder().toPath(), ARITMETICA_TIPADA, porPartes)
+                    .artefacto(Compilador.ARCHIVO_CI);
+            // d = 3, d / 2, h * 10, (double) (7 / 2) y e * 2
+            assertEquals(ci, 5, ocurrencias(ci, " = (double) "));
+            // r = h * 10 y s = e * 2
+            assertEquals(ci, 2, ocurrencias(ci, " = (int) "));
+            Pattern division = Pattern.compile("(t\\d+) = 7 / 2\n(t\\d+) = \\(double\\) \\1\ne = \\2\n");
+            assertTrue(ci, division.matcher(ci).find());
+            // int + int no se convierte
+            assertTrue(ci, Pattern.compile("(t\\d+) = big \\+ 1\nw = \\1\n").matcher(ci).find());
+        }
+    }
+
+    private static long ocurrencias(String texto, String buscado) {
+        return texto.split(Pattern.quote(buscado), -1).length - 1;
+    }
+
+    private static long lineasQueEmpiezan(String texto, String prefijo) {
+        return Arrays.stream(texto.split("(?<=\n)")).filter(l -> l.startsWith(prefijo)).count();
+    }
+
+    private void verificar(int esperado, String fuente) throws Exception {
+        assumeTrue("nasm y ld no están disponibles", herramientas);
+        for (boolean porPartes : new boolean[] { false, true }) {
+            Path directorio = temporal.newFolder().toPath();
+            Programas.Resultado r = Programas.compilar(directorio, fuente, porPartes);
+            assertEquals(r.consola, 0, r.reportador.getCantidadErrores());
+            Path asm = r.salida.resolve(Compilador.ARCHIVO_ASM);
+            Path objeto = directorio.resolve("programa.o");
+            Path ejecutable = directorio.resolve("programa");
+            assertEquals(0, ejecutar("nasm", "-f", "elf32", asm.toString(), "-o", objeto.toString()));
+            assertEquals(0, ejecutar("ld", "-m", "elf_i386", objeto.toString(), "-o", ejecutable.toString()));
+            assertEquals(porPartes ? "--streaming" : "completo", esperado, ejecutar(ejecutable.toString()));
+        }
+    }
+
+    private static int ejecutar(String... comando) throws IOException, InterruptedException {
+        Process proceso = new ProcessBuilder(comando).inheritIO().start();
+        if (!proceso.waitFor(30, TimeUnit.SECONDS)) {
+            proceso.destroyForcibly();
+            throw new AssertionError("No terminó: " + String.join(" ", comando));
+        }
+        return proceso.exitValue();
+    }
+
+    private static boolean disponible(String... comando) {
+        try {
+            Process proceso = new ProcessBuilder(comando).redirectErrorStream(true)
+                    .redirectOutput(ProcessBuilder.Redirect.DISCARD).start();
+            return proceso.waitFor(10, TimeUnit.SECONDS) && proceso.exitValue() == 0;
+        } catch (IOException e) {
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
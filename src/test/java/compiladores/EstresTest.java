@@ -0,0 +1,69 @@
+package compiladores;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Programas muy largos o muy anidados, en ambos modos. Acotan la pila que necesita
+ * {@link Compilador#TAMANIO_PILA}.
+ */
+public class EstresTest {
+
+    private static final int TERMINOS = 100_000;
+    private static final int ANIDAMIENTO = 10_000;
+
+    @Rule
+    public TemporaryFolder temporal = new TemporaryFolder();
+
+    @Test
+    public void expresionLarga() throws Exception {
+        StringBuilder fuente = new StringBuilder("int main() {\n  int a = 1;\n  int r = a");
+        for (int i = 1; i < TERMINOS; i++) {
+            fuente.append(" + a");
+        }
+        fuente.append(";\n  return r;\n}\n");
+        compilarSinErrores(fuente.toString());
+    }
+
+    @Test
+    public void ifsAnidados() throws Exception {
+        StringBuilder fuente = new StringBuilder("int main() {\n  int x = 0;\n");
+        for (int i = 0; i < ANIDAMIENTO; i++) {
+            fuente.append("if (x == 0) {\n");
+        }
+        fuente.append("x = 1;\n");
+        for (int i = 0; i < ANIDAMIENTO; i++) {
+            fuente.append("}\n");
+        }
+        fuente.append("  return x;\n}\n");
+        compilarSinErrores(fuente.toString());
+    }
+
+    @Test
+    public void parentesisAnidados() throws Exception {
+        StringBuilder fuente = new StringBuilder("int main() {\n  int r = ");
+        for (int i = 0; i < ANIDAMIENTO; i++) {
+            fuente.append('(');
+        }
+        fuente.append("19");
+        for (int i = 0; i < ANIDAMIENTO; i++) {
+            fuente.append(')');
+        }
+        fuente.append(";\n  return r;\n}\n");
+        compilarSinErrores(fuente.toString());
+    }
+
+    private void compilarSinErrores(String fuente) throws Exception {
+        for (boolean porPartes : new boolean[] { false, true }) {
+            Programas.Resultado r = Programas.compilar(temporal.newFolder().toPath(), fuente, porPartes);
+            assertEquals(r.consola, 0, r.reportador.getCantidadErrores());
+            assertTrue(Files.exists(r.salida.resolve(Compilador.ARCHIVO_ASM)));
+        }
+    }
+}
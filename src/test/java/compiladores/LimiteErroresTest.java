@@ -0,0 +1,39 @@
+package compiladores;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/** {@code --max-errores} corta la compilación en cualquier etapa y modo. */
+public class LimiteErroresTest {
+
+    @Rule
+    public TemporaryFolder temporal = new TemporaryFolder();
+
+    /** Programa que parsea en SLL sin problemas pero tiene un error semántico por sentencia. */
+    private static String sinDeclarar(int cantidad) {
+        StringBuilder fuente = new StringBuilder("int main() {\n");
+        for (int i = 0; i < cantidad; i++) {
+            fuente.append("  v").append(i).append(" = ").append(i).append(";\n");
+        }
+        return fuente.append("  return 0;\n}\n").toString();
+    }
+
+    @Test
+    public void erroresSemanticosSeCortanEnAmbosModos() throws Exception {
+        String fuente = sinDeclarar(200);
+        for (boolean porPartes : new boolean[] { false, true }) {
+            Programas.Resultado r = Programas.compilar(temporal.newFolder().toPath(), fuente, porPartes, 3);
+            assertEquals(r.consola, 3, r.reportador.getCantidadErrores());
+            assertTrue(r.consola, r.consola.contains("Compilación detenida"));
+            // Los primeros tres, en orden de fuente
+            assertTrue(r.consola, r.consola.contains("(2,2)"));
+            assertTrue(r.consola, r.consola.contains("(4,2)"));
+            assertFalse(r.consola, r.consola.contains("(5,2)"));
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package compiladores;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/** Llamadas con argumentos que no llegan a parsearse. */
+public class LlamadasTest {
+
+    /** El tercer argumento ({@code 'A'}) no es un argumento válido de la gramática. */
+    static final String ARGUMENTO_ERRONEO =
+            "double prom(int a, double b, char c) { return a + b; }\n"
+            + "int main() { double r = prom(3, 4.5, 'A'); return 0; }\n";
+
+    @Rule
+    public TemporaryFolder temporal = new TemporaryFolder();
+
+    @Test
+    public void argumentoErroneoNoGeneraParamVacio() throws Exception {
+        for (boolean porPartes : new boolean[] { false, true }) {
+            Programas.Resultado r = Programas.compilar(temporal.newFolder().toPath(), ARGUMENTO_ERRONEO, porPartes);
+            String ci = r.artefacto(Compilador.ARCHIVO_CI);
+            assertTrue(ci, ci.contains("prom call 2"));
+            assertFalse(ci, Arrays.asList(ci.split("\n")).contains("param "));
+            assertTrue(Files.exists(r.salida.resolve(Compilador.ARCHIVO_ASM)));
+        }
+    }
+}
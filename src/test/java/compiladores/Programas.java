@@ -0,0 +1,108 @@
+package compiladores;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Compila programas de prueba escritos en un directorio temporal y deja a mano
+ * sus artefactos y su consola.
+ */
+final class Programas {
+
+    /** Resultado de compilar un programa: sus artefactos, su reportador y su consola. */
+    static final class Resultado {
+        final Path salida;
+        final Reportador reportador;
+        final String consola;
+
+        Resultado(Path salida, Reportador reportador, String consola) {
+            this.salida = salida;
+            this.reportador = reportador;
+            this.consola = consola;
+        }
+
+        /** @return contenido de un artefacto de {@link #salida} */
+        String artefacto(String nombre) throws IOException {
+            return new String(Files.readAllBytes(salida.resolve(nombre)), StandardCharsets.UTF_8);
+        }
+    }
+
+    /** Resultado de un lote: cuántos archivos terminaron con errores y su consola. */
+    static final class Lote {
+        final int conErrores;
+        final String consola;
+
+        Lote(int conErrores, String consola) {
+            this.conErrores = conErrores;
+            this.consola = consola;
+        }
+    }
+
+    private Programas() {
+    }
+
+    /** Escribe {@code fuente} como {@code nombre}.txt en {@code directorio}. */
+    static Path escribir(Path directorio, String nombre, String fuente) throws IOException {
+        Path archivo = directorio.resolve(nombre + ".txt");
+        Files.write(archivo, fuente.getBytes(StandardCharsets.UTF_8));
+        return archivo;
+    }
+
+    /**
+     * Compila {@code fuente} con todos los artefactos.
+     *
+     * @param directorio directorio temporal donde se escriben la fuente y la salida
+     * @param fuente texto del programa
+     * @param porPartes {@code true} para compilar con {@code --streaming}
+     */
+    static Resultado compilar(Path directorio, String fuente, boolean porPartes) throws IOException {
+        return compilar(directorio, fuente, porPartes, 0);
+    }
+
+    /**
+     * Compila {@code fuente} con todos los artefactos y un límite de errores.
+     *
+     * @param limiteErrores límite de {@code --max-errores}, o {@code 0}
+     */
+    static Resultado compilar(Path directorio, String fuente, boolean porPartes, long limiteErrores)
+            throws IOException {
+        Path entrada = escribir(directorio, "programa", fuente);
+        Path salida = Files.createDirectories(directorio.resolve(porPartes ? "partes" : "completo"));
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        PrintStream consola = new PrintStream(buffer, true, "UTF-8");
+        Compilador compilador = new Compilador(entrada.toString(), salida.resolve("Tokens.txt").toString(),
+                salida.toString(), consola);
+        compilador.setPorPartes(porPartes);
+        compilador.setTrazas("");
+        compilador.setLimiteErrores(limiteErrores);
+        compilador.compilar();
+        consola.flush();
+        return new Resultado(salida, compilador.getReportador(), buffer.toString("UTF-8"));
+    }
+
+    /**
+     * Compila {@code rutas} con {@code --lote}, capturando la salida estándar.
+     *
+     * @param salida directorio de salida del lote
+     * @param rutas archivos o directorios de entrada
+     */
+    static Lote compilarLote(Path salida, String... rutas) throws IOException, InterruptedException {
+        PrintStream anterior = System.out;
+        ByteArrayOutputStream consola = new ByteArrayOutputStream();
+        int conErrores;
+        try {
+            System.setOut(new PrintStream(consola, true, "UTF-8"));
+            CompilacionLote lote = new CompilacionLote(salida.toString());
+            lote.setTrazas("");
+            conErrores = lote.ejecutar(Arrays.asList(rutas));
+        } finally {
+            System.setOut(anterior);
+        }
+        return new Lote(conErrores, consola.toString("UTF-8"));
+    }
+}